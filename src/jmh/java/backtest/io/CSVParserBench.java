@@ -0,0 +1,93 @@
+package backtest.io;
+
+import backtest.struct.Table;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * reading ten years of daily prices of one ticker, the csv of FilePriceSource.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CSVParserBench {
+  private byte[] bytes;
+  private Path file;
+
+  @Setup
+  public void setup() throws IOException {
+    StringBuilder sb = new StringBuilder("Date,Open,High,Low,Close,Adj Close\n");
+    Random random = new Random(1);
+    LocalDate day = LocalDate.of(2006, 4, 10);
+    double close = 100;
+    for (int i = 0; i < 2520; i++) {
+      double open = close * (1 + random.nextGaussian() * 0.01);
+      close = open * (1 + random.nextGaussian() * 0.01);
+      sb.append(day).append(',').append(price(open)).append(',')
+          .append(price(Math.max(open, close) * 1.01)).append(',')
+          .append(price(Math.min(open, close) * 0.99)).append(',').append(price(close))
+          .append(',').append(price(close * 0.9)).append('\n');
+      day = day.plusDays(1);
+    }
+    bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+    file = Files.createTempFile("prices", ".csv");
+    Files.write(file, bytes);
+  }
+
+  // six decimals like yahoo
+  private static double price(double p) {
+    return Math.round(p * 1e6) / 1e6;
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(file);
+  }
+
+  @Benchmark
+  public double parser() throws IOException {
+    double[] sum = new double[1];
+    new CSVParser().parse(Channels.newChannel(new ByteArrayInputStream(bytes)), row -> {
+      sum[0] += row.getEpochDay(0) + row.getDouble(1) + row.getDouble(2) + row.getDouble(3)
+          + row.getDouble(4) + row.getDouble(5);
+      return true;
+    });
+    return sum[0];
+  }
+
+  @Benchmark
+  public double parserFile() throws IOException {
+    double[] sum = new double[1];
+    new CSVParser().parse(file.toString(), row -> {
+      sum[0] += row.getEpochDay(0) + row.getDouble(5);
+      return true;
+    });
+    return sum[0];
+  }
+
+  /**
+   * the way FilePriceSource used to read prices.
+   */
+  @Benchmark
+  public double readerFile() {
+    Table table = new CSVReader().readTableFromFile(file.toString());
+    double sum = 0;
+    for (int i = 0; i < table.getNumRow(); i++) {
+      sum += LocalDate.parse(table.get(i, "Date")).toEpochDay()
+          + Double.parseDouble(table.get(i, "Adj Close"));
+    }
+    return sum;
+  }
+}
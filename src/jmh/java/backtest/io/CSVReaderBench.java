@@ -0,0 +1,32 @@
+package backtest.io;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CSVReaderBench {
+  private final CSVReader reader = new CSVReader();
+  // a row of yahoo daily prices
+  private final String plain = "2016-04-08,108.910004,109.769997,108.169998,108.660004," +
+      "23581700,108.660004";
+  // a row written by CSVWriter with quoted and escaped cells
+  private final String quoted = "2016-04-08,\"Apple, Inc.\",\"say \"\"hi\"\"\",108.66,," +
+      "23581700";
+
+  @Benchmark
+  public ArrayList<String> line2arrPlain() {
+    return reader.line2arr(plain);
+  }
+
+  @Benchmark
+  public ArrayList<String> line2arrQuoted() {
+    return reader.line2arr(quoted);
+  }
+}
@@ -0,0 +1,63 @@
+package backtest.io;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * saving 1000 quotes of a tick history response, the way ActiveTick.saveQuote did with one
+ * Files.write per quote and with a TickJournal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickJournalBench {
+  private static final int numQuotes = 1000;
+  private static final LocalDateTime time = LocalDateTime.of(2016, 7, 22, 9, 30);
+  private final Object quoteLock = new Object();
+  private Path dir;
+  private Path textPath;
+  private TickJournal journal;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("ticks");
+    textPath = dir.resolve("quotes");
+    journal = new TickJournal(dir.resolve("quotes.journal"));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    journal.close();
+    Files.deleteIfExists(textPath);
+    Files.deleteIfExists(journal.getPath());
+    Files.deleteIfExists(dir);
+  }
+
+  @Benchmark
+  public void filesWrite() throws IOException {
+    for (int i = 0; i < numQuotes; i++) {
+      synchronized (quoteLock) {
+        String output = String.format("%s %s %s %s %s %s\n", time.plusSeconds(i), "AAPL",
+            99.5, 3, 99.25, 5);
+        Files.write(textPath, output.getBytes(), StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+      }
+    }
+  }
+
+  @Benchmark
+  public void journal() {
+    for (int i = 0; i < numQuotes; i++) {
+      journal.quote("AAPL", time.plusSeconds(i), 99.5, 3, 99.25, 5);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package backtest.io;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the quotes of one symbol at 09:30 out of a day of 100000 quotes, from a text file the way
+ * DelayedGap read data/quotes and from a TickStore.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickStoreBench {
+  private static final LocalDate day = LocalDate.of(2016, 7, 22);
+  private Path text;
+  private TickStore store;
+
+  @Setup
+  public void setup() throws IOException {
+    Path dir = Files.createTempDirectory("ticks");
+    text = dir.resolve("quotes");
+    store = new TickStore(dir.resolve("store"));
+    Ticks ticks = new Ticks(TickJournal.QUOTE);
+    Random random = new Random(1);
+    LocalDateTime time = LocalDateTime.of(day, LocalTime.of(9, 30));
+    double bid = 39.75;
+    try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(text))) {
+      for (int i = 0; i < 100000; i++) {
+        time = time.plusNanos(random.nextInt(400_000_000));
+        bid = Math.round((bid + (random.nextInt(5) - 2) * 0.01) * 100) / 100.0;
+        ticks.addQuote(time, bid + 0.01, 3, bid, 5);
+        writer.println("A " + time + " " + (bid + 0.01) + " 3 " + bid + " 5");
+      }
+    }
+    store.write(day, "A", ticks);
+  }
+
+  @Benchmark
+  public int text() throws IOException {
+    Map<String, double[]> map = new HashMap<>();
+    try (BufferedReader br = Files.newBufferedReader(text)) {
+      String line;
+      while ((line = br.readLine()) != null) {
+        String[] tokens = line.split("\\s+");
+        if (tokens[1].startsWith(day + "T09:30")) {
+          map.putIfAbsent(tokens[0] + " " + tokens[1], new double[]{
+              Double.valueOf(tokens[2]), Double.valueOf(tokens[4])});
+        }
+      }
+    }
+    return map.size();
+  }
+
+  @Benchmark
+  public int store() {
+    return store.read(day, "A", TickJournal.QUOTE, LocalTime.of(9, 30), LocalTime.of(9, 31))
+        .size();
+  }
+}
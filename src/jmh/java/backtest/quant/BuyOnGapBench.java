@@ -0,0 +1,44 @@
+package backtest.quant;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * full backtest over a generated universe. panel and gap candidates are built once in setup
+ * like they are for a parameter sweep, so this measures one run of the sweep.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class BuyOnGapBench {
+  // BuyOnGap computes its regime model up to this day
+  private static final LocalDate to = LocalDate.of(2016, 4, 8);
+  private static final LocalDate from = to.minusYears(10);
+
+  @Param({"500"})
+  int numTickers;
+
+  @Param({"PARTIAL_GAP_DOWN_ADJUSTED"})
+  BuyOnGap.Strategy strategy;
+
+  private BuyOnGap buyOnGap;
+  private BuyOnGap.Params params;
+
+  @Setup
+  public void setup() {
+    Stocks stocks = new Stocks(new SyntheticPriceSource(numTickers, from, to, 42));
+    buyOnGap = new BuyOnGap(stocks);
+    params = new BuyOnGap.Params(5, 1, 0, 1, 0.08, 6, 0, 0.01);
+    runWith();
+  }
+
+  @Benchmark
+  public double runWith() {
+    return buyOnGap.runWith(30000, params, from.plusYears(1), to, strategy).total;
+  }
+}
@@ -0,0 +1,45 @@
+package backtest.quant;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cold start of the universe from a MappedPriceStore, i.e. what Stocks.load pays at startup
+ * once the store is written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MappedPriceStoreBench {
+  private static final LocalDate to = LocalDate.of(2016, 4, 8);
+
+  @Param({"500"})
+  int numTickers;
+
+  private MappedPriceStore store;
+  private List<String> tickers;
+  private LocalDate lastDay;
+
+  @Setup
+  public void setup() throws IOException {
+    SyntheticPriceSource source = new SyntheticPriceSource(numTickers, to.minusYears(10), to, 42);
+    store = new MappedPriceStore(Files.createTempDirectory("store").toString());
+    tickers = source.getTickers();
+    lastDay = source.getDayRanges().get("SPY").upperEndpoint();
+    for (String ticker : tickers) store.write(source.load(ticker));
+  }
+
+  @Benchmark
+  public void readUniverse(Blackhole bh) {
+    for (String ticker : tickers) bh.consume(store.read(ticker, lastDay));
+  }
+}
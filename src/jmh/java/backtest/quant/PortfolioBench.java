@@ -0,0 +1,52 @@
+package backtest.quant;
+
+import backtest.struct.NumMap;
+import backtest.utils.Cal;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * one ThresholdFinder evaluation: switch between SPY and cash on every tenth business day for
+ * ten years and take sharpe ratio, mean and std.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PortfolioBench {
+  private static final LocalDate to = LocalDate.of(2016, 1, 1);
+  private static final LocalDate from = to.minusYears(10);
+  private final double[] bear = {0};
+  private final double[] bull = {1};
+  private Stocks stocks;
+  private Panel panel;
+
+  @Setup
+  public void setup() {
+    stocks = new Stocks(new SyntheticPriceSource(10, from, to, 42));
+    panel = new Panel(stocks, Collections.singletonList("SPY"), from, to);
+  }
+
+  @Benchmark
+  public double portfolio() {
+    Portfolio portfolio = new Portfolio(10000, stocks);
+    int i = 0;
+    for (LocalDate date = Cal.getLatestBusinessDayAfter(from); !date.isAfter(to);
+         date = Cal.getNextBusinessDay(date), i++) {
+      portfolio.reassign(date, new NumMap<String>().put("SPY", i / 10 % 2));
+    }
+    return portfolio.sharpeRatio() + portfolio.mean() + portfolio.std();
+  }
+
+  @Benchmark
+  public double simulator() {
+    PortfolioSimulator.Result result = new PortfolioSimulator(panel, 10000).run(from, to,
+        d -> d / 10 % 2 == 0 ? bear : bull);
+    return result.sharpeRatio + result.mean + result.std;
+  }
+}
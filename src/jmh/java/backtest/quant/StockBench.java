@@ -0,0 +1,64 @@
+package backtest.quant;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockBench {
+  private static final LocalDate from = LocalDate.of(2006, 1, 1);
+  private static final LocalDate to = LocalDate.of(2016, 1, 1);
+  private Stock stock;
+  private LocalDate[] days;
+  private ExtremeDays windows;
+
+  @Setup
+  public void setup() {
+    stock = new SyntheticPriceSource(1, from, to, 42).load("A");
+    days = new LocalDate[stock.size()];
+    for (int i = 0; i < days.length; i++) days[i] = stock.getDate(i);
+    List<Period> periods = new ArrayList<>();
+    for (int m = 4; m < 36; m++) periods.add(Period.ofMonths(m));
+    windows = new ExtremeDays(from.plusYears(3), to, periods);
+  }
+
+  @Benchmark
+  public List<LocalDate> getExtremeDaysHigh() {
+    return stock.getExtremeDays(from.plusYears(1), to, Period.ofMonths(12), true);
+  }
+
+  @Benchmark
+  public List<LocalDate> getExtremeDaysLow() {
+    return stock.getExtremeDays(from.plusYears(1), to, Period.ofMonths(12), false);
+  }
+
+  /**
+   * highs of the 32 window sizes that TransThreshFinder sweeps, in one pass.
+   */
+  @Benchmark
+  public int[][] extremeDaysAllWindows() {
+    return windows.find(stock, true);
+  }
+
+  /**
+   * scan every day in order with the previous index as hint, as callers walking a calendar do.
+   */
+  @Benchmark
+  public int findFrom() {
+    int j = 0, sum = 0;
+    for (LocalDate day : days) {
+      j = stock.findFrom(day, j);
+      sum += j;
+    }
+    return sum;
+  }
+}
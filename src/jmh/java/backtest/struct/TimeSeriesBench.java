@@ -0,0 +1,61 @@
+package backtest.struct;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeSeriesBench {
+  private static final LocalDate from = LocalDate.of(2006, 1, 2);
+
+  @Param({"2500"})
+  int size;
+
+  private TimeSeries a, b;
+  private LocalDate[] keys;
+
+  /**
+   * two daily series with about one day in ten missing from each, so ops have to merge keys.
+   */
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    a = new TimeSeries("a");
+    b = new TimeSeries("b");
+    for (int i = 0; i < size; i++) {
+      LocalDate day = from.plusDays(i);
+      if (random.nextInt(10) > 0) a.put(day, 1 + random.nextDouble());
+      if (random.nextInt(10) > 0) b.put(day, 1 + random.nextDouble());
+    }
+    keys = new LocalDate[size];
+    for (int i = 0; i < size; i++) keys[i] = from.plusDays(random.nextInt(size));
+  }
+
+  @Benchmark
+  public TimeSeries looseOp() {
+    return a.looseOp(b, Double::sum);
+  }
+
+  @Benchmark
+  public TimeSeries strictOp() {
+    return a.strictOp(b, (x, y) -> x / y);
+  }
+
+  @Benchmark
+  public void getEntryByIndex(Blackhole bh) {
+    for (int i = 0; i < a.size(); i++) bh.consume(a.getEntry(i));
+  }
+
+  @Benchmark
+  public void getEntryByDate(Blackhole bh) {
+    for (LocalDate key : keys) bh.consume(a.getEntry(key));
+  }
+}
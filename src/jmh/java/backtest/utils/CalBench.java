@@ -0,0 +1,50 @@
+package backtest.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalBench {
+  private final LocalDate from = LocalDate.of(2006, 1, 2);
+  private final LocalDate to = LocalDate.of(2016, 1, 4);
+
+  /**
+   * walk ten years of business days, the way Panel and forward fill build calendars.
+   */
+  @Benchmark
+  public LocalDate getNextBusinessDay() {
+    LocalDate day = from;
+    while (day.isBefore(to)) day = Cal.getNextBusinessDay(day);
+    return day;
+  }
+
+  /**
+   * the same walk over epoch days of the trading calendar.
+   */
+  @Benchmark
+  public int tradingCalendarNext() {
+    TradingCalendar calendar = TradingCalendar.getDefault();
+    int day = (int) from.toEpochDay(), end = (int) to.toEpochDay();
+    while (day < end) day = calendar.next(day);
+    return day;
+  }
+
+  /**
+   * stepping 5 business days from each day of ten years, like Stock.adjOpenRet.
+   */
+  @Benchmark
+  public LocalDate getNextBusinessDays() {
+    LocalDate ret = null;
+    for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+      ret = Cal.getNextBusinessDay(day, 5);
+    }
+    return ret;
+  }
+}
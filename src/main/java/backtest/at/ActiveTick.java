@@ -3,6 +3,7 @@ package backtest.at;
 import at.feedapi.*;
 import at.shared.ATServerAPIDefines;
 import at.shared.ATServerAPIDefines.ATBarHistoryResponseType;
+import backtest.io.TickJournal;
 import backtest.quant.Stocks;
 import backtest.utils.*;
 
@@ -13,9 +14,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -41,11 +41,16 @@ public class ActiveTick implements AutoCloseable {
   private boolean connected;
   Session session;
   static final ATServerAPIDefines apiDefines = new ATServerAPIDefines();
-  private static final String quotesPath = "data/quotes-160724";
-  private static final String tradesPath = "data/trades-160724";
-  private static final String ohlcPath ="data/ohlc-160724";
-  private final Object quoteLock = new Object();
-  private final Object tradeLock = new Object();
+  // TickJournal files, replayed by TickJournal.replay
+  private static final String quotesPath = "data/quotes-160724.journal";
+  private static final String tradesPath = "data/trades-160724.journal";
+  private static final String ohlcPath = "data/ohlc-160724.journal";
+  private static final String firstTradePath = "data/first-trade.journal";
+  // opened on first use and closed by close
+  private final Map<String, TickJournal> journals = new ConcurrentHashMap<>();
+  // at most 5 concurrent history requests, as getTickHistory
+  private static final int maxHistoryRequests = 5;
+  private HistoryFetcher historyFetcher;
   private TimedSemaphore<Label> latch;
 
   private final Map<LocalDate, Set<String>> tradeDone = new ConcurrentHashMap<>();
@@ -111,7 +116,37 @@ public class ActiveTick implements AutoCloseable {
 
   @Override
   public void close() {
+    synchronized (this) {
+      if (historyFetcher != null) historyFetcher.close();
+      historyFetcher = null;
+    }
     disconnect();
+    for (TickJournal journal : journals.values()) {
+      try {
+        journal.close();
+      } catch (IOException e) {
+        logger.error("error while closing {}", journal.getPath(), e);
+      }
+    }
+    journals.clear();
+  }
+
+  /**
+   * fetcher of history over this session, closed by close.
+   */
+  synchronized HistoryFetcher getHistoryFetcher() {
+    if (historyFetcher == null) historyFetcher = new HistoryFetcher(this, maxHistoryRequests);
+    return historyFetcher;
+  }
+
+  private TickJournal journal(String path) {
+    return journals.computeIfAbsent(path, p -> {
+      try {
+        return new TickJournal(Paths.get(p));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
   }
 
   private static abstract class BarHistoryCallback extends ATCallback
@@ -214,7 +249,8 @@ public class ActiveTick implements AutoCloseable {
         systemTime.day,
         systemTime.hour,
         systemTime.minute,
-        systemTime.second);
+        systemTime.second,
+        systemTime.milliseconds * 1_000_000);
   }
 
   public Map<String, Double> getOpenPrice(List<String> tickers) {
@@ -396,49 +432,25 @@ public class ActiveTick implements AutoCloseable {
   }
 
   private void saveQuote(ATServerAPIDefines.ATTICKHISTORY_RECORD record, String ticker) {
-    synchronized (quoteLock) {
-      ATServerAPIDefines.ATTICKHISTORY_QUOTE_RECORD quoteRecord =
-          (ATServerAPIDefines.ATTICKHISTORY_QUOTE_RECORD) record;
-      LocalDateTime time = systemTimeToDateTime(quoteRecord.quoteDateTime);
-      String output =
-          String.format(
-              "%s %s %s %s %s %s\n",
-              time,
-              ticker,
-              quoteRecord.askPrice.price,
-              quoteRecord.askSize,
-              quoteRecord.bidPrice.price,
-              quoteRecord.bidSize);
-      try {
-        Files.write(
-            Paths.get(quotesPath),
-            output.getBytes(),
-            StandardOpenOption.CREATE,
-            StandardOpenOption.APPEND);
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
-    }
+    ATServerAPIDefines.ATTICKHISTORY_QUOTE_RECORD quoteRecord =
+        (ATServerAPIDefines.ATTICKHISTORY_QUOTE_RECORD) record;
+    journal(quotesPath).quote(
+        ticker,
+        systemTimeToDateTime(quoteRecord.quoteDateTime),
+        quoteRecord.askPrice.price,
+        quoteRecord.askSize,
+        quoteRecord.bidPrice.price,
+        quoteRecord.bidSize);
   }
 
   private void saveTrade(ATServerAPIDefines.ATTICKHISTORY_RECORD record, String ticker) {
-    synchronized (tradeLock) {
-      ATServerAPIDefines.ATTICKHISTORY_TRADE_RECORD tradeQuote =
-          (ATServerAPIDefines.ATTICKHISTORY_TRADE_RECORD) record;
-      LocalDateTime time = systemTimeToDateTime(tradeQuote.lastDateTime);
-      String output =
-          String.format(
-              "%s %s %s %s\n", time, ticker, tradeQuote.lastPrice.price, tradeQuote.lastSize);
-      try {
-        Files.write(
-            Paths.get(tradesPath),
-            output.getBytes(),
-            StandardOpenOption.CREATE,
-            StandardOpenOption.APPEND);
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
-    }
+    ATServerAPIDefines.ATTICKHISTORY_TRADE_RECORD tradeQuote =
+        (ATServerAPIDefines.ATTICKHISTORY_TRADE_RECORD) record;
+    journal(tradesPath).trade(
+        ticker,
+        systemTimeToDateTime(tradeQuote.lastDateTime),
+        tradeQuote.lastPrice.price,
+        tradeQuote.lastSize);
   }
 
   private void getTickHistory(LocalDateTime from, LocalDateTime to, String ticker) {
@@ -503,18 +515,8 @@ public class ActiveTick implements AutoCloseable {
                         tradeDoneNumMap.merge(LocalTime.of(10,0), 1, Integer::sum);
                       tradeDoneNum.put(time.toLocalDate(), tradeDoneNumMap);
 
-                      String output =
-                          String.format(
-                              "%s %s %s %s\n", time, ticker, tradeQuote.lastPrice.price, tradeQuote.lastSize);
-                      try {
-                        Files.write(
-                            Paths.get("data/first-trade"),
-                            output.getBytes(),
-                            StandardOpenOption.CREATE,
-                            StandardOpenOption.APPEND);
-                      } catch (IOException e) {
-                        e.printStackTrace();
-                      }
+                      journal(firstTradePath).trade(
+                          ticker, time, tradeQuote.lastPrice.price, tradeQuote.lastSize);
 
                       break;
 
@@ -572,27 +574,17 @@ public class ActiveTick implements AutoCloseable {
                     // TODO(yukang): handle res type error and time out callback error in latch.
                     return;
                   }
+                  TickJournal bars = journal(ohlcPath);
                   for (ATServerAPIDefines.ATBARHISTORY_RECORD record : res.GetRecords()) {
-                    String result =
-                        String.format(
-                            "%s %d-%d-%d %f %f %f %f",
-                            ticker,
-                            record.barTime.year,
-                            record.barTime.month,
-                            record.barTime.day,
-                            record.open.price,
-                            record.high.price,
-                            record.low.price,
-                            record.close.price);
-                    try {
-                      Files.write(
-                          Paths.get(ohlcPath),
-                          String.format("%s\n", result).getBytes(),
-                          StandardOpenOption.CREATE,
-                          StandardOpenOption.APPEND);
-                    } catch (IOException e) {
-                      e.printStackTrace();
-                    }
+                    bars.bar(
+                        ticker,
+                        LocalDate.of(record.barTime.year, record.barTime.month, record.barTime.day)
+                            .atStartOfDay(),
+                        record.open.price,
+                        record.high.price,
+                        record.low.price,
+                        record.close.price,
+                        record.volume);
                   }
                 } finally {
                   latch.arrive(label);
@@ -10,36 +10,38 @@ import org.slf4j.LoggerFactory;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static backtest.at.ATUtils.systemTime;
 import static backtest.at.ActiveTick.apiDefines;
 
-class BarGetter {
+/**
+ * one daily bar history request, sent by HistoryFetcher.
+ */
+class BarGetter implements HistoryFetcher.Request {
   private static final Logger logger = LoggerFactory.getLogger(BarGetter.class);
   private final ActiveTick activeTick;
   private final String ticker;
   private final LocalDate from, to;
-  private CountDownLatch latch;
-  private List<OHLC> bar;
-  private boolean success;
-  private AtomicBoolean done;
+  private final List<OHLC> bar = new ArrayList<>();
+  private volatile Consumer<HistoryFetcher.Response> done;
 
   BarGetter(ActiveTick activeTick, String ticker, LocalDate from, LocalDate to) {
     this.activeTick = activeTick;
     this.ticker = ticker;
     this.from = from;
     this.to = to;
-    done = new AtomicBoolean();
   }
   private class BarHistoryCallback extends ATCallback implements ATCallback.ATBarHistoryResponseCallback {
     @Override
     public void process(long reqId, ATServerAPIDefines.ATBarHistoryResponseType type, BarHistoryDbResponseCollection res) {
+      HistoryFetcher.Response response = HistoryFetcher.Response.FAILED;
       try {
         if (type.m_responseType != ATServerAPIDefines.ATBarHistoryResponseType.BarHistoryResponseSuccess) {
           logger.error("bar history res type: " + type.m_responseType);
+          if (type.m_responseType == ATServerAPIDefines.ATBarHistoryResponseType.BarHistoryResponseMaxLimitReached) {
+            response = HistoryFetcher.Response.MAX_LIMIT;
+          }
           return;
         }
         for (ATServerAPIDefines.ATBARHISTORY_RECORD record : res.GetRecords()) {
@@ -53,31 +55,25 @@ class BarGetter {
           ohlc.date = LocalDate.of(record.barTime.year, record.barTime.month, record.barTime.day);
           bar.add(ohlc);
         }
-        success = true;
-        if (done.get()) {
-          logger.error("get bar history of {} from {} to {} after done", ticker, from, to);
-        }
+        response = HistoryFetcher.Response.SUCCESS;
       } finally {
-        done.set(true);
-        latch.countDown();
+        done.accept(response);
       }
     }
   }
   private class TimeoutCallback extends ATCallback implements ATCallback.ATRequestTimeoutCallback {
     @Override
     public void process(long rid) {
-      logger.error("tick history request time out");
-      done.set(true);
-      latch.countDown();
+      logger.error("bar history request of {} from {} to {} time out", ticker, from, to);
+      done.accept(HistoryFetcher.Response.FAILED);
     }
   }
-  boolean fetch() {
-    latch = new CountDownLatch(1);
-    success = false;
-    bar = new ArrayList<>();
+  @Override
+  public void send(int deadlineMs, Consumer<HistoryFetcher.Response> done) {
+    this.done = done;
     ATServerAPIDefines.SYSTEMTIME beginTime = systemTime(from);
     ATServerAPIDefines.SYSTEMTIME endTime = systemTime(to);
-    System.out.println("getting bar history for " + ticker);
+    logger.info("getting bar history for {}", ticker);
     long request =
         activeTick.serverAPI.ATCreateBarHistoryDbRequest(
             activeTick.session,
@@ -87,19 +83,12 @@ class BarGetter {
             beginTime,
             endTime,
             new BarHistoryCallback());
-    activeTick.serverAPI.ATSendRequest(
+    boolean sent = activeTick.serverAPI.ATSendRequest(
         activeTick.session,
         request,
-        2900, /* 2.9 seconds */
+        deadlineMs,
         new TimeoutCallback());
-    try {
-      latch.await(3, TimeUnit.SECONDS);
-    } catch (InterruptedException e) {
-      e.printStackTrace();
-    } finally {
-      done.set(true);
-    }
-    return success;
+    if (!sent) done.accept(HistoryFetcher.Response.FAILED);
   }
 
   List<OHLC> get() {return bar;}
@@ -5,11 +5,13 @@ import com.google.common.collect.ImmutableList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public class BarHistory {
   private static final Logger logger = LoggerFactory.getLogger(BarHistory.class);
@@ -31,77 +33,75 @@ public class BarHistory {
   }
 
   private Optional<OHLC> get(String ticker, LocalDate date) {
-    String sql = String.format("select open as open, high as high, low as low, close as close, volume as volume from ohlc where ticker='%s' and date=julianday('%s')", ticker, date);
-    try (ResultSet rs = sqlite.get(sql)) {
-      if (rs.next()) {
-        OHLC ohlc = new OHLC();
-        ohlc.open = rs.getDouble("open");
-        ohlc.high = rs.getDouble("high");
-        ohlc.low = rs.getDouble("low");
-        ohlc.close = rs.getDouble("close");
-        ohlc.volume = rs.getLong("volume");
-        ohlc.ticker = ticker;
-        ohlc.date = date;
-        return Optional.of(ohlc);
-      } else {
-//        logger.info("{} at {} does not have ohlc in sqlite", ticker, date);
-      }
-    } catch (SQLException e) {
-      logger.error("sql exception: {} for {} at {}", e.getMessage(), ticker, date);
-    }
-    return Optional.empty();
+    return sqlite.queryFirst(
+        "select open, high, low, close, volume from ohlc where ticker=? and date=julianday(?)",
+        rs -> {
+          OHLC ohlc = new OHLC();
+          ohlc.open = rs.getDouble(1);
+          ohlc.high = rs.getDouble(2);
+          ohlc.low = rs.getDouble(3);
+          ohlc.close = rs.getDouble(4);
+          ohlc.volume = rs.getLong(5);
+          ohlc.ticker = ticker;
+          ohlc.date = date;
+          return ohlc;
+        },
+        ticker,
+        date.toString());
   }
 
-  private List<OHLC> fetch(String ticker, LocalDate from, LocalDate to) {
-    final int maxRetry = 3;
-    int i = 0;
-    boolean success;
-    do {
-      BarGetter getter = new BarGetter(activeTick, ticker, from, to);
-      success = getter.fetch();
-      if (i > 0) logger.error("trial number: {}", i);
-      if (success && !getter.get().isEmpty()) {
-        return getter.get();
-      }
-      i++;
-    } while (i < maxRetry);
-    return ImmutableList.of();
+  public Optional<OHLC> getOrFetch(String ticker, LocalDate date, LocalDate fetchTo) {
+    return Optional.ofNullable(getOrFetch(ImmutableList.of(ticker), date, fetchTo).get(ticker));
   }
 
-  public Optional<OHLC> getOrFetch(String ticker, LocalDate date, LocalDate fetchTo) {
-    Optional<OHLC> optOhlc = get(ticker, date);
-    if (optOhlc.isPresent()) {
-      return optOhlc;
-    } else if (!ranges.contains(ticker, date)) {
-      List<OHLC> result = fetch(ticker, date, fetchTo);
+  /**
+   * getOrFetch of many tickers. bars of tickers that are neither in sqlite nor in ranges are
+   * fetched from date to fetchTo with several requests in flight.
+   *
+   * @return bars on date by ticker. tickers without one are left out.
+   */
+  public Map<String, OHLC> getOrFetch(List<String> tickers, LocalDate date, LocalDate fetchTo) {
+    Map<String, OHLC> ret = new HashMap<>();
+    Map<String, CompletableFuture<List<OHLC>>> fetches = new LinkedHashMap<>();
+    for (String ticker : tickers) {
+      Optional<OHLC> optOhlc = get(ticker, date);
+      if (optOhlc.isPresent()) {
+        ret.put(ticker, optOhlc.get());
+      } else if (!ranges.contains(ticker, date)) {
+        fetches.put(ticker, activeTick.getHistoryFetcher().bars(ticker, date, fetchTo));
+      } else {
+        logger.error("there is no data about {} at {} in both local and activetick", ticker, date);
+      }
+    }
+    if (fetches.isEmpty()) return ret;
+    // wait for all fetches before the write transaction takes the db lock
+    Map<String, List<OHLC>> fetched = new LinkedHashMap<>();
+    for (Map.Entry<String, CompletableFuture<List<OHLC>>> fetch : fetches.entrySet()) {
+      List<OHLC> result = fetch.getValue().join();
       if (result.isEmpty()) {
-        logger.error("fetched {} at {} but result is an empty list", ticker, date);
-        return Optional.empty();
+        logger.error("fetched {} at {} but result is an empty list", fetch.getKey(), date);
+      } else {
+        fetched.put(fetch.getKey(), result);
       }
-      OHLC ret = null;
-      StringBuilder strBuilder = new StringBuilder("insert or ignore into ohlc values ");
-      int i = 0;
-      for (OHLC ohlc : result) {
-        if (ohlc.date.isEqual(date)) {
-          ret = ohlc;
+    }
+    if (fetched.isEmpty()) return ret;
+    try (SQLite.Batch batch = sqlite.batch("insert or ignore into ohlc values (?, julianday(?), ?, ?, ?, ?, ?)")) {
+      for (Map.Entry<String, List<OHLC>> fetch : fetched.entrySet()) {
+        String ticker = fetch.getKey();
+        ranges.insert(batch, ticker, date, fetchTo);
+        for (OHLC ohlc : fetch.getValue()) {
+          if (ohlc.date.isEqual(date)) {
+            ret.put(ticker, ohlc);
+          }
+          batch.add(ticker, ohlc.date.toString(), ohlc.open, ohlc.high, ohlc.low, ohlc.close,
+              ohlc.volume);
+        }
+        if (!ret.containsKey(ticker)) {
+          logger.error("fetched {} at {}. but requested time is not found in result.", ticker, date);
         }
-        if (i != 0) strBuilder.append(',');
-        String values = String.format("('%s', julianday('%s'), %f, %f, %f, %f, %d)", ticker, ohlc.date, ohlc.open, ohlc.high, ohlc.low, ohlc.close, ohlc.volume);
-        strBuilder.append(values);
-        i++;
-      }
-      sqlite.executeUpdate(strBuilder.toString());
-      ranges.insert(ticker, date, fetchTo);
-      if (ret == null) {
-        logger.error("fetched {} at {}. but requested time is not found in result.", ticker, date);
-        return Optional.empty();
-      } else {
-        return Optional.of(ret);
       }
-    } else {
-      logger.error("there is no data about {} at {} in both local and activetick", ticker, date);
-      return Optional.empty();
     }
+    return ret;
   }
 
   public static void main(String[] args) {
@@ -52,15 +52,14 @@ public class DayRanges {
     map.put(ticker, set);
   }
 
-  void insert(String ticker, LocalDate from, LocalDate to) {
-    insertToMap(ticker, from, to);
-    String sql =
-        String.format(
-            "insert into ranges values ('%s',julianday('%s'),julianday('%s'))",
-            ticker,
-            from,
-            to);
-    sqlite.executeUpdate(sql);
+  /**
+   * write the range of ticker in the transaction of batch, e.g. with the bars fetched for it.
+   * the range is covered only once batch commits, so rolled back bars are fetched again.
+   */
+  void insert(SQLite.Batch batch, String ticker, LocalDate from, LocalDate to) {
+    batch.addTo("insert into ranges values (?, julianday(?), julianday(?))", ticker,
+        from.toString(), to.toString());
+    batch.onCommit(() -> insertToMap(ticker, from, to));
   }
 
   void clear() {
@@ -41,11 +41,13 @@ public class FirstTradeTime {
       Map<LocalDate, List<Trade>> firstTrades = new HashMap<>();
       for (LocalDate date = from; date.isBefore(to); date = Cal.getNextBusinessDay(date)) {
         List<Trade> tradeList = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(date, LocalTime.of(9, 30));
+        List<String> toFetch = new ArrayList<>();
+        for (String ticker : sp500) {
+          if (!tradeRanges.contains(ticker, start)) toFetch.add(ticker);
+        }
+        Trade.getOrFetch(trades, activeTick, toFetch, start, tradeRanges);
         for (String ticker : sp500) {
-          LocalDateTime start = LocalDateTime.of(date, LocalTime.of(9, 30));
-          if (!tradeRanges.contains(ticker, start)) {
-            Trade.getOrFetch(trades, activeTick, ticker, start, tradeRanges);
-          }
           Optional<Trade> optTrade = Trade.firstTradeBefore(trades, ticker, date, LocalTime.of(9, 40));
           if (optTrade.isPresent()) tradeList.add(optTrade.get());
         }
@@ -70,6 +72,11 @@ public class FirstTradeTime {
         for (LocalDate date = from; date.isBefore(to); date = Cal.getNextBusinessDay(date)) {
           List<Gap> gaps = new ArrayList<>();
           LocalDate lastDay = Cal.getPrevBusinessDay(date);
+          List<String> tickers = new ArrayList<>();
+          for (Trade trade : firstTrades.get(date)) {
+            if (trade.time.toLocalTime().isBefore(endTime)) tickers.add(trade.ticker);
+          }
+          Map<String, OHLC> lastOhlc = ohlcGetter.getOrFetch(tickers, lastDay, to);
 
           // calc gaps for all trades before end time.
           for (Trade trade : firstTrades.get(date)) {
@@ -77,12 +84,11 @@ public class FirstTradeTime {
               Gap gap = new Gap();
               gap.ticker = trade.ticker;
               double lastClose;
-              Optional<OHLC> optOhlc = ohlcGetter.getOrFetch(trade.ticker, lastDay, to);
-              if (!optOhlc.isPresent()) {
+              if (!lastOhlc.containsKey(trade.ticker)) {
 //                System.out.println("no last close for " + trade.ticker + " on " + lastDay);
                 continue;
               } else {
-                lastClose = optOhlc.get().close;
+                lastClose = lastOhlc.get(trade.ticker).close;
               }
               gap.gap = (trade.price - lastClose) / lastClose;
               gaps.add(gap);
@@ -92,13 +98,18 @@ public class FirstTradeTime {
           System.out.println(date);
           double dayProfit = 0;
           double n = 0;
-          for (Gap gap : Ordering.natural().leastOf(gaps, 6)) {
+          List<Gap> chosen = Ordering.natural().leastOf(gaps, 6);
+          List<String> chosenTickers = new ArrayList<>();
+          for (Gap gap : chosen) chosenTickers.add(gap.ticker);
+          LocalDateTime toTime = LocalDateTime.of(date, endTime);
+          Map<String, Quote> quotes = lastQuotes.getOrFetchLastQuotesBefore(chosenTickers, toTime);
+          Map<String, OHLC> ohlcs = ohlcGetter.getOrFetch(chosenTickers, date, to);
+          for (Gap gap : chosen) {
             logger.info(gap.ticker + ": " + gap.gap);
-            LocalDateTime toTime = LocalDateTime.of(date, endTime);
-            Optional<Quote> lastQuote = lastQuotes.getOrFetchLastQuoteBefore(gap.ticker, toTime);
+            Optional<Quote> lastQuote = Optional.ofNullable(quotes.get(gap.ticker));
             if (lastQuote.isPresent()) {
               double buyPrice = (lastQuote.get().bidPrice + lastQuote.get().askPrice) / 2;
-              Optional<OHLC> optOhlc = ohlcGetter.getOrFetch(gap.ticker, date, to);
+              Optional<OHLC> optOhlc = Optional.ofNullable(ohlcs.get(gap.ticker));
               if (optOhlc.isPresent()) {
                 double sellPrice;
                 if ((optOhlc.get().low-buyPrice)/buyPrice < -stopLoss) {
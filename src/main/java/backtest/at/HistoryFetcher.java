@@ -0,0 +1,255 @@
+package backtest.at;
+
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * fetches tick and bar history of many tickers over one ActiveTick session, keeping up to
+ * maxInFlight requests in flight instead of waiting for every response before sending the
+ * next request.
+ * a request that times out, fails or returns nothing is retried after a backoff that doubles
+ * every trial, with a longer deadline as before. TickHistoryResponseMaxLimitReached or
+ * BarHistoryResponseMaxLimitReached pauses sending of all requests for a while.
+ * futures complete with an empty list if all trials fail, the same as the old blocking
+ * fetches, and callbacks of the futures run on ActiveTick threads.
+ */
+public class HistoryFetcher implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(HistoryFetcher.class);
+  static final int maxRetry = 3;
+  private final ActiveTick at;
+  private final Semaphore inFlight;
+  private final BlockingQueue<Task<?, ?>> queue = new LinkedBlockingQueue<>();
+  // tasks not done yet, failed by close
+  private final Set<Task<?, ?>> pending = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService timer;
+  private final Thread sender;
+  private int deadlineMs = 3000;
+  private long backoffMs = 500;
+  private long maxLimitPauseMs = 1000;
+  // a timed out request keeps its slot for this long before it is counted as lost
+  private long graceMs = 10000;
+  private final AtomicInteger late = new AtomicInteger();
+  // no request is sent before this time in milliseconds
+  private volatile long pausedUntil;
+  private volatile boolean closed;
+
+  enum Response {SUCCESS, FAILED, MAX_LIMIT}
+
+  /**
+   * a request to ActiveTick. send is called once and done must be called once, on any thread.
+   * the request counts as in flight until done is called, even after its deadline passed,
+   * but at most graceMs after the timeout.
+   */
+  interface Request {
+    void send(int deadlineMs, Consumer<Response> done);
+  }
+
+  public HistoryFetcher(ActiveTick at, int maxInFlight) {
+    this.at = at;
+    inFlight = new Semaphore(maxInFlight);
+    timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "HistoryFetcher: timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    sender = new Thread(this::sendLoop, "HistoryFetcher: sender");
+    sender.setDaemon(true);
+    sender.start();
+  }
+
+  /**
+   * deadline of the first trial, backoff after the first failure and pause after a max limit
+   * response, in milliseconds.
+   */
+  HistoryFetcher setTimings(int deadlineMs, long backoffMs, long maxLimitPauseMs) {
+    this.deadlineMs = deadlineMs;
+    this.backoffMs = backoffMs;
+    this.maxLimitPauseMs = maxLimitPauseMs;
+    return this;
+  }
+
+  /**
+   * milliseconds a timed out request may still answer before its slot is freed.
+   */
+  HistoryFetcher setGrace(long graceMs) {
+    this.graceMs = graceMs;
+    return this;
+  }
+
+  /**
+   * @return number of requests that never answered within the grace after their timeout.
+   */
+  public int getLate() {
+    return late.get();
+  }
+
+  /**
+   * @return trades of ticker in [from, to).
+   */
+  public CompletableFuture<List<Trade>> trades(String ticker, LocalDateTime from,
+                                               LocalDateTime to) {
+    return submit("trades of " + ticker + " from " + from + " to " + to,
+        () -> new TickHistory(at, ticker, from, to, true), TickHistory::getTrade);
+  }
+
+  /**
+   * @return quotes of ticker in [from, to).
+   */
+  public CompletableFuture<List<Quote>> quotes(String ticker, LocalDateTime from,
+                                               LocalDateTime to) {
+    return submit("quotes of " + ticker + " from " + from + " to " + to,
+        () -> new TickHistory(at, ticker, from, to, false), TickHistory::getQuote);
+  }
+
+  /**
+   * @return daily bars of ticker from from to to.
+   */
+  public CompletableFuture<List<OHLC>> bars(String ticker, LocalDate from, LocalDate to) {
+    return submit("bars of " + ticker + " from " + from + " to " + to,
+        () -> new BarGetter(at, ticker, from, to), BarGetter::get);
+  }
+
+  /**
+   * @param newRequest makes a request for every trial.
+   * @param result     gives the result of a successful request.
+   */
+  <R extends Request, T> CompletableFuture<List<T>> submit(String label, Supplier<R> newRequest,
+                                                           Function<R, List<T>> result) {
+    Task<R, T> task = new Task<>(label, newRequest, result);
+    pending.add(task);
+    task.future.whenComplete((list, e) -> pending.remove(task));
+    if (closed) {
+      task.future.completeExceptionally(new IllegalStateException("fetcher is closed"));
+    } else {
+      queue.add(task);
+    }
+    return task.future;
+  }
+
+  private void sendLoop() {
+    try {
+      while (!closed) {
+        Task<?, ?> task = queue.take();
+        inFlight.acquire();
+        long pause;
+        while ((pause = pausedUntil - System.currentTimeMillis()) > 0) Thread.sleep(pause);
+        task.send();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void pause(long ms) {
+    long until = System.currentTimeMillis() + ms;
+    synchronized (this) {
+      if (until > pausedUntil) pausedUntil = until;
+    }
+  }
+
+  private class Task<R extends Request, T> {
+    final String label;
+    final Supplier<R> newRequest;
+    final Function<R, List<T>> result;
+    final CompletableFuture<List<T>> future = new CompletableFuture<>();
+    int trial;
+
+    Task(String label, Supplier<R> newRequest, Function<R, List<T>> result) {
+      this.label = label;
+      this.newRequest = newRequest;
+      this.result = result;
+    }
+
+    void send() {
+      int deadline = deadlineMs * (trial + 1);
+      AtomicBoolean done = new AtomicBoolean();
+      // a timed out request may still be running in ActiveTick, so its slot is freed by its
+      // callback
+      AtomicBoolean released = new AtomicBoolean();
+      Runnable release = () -> {
+        if (released.compareAndSet(false, true)) inFlight.release();
+      };
+      // as the old latch, give up a little after the deadline if no callback comes. the slot
+      // is freed after a grace even if the callback never comes, e.g. on a dropped session
+      ScheduledFuture<?> timeout = timer.schedule(() -> {
+        if (!done.compareAndSet(false, true)) return;
+        timer.schedule(() -> {
+          if (released.compareAndSet(false, true)) {
+            late.incrementAndGet();
+            logger.error("{}: no response {} ms after the timeout, free its slot", label,
+                graceMs);
+            inFlight.release();
+          }
+        }, graceMs, TimeUnit.MILLISECONDS);
+        onResponse(null, Response.FAILED);
+      }, deadline + 100, TimeUnit.MILLISECONDS);
+      try {
+        R request = newRequest.get();
+        request.send(deadline, response -> {
+          release.run();
+          if (!done.compareAndSet(false, true)) {
+            logger.error("{}: response after done", label);
+            return;
+          }
+          timeout.cancel(false);
+          onResponse(request, response);
+        });
+      } catch (RuntimeException e) {
+        logger.error("{}: failed to send", label, e);
+        release.run();
+        if (done.compareAndSet(false, true)) {
+          timeout.cancel(false);
+          onResponse(null, Response.FAILED);
+        }
+      }
+    }
+
+    private void onResponse(R request, Response response) {
+      if (response == Response.SUCCESS) {
+        List<T> list = result.apply(request);
+        if (!list.isEmpty()) {
+          future.complete(list);
+          return;
+        }
+      } else if (response == Response.MAX_LIMIT) {
+        pause(maxLimitPauseMs);
+      }
+      trial++;
+      if (trial >= maxRetry || closed) {
+        logger.error("{}: nothing after {} trials", label, trial);
+        future.complete(ImmutableList.of());
+        return;
+      }
+      logger.error("{}: trial number: {}", label, trial);
+      try {
+        timer.schedule(() -> queue.add(this), backoffMs << (trial - 1), TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        future.complete(ImmutableList.of());
+      }
+    }
+  }
+
+  /**
+   * stop sending. futures not done yet are cancelled.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    sender.interrupt();
+    timer.shutdownNow();
+    queue.clear();
+    for (Task<?, ?> task : pending) task.future.cancel(false);
+  }
+}
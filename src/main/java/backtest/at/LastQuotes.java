@@ -6,13 +6,15 @@ import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public class LastQuotes {
   private static final Logger logger = LoggerFactory.getLogger(Quote.class);
@@ -35,89 +37,70 @@ public class LastQuotes {
   private Optional<Quote> getLastQuoteBefore(String ticker, LocalDate date, LocalTime time) {
     LocalDateTime from = LocalDateTime.of(date, LocalTime.of(9,30));
     LocalDateTime to = LocalDateTime.of(date, time);
-    String sql =
-        String.format(
-            "select strftime('%%Y-%%m-%%dT%%H:%%M:%%S', time,'unixepoch') as time, ask_price, ask_size, bid_price, bid_size from quotes where ticker='%s' and time>=strftime('%%s','%s') and time<strftime('%%s','%s') order by time desc limit 1",
-            ticker,
-            from,
-            to);
-    try (ResultSet resultSet = sqlite.get(sql)) {
-      if (resultSet.next()) {
-        Quote quote = new Quote();
-        quote.ticker = ticker;
-        quote.time = LocalDateTime.parse(resultSet.getString("time"));
-        quote.askPrice = resultSet.getDouble("ask_price");
-        quote.bidPrice = resultSet.getDouble("bid_price");
-        quote.askSize = resultSet.getLong("ask_size");
-        quote.bidSize = resultSet.getLong("bid_size");
-        return Optional.of(quote);
-      } else {
-//        logger.info("result does not exist in sqlite. sql: {}", sql);
-      }
-    } catch (SQLException e) {
-      logger.error("err in Trade::get: {}", e.getMessage());
-    }
-    return Optional.empty();
+    return sqlite.queryFirst(
+        "select time, ask_price, ask_size, bid_price, bid_size from quotes where ticker=? and time>=? and time<? order by time desc limit 1",
+        rs -> {
+          Quote quote = new Quote();
+          quote.ticker = ticker;
+          quote.time = SQLite.dateTime(rs.getLong(1));
+          quote.askPrice = rs.getDouble(2);
+          quote.askSize = rs.getLong(3);
+          quote.bidPrice = rs.getDouble(4);
+          quote.bidSize = rs.getLong(5);
+          return quote;
+        },
+        ticker,
+        SQLite.seconds(from),
+        SQLite.seconds(to));
   }
 
-  private List<Quote> fetchFromActiveTick(String ticker, LocalDateTime from, LocalDateTime to) {
-    final int maxRetry = 3;
-    int i = 0;
-    boolean success;
-    int deadlineMs = 3000; // in milliseconds
-    logger.info("fetch quotes of {} from {} to {}", ticker, from, to);
-    do {
-      TickHistory tickHistory = new TickHistory(activeTick, ticker, from, to);
-      success = tickHistory.fetchQuote(deadlineMs * (i+1));
-      if (i>0) logger.error("trial number: {}", i);
-      if (success && !tickHistory.getQuote().isEmpty()) {
-        return tickHistory.getQuote();
-      }
-      i++;
-    } while (i < maxRetry);
-    return ImmutableList.of();
+  public Optional<Quote> getOrFetchLastQuoteBefore(String ticker, LocalDateTime time) {
+    return Optional.ofNullable(getOrFetchLastQuotesBefore(ImmutableList.of(ticker), time).get(ticker));
   }
 
-  public Optional<Quote> getOrFetchLastQuoteBefore(String ticker, LocalDateTime time) {
-    Optional<Quote> optQuote = getLastQuoteBefore(ticker, time.toLocalDate(), time.toLocalTime());
-    if (optQuote.isPresent()) {
-      return optQuote;
-    } else if (!ranges.contains(ticker, time)) {
-      LocalDateTime from = time.minusMinutes(5);
-      ranges.insert(ticker, from, time);
-      List<Quote> quotes = fetchFromActiveTick(ticker, from, time);
-      if (quotes.isEmpty()) {
-        logger.error("fetched {} at {} but result is an empty list", ticker, time);
-        return Optional.empty();
-      }
-      StringBuilder strBuilder = new StringBuilder("insert or ignore into quotes values ");
-      Quote ret = null;
-      int i = 0;
-      for (Quote quote : Lists.reverse(quotes)) {
-        if (i == 0) ret = quote;
-        if (i != 0) strBuilder.append(',');
-        String values =
-            String.format(
-                "('%s',strftime('%%s','%s'),%f,%d,%f,%d)",
-                quote.ticker,
-                quote.time,
-                quote.askPrice,
-                quote.askSize,
-                quote.bidPrice,
-                quote.bidSize);
-        strBuilder.append(values);
-        i++;
-      }
-      sqlite.executeUpdate(strBuilder.toString());
-      if (ret == null) {
-        logger.error("fetched {} at {}. but requested time is not found in result.", ticker, time);
-        return Optional.empty();
+  /**
+   * getOrFetchLastQuoteBefore of many tickers. quotes of tickers that are neither in sqlite
+   * nor in ranges are fetched from 5 minutes before time with several requests in flight.
+   *
+   * @return last quotes before time by ticker. tickers without one are left out.
+   */
+  public Map<String, Quote> getOrFetchLastQuotesBefore(List<String> tickers, LocalDateTime time) {
+    Map<String, Quote> ret = new HashMap<>();
+    Map<String, CompletableFuture<List<Quote>>> fetches = new LinkedHashMap<>();
+    LocalDateTime from = time.minusMinutes(5);
+    for (String ticker : tickers) {
+      Optional<Quote> optQuote = getLastQuoteBefore(ticker, time.toLocalDate(), time.toLocalTime());
+      if (optQuote.isPresent()) {
+        ret.put(ticker, optQuote.get());
+      } else if (!ranges.contains(ticker, time)) {
+        logger.info("fetch quotes of {} from {} to {}", ticker, from, time);
+        fetches.put(ticker, activeTick.getHistoryFetcher().quotes(ticker, from, time));
       } else {
-        return Optional.of(ret);
+        logger.error("{} at {} is in available range but no data in db", ticker, time);
+      }
+    }
+    if (fetches.isEmpty()) return ret;
+    // wait for all fetches before the write transaction takes the db lock
+    Map<String, List<Quote>> fetched = new LinkedHashMap<>();
+    for (Map.Entry<String, CompletableFuture<List<Quote>>> fetch : fetches.entrySet()) {
+      fetched.put(fetch.getKey(), fetch.getValue().join());
+    }
+    try (SQLite.Batch batch = sqlite.batch("insert or ignore into quotes values (?,?,?,?,?,?)")) {
+      for (Map.Entry<String, List<Quote>> fetch : fetched.entrySet()) {
+        String ticker = fetch.getKey();
+        List<Quote> quotes = fetch.getValue();
+        ranges.insert(batch, ticker, from, time);
+        if (quotes.isEmpty()) {
+          logger.error("fetched {} at {} but result is an empty list", ticker, time);
+          continue;
+        }
+        ret.put(ticker, quotes.get(quotes.size() - 1));
+        for (Quote quote : Lists.reverse(quotes)) {
+          batch.add(quote.ticker, SQLite.seconds(quote.time), quote.askPrice, quote.askSize,
+              quote.bidPrice, quote.bidSize);
+        }
       }
-    } else {
-      logger.error("{} at {} is in available range but no data in db", ticker, time);
-      return Optional.empty();
     }
+    return ret;
   }
 }
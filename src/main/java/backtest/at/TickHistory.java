@@ -10,9 +10,7 @@ import org.slf4j.LoggerFactory;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static at.shared.ATServerAPIDefines.ATTickHistoryRecordType.TickHistoryRecordQuote;
 import static at.shared.ATServerAPIDefines.ATTickHistoryRecordType.TickHistoryRecordTrade;
@@ -20,23 +18,26 @@ import static at.shared.ATServerAPIDefines.ATTickHistoryResponseType.*;
 import static backtest.at.ATUtils.systemTime;
 import static backtest.at.ATUtils.systemTimeToDateTime;
 
-class TickHistory {
+/**
+ * one tick history request of trades or quotes, sent by HistoryFetcher.
+ */
+class TickHistory implements HistoryFetcher.Request {
   private static final Logger logger = LoggerFactory.getLogger(TickHistory.class);
   private final ActiveTick at;
   private final String ticker;
   private final LocalDateTime from, to;
-  private CountDownLatch latch;
-  private List<Trade> trades;
-  private List<Quote> quotes;
-  private boolean success;
-  private AtomicBoolean done;
+  private final boolean isTrade;
+  private final List<Trade> trades = new ArrayList<>();
+  private final List<Quote> quotes = new ArrayList<>();
+  private volatile Consumer<HistoryFetcher.Response> done;
 
-  public TickHistory(ActiveTick at, String ticker, LocalDateTime from, LocalDateTime to) {
+  TickHistory(ActiveTick at, String ticker, LocalDateTime from, LocalDateTime to,
+              boolean isTrade) {
     this.at = at;
     this.ticker = ticker;
     this.from = from;
     this.to = to;
-    done = new AtomicBoolean();
+    this.isTrade = isTrade;
   }
 
   private static void logHistoryResponseType(ATServerAPIDefines.ATTickHistoryResponseType type) {
@@ -62,9 +63,13 @@ class TickHistory {
         long id,
         ATServerAPIDefines.ATTickHistoryResponseType resType,
         TickHistoryDbResponseCollection res) {
+      HistoryFetcher.Response response = HistoryFetcher.Response.FAILED;
       try {
         if (resType.m_responseType != TickHistoryResponseSuccess) {
           logHistoryResponseType(resType);
+          if (resType.m_responseType == TickHistoryResponseMaxLimitReached) {
+            response = HistoryFetcher.Response.MAX_LIMIT;
+          }
           return;
         }
         int size = res.GetRecords().size();
@@ -98,13 +103,9 @@ class TickHistory {
             logger.error("{}: neither trade nor quote", ticker);
           }
         }
-        success = true;
-        if (done.get()) {
-          logger.error("get tick history of {} from {} to {} after done", ticker, from, to);
-        }
+        response = HistoryFetcher.Response.SUCCESS;
       } finally {
-        done.set(true);
-        latch.countDown();
+        done.accept(response);
       }
     }
   }
@@ -112,49 +113,31 @@ class TickHistory {
   private class TimeoutCallback extends ATCallback implements ATCallback.ATRequestTimeoutCallback {
     @Override
     public void process(long rid) {
-      logger.error("tick history request time out");
-      done.set(true);
-      latch.countDown();
+      logger.error("tick history request of {} from {} to {} time out", ticker, from, to);
+      done.accept(HistoryFetcher.Response.FAILED);
     }
   }
 
-  private boolean get(boolean isTrade, boolean isQuote, int deadline_ms) {
+  @Override
+  public void send(int deadlineMs, Consumer<HistoryFetcher.Response> done) {
+    this.done = done;
     ATServerAPIDefines.SYSTEMTIME beginTime = systemTime(from);
     ATServerAPIDefines.SYSTEMTIME endTime = systemTime(to);
-    latch = new CountDownLatch(1);
-    trades = new ArrayList<>();
-    quotes = new ArrayList<>();
-    success = false;
     long reqId =
         at.serverAPI.ATCreateTickHistoryDbRequest(
             at.session,
             Helpers.StringToSymbol(ticker),
             isTrade,
-            isQuote,
+            !isTrade,
             beginTime,
             endTime,
             new TickHistoryCallback());
-    at.serverAPI.ATSendRequest(
+    boolean sent = at.serverAPI.ATSendRequest(
         at.session,
         reqId,
-        deadline_ms, /* 2.9 seconds */
+        deadlineMs,
         new TimeoutCallback());
-    try {
-      latch.await(deadline_ms + 100, TimeUnit.MILLISECONDS);
-    } catch (InterruptedException e) {
-      e.printStackTrace();
-    } finally {
-      done.set(true);
-    }
-    return success;
-  }
-
-  boolean fetchTrade(int deadline_ms) {
-    return get(true, false, deadline_ms);
-  }
-
-  boolean fetchQuote(int deadline_ms) {
-    return get(false, true, deadline_ms);
+    if (!sent) done.accept(HistoryFetcher.Response.FAILED);
   }
 
   List<Trade> getTrade() {
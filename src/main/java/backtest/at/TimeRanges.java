@@ -52,15 +52,14 @@ class TimeRanges {
     map.put(ticker, set);
   }
 
-  void insert(String ticker, LocalDateTime from, LocalDateTime to) {
-    insertToMap(ticker, from, to);
-    String sql =
-        String.format(
-            "insert into ranges values ('%s',strftime('%%s','%s'),strftime('%%s','%s'))",
-            ticker,
-            from,
-            to);
-    sqlite.executeUpdate(sql);
+  /**
+   * write the range of ticker in the transaction of batch, e.g. with the ticks fetched for it.
+   * the range is covered only once batch commits, so rolled back ticks are fetched again.
+   */
+  void insert(SQLite.Batch batch, String ticker, LocalDateTime from, LocalDateTime to) {
+    batch.addTo("insert into ranges values (?, ?, ?)", ticker, SQLite.seconds(from),
+        SQLite.seconds(to));
+    batch.onCommit(() -> insertToMap(ticker, from, to));
   }
 
   void clear() {
@@ -7,13 +7,15 @@ import com.google.common.collect.ImmutableList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public class Trade {
   private static final Logger logger = LoggerFactory.getLogger(Trade.class);
@@ -37,135 +39,101 @@ public class Trade {
     sqlite.executeUpdate(sqls);
   }
 
+  // reads time, price and size
+  private static SQLite.RowMapper<Trade> mapper(String ticker) {
+    return rs -> {
+      Trade trade = new Trade();
+      trade.time = SQLite.dateTime(rs.getLong(1));
+      trade.ticker = ticker;
+      trade.price = rs.getDouble(2);
+      trade.size = rs.getLong(3);
+      return trade;
+    };
+  }
+
   public static Optional<Trade> get(SQLite sqlite, String ticker, LocalDateTime time) {
-    String sql =
-        String.format(
-            "select price as price, size as size from trades where ticker='%s' and time=strftime('%%s','%s')",
-            ticker,
-            time);
-    try (ResultSet resultSet = sqlite.get(sql)) {
-      if (resultSet.next()) {
-        Trade trade = new Trade();
-        trade.time = time;
-        trade.ticker = ticker;
-        trade.price = resultSet.getDouble("price");
-        trade.size = resultSet.getInt("size");
-        return Optional.of(trade);
-      } else {
-//        logger.info("result does not exist in sqlite. sql: {}", sql);
-      }
-    } catch (SQLException e) {
-      logger.error("err in Trade::get: {}", e.getMessage());
-    }
-    return Optional.empty();
+    return sqlite.queryFirst(
+        "select time, price, size from trades where ticker=? and time=?",
+        mapper(ticker), ticker, SQLite.seconds(time));
   }
 
   static Optional<Trade> firstTradeAfter(SQLite sqlite, String ticker, LocalDate date, LocalTime from) {
-    String sql =
-        String.format(
-            "select strftime('%%Y-%%m-%%dT%%H:%%M:%%S', time,'unixepoch') as time, price as price, size as size from trades where ticker='%s' and time>=strftime('%%s','%s') and time<strftime('%%s','%s') order by time asc limit 1",
-            ticker,
-            LocalDateTime.of(date, from),
-            LocalDateTime.of(date, LocalTime.of(15,50)));
-    try (ResultSet resultSet = sqlite.get(sql)) {
-      if (resultSet.next()) {
-        Trade trade = new Trade();
-        trade.time = LocalDateTime.parse(resultSet.getString("time"));
-        trade.ticker = ticker;
-        trade.price = resultSet.getDouble("price");
-        trade.size = resultSet.getInt("size");
-        return Optional.of(trade);
-      } else {
-        logger.info("result does not exist in sqlite. sql: {}", sql);
-      }
-    } catch (SQLException e) {
-      logger.error("err in Trade::get: {}", e.getMessage());
+    Optional<Trade> ret = sqlite.queryFirst(
+        "select time, price, size from trades where ticker=? and time>=? and time<? order by time asc limit 1",
+        mapper(ticker),
+        ticker,
+        SQLite.seconds(LocalDateTime.of(date, from)),
+        SQLite.seconds(LocalDateTime.of(date, LocalTime.of(15,50))));
+    if (!ret.isPresent()) {
+      logger.info("no trade of {} on {} from {} in sqlite", ticker, date, from);
     }
-    return Optional.empty();
+    return ret;
   }
 
   static Optional<Trade> firstTradeBefore(SQLite sqlite, String ticker, LocalDate date, LocalTime to) {
-    String sql =
-        String.format(
-            "select strftime('%%Y-%%m-%%dT%%H:%%M:%%S', time,'unixepoch') as time, price as price, size as size from trades where ticker='%s' and time>=strftime('%%s','%s') and time<=strftime('%%s','%s') order by time asc limit 1",
-            ticker,
-            LocalDateTime.of(date, LocalTime.of(9,30)),
-            LocalDateTime.of(date, to));
-    try (ResultSet resultSet = sqlite.get(sql)) {
-      if (resultSet.next()) {
-        Trade trade = new Trade();
-        trade.time = LocalDateTime.parse(resultSet.getString("time"));
-        trade.ticker = ticker;
-        trade.price = resultSet.getDouble("price");
-        trade.size = resultSet.getInt("size");
-        return Optional.of(trade);
-      } else {
-//        logger.info("result does not exist in sqlite. sql: {}", sql);
-      }
-    } catch (SQLException e) {
-      logger.error("err in Trade::get: {}", e.getMessage());
-    }
-    return Optional.empty();
-  }
-
-  private static List<Trade> fetchFromActiveTick(
-      ActiveTick at, String ticker, LocalDateTime from, LocalDateTime to) {
-    final int maxRetry = 3;
-    int i = 0;
-    boolean success;
-    int deadlineMs = 3000; // in milliseconds
-    do {
-      TickHistory tickHistory = new TickHistory(at, ticker, from, to);
-      success = tickHistory.fetchTrade(deadlineMs * (i+1));
-      if (i>0) logger.error("trial number: {}", i);
-      if (success && !tickHistory.getTrade().isEmpty()) {
-        return tickHistory.getTrade();
-      }
-      i++;
-    } while (i < maxRetry);
-    return ImmutableList.of();
+    return sqlite.queryFirst(
+        "select time, price, size from trades where ticker=? and time>=? and time<=? order by time asc limit 1",
+        mapper(ticker),
+        ticker,
+        SQLite.seconds(LocalDateTime.of(date, LocalTime.of(9,30))),
+        SQLite.seconds(LocalDateTime.of(date, to)));
   }
 
   public static Optional<Trade> getOrFetch(
       SQLite sqlite, ActiveTick at, String ticker, LocalDateTime time, TimeRanges ranges) {
-    Optional<Trade> optTrade = get(sqlite, ticker, time);
-    if (optTrade.isPresent()) {
-      return optTrade;
-    } else if (!ranges.contains(ticker, time)) {
-      LocalDateTime to = time.plusMinutes(5);
-      ranges.insert(ticker, time, to);
-      List<Trade> trades = fetchFromActiveTick(at, ticker, time, to);
-      if (trades.isEmpty()) {
-        logger.error("fetched {} at {} but result is an empty list", ticker, time);
-        return Optional.empty();
-      }
-      StringBuilder strBuilder = new StringBuilder("insert or ignore into trades values ");
-      Trade ret = null;
-      int i = 0;
-      for (Trade trade : trades) {
-        if (trade.time.isEqual(time)) ret = trade;
-        if (i != 0) strBuilder.append(',');
-        String values =
-            String.format(
-                "('%s',strftime('%%s','%s'),%f,%d)",
-                trade.ticker,
-                trade.time,
-                trade.price,
-                trade.size);
-        strBuilder.append(values);
-        i++;
-      }
-      sqlite.executeUpdate(strBuilder.toString());
-      if (ret == null) {
-        logger.error("fetched {} at {}. but requested time is not found in result.", ticker, time);
-        return Optional.empty();
+    return Optional.ofNullable(
+        getOrFetch(sqlite, at, ImmutableList.of(ticker), time, ranges).get(ticker));
+  }
+
+  /**
+   * getOrFetch of many tickers. trades of tickers that are neither in sqlite nor in ranges
+   * are fetched from time to 5 minutes later with several requests in flight.
+   *
+   * @return trades at time by ticker. tickers without one are left out.
+   */
+  public static Map<String, Trade> getOrFetch(
+      SQLite sqlite, ActiveTick at, List<String> tickers, LocalDateTime time, TimeRanges ranges) {
+    Map<String, Trade> ret = new HashMap<>();
+    Map<String, CompletableFuture<List<Trade>>> fetches = new LinkedHashMap<>();
+    LocalDateTime to = time.plusMinutes(5);
+    for (String ticker : tickers) {
+      Optional<Trade> optTrade = get(sqlite, ticker, time);
+      if (optTrade.isPresent()) {
+        ret.put(ticker, optTrade.get());
+      } else if (!ranges.contains(ticker, time)) {
+        fetches.put(ticker, at.getHistoryFetcher().trades(ticker, time, to));
       } else {
-        return Optional.of(ret);
+        logger.error("{} at {} is in available range but no data in db", ticker, time);
+      }
+    }
+    if (fetches.isEmpty()) return ret;
+    // wait for all fetches before the write transaction takes the db lock
+    Map<String, List<Trade>> fetched = new LinkedHashMap<>();
+    for (Map.Entry<String, CompletableFuture<List<Trade>>> fetch : fetches.entrySet()) {
+      fetched.put(fetch.getKey(), fetch.getValue().join());
+    }
+    try (SQLite.Batch batch = sqlite.batch("insert or ignore into trades values (?,?,?,?)")) {
+      for (Map.Entry<String, List<Trade>> fetch : fetched.entrySet()) {
+        String ticker = fetch.getKey();
+        List<Trade> trades = fetch.getValue();
+        ranges.insert(batch, ticker, time, to);
+        if (trades.isEmpty()) {
+          logger.error("fetched {} at {} but result is an empty list", ticker, time);
+          continue;
+        }
+        Trade found = null;
+        for (Trade trade : trades) {
+          if (trade.time.isEqual(time)) found = trade;
+          batch.add(trade.ticker, SQLite.seconds(trade.time), trade.price, trade.size);
+        }
+        if (found == null) {
+          logger.error("fetched {} at {}. but requested time is not found in result.", ticker, time);
+        } else {
+          ret.put(ticker, found);
+        }
       }
-    } else {
-      logger.error("{} at {} is in available range but no data in db", ticker, time);
-      return Optional.empty();
     }
+    return ret;
   }
 
   public static void main(String[] args) {
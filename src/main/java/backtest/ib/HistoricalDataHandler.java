@@ -1,40 +1,31 @@
 package backtest.ib;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 
+import backtest.io.TickJournal;
 import com.ib.controller.ApiController.IHistoricalDataHandler;
 import com.ib.controller.Bar;
 
 public class HistoricalDataHandler implements IHistoricalDataHandler {
-  
+  private static final ZoneId easternTime = ZoneId.of("America/New_York");
+
   String ticker;
-  
-  public HistoricalDataHandler(String ticker) {
+  private final TickJournal journal;
+
+  /**
+   * @param journal bars are appended to it.
+   */
+  public HistoricalDataHandler(String ticker, TickJournal journal) {
     this.ticker = ticker;
+    this.journal = journal;
   }
 
   @Override
   public void historicalData(Bar bar, boolean hasGaps) {
-    String output = ticker + " " + bar.toString() + " " + bar.volume() + "\n";
-    String fileString = "data/"+ticker+".txt";
-    File file = new File(fileString);
-    if (!file.exists())
-      try {
-        file.createNewFile();
-      } catch (IOException e1) {
-        // TODO Auto-generated catch block
-        e1.printStackTrace();
-      }
-    try {
-      Files.write(Paths.get(fileString), output.getBytes(), StandardOpenOption.APPEND);
-    } catch (IOException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    }
+    LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochSecond(bar.time()), easternTime);
+    journal.bar(ticker, time, bar.open(), bar.high(), bar.low(), bar.close(), bar.volume());
     System.out.println("pulled " + ticker + " " + bar.toString());
   }
 
@@ -1,5 +1,6 @@
 package backtest.ib;
 
+import backtest.io.TickJournal;
 import backtest.utils.RateLimiter;
 import backtest.utils.Util;
 import com.ib.client.Contract;
@@ -15,8 +16,11 @@ import com.ib.controller.ApiController.IOrderHandler;
 import com.ib.controller.Position;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.ZoneId;
@@ -32,9 +36,12 @@ import java.util.concurrent.TimeUnit;
 
 public class IBController implements ApiController.IConnectionHandler {
   private static org.slf4j.Logger logger = LoggerFactory.getLogger(IBController.class);
+  private static final String barsPath = "data/ib-bars.journal";
   private CountDownLatch connLatch;
   private boolean isConnected;
   private ApiController apiController;
+  // historical bars of all tickers, opened on first request
+  private TickJournal barJournal;
 
   public IBController() {
     IBLogger inLogger = new IBLogger();
@@ -64,6 +71,28 @@ public class IBController implements ApiController.IConnectionHandler {
   public void disconnect() {
     apiController.disconnect();
     logger.info("IBController disconnected");
+    closeBarJournal();
+  }
+
+  private synchronized TickJournal getBarJournal() {
+    if (barJournal == null) {
+      try {
+        barJournal = new TickJournal(Paths.get(barsPath));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return barJournal;
+  }
+
+  private synchronized void closeBarJournal() {
+    if (barJournal == null) return;
+    try {
+      barJournal.close();
+    } catch (IOException e) {
+      logger.error("error while closing {}", barsPath, e);
+    }
+    barJournal = null;
   }
 
   public void reqAccountUpdates(IAccountHandler accountHandler) {
@@ -92,7 +121,7 @@ public class IBController implements ApiController.IConnectionHandler {
         size,
         whatToShow,
         true,
-        new HistoricalDataHandler(ticker));
+        new HistoricalDataHandler(ticker, getBarJournal()));
   }
 
   public void clearPositions(Map<Integer, Position> positions) {
@@ -0,0 +1,419 @@
+package backtest.io;
+
+import backtest.struct.TypedTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * streaming csv parser. bytes are read from a channel into one buffer and every row is
+ * tokenized in place: a field is only a range of the buffer until it is asked for as a
+ * number, a date or a string, so numbers and dates never become strings. memory stays
+ * constant however large the file is, as long as one row fits into the buffer (the buffer
+ * grows otherwise).
+ * escaping is the same as CSVWriter and CSVReader: a field starting with a double quote is
+ * quoted, ends at the next single double quote and has every double quote inside doubled.
+ * a quoted field may contain commas and line breaks.
+ */
+public class CSVParser {
+  private static final int defaultBufferSize = 1 << 16;
+  // exact powers of ten as doubles
+  private static final double[] pow10 = new double[23];
+
+  static {
+    pow10[0] = 1;
+    for (int i = 1; i < pow10.length; i++) pow10[i] = pow10[i - 1] * 10;
+  }
+
+  private ByteBuffer buffer;
+  private final Fields fields = new Fields();
+
+  /**
+   * receives rows of a file. Fields passed in are only valid during the call.
+   */
+  public interface RowHandler {
+    /**
+     * called once with the first row.
+     */
+    default void header(Fields header) {
+    }
+
+    /**
+     * @return false to stop parsing.
+     */
+    boolean row(Fields row);
+  }
+
+  public CSVParser() {
+    this(defaultBufferSize);
+  }
+
+  public CSVParser(int bufferSize) {
+    buffer = ByteBuffer.allocate(bufferSize);
+  }
+
+  /**
+   * view of fields of the current row.
+   */
+  public final class Fields {
+    private int size;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    // whether field is quoted and so needs unescaping
+    private boolean[] quoted = new boolean[16];
+    private long line;
+
+    private void add(int start, int end, boolean q) {
+      if (size == starts.length) {
+        starts = Arrays.copyOf(starts, size * 2);
+        ends = Arrays.copyOf(ends, size * 2);
+        quoted = Arrays.copyOf(quoted, size * 2);
+      }
+      starts[size] = start;
+      ends[size] = end;
+      quoted[size] = q;
+      size++;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    /**
+     * @return 1-based line number of the row, for error messages.
+     */
+    public long getLine() {
+      return line;
+    }
+
+    public boolean isEmpty(int i) {
+      return ends[i] == starts[i];
+    }
+
+    public String getString(int i) {
+      byte[] arr = buffer.array();
+      int start = starts[i], end = ends[i];
+      if (!quoted[i]) return new String(arr, start, end - start, StandardCharsets.UTF_8);
+      // drop the quotes and undouble quotes inside
+      byte[] out = new byte[end - start];
+      int n = 0;
+      for (int k = start + 1; k < end - 1; k++) {
+        out[n++] = arr[k];
+        if (arr[k] == '"') k++;
+      }
+      return new String(out, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * plain decimals are parsed from the bytes. anything else, e.g. exponents or more than
+     * 18 digits, falls back to Double.parseDouble.
+     *
+     * @throws NumberFormatException if field is not a number.
+     */
+    public double getDouble(int i) {
+      byte[] arr = buffer.array();
+      int k = starts[i], end = ends[i];
+      if (quoted[i]) return Double.parseDouble(getString(i));
+      boolean negative = k < end && arr[k] == '-';
+      if (negative || (k < end && arr[k] == '+')) k++;
+      long mantissa = 0;
+      int digits = 0, scale = 0;
+      boolean dot = false, seen = false;
+      for (; k < end; k++) {
+        byte b = arr[k];
+        if (b >= '0' && b <= '9') {
+          seen = true;
+          if (digits < 18) {
+            mantissa = mantissa * 10 + (b - '0');
+            if (mantissa > 0) digits++;
+            if (dot) scale++;
+          } else {
+            return slowDouble(i);
+          }
+        } else if (b == '.' && !dot) {
+          dot = true;
+        } else {
+          return slowDouble(i);
+        }
+      }
+      if (!seen) return slowDouble(i);
+      // both are exact so the division is correctly rounded
+      if (scale >= pow10.length || mantissa >= (1L << 53)) return slowDouble(i);
+      double v = mantissa / pow10[scale];
+      return negative ? -v : v;
+    }
+
+    private double slowDouble(int i) {
+      return Double.parseDouble(getString(i));
+    }
+
+    /**
+     * @throws NumberFormatException if field is not an integer that fits into long.
+     */
+    public long getLong(int i) {
+      byte[] arr = buffer.array();
+      int k = starts[i], end = ends[i];
+      if (quoted[i]) return Long.parseLong(getString(i));
+      boolean negative = k < end && arr[k] == '-';
+      if (negative || (k < end && arr[k] == '+')) k++;
+      if (k == end || end - k > 18) return Long.parseLong(getString(i));
+      long v = 0;
+      for (; k < end; k++) {
+        byte b = arr[k];
+        if (b < '0' || b > '9') throw new NumberFormatException("not a long: " + getString(i));
+        v = v * 10 + (b - '0');
+      }
+      return negative ? -v : v;
+    }
+
+    /**
+     * @return epoch day of an ISO date yyyy-mm-dd.
+     * @throws java.time.format.DateTimeParseException if field is not an ISO date.
+     */
+    public int getEpochDay(int i) {
+      byte[] arr = buffer.array();
+      int k = starts[i];
+      if (quoted[i] || ends[i] - k != 10 || arr[k + 4] != '-' || arr[k + 7] != '-') {
+        return (int) LocalDate.parse(getString(i)).toEpochDay();
+      }
+      int y = digits(arr, k, 4), m = digits(arr, k + 5, 2), d = digits(arr, k + 8, 2);
+      if (y < 0 || m < 1 || m > 12 || d < 1 || (d > 28 && d > lengthOfMonth(y, m))) {
+        // let LocalDate validate and report anything unusual
+        return (int) LocalDate.parse(getString(i)).toEpochDay();
+      }
+      return epochDay(y, m, d);
+    }
+
+    public LocalDate getDate(int i) {
+      return LocalDate.ofEpochDay(getEpochDay(i));
+    }
+
+    /**
+     * @return index of field whose string equals name or -1. used on header rows.
+     */
+    public int indexOf(String name) {
+      for (int i = 0; i < size; i++) {
+        if (getString(i).equals(name)) return i;
+      }
+      return -1;
+    }
+
+    public List<String> toList() {
+      List<String> ret = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) ret.add(getString(i));
+      return ret;
+    }
+  }
+
+  /**
+   * @return -1 if bytes are not all digits.
+   */
+  private static int digits(byte[] arr, int from, int n) {
+    int v = 0;
+    for (int k = from; k < from + n; k++) {
+      if (arr[k] < '0' || arr[k] > '9') return -1;
+      v = v * 10 + (arr[k] - '0');
+    }
+    return v;
+  }
+
+  private static int lengthOfMonth(int y, int m) {
+    if (m == 2) return (y & 3) == 0 && (y % 100 != 0 || y % 400 == 0) ? 29 : 28;
+    return m == 4 || m == 6 || m == 9 || m == 11 ? 30 : 31;
+  }
+
+  /**
+   * same as LocalDate.toEpochDay for a valid date.
+   */
+  private static int epochDay(int y, int m, int d) {
+    long total = 365L * y;
+    if (y >= 0) total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+    else total -= y / -4 - y / -100 + y / -400;
+    total += (367 * m - 362) / 12;
+    total += d - 1;
+    if (m > 2) {
+      total--;
+      boolean leap = (y & 3) == 0 && (y % 100 != 0 || y % 400 == 0);
+      if (!leap) total--;
+    }
+    // days from year 0 to 1970
+    return (int) (total - 719528);
+  }
+
+  public void parse(String path, RowHandler handler) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+      parse(channel, handler);
+    }
+  }
+
+  /**
+   * parse every row of channel. the first row is passed to handler.header and the rest to
+   * handler.row. empty lines are skipped. channel is not closed.
+   */
+  public void parse(ReadableByteChannel channel, RowHandler handler) throws IOException {
+    buffer.clear();
+    // buffer holds unparsed bytes in [0, limit)
+    buffer.limit(0);
+    boolean header = true, eof = false;
+    long line = 0;
+    int pos = 0;
+    while (true) {
+      int rowEnd = tokenize(pos, eof);
+      if (rowEnd < 0) {
+        if (eof) return;
+        // partial row. move it to the front and read more
+        eof = fill(channel, pos);
+        pos = 0;
+        continue;
+      }
+      line++;
+      int next = rowEnd < buffer.limit() ? rowEnd + 1 : rowEnd;
+      if (fields.size > 1 || !fields.isEmpty(0)) {
+        fields.line = line;
+        if (header) {
+          header = false;
+          handler.header(fields);
+        } else if (!handler.row(fields)) {
+          return;
+        }
+      }
+      pos = next;
+    }
+  }
+
+  /**
+   * append every row of channel to table, parsing each cell once by the type of its column.
+   * columns of table are matched to the header by name and other columns of the file are
+   * ignored.
+   *
+   * @throws IllegalArgumentException if a column of table is not in the header.
+   * @throws NumberFormatException    or DateTimeParseException if a cell doesn't match the
+   *                                  type of its column.
+   */
+  public void readTable(ReadableByteChannel channel, TypedTable table) throws IOException {
+    int numCol = table.getNumCol();
+    int[] fileCols = new int[numCol];
+    TypedTable.Type[] types = new TypedTable.Type[numCol];
+    parse(channel, new RowHandler() {
+      @Override
+      public void header(Fields header) {
+        List<String> cols = table.getCols();
+        for (int c = 0; c < numCol; c++) {
+          fileCols[c] = header.indexOf(cols.get(c));
+          if (fileCols[c] < 0) throw new IllegalArgumentException("no column " + cols.get(c));
+          types[c] = table.getType(c);
+        }
+      }
+
+      @Override
+      public boolean row(Fields row) {
+        if (row.size() <= max(fileCols)) {
+          throw new IllegalArgumentException("too few fields in line " + row.getLine());
+        }
+        int r = table.appendRow();
+        for (int c = 0; c < numCol; c++) {
+          int f = fileCols[c];
+          switch (types[c]) {
+            case DATE:
+              table.setEpochDay(r, c, row.getEpochDay(f));
+              break;
+            case DOUBLE:
+              table.setDouble(r, c, row.getDouble(f));
+              break;
+            case LONG:
+              table.setLong(r, c, row.getLong(f));
+              break;
+            default:
+              table.setString(r, c, row.getString(f));
+          }
+        }
+        return true;
+      }
+    });
+  }
+
+  private static int max(int[] arr) {
+    int ret = -1;
+    for (int v : arr) ret = Math.max(ret, v);
+    return ret;
+  }
+
+  /**
+   * compact bytes from pos to the front of buffer and read from channel, growing buffer if
+   * a row doesn't fit.
+   *
+   * @return whether end of channel is reached.
+   */
+  private boolean fill(ReadableByteChannel channel, int pos) throws IOException {
+    int remaining = buffer.limit() - pos;
+    if (pos == 0 && remaining == buffer.capacity()) {
+      ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+      bigger.put(buffer.array(), 0, remaining);
+      buffer = bigger;
+    } else {
+      System.arraycopy(buffer.array(), pos, buffer.array(), 0, remaining);
+      buffer.clear();
+      buffer.position(remaining);
+    }
+    buffer.limit(buffer.capacity());
+    int n = 0;
+    while (n == 0) n = channel.read(buffer);
+    buffer.limit(buffer.position());
+    return n < 0;
+  }
+
+  /**
+   * split the row starting at pos into fields.
+   *
+   * @param eof whether bytes after limit will never come, so the last row may lack a line
+   *            break.
+   * @return index of line break ending the row, limit if the last row ends at eof, or -1 if
+   * the row is not complete in buffer.
+   */
+  private int tokenize(int pos, boolean eof) {
+    byte[] arr = buffer.array();
+    int limit = buffer.limit();
+    if (pos >= limit) return -1;
+    fields.size = 0;
+    int k = pos;
+    while (true) {
+      int start = k;
+      boolean q = k < limit && arr[k] == '"';
+      if (q) {
+        // find the closing quote, skipping doubled quotes. an unclosed quote runs to eof
+        k++;
+        while (k < limit) {
+          if (arr[k] == '"') {
+            if (k + 1 < limit && arr[k + 1] == '"') {
+              k += 2;
+            } else if (k + 1 >= limit && !eof) {
+              return -1;
+            } else {
+              k++;
+              break;
+            }
+          } else {
+            k++;
+          }
+        }
+        if (k >= limit && !eof) return -1;
+      }
+      while (k < limit && arr[k] != ',' && arr[k] != '\n') k++;
+      if (k >= limit && !eof) return -1;
+      int end = k;
+      if (end > start && (k >= limit || arr[k] == '\n') && arr[end - 1] == '\r') end--;
+      fields.add(start, end, q && end - start >= 2);
+      if (k >= limit || arr[k] == '\n') return k;
+      k++;
+    }
+  }
+}
@@ -1,15 +1,19 @@
 package backtest.io;
 
 import backtest.struct.Table;
+import backtest.struct.TypedTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -46,6 +50,52 @@ public class CSVReader {
     return ret;
   }
 
+  /**
+   * read a csv file from url into a table of the columns and types of schema, retrying like
+   * readTableFromUrl(String).
+   *
+   * @return empty copy of schema if the file can't be read or parsed.
+   */
+  public TypedTable readTableFromUrl(String url, TypedTable schema) {
+    for (int i = 0; i < 3; i++) {
+      TypedTable ret = schema.emptyCopy();
+      try {
+        URLConnection con = new URL(url).openConnection();
+        con.setConnectTimeout(20000);
+        con.setReadTimeout(20000);
+        try (InputStream in = con.getInputStream()) {
+          new CSVParser().readTable(Channels.newChannel(in), ret);
+        }
+        if (!ret.isEmpty()) return ret;
+      } catch (MalformedURLException e) {
+        logger.error("malformed url: {}", url);
+      } catch (FileNotFoundException e) {
+        logger.error("404 error: {}", url);
+      } catch (SocketTimeoutException e) {
+        logger.error("{}: {}", e.getMessage(), url);
+      } catch (IOException e) {
+        logger.error("IO exception {}: {}", e.getMessage(), url);
+      } catch (RuntimeException e) {
+        // malformed content won't get better by retrying
+        logger.error("can't parse {}: {}", url, e.getMessage());
+        break;
+      }
+    }
+    return schema.emptyCopy();
+  }
+
+  /**
+   * @return empty table if file can't be read.
+   */
+  public Table readTableFromFile(String path) {
+    try (Scanner sc = new Scanner(new File(path), "UTF-8")) {
+      return read(sc);
+    } catch (FileNotFoundException e) {
+      logger.error("file not found: {}", path);
+    }
+    return new Table();
+  }
+
   private Table read(Scanner sc) {
     if (!sc.hasNextLine()) {
       logger.info("empty file. no header. no data. will return null");
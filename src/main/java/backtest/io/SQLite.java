@@ -4,12 +4,33 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
+/**
+ * a sqlite connection in wal mode. parameterized sql is prepared once and cached by its text,
+ * so repeated lookups skip parsing and planning. not thread safe, as the connection.
+ */
 public class SQLite implements AutoCloseable {
   private static final Logger logger = LoggerFactory.getLogger(SQLite.class);
+  // rows of a Batch sent to sqlite at once
+  private static final int batchSize = 1000;
   private Connection connection;
   private Statement statement;
+  private final Map<String, PreparedStatement> prepared = new HashMap<>();
+
+  /**
+   * reads a row of a ResultSet.
+   */
+  public interface RowMapper<T> {
+    T map(ResultSet rs) throws SQLException;
+  }
 
   public SQLite(String dbFileName){
     try {
@@ -17,6 +38,11 @@ public class SQLite implements AutoCloseable {
       connection = DriverManager.getConnection("jdbc:sqlite:" + dbFileName);
       statement = connection.createStatement();
       statement.setQueryTimeout(30);  // set timeout to 30 sec.
+      // readers don't block the writer, and a commit doesn't sync the db file
+      statement.execute("pragma journal_mode=WAL");
+      statement.execute("pragma synchronous=NORMAL");
+      // in kib, 64 mib of pages
+      statement.execute("pragma cache_size=-65536");
     } catch(SQLException e) {
       // if the error message is "out of memory",
       // it probably means no database file is found
@@ -24,6 +50,17 @@ public class SQLite implements AutoCloseable {
     }
   }
 
+  /**
+   * @return time in seconds since 1970 as strftime('%s', time) of sqlite.
+   */
+  public static long seconds(LocalDateTime time) {
+    return time.toEpochSecond(ZoneOffset.UTC);
+  }
+
+  public static LocalDateTime dateTime(long seconds) {
+    return LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+  }
+
   public void executeUpdate(String sql) {
     try {
       statement.executeUpdate(sql);
@@ -40,6 +77,202 @@ public class SQLite implements AutoCloseable {
     return statement.executeQuery(sql);
   }
 
+  /**
+   * @return statement of sql with ? parameters, prepared on first use and closed by close.
+   */
+  public PreparedStatement prepare(String sql) throws SQLException {
+    PreparedStatement ret = prepared.get(sql);
+    if (ret == null) {
+      ret = connection.prepareStatement(sql);
+      prepared.put(sql, ret);
+    }
+    return ret;
+  }
+
+  private static void bind(PreparedStatement statement, Object[] params) throws SQLException {
+    for (int i = 0; i < params.length; i++) statement.setObject(i + 1, params[i]);
+  }
+
+  /**
+   * @return first row of query sql with params, empty if there is none or on error.
+   */
+  public <T> Optional<T> queryFirst(String sql, RowMapper<T> mapper, Object... params) {
+    try {
+      PreparedStatement query = prepare(sql);
+      bind(query, params);
+      try (ResultSet rs = query.executeQuery()) {
+        if (rs.next()) return Optional.of(mapper.map(rs));
+      }
+    } catch (SQLException e) {
+      logger.error("error in queryFirst: {}, sql: {}", e.getMessage(), sql);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * @return first column of the first row of query sql with params, missing if there is no
+   * row, the value is null or on error.
+   */
+  public double queryDouble(String sql, double missing, Object... params) {
+    try {
+      PreparedStatement query = prepare(sql);
+      bind(query, params);
+      try (ResultSet rs = query.executeQuery()) {
+        if (rs.next()) {
+          double ret = rs.getDouble(1);
+          return rs.wasNull() ? missing : ret;
+        }
+      }
+    } catch (SQLException e) {
+      logger.error("error in queryDouble: {}, sql: {}", e.getMessage(), sql);
+    }
+    return missing;
+  }
+
+  public long queryLong(String sql, long missing, Object... params) {
+    try {
+      PreparedStatement query = prepare(sql);
+      bind(query, params);
+      try (ResultSet rs = query.executeQuery()) {
+        if (rs.next()) {
+          long ret = rs.getLong(1);
+          return rs.wasNull() ? missing : ret;
+        }
+      }
+    } catch (SQLException e) {
+      logger.error("error in queryLong: {}, sql: {}", e.getMessage(), sql);
+    }
+    return missing;
+  }
+
+  /**
+   * @return writer of rows of sql, e.g. an insert with ? parameters, in one transaction that
+   * close commits. rows of other statements can join the transaction with addTo. inside
+   * beginTransaction, rows are left to commitTransaction.
+   */
+  public Batch batch(String sql) {
+    return new Batch(sql);
+  }
+
+  public class Batch implements AutoCloseable {
+    private final String sql;
+    private PreparedStatement insert;
+    // statements of addTo in order of first use
+    private final Map<String, PreparedStatement> others = new LinkedHashMap<>();
+    private final List<Runnable> onCommit = new ArrayList<>();
+    private boolean ownTransaction;
+    private int size;
+    private boolean failed;
+    private boolean committed;
+
+    private Batch(String sql) {
+      this.sql = sql;
+      try {
+        insert = prepare(sql);
+        ownTransaction = connection.getAutoCommit();
+        if (ownTransaction) connection.setAutoCommit(false);
+      } catch (SQLException e) {
+        fail(e);
+      }
+    }
+
+    private void fail(SQLException e) {
+      logger.error("error in batch: {}, sql: {}", e.getMessage(), sql);
+      failed = true;
+    }
+
+    public void add(Object... params) {
+      if (failed) return;
+      try {
+        bind(insert, params);
+        insert.addBatch();
+        if (++size == batchSize) flush();
+      } catch (SQLException e) {
+        fail(e);
+      }
+    }
+
+    /**
+     * add a row of another statement, e.g. a bookkeeping insert, to the same transaction. its
+     * rows are written after the rows of add.
+     */
+    public void addTo(String sql, Object... params) {
+      if (failed) return;
+      try {
+        PreparedStatement other = others.get(sql);
+        if (other == null) {
+          other = prepare(sql);
+          others.put(sql, other);
+        }
+        bind(other, params);
+        other.addBatch();
+        if (++size == batchSize) flush();
+      } catch (SQLException e) {
+        fail(e);
+      }
+    }
+
+    /**
+     * run action once close committed all rows, or inside beginTransaction wrote them, e.g. to
+     * update a cache of them.
+     */
+    public void onCommit(Runnable action) {
+      onCommit.add(action);
+    }
+
+    private void flush() throws SQLException {
+      if (size > 0) {
+        insert.executeBatch();
+        for (PreparedStatement other : others.values()) other.executeBatch();
+      }
+      size = 0;
+    }
+
+    /**
+     * write rows added since the last flush and commit them, or roll all rows back if any
+     * failed.
+     */
+    @Override
+    public void close() {
+      try {
+        if (!failed) flush();
+      } catch (SQLException e) {
+        fail(e);
+      }
+      if (!ownTransaction) {
+        committed = !failed;
+      } else {
+        try {
+          if (failed) {
+            if (insert != null) insert.clearBatch();
+            for (PreparedStatement other : others.values()) other.clearBatch();
+            connection.rollback();
+          } else {
+            connection.commit();
+            committed = true;
+          }
+        } catch (SQLException e) {
+          logger.error("error in batch commit: {}, sql: {}", e.getMessage(), sql);
+        } finally {
+          try {
+            connection.setAutoCommit(true);
+          } catch (SQLException e) {
+            logger.error("error in batch: {}, sql: {}", e.getMessage(), sql);
+          }
+        }
+      }
+      if (committed) onCommit.forEach(Runnable::run);
+    }
+
+    /**
+     * @return whether close wrote all rows, i.e. committed them or, inside beginTransaction,
+     * left them to commitTransaction.
+     */
+    public boolean isCommitted() {
+      return committed;
+    }
+  }
+
   public void beginTransaction() {
     try {
       connection.setAutoCommit(false);
@@ -60,6 +293,8 @@ public class SQLite implements AutoCloseable {
   @Override
   public void close() {
     try {
+      for (PreparedStatement statement : prepared.values()) statement.close();
+      prepared.clear();
       if (statement != null) statement.close();
       if (connection != null) connection.close();
     } catch(SQLException e) {
@@ -0,0 +1,161 @@
+package backtest.io;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * quotes or trades of many symbols and days in memory, for intraday lookups of a backtest.
+ * symbols get dense int ids and every symbol keeps its days as a sorted int array of epoch
+ * days next to the Ticks of each day, so a lookup is two binary searches over primitive
+ * arrays: the day, then the time within the day.
+ * times are local date times as in Ticks, and epoch seconds are seconds of the local date
+ * time since 1970-01-01T00:00.
+ */
+public class TickIndex {
+  private static final int nanosPerSecond = 1_000_000_000;
+  private static final int secondsPerDay = 86400;
+  private final byte kind;
+  private final Map<String, Integer> ids = new HashMap<>();
+  private final List<String> symbols = new ArrayList<>();
+  // by symbol id: sorted epoch days, and ticks of each of them
+  private final List<int[]> days = new ArrayList<>();
+  private final List<Ticks[]> ticks = new ArrayList<>();
+
+  /**
+   * @param kind TickJournal.QUOTE or TickJournal.TRADE.
+   */
+  public TickIndex(byte kind) {
+    this.kind = kind;
+  }
+
+  /**
+   * index of ticks of symbols on days that are at or after start and before end. call load
+   * again to add other times of the day.
+   */
+  public static TickIndex load(TickStore store, byte kind, List<String> symbols,
+                               List<LocalDate> days, LocalTime start, LocalTime end) {
+    return new TickIndex(kind).load(store, symbols, days, start, end);
+  }
+
+  public TickIndex load(TickStore store, List<String> symbols, List<LocalDate> days,
+                        LocalTime start, LocalTime end) {
+    for (String symbol : symbols) {
+      int id = addSymbol(symbol);
+      for (LocalDate day : days) {
+        Ticks dayTicks = store.read(day, symbol, kind, start, end);
+        if (dayTicks.size() > 0) put(id, day, dayTicks);
+      }
+    }
+    return this;
+  }
+
+  public int getNumSymbols() {
+    return symbols.size();
+  }
+
+  /**
+   * @return id of symbol, -1 if it has no ticks.
+   */
+  public int getSymbolId(String symbol) {
+    return ids.getOrDefault(symbol, -1);
+  }
+
+  public String getSymbol(int id) {
+    return symbols.get(id);
+  }
+
+  /**
+   * @return id of symbol, a new one if it isn't indexed yet.
+   */
+  public int addSymbol(String symbol) {
+    Integer id = ids.get(symbol);
+    if (id != null) return id;
+    ids.put(symbol, symbols.size());
+    symbols.add(symbol);
+    days.add(new int[0]);
+    ticks.add(new Ticks[0]);
+    return symbols.size() - 1;
+  }
+
+  /**
+   * add ticks of symbol id on day to the ticks already indexed.
+   */
+  public void put(int id, LocalDate day, Ticks dayTicks) {
+    if (dayTicks.getKind() != kind) throw new IllegalArgumentException("ticks of another kind");
+    int epochDay = (int) day.toEpochDay();
+    int[] symbolDays = days.get(id);
+    Ticks[] symbolTicks = ticks.get(id);
+    int i = Arrays.binarySearch(symbolDays, epochDay);
+    if (i >= 0) {
+      symbolTicks[i] = Ticks.merge(symbolTicks[i], dayTicks.sorted());
+      return;
+    }
+    i = -i - 1;
+    int n = symbolDays.length;
+    int[] newDays = new int[n + 1];
+    Ticks[] newTicks = new Ticks[n + 1];
+    System.arraycopy(symbolDays, 0, newDays, 0, i);
+    System.arraycopy(symbolTicks, 0, newTicks, 0, i);
+    newDays[i] = epochDay;
+    newTicks[i] = dayTicks.sorted();
+    System.arraycopy(symbolDays, i, newDays, i + 1, n - i);
+    System.arraycopy(symbolTicks, i, newTicks, i + 1, n - i);
+    days.set(id, newDays);
+    ticks.set(id, newTicks);
+  }
+
+  /**
+   * @return ticks of symbol id on epochDay, null if there are none.
+   */
+  public Ticks get(int id, int epochDay) {
+    if (id < 0 || id >= days.size()) return null;
+    int i = Arrays.binarySearch(days.get(id), epochDay);
+    return i < 0 ? null : ticks.get(id)[i];
+  }
+
+  public Ticks get(int id, LocalDate day) {
+    return get(id, (int) day.toEpochDay());
+  }
+
+  /**
+   * @return index in get(id, day of epochSecond) of the last tick of that day at or before
+   * epochSecond, -1 if there is none.
+   */
+  public int lastAtOrBefore(int id, long epochSecond) {
+    Ticks dayTicks = get(id, day(epochSecond));
+    return dayTicks == null ? -1 : dayTicks.floorIndex(epochSecond * nanosPerSecond);
+  }
+
+  public int lastAtOrBefore(int id, LocalDateTime time) {
+    Ticks dayTicks = get(id, time.toLocalDate());
+    return dayTicks == null ? -1 : dayTicks.floorIndex(time);
+  }
+
+  /**
+   * @return index in get(id, day of epochSecond) of the first tick of that day at or after
+   * epochSecond, -1 if there is none.
+   */
+  public int firstAtOrAfter(int id, long epochSecond) {
+    Ticks dayTicks = get(id, day(epochSecond));
+    if (dayTicks == null) return -1;
+    int i = dayTicks.ceilIndex(epochSecond * nanosPerSecond);
+    return i < dayTicks.size() ? i : -1;
+  }
+
+  public int firstAtOrAfter(int id, LocalDateTime time) {
+    Ticks dayTicks = get(id, time.toLocalDate());
+    if (dayTicks == null) return -1;
+    int i = dayTicks.ceilIndex(time);
+    return i < dayTicks.size() ? i : -1;
+  }
+
+  private static int day(long epochSecond) {
+    return (int) Math.floorDiv(epochSecond, secondsPerDay);
+  }
+}
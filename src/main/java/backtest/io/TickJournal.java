@@ -0,0 +1,465 @@
+package backtest.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * append only file of quotes, trades and bars in fixed width binary records.
+ * any number of threads (e.g. api callbacks) append records into a ring of preallocated
+ * slots without locks: a thread claims a sequence number, writes the slot and publishes it.
+ * one writer thread copies published records in sequence order into a buffer and appends the
+ * whole buffer with one write to a channel that stays open, so a burst of records costs one
+ * system call. the file is forced to disk every syncMillis and on flush and close. appending
+ * only blocks when the ring is full.
+ * replay reads the records back in the order they were appended.
+ */
+public class TickJournal implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(TickJournal.class);
+  // "BTTJ"
+  private static final int magic = 0x4254544a;
+  private static final int version = 1;
+  private static final int headerSize = 12;
+  public static final byte QUOTE = 1;
+  public static final byte TRADE = 2;
+  public static final byte BAR = 3;
+  // type of a slot whose append failed. the writer drops it
+  private static final byte SKIP = 0;
+  // time, type, symbol, 4 prices, 2 sizes
+  static final int recordSize = 72;
+  private static final int symbolSize = 15;
+  private static final int typeOffset = 8;
+  private static final int symbolOffset = 9;
+  private static final int priceOffset = 24;
+  private static final int sizeOffset = 56;
+  private static final int defaultCapacity = 1 << 16;
+  private static final long defaultSyncMillis = 1000;
+  // records written with one system call at most
+  private static final int batchSize = 1024;
+  private static final long idleNanos = 100_000;
+
+  private final Path path;
+  private final FileChannel channel;
+  private final int capacity;
+  private final int mask;
+  private final ByteBuffer ring;
+  // sequence number last published into each slot, -1 if none yet
+  private final AtomicLongArray published;
+  private final AtomicLong claimed = new AtomicLong();
+  // records before this sequence number are written and their slots can be reused
+  private volatile long written;
+  // records before this sequence number are forced to disk
+  private volatile long synced;
+  // flush asks the writer to force records before this sequence number
+  private volatile long syncRequest;
+  private volatile boolean closed;
+  private volatile IOException error;
+  private final long syncNanos;
+  private final Thread writer;
+
+  /**
+   * open path for appending, creating it if it doesn't exist.
+   */
+  public TickJournal(Path path) throws IOException {
+    this(path, defaultCapacity, defaultSyncMillis);
+  }
+
+  /**
+   * @param capacity   number of records the ring holds, rounded up to a power of 2.
+   * @param syncMillis written records are forced to disk at least this often.
+   */
+  public TickJournal(Path path, int capacity, long syncMillis) throws IOException {
+    this.path = path;
+    this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    mask = this.capacity - 1;
+    ring = ByteBuffer.allocate(this.capacity * recordSize);
+    published = new AtomicLongArray(this.capacity);
+    for (int i = 0; i < this.capacity; i++) published.set(i, -1);
+    syncNanos = syncMillis * 1_000_000;
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      openForAppend();
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    writer = new Thread(this::write, "tick-journal-" + path.getFileName());
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private void openForAppend() throws IOException {
+    long size = channel.size();
+    if (size == 0) {
+      ByteBuffer header = ByteBuffer.allocate(headerSize);
+      header.putInt(magic).putInt(version).putInt(recordSize).flip();
+      while (header.hasRemaining()) channel.write(header, header.position());
+      size = headerSize;
+    } else {
+      readHeader(channel, path);
+      // a crash can leave a partial record behind
+      long partial = (size - headerSize) % recordSize;
+      if (partial != 0) {
+        logger.warn("drop {} bytes of a partial record at the end of {}", partial, path);
+        size -= partial;
+        channel.truncate(size);
+      }
+    }
+    channel.position(size);
+  }
+
+  private static void readHeader(FileChannel channel, Path path) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(headerSize);
+    while (header.hasRemaining() && channel.read(header, header.position()) >= 0) ;
+    header.flip();
+    if (header.remaining() < headerSize || header.getInt() != magic ||
+        header.getInt() != version || header.getInt() != recordSize) {
+      throw new IOException(path + " is not a tick journal");
+    }
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public void quote(String symbol, LocalDateTime time, double ask, long askSize, double bid,
+                    long bidSize) {
+    long nanos = check(symbol, time);
+    long seq = claim();
+    int offset = slot(seq) * recordSize;
+    boolean ok = false;
+    try {
+      put(offset, QUOTE, symbol, nanos);
+      ring.putDouble(offset + priceOffset, ask);
+      ring.putDouble(offset + priceOffset + 8, bid);
+      ring.putLong(offset + sizeOffset, askSize);
+      ring.putLong(offset + sizeOffset + 8, bidSize);
+      ok = true;
+    } finally {
+      publish(seq, ok);
+    }
+  }
+
+  public void trade(String symbol, LocalDateTime time, double price, long size) {
+    long nanos = check(symbol, time);
+    long seq = claim();
+    int offset = slot(seq) * recordSize;
+    boolean ok = false;
+    try {
+      put(offset, TRADE, symbol, nanos);
+      ring.putDouble(offset + priceOffset, price);
+      ring.putLong(offset + sizeOffset, size);
+      ok = true;
+    } finally {
+      publish(seq, ok);
+    }
+  }
+
+  public void bar(String symbol, LocalDateTime time, double open, double high, double low,
+                  double close, long volume) {
+    long nanos = check(symbol, time);
+    long seq = claim();
+    int offset = slot(seq) * recordSize;
+    boolean ok = false;
+    try {
+      put(offset, BAR, symbol, nanos);
+      ring.putDouble(offset + priceOffset, open);
+      ring.putDouble(offset + priceOffset + 8, high);
+      ring.putDouble(offset + priceOffset + 16, low);
+      ring.putDouble(offset + priceOffset + 24, close);
+      ring.putLong(offset + sizeOffset, volume);
+      ok = true;
+    } finally {
+      publish(seq, ok);
+    }
+  }
+
+  /**
+   * arguments are checked before a slot is claimed, since a claimed slot must be published.
+   *
+   * @return time in nanoseconds since 1970.
+   */
+  private static long check(String symbol, LocalDateTime time) {
+    if (symbol == null || symbol.isEmpty() || symbol.length() > symbolSize) {
+      throw new IllegalArgumentException("symbol empty or too long: " + symbol);
+    }
+    for (int i = 0; i < symbol.length(); i++) {
+      if (symbol.charAt(i) > 127) throw new IllegalArgumentException("not ascii: " + symbol);
+    }
+    if (time == null) throw new IllegalArgumentException("no time of " + symbol);
+    try {
+      return Math.addExact(Math.multiplyExact(time.toEpochSecond(ZoneOffset.UTC),
+          1_000_000_000L), time.getNano());
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("time out of range: " + time);
+    }
+  }
+
+  /**
+   * @return sequence number of a slot free to write. waits while the ring is full.
+   */
+  private long claim() {
+    if (closed) throw new IllegalStateException(path + " is closed");
+    long seq = claimed.getAndIncrement();
+    while (seq - written >= capacity) {
+      checkWriter();
+      LockSupport.parkNanos(idleNanos);
+    }
+    return seq;
+  }
+
+  private int slot(long seq) {
+    return (int) (seq & mask);
+  }
+
+  /**
+   * hand a claimed slot to the writer. a slot whose append failed is marked to be skipped,
+   * since the writer waits for every sequence number in order.
+   */
+  private void publish(long seq, boolean ok) {
+    if (!ok) ring.put(slot(seq) * recordSize + typeOffset, SKIP);
+    published.set(slot(seq), seq);
+  }
+
+  private void put(int offset, byte type, String symbol, long nanos) {
+    ring.putLong(offset, nanos);
+    ring.put(offset + typeOffset, type);
+    int n = symbol.length();
+    for (int i = 0; i < symbolSize; i++) {
+      char c = i < n ? symbol.charAt(i) : 0;
+      ring.put(offset + symbolOffset + i, (byte) c);
+    }
+  }
+
+  private void checkWriter() {
+    if (error != null) throw new IllegalStateException("error while writing " + path, error);
+    if (!writer.isAlive() && !closed) throw new IllegalStateException(path + " writer died");
+  }
+
+  /**
+   * wait until all records appended before this call are forced to disk.
+   */
+  public void flush() {
+    long target = claimed.get();
+    if (target > syncRequest) syncRequest = target;
+    while (synced < target) {
+      checkWriter();
+      if (!writer.isAlive()) throw new IllegalStateException(path + " is closed");
+      LockSupport.parkNanos(idleNanos);
+    }
+  }
+
+  /**
+   * write and force all appended records and close the file. records must not be appended
+   * while or after closing.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      channel.close();
+    }
+    if (error != null) throw error;
+  }
+
+  private void write() {
+    ByteBuffer src = ring.duplicate();
+    ByteBuffer batch = ByteBuffer.allocateDirect(Math.min(capacity, batchSize) * recordSize);
+    long next = written;
+    long lastSync = System.nanoTime();
+    try {
+      while (true) {
+        while (batch.hasRemaining() && published.get(slot(next)) == next) {
+          int offset = slot(next) * recordSize;
+          if (ring.get(offset + typeOffset) == SKIP) {
+            next++;
+            continue;
+          }
+          src.limit(offset + recordSize).position(offset);
+          batch.put(src);
+          src.clear();
+          next++;
+        }
+        boolean idle = batch.position() == 0;
+        if (!idle) {
+          batch.flip();
+          while (batch.hasRemaining()) channel.write(batch);
+          batch.clear();
+        }
+        // skipped slots advance next without a write
+        if (written != next) written = next;
+        long now = System.nanoTime();
+        boolean done = idle && closed && next == claimed.get();
+        if (synced < next && (done || syncRequest > synced || now - lastSync >= syncNanos)) {
+          channel.force(false);
+          synced = next;
+          lastSync = now;
+        }
+        if (done) return;
+        if (idle) LockSupport.parkNanos(idleNanos);
+      }
+    } catch (IOException e) {
+      logger.error("error while writing {}", path, e);
+      error = e;
+    }
+  }
+
+  /**
+   * a record of a journal. instances passed to replay handlers are reused for the next
+   * record, so handlers must copy what they keep.
+   */
+  public static final class Record {
+    private final ByteBuffer buffer;
+    private int offset;
+
+    private Record(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    public byte getType() {
+      return buffer.get(offset + typeOffset);
+    }
+
+    public String getSymbol() {
+      int n = 0;
+      while (n < symbolSize && buffer.get(offset + symbolOffset + n) != 0) n++;
+      byte[] bytes = new byte[n];
+      for (int i = 0; i < n; i++) bytes[i] = buffer.get(offset + symbolOffset + i);
+      return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    public LocalDateTime getTime() {
+      long nanos = buffer.getLong(offset);
+      return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L),
+          (int) Math.floorMod(nanos, 1_000_000_000L), ZoneOffset.UTC);
+    }
+
+    private double price(int i) {
+      return buffer.getDouble(offset + priceOffset + 8 * i);
+    }
+
+    private long size(int i) {
+      return buffer.getLong(offset + sizeOffset + 8 * i);
+    }
+
+    public double getAsk() {
+      return price(0);
+    }
+
+    public double getBid() {
+      return price(1);
+    }
+
+    public long getAskSize() {
+      return size(0);
+    }
+
+    public long getBidSize() {
+      return size(1);
+    }
+
+    /**
+     * last price of a trade.
+     */
+    public double getPrice() {
+      return price(0);
+    }
+
+    public long getSize() {
+      return size(0);
+    }
+
+    public double getOpen() {
+      return price(0);
+    }
+
+    public double getHigh() {
+      return price(1);
+    }
+
+    public double getLow() {
+      return price(2);
+    }
+
+    public double getClose() {
+      return price(3);
+    }
+
+    public long getVolume() {
+      return size(0);
+    }
+
+    /**
+     * the lines ActiveTick used to write to text files, e.g. "time ticker ask askSize bid
+     * bidSize" for a quote.
+     */
+    @Override
+    public String toString() {
+      switch (getType()) {
+        case QUOTE:
+          return getTime() + " " + getSymbol() + " " + getAsk() + " " + getAskSize() + " " +
+              getBid() + " " + getBidSize();
+        case TRADE:
+          return getTime() + " " + getSymbol() + " " + getPrice() + " " + getSize();
+        case BAR:
+          return getTime() + " " + getSymbol() + " " + getOpen() + " " + getHigh() + " " +
+              getLow() + " " + getClose() + " " + getVolume();
+        default:
+          return getTime() + " " + getSymbol() + " unknown type " + getType();
+      }
+    }
+  }
+
+  /**
+   * read records of a journal in the order they were appended. a partial record at the end
+   * is ignored.
+   *
+   * @return number of records read.
+   */
+  public static long replay(Path path, Consumer<Record> handler) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      readHeader(channel, path);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(batchSize * recordSize);
+      Record record = new Record(buffer);
+      long count = 0;
+      channel.position(headerSize);
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        while (buffer.remaining() >= recordSize) {
+          record.offset = buffer.position();
+          handler.accept(record);
+          buffer.position(record.offset + recordSize);
+          count++;
+        }
+        buffer.compact();
+      }
+      return count;
+    }
+  }
+
+  static long toNanos(LocalDateTime time) {
+    return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + time.getNano();
+  }
+
+  // for tests: bytes of the header and the records of n
+  static long fileSize(long n) {
+    return headerSize + n * recordSize;
+  }
+}
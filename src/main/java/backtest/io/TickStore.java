@@ -0,0 +1,308 @@
+package backtest.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * quotes and trades in compact binary files, one per trading day and symbol:
+ * dir/2016-07-22/AAPL.quotes and dir/2016-07-22/AAPL.trades.
+ * ticks of a file are cut into blocks of blockSize ticks. within a block every column is
+ * stored apart: times as varint deltas from the previous tick, prices as zigzag varint
+ * deltas of the scaled prices and sizes as varints. ticks move in small steps, so most
+ * values take one or two bytes instead of eight.
+ * a file is a header (magic, version, kind, number of ticks, number of blocks), the time
+ * of the first tick of every block, the offset of every block and the blocks. a reader maps
+ * the file, binary searches the block times and only decodes the blocks of the requested
+ * time range.
+ * files are written to a temporary file first and moved into place, so a reader never sees
+ * a partial file.
+ */
+public class TickStore {
+  private static final Logger logger = LoggerFactory.getLogger(TickStore.class);
+  private static final int magic = 0x42545453; // "BTTS"
+  private static final int version = 1;
+  private static final int headerSize = 20;
+  static final int blockSize = 1024;
+  private final Path dir;
+
+  public TickStore(String dir) {
+    this(Paths.get(dir));
+  }
+
+  public TickStore(Path dir) {
+    this.dir = dir;
+  }
+
+  private Path path(LocalDate day, String symbol, byte kind) {
+    return dir.resolve(day.toString()).resolve(symbol + extension(kind));
+  }
+
+  private static String extension(byte kind) {
+    if (kind == TickJournal.QUOTE) return ".quotes";
+    if (kind == TickJournal.TRADE) return ".trades";
+    throw new IllegalArgumentException("not quotes or trades: " + kind);
+  }
+
+  /**
+   * @return symbols with ticks of kind on day.
+   */
+  public List<String> getSymbols(LocalDate day, byte kind) {
+    List<String> ret = new ArrayList<>();
+    Path dayDir = dir.resolve(day.toString());
+    if (!Files.isDirectory(dayDir)) return ret;
+    String extension = extension(kind);
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dayDir, "*" + extension)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        ret.add(name.substring(0, name.length() - extension.length()));
+      }
+    } catch (IOException e) {
+      logger.error("error while listing {}: {}", dayDir, e.getMessage());
+    }
+    Collections.sort(ret);
+    return ret;
+  }
+
+  public boolean has(LocalDate day, String symbol, byte kind) {
+    return Files.isRegularFile(path(day, symbol, kind));
+  }
+
+  /**
+   * @return all ticks of kind of symbol on day, empty if there are none.
+   */
+  public Ticks read(LocalDate day, String symbol, byte kind) {
+    return read(day, symbol, kind, LocalTime.MIN, null);
+  }
+
+  /**
+   * @param to end of the range, exclusive. null for the end of day.
+   * @return ticks of kind of symbol on day at or after from and before to.
+   */
+  public Ticks read(LocalDate day, String symbol, byte kind, LocalTime from, LocalTime to) {
+    long fromNanos = TickJournal.toNanos(LocalDateTime.of(day, from));
+    long toNanos = to == null ? Long.MAX_VALUE : TickJournal.toNanos(LocalDateTime.of(day, to));
+    Path path = path(day, symbol, kind);
+    if (!Files.isRegularFile(path)) return new Ticks(kind);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return decode(buffer, kind, fromNanos, toNanos, path);
+    } catch (IOException e) {
+      logger.error("error while reading {}: {}", path, e.getMessage());
+      return new Ticks(kind);
+    }
+  }
+
+  /**
+   * replace the ticks of kind of symbol on day.
+   *
+   * @throws IllegalArgumentException if a tick is not on day.
+   */
+  public void write(LocalDate day, String symbol, Ticks ticks) {
+    ticks = ticks.sorted();
+    long dayStart = TickJournal.toNanos(day.atStartOfDay());
+    long dayEnd = TickJournal.toNanos(day.plusDays(1).atStartOfDay());
+    if (ticks.size() > 0 && (ticks.getNanos(0) < dayStart ||
+        ticks.getNanos(ticks.size() - 1) >= dayEnd)) {
+      throw new IllegalArgumentException("ticks of " + symbol + " are not all on " + day);
+    }
+    ByteBuffer buffer = encode(ticks);
+    Path path = path(day, symbol, ticks.getKind());
+    Path tmp = null;
+    try {
+      Files.createDirectories(path.getParent());
+      tmp = Files.createTempFile(path.getParent(), symbol, ".tmp");
+      try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) channel.write(buffer);
+      }
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.error("error while writing {}: {}", path, e.getMessage());
+      if (tmp != null) tmp.toFile().delete();
+    }
+  }
+
+  /**
+   * merge ticks into the stored ticks of kind of symbol on day. ticks already stored are not
+   * added again.
+   */
+  public void append(LocalDate day, String symbol, Ticks ticks) {
+    Ticks stored = read(day, symbol, ticks.getKind());
+    write(day, symbol, stored.size() == 0 ? ticks : Ticks.merge(stored, ticks.sorted()));
+  }
+
+  /**
+   * append quotes and trades of a TickJournal, e.g. the one ActiveTick writes, to the store.
+   * bars are skipped.
+   *
+   * @return number of ticks read.
+   */
+  public long importJournal(Path journal) throws IOException {
+    Map<LocalDate, Map<String, Ticks>> quotes = new HashMap<>();
+    Map<LocalDate, Map<String, Ticks>> trades = new HashMap<>();
+    long n = TickJournal.replay(journal, record -> {
+      byte type = record.getType();
+      if (type != TickJournal.QUOTE && type != TickJournal.TRADE) return;
+      LocalDateTime time = record.getTime();
+      Ticks ticks = (type == TickJournal.QUOTE ? quotes : trades)
+          .computeIfAbsent(time.toLocalDate(), day -> new HashMap<>())
+          .computeIfAbsent(record.getSymbol(), symbol -> new Ticks(type));
+      if (type == TickJournal.QUOTE) {
+        ticks.addQuote(time, record.getAsk(), record.getAskSize(), record.getBid(),
+            record.getBidSize());
+      } else {
+        ticks.addTrade(time, record.getPrice(), record.getSize());
+      }
+    });
+    for (Map<LocalDate, Map<String, Ticks>> days : Arrays.asList(quotes, trades)) {
+      for (Map.Entry<LocalDate, Map<String, Ticks>> day : days.entrySet()) {
+        for (Map.Entry<String, Ticks> symbol : day.getValue().entrySet()) {
+          append(day.getKey(), symbol.getKey(), symbol.getValue());
+        }
+      }
+    }
+    logger.info("imported {} records of {}", n, journal);
+    return n;
+  }
+
+  static ByteBuffer encode(Ticks ticks) {
+    int n = ticks.size();
+    int numBlocks = (n + blockSize - 1) / blockSize;
+    int columns = ticks.isQuotes() ? 5 : 3;
+    // at most 10 bytes per varint
+    ByteBuffer data = ByteBuffer.allocate(Math.max(16, n * columns * 10));
+    int[] offsets = new int[numBlocks + 1];
+    for (int b = 0; b < numBlocks; b++) {
+      offsets[b] = data.position();
+      int from = b * blockSize, to = Math.min(n, from + blockSize);
+      for (int i = from + 1; i < to; i++) putVarint(data, ticks.getNanos(i) - ticks.getNanos(i - 1));
+      putDeltas(data, ticks, from, to, 0);
+      if (ticks.isQuotes()) putDeltas(data, ticks, from, to, 1);
+      for (int i = from; i < to; i++) putVarint(data, ticks.getSize0(i));
+      if (ticks.isQuotes()) {
+        for (int i = from; i < to; i++) putVarint(data, ticks.getSize1(i));
+      }
+    }
+    offsets[numBlocks] = data.position();
+    data.flip();
+    ByteBuffer ret = ByteBuffer.allocate(headerSize + numBlocks * Long.BYTES +
+        (numBlocks + 1) * Integer.BYTES + data.remaining());
+    ret.putInt(magic).putInt(version).putInt(ticks.getKind()).putInt(n).putInt(numBlocks);
+    for (int b = 0; b < numBlocks; b++) ret.putLong(ticks.getNanos(b * blockSize));
+    for (int offset : offsets) ret.putInt(offset);
+    ret.put(data);
+    ret.flip();
+    return ret;
+  }
+
+  private static void putDeltas(ByteBuffer data, Ticks ticks, int from, int to, int col) {
+    long prev = 0;
+    for (int i = from; i < to; i++) {
+      long price = col == 0 ? ticks.getPrice0(i) : ticks.getPrice1(i);
+      long delta = price - prev;
+      putVarint(data, (delta << 1) ^ (delta >> 63));
+      prev = price;
+    }
+  }
+
+  private static void putVarint(ByteBuffer data, long v) {
+    while ((v & ~0x7fL) != 0) {
+      data.put((byte) ((v & 0x7f) | 0x80));
+      v >>>= 7;
+    }
+    data.put((byte) v);
+  }
+
+  /**
+   * decode the blocks overlapping [from, to) of a mapped file and drop ticks outside.
+   */
+  static Ticks decode(ByteBuffer buffer, byte kind, long from, long to, Path path) {
+    if (buffer.capacity() < headerSize || buffer.getInt(0) != magic ||
+        buffer.getInt(4) != version || buffer.getInt(8) != kind) {
+      logger.error("{} is not a tick file", path);
+      return new Ticks(kind);
+    }
+    int n = buffer.getInt(12);
+    int numBlocks = buffer.getInt(16);
+    int times = headerSize;
+    int offsets = times + numBlocks * Long.BYTES;
+    int data = offsets + (numBlocks + 1) * Integer.BYTES;
+    if (buffer.capacity() < data || buffer.capacity() != data + buffer.getInt(offsets +
+        numBlocks * Integer.BYTES)) {
+      logger.error("{} is truncated", path);
+      return new Ticks(kind);
+    }
+    // last block starting before from. ticks at from can start in it
+    int lo = 0, hi = numBlocks;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (buffer.getLong(times + mid * Long.BYTES) < from) lo = mid + 1;
+      else hi = mid;
+    }
+    int first = Math.max(0, lo - 1);
+    Ticks ret = new Ticks(kind);
+    boolean quotes = kind == TickJournal.QUOTE;
+    int m = Math.min(blockSize, n);
+    long[] nanos = new long[m], p0 = new long[m], p1 = new long[m], s0 = new long[m],
+        s1 = new long[m];
+    int[] pos = new int[1];
+    for (int b = first; b < numBlocks; b++) {
+      long start = buffer.getLong(times + b * Long.BYTES);
+      if (start >= to) break;
+      int size = Math.min(blockSize, n - b * blockSize);
+      pos[0] = data + buffer.getInt(offsets + b * Integer.BYTES);
+      nanos[0] = start;
+      for (int i = 1; i < size; i++) nanos[i] = nanos[i - 1] + getVarint(buffer, pos);
+      getDeltas(buffer, pos, p0, size);
+      if (quotes) getDeltas(buffer, pos, p1, size);
+      for (int i = 0; i < size; i++) s0[i] = getVarint(buffer, pos);
+      if (quotes) {
+        for (int i = 0; i < size; i++) s1[i] = getVarint(buffer, pos);
+      }
+      for (int i = 0; i < size; i++) {
+        if (nanos[i] >= from && nanos[i] < to) ret.add(nanos[i], p0[i], s0[i], p1[i], s1[i]);
+      }
+    }
+    return ret;
+  }
+
+  private static void getDeltas(ByteBuffer buffer, int[] pos, long[] col, int size) {
+    long prev = 0;
+    for (int i = 0; i < size; i++) {
+      long v = getVarint(buffer, pos);
+      prev += (v >>> 1) ^ -(v & 1);
+      col[i] = prev;
+    }
+  }
+
+  private static long getVarint(ByteBuffer buffer, int[] pos) {
+    long ret = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get(pos[0]++);
+      ret |= (long) (b & 0x7f) << shift;
+      shift += 7;
+    } while (b < 0);
+    return ret;
+  }
+}
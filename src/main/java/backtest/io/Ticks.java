@@ -0,0 +1,263 @@
+package backtest.io;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * quotes or trades of one symbol in time order, as primitive columns. times are nanoseconds
+ * of the local date time since 1970-01-01T00:00, the same as TickJournal. prices are longs
+ * scaled by priceScale so that they are exact.
+ * a quote has ask, bid, ask size and bid size. a trade has price and size, kept in the ask
+ * columns.
+ */
+public class Ticks {
+  // prices are stored in 1/10000 dollars
+  public static final long priceScale = 10_000;
+  private final byte kind;
+  private int size;
+  private long[] nanos;
+  private long[] price0;
+  private long[] price1;
+  private long[] size0;
+  private long[] size1;
+
+  /**
+   * @param kind TickJournal.QUOTE or TickJournal.TRADE.
+   */
+  public Ticks(byte kind) {
+    this(kind, 16);
+  }
+
+  public Ticks(byte kind, int capacity) {
+    if (kind != TickJournal.QUOTE && kind != TickJournal.TRADE) {
+      throw new IllegalArgumentException("not quotes or trades: " + kind);
+    }
+    this.kind = kind;
+    capacity = Math.max(1, capacity);
+    nanos = new long[capacity];
+    price0 = new long[capacity];
+    size0 = new long[capacity];
+    if (kind == TickJournal.QUOTE) {
+      price1 = new long[capacity];
+      size1 = new long[capacity];
+    }
+  }
+
+  public byte getKind() {
+    return kind;
+  }
+
+  public boolean isQuotes() {
+    return kind == TickJournal.QUOTE;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public Ticks addQuote(LocalDateTime time, double ask, long askSize, double bid, long bidSize) {
+    if (!isQuotes()) throw new IllegalStateException("not quotes");
+    add(TickJournal.toNanos(time), scale(ask), askSize, scale(bid), bidSize);
+    return this;
+  }
+
+  public Ticks addTrade(LocalDateTime time, double price, long size) {
+    if (isQuotes()) throw new IllegalStateException("not trades");
+    add(TickJournal.toNanos(time), scale(price), size, 0, 0);
+    return this;
+  }
+
+  /**
+   * append a tick with scaled prices. price1 and size1 are ignored for trades.
+   */
+  void add(long time, long p0, long s0, long p1, long s1) {
+    if (size == nanos.length) grow();
+    nanos[size] = time;
+    price0[size] = p0;
+    size0[size] = s0;
+    if (price1 != null) {
+      price1[size] = p1;
+      size1[size] = s1;
+    }
+    size++;
+  }
+
+  private void grow() {
+    int capacity = nanos.length * 2;
+    nanos = Arrays.copyOf(nanos, capacity);
+    price0 = Arrays.copyOf(price0, capacity);
+    size0 = Arrays.copyOf(size0, capacity);
+    if (price1 != null) {
+      price1 = Arrays.copyOf(price1, capacity);
+      size1 = Arrays.copyOf(size1, capacity);
+    }
+  }
+
+  /**
+   * append tick i of that, which must be of the same kind.
+   */
+  void add(Ticks that, int i) {
+    add(that.nanos[i], that.price0[i], that.size0[i], that.price1 == null ? 0 : that.price1[i],
+        that.size1 == null ? 0 : that.size1[i]);
+  }
+
+  private static long scale(double price) {
+    return Math.round(price * priceScale);
+  }
+
+  public long getNanos(int i) {
+    return nanos[i];
+  }
+
+  public LocalDateTime getTime(int i) {
+    return toTime(nanos[i]);
+  }
+
+  long getPrice0(int i) {
+    return price0[i];
+  }
+
+  long getPrice1(int i) {
+    return price1[i];
+  }
+
+  long getSize0(int i) {
+    return size0[i];
+  }
+
+  long getSize1(int i) {
+    return size1[i];
+  }
+
+  public double getAsk(int i) {
+    return (double) price0[i] / priceScale;
+  }
+
+  public long getAskSize(int i) {
+    return size0[i];
+  }
+
+  public double getBid(int i) {
+    return (double) price1[i] / priceScale;
+  }
+
+  public long getBidSize(int i) {
+    return size1[i];
+  }
+
+  /**
+   * trade price.
+   */
+  public double getPrice(int i) {
+    return (double) price0[i] / priceScale;
+  }
+
+  /**
+   * trade size.
+   */
+  public long getSize(int i) {
+    return size0[i];
+  }
+
+  /**
+   * @return index of the first tick at or after time, size() if there is none.
+   */
+  public int ceilIndex(LocalDateTime time) {
+    return ceilIndex(TickJournal.toNanos(time));
+  }
+
+  public int ceilIndex(long time) {
+    int lo = 0, hi = size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (nanos[mid] < time) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  }
+
+  /**
+   * @return index of the last tick at or before time, -1 if there is none.
+   */
+  public int floorIndex(LocalDateTime time) {
+    return floorIndex(TickJournal.toNanos(time));
+  }
+
+  public int floorIndex(long time) {
+    return time == Long.MAX_VALUE ? size - 1 : ceilIndex(time + 1) - 1;
+  }
+
+  /**
+   * @return ticks at or after from and before to.
+   */
+  public Ticks slice(LocalDateTime from, LocalDateTime to) {
+    return slice(TickJournal.toNanos(from), TickJournal.toNanos(to));
+  }
+
+  Ticks slice(long from, long to) {
+    int begin = ceilIndex(from);
+    int end = Math.max(begin, ceilIndex(to));
+    Ticks ret = new Ticks(kind, end - begin);
+    for (int i = begin; i < end; i++) ret.add(this, i);
+    return ret;
+  }
+
+  /**
+   * @return whether times never decrease.
+   */
+  boolean isSorted() {
+    for (int i = 1; i < size; i++) {
+      if (nanos[i] < nanos[i - 1]) return false;
+    }
+    return true;
+  }
+
+  /**
+   * ticks of both in time order, ticks of a before ticks of b at the same time. a tick of b
+   * equal to a tick of a at the same time is dropped, so merging the same ticks twice
+   * keeps one copy.
+   */
+  static Ticks merge(Ticks a, Ticks b) {
+    Ticks ret = new Ticks(a.kind, a.size + b.size);
+    int i = 0, j = 0;
+    while (i < a.size || j < b.size) {
+      if (j == b.size || (i < a.size && a.nanos[i] <= b.nanos[j])) {
+        ret.add(a, i++);
+      } else {
+        boolean dup = false;
+        for (int k = a.ceilIndex(b.nanos[j]); k < a.size && a.nanos[k] == b.nanos[j] && !dup;
+             k++) {
+          dup = a.sameAs(k, b, j);
+        }
+        if (!dup) ret.add(b, j);
+        j++;
+      }
+    }
+    return ret;
+  }
+
+  private boolean sameAs(int i, Ticks that, int j) {
+    return nanos[i] == that.nanos[j] && price0[i] == that.price0[j] &&
+        size0[i] == that.size0[j] && (price1 == null ||
+        (price1[i] == that.price1[j] && size1[i] == that.size1[j]));
+  }
+
+  /**
+   * @return ticks sorted by time. ticks at the same time keep their order.
+   */
+  Ticks sorted() {
+    if (isSorted()) return this;
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) order[i] = i;
+    Arrays.sort(order, (x, y) -> Long.compare(nanos[x], nanos[y]));
+    Ticks ret = new Ticks(kind, size);
+    for (int i : order) ret.add(this, i);
+    return ret;
+  }
+
+  static LocalDateTime toTime(long nanos) {
+    return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L),
+        (int) Math.floorMod(nanos, 1_000_000_000L), ZoneOffset.UTC);
+  }
+}
@@ -1,13 +1,10 @@
 package backtest.quant;
 
 import backtest.regime.RegimeModel;
-import backtest.struct.NumMap;
 import backtest.struct.TimeSeries;
 import backtest.utils.Cal;
 import backtest.utils.Canvas;
-import backtest.utils.Num;
-import backtest.utils.StopWatch;
-import com.google.common.collect.Ordering;
+import backtest.utils.Leaderboard;
 import com.google.common.collect.Table;
 import com.google.common.collect.TreeBasedTable;
 
@@ -18,14 +15,45 @@ public class BuyOnGap {
   private final Stocks stocks;
   private final List<String> sp500;
   private final RegimeModel regimeModel;
-  private final Stock spy;
+  private Panel panel;
+  private final Map<Strategy, GapCandidates> candidates;
+  private int parallelism;
+  private int topK;
+  private TradeListener listener;
 
   public BuyOnGap(Stocks stocks) {
     this.stocks = stocks;
     this.sp500 = stocks.getSP500();
     this.regimeModel = new RegimeModel(stocks);
     this.regimeModel.calcHighMinusLowRate(12, LocalDate.of(2006,1,1), LocalDate.of(2016,4,8));
-    this.spy = stocks.getStockFromCache("SPY");
+    this.parallelism = Runtime.getRuntime().availableProcessors();
+    this.topK = 10;
+    this.candidates = new EnumMap<>(Strategy.class);
+    this.listener = TradeListener.QUIET;
+  }
+
+  /**
+   * listener used by runWith. quiet by default. findParam always runs quietly.
+   */
+  public BuyOnGap setTradeListener(TradeListener listener) {
+    this.listener = listener;
+    return this;
+  }
+
+  /**
+   * number of workers used by findParam. defaults to the number of cores.
+   */
+  public BuyOnGap setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * number of best parameter combinations printed by findParam.
+   */
+  public BuyOnGap setTopK(int topK) {
+    this.topK = topK;
+    return this;
   }
 
   public static final class Params {
@@ -53,7 +81,7 @@ public class BuyOnGap {
     double total;
     Table<LocalDate, LocalDate, Double> retTable;
     TimeSeries valSeries;
-    NumMap.Drawdown drawdown;
+    TimeSeries.Drawdown drawdown;
     public Result(double total, Table<LocalDate, LocalDate, Double> retTable, TimeSeries valSeries) {
       this.total = total;
       this.retTable = retTable;
@@ -62,7 +90,7 @@ public class BuyOnGap {
     }
   }
 
-  enum Strategy {
+  public enum Strategy {
     PARTIAL_GAP_DOWN,
     PARTIAL_GAP_UP,
     PARTIAL_GAP_DOWN_ADJUSTED,
@@ -70,19 +98,57 @@ public class BuyOnGap {
     FULL_GAP_DOWN_ADJUSTED
   }
 
+  /**
+   * panel of sp500 and SPY covering [from, to] plus one business day before from. panel of
+   * previous call is reused if it covers the range.
+   */
+  private synchronized Panel getPanel(LocalDate from, LocalDate to) {
+    LocalDate panelFrom = Cal.getPrevBusinessDay(from);
+    if (panel == null || panel.numDates() == 0 || panel.getDate(0).isAfter(panelFrom)
+        || panel.getDate(panel.numDates() - 1).isBefore(to)) {
+      List<String> tickers = new ArrayList<>(sp500);
+      if (!tickers.contains("SPY")) tickers.add("SPY");
+      panel = new Panel(stocks, tickers, panelFrom, to);
+      candidates.clear();
+    }
+    return panel;
+  }
+
+  /**
+   * gap sorted candidates of the panel covering [from, to]. computed once per strategy
+   * since only the parameters change between runs of a sweep.
+   */
+  private synchronized GapCandidates getCandidates(LocalDate from, LocalDate to,
+                                                   Strategy strategy) {
+    Panel panel = getPanel(from, to);
+    GapCandidates ret = candidates.get(strategy);
+    if (ret == null) {
+      ret = new GapCandidates(panel, strategy);
+      candidates.put(strategy, ret);
+    }
+    return ret;
+  }
+
   public Result runWith(double total, Params p, LocalDate from, LocalDate to, Strategy strategy) {
+    return runWith(total, p, from, to, strategy, listener);
+  }
+
+  public Result runWith(double total, Params p, LocalDate from, LocalDate to, Strategy strategy,
+                        TradeListener listener) {
     // calc portfolio value
     from = Cal.getLatestBusinessDayAfter(from);
     to = Cal.getLatestBusinessDayBefore(to);
-    Map<String, Integer> index = new HashMap<>();
-    int spyi = spy.getI(from);
+    GapCandidates candidates = getCandidates(from, to, strategy);
+    Panel panel = candidates.getPanel();
     Table<LocalDate, LocalDate, Double> retTable = TreeBasedTable.create();
     double prev = total;
     LocalDate prevDate = from;
     TimeSeries valSeries = new TimeSeries();
 
     // iterate all days
-    for (LocalDate date = from; date.isBefore(to); date = Cal.getNextBusinessDay(date)) {
+    for (int d = panel.dateIndex(from); d >= 0 && d < panel.numDates(); d++) {
+      LocalDate date = panel.getDate(d);
+      if (!date.isBefore(to)) break;
 
       if (p.useHighNum==1) {
         // if no stock reaches 52 week high yesterday
@@ -91,72 +157,43 @@ public class BuyOnGap {
       }
 
       // check market return
-      int newSpyi = spy.findFrom(date, spyi);
-      if (newSpyi < 1) {
-        System.out.println("can't find spyi");
+      if (!candidates.isMarketValid(d)) {
+        listener.onMissing(date, "SPY", 0);
         continue;
-      } else {
-        spyi = newSpyi;
       }
 //      double spyRet = spy.getRetTo(spyi - 1, p.bearPeriod);
 //      if (Double.isNaN(spyRet)) continue;
 //      if (spyRet < -p.bearThresh) continue;
-      List<GapTicker> listTickers = new ArrayList<>();
-      // iterate all stocks
-      for (String ticker : sp500) {
-        // calc gap
-        Stock stock = stocks.getStockFromCache(ticker);
-        int i = stock.findFrom(date, index.getOrDefault(ticker, 0));
-        if (i < 1) continue;
-        index.put(ticker, i);
-        double gap;
-        if (Strategy.PARTIAL_GAP_DOWN_ADJUSTED == strategy) {
-          gap = stock.getGap(i) - spy.getGap(spyi);
-        } else if (Strategy.PARTIAL_GAP_DOWN == strategy) {
-          gap = stock.getGap(i);
-        } else if (Strategy.FULL_GAP_DOWN == strategy) {
-          gap = stock.getFullGap(i);
-        } else if (Strategy.FULL_GAP_DOWN_ADJUSTED == strategy) {
-          gap = stock.getFullGap(i) - spy.getFullGap(spyi);
-        } else {
-          throw new IllegalArgumentException("strategy not implementd");
-        }
-        if (Double.isNaN(gap) || gap < p.thresh || gap > p.ub) continue;
+      // candidates are sorted by gap so the n largest gaps in [thresh, ub] are the tail of
+      // the slice.
+      int lo = candidates.from(d, p.thresh);
+      int hi = candidates.to(d, p.ub);
+      int last = Math.max(lo, hi - p.n);
 
+      // calc strategy return
+      int numStocks = hi - last;
+      for (int k = hi - 1; k >= last; k--) {
         // determine endPrice by stopLoss and stopWin
-        double high = stock.getAdjHigh(i);
-        double low = stock.getAdjLow(i);
-        double adjOpen = stock.getAdjOpen(i);
+        double high = candidates.getHigh(k);
+        double low = candidates.getLow(k);
+        double startPrice = candidates.getOpen(k);
         double endPrice;
-        if ((high - adjOpen) / adjOpen > p.sw) endPrice = adjOpen * (1 + p.sw);
-        else if ((adjOpen - low) / adjOpen > p.stopLoss) {
-          endPrice = adjOpen * (1 - p.stopLoss);
-        } else endPrice = stock.getAdjClose(i);
-        listTickers.add(new GapTicker(ticker, gap, stock.getAdjOpen(i), endPrice));
-//        System.out.println(date + ": " + ticker + " gap: " + gap + " open: " + stock.getAdjOpen(i));
-      }
-
-      // calc strategy return
-      listTickers = Ordering.natural().greatestOf(listTickers, p.n);
-      int numStocks = listTickers.size();
-      System.out.println();
-      for (GapTicker stock : listTickers) {
+        if ((high - startPrice) / startPrice > p.sw) endPrice = startPrice * (1 + p.sw);
+        else if ((startPrice - low) / startPrice > p.stopLoss) {
+          endPrice = startPrice * (1 - p.stopLoss);
+        } else endPrice = candidates.getClose(k);
         double moneyForEach = total / numStocks;
-        int numOfShare = (int) (moneyForEach / stock.startPrice);
+        int numOfShare = (int) (moneyForEach / startPrice);
         if (numOfShare > 0) {
           total -= 2;
           numOfShare = Math.min(200, numOfShare);
-          total += numOfShare * (stock.endPrice - stock.startPrice);
-          System.out.println(date + ": " + stock.ticker);
-          System.out.println("  num of share: " + numOfShare);
-          System.out.println("  start: " + stock.startPrice);
-          System.out.println("  end: " + stock.endPrice);
-          System.out.println("  ret+2: " + numOfShare * (stock.endPrice - stock.startPrice));
+          total += numOfShare * (endPrice - startPrice);
+          listener.onTrade(date, panel.getTicker(candidates.getTicker(k)), numOfShare,
+              startPrice, endPrice);
         }
       }
-      if (valSeries.size()!=0) {
-        System.out.println(date + " total ret: " + (total - valSeries.lastValue().toDouble()));
-      }
+      double dayRet = valSeries.size() == 0 ? Double.NaN : total - valSeries.lastValue();
+      listener.onDay(date, total, dayRet);
       valSeries.put(date, total);
       if (!date.isBefore(prevDate.plusMonths(11))) {
         double yearRet = (total - prev) / prev;
@@ -165,6 +202,7 @@ public class BuyOnGap {
         prev = total;
       }
     }
+    listener.onFinish(from, to, total);
     return new Result(total, retTable, valSeries);
   }
 
@@ -179,18 +217,9 @@ public class BuyOnGap {
     List<Double> bearThreshs = new ArrayList<>();
     bearThreshs.add(1d);
 //    for (double t = 0.01; t < 0.05; t += 0.01) bearThreshs.add(t);
-    double bestTotal = 0;
-    Params bestParams = null;
-    Table<LocalDate, LocalDate, Double> bestRet = null;
-    TimeSeries bestSeries = null;
-    TimeSeries bestRetSeries = null;
-    int bestUseHigh = -1;
-
-    // iterate all cases.
+    // build the grid.
+    List<Params> grid = new ArrayList<>();
     for (double thresh = 0; thresh < 0.04; thresh += 0.01) {
-      System.out.println("thresh: " + thresh);
-      StopWatch watch = new StopWatch();
-      watch.start();
       List<Double> ubs = new ArrayList<>();
       ubs.add(1d);
       for (double ub = thresh + 0.03; ub < thresh + 0.1; ub += 0.01) ubs.add(ub);
@@ -201,19 +230,7 @@ public class BuyOnGap {
               for (int n = 1; n < 20; n+=1) {
                 for (int useHighNum = 0; useHighNum < 2; useHighNum+=100) {
                   for (double stopLoss = 0.01; stopLoss < 0.05; stopLoss+=0.01) {
-                    Params p = new Params(bearPeriod, bearThresh, thresh, ub, sw, n, useHighNum, stopLoss);
-                    double initTotal = 30000;
-                    Result r = runWith(initTotal, p, from, to, strategy);
-                    TimeSeries retSeries = r.valSeries.getRet(1);
-                    double totalRet = r.total / initTotal - 1;
-                    if (totalRet - r.drawdown.drawdown > bestTotal) {
-                      bestTotal = totalRet - r.drawdown.drawdown;
-                      bestParams = p;
-                      bestRet = r.retTable;
-                      bestSeries = r.valSeries;
-                      bestRetSeries = retSeries;
-                      bestUseHigh = useHighNum;
-                    }
+                    grid.add(new Params(bearPeriod, bearThresh, thresh, ub, sw, n, useHighNum, stopLoss));
                   }
                 }
               }
@@ -221,18 +238,39 @@ public class BuyOnGap {
           }
         }
       }
-      watch.stop();
     }
-    if (bestParams != null) {
+
+    // evaluate all cases in parallel. panel and gap candidates are built once here and only
+    // read by workers.
+    final double initTotal = 30000;
+    getCandidates(Cal.getLatestBusinessDayAfter(from), Cal.getLatestBusinessDayBefore(to),
+        strategy);
+    Leaderboard<GridSearch.Trial<Params, Result>> leaderboard;
+    try (GridSearch<Params, Result> search = new GridSearch<>(parallelism)) {
+      leaderboard = search.run(grid,
+          p -> runWith(initTotal, p, from, to, strategy, TradeListener.QUIET),
+          r -> r.total / initTotal - 1 - (r.drawdown == null ? 0 : r.drawdown.drawdown),
+          topK);
+    }
+    Leaderboard.Entry<GridSearch.Trial<Params, Result>> best = leaderboard.best();
+    Params bestParams = null;
+    if (best != null && best.score > 0) {
+      bestParams = best.item.params;
+      Result r = best.item.result;
+      TimeSeries bestRetSeries = r.valSeries.getRet(1);
       System.out.println("from: " + from);
       System.out.println("to: " + to);
-      System.out.println("best total: " + bestTotal);
+      System.out.println("best total: " + best.score);
       System.out.println("best daily mean: " + bestRetSeries.mean());
       System.out.println("best daily std: " + bestRetSeries.std());
       System.out.println("best param:\n" + bestParams);
-      System.out.println("total: " + bestTotal);
-      System.out.println("best use high: " + bestUseHigh);
-      System.out.println(bestSeries.maxDrawdown());
+      System.out.println("total: " + best.score);
+      System.out.println("best use high: " + bestParams.useHighNum);
+      System.out.println(r.valSeries.maxDrawdown());
+      System.out.println("top " + leaderboard.size() + ":");
+      for (Leaderboard.Entry<GridSearch.Trial<Params, Result>> entry : leaderboard.sorted()) {
+        System.out.println(entry.score + ": " + entry.item.params.toString().replace('\n', ' '));
+      }
 //      for (Table.Cell<LocalDate, LocalDate, Double> cell : bestRet.cellSet()) {
 //        LocalDate tfrom = cell.getRowKey();
 //        LocalDate tto = cell.getColumnKey();
@@ -253,7 +291,6 @@ public class BuyOnGap {
   public static void main(String[] args) {
     // update stock data.
     Stocks stocks = new Stocks();
-    stocks.cacheAllStockQueries();
 //    LocalDate to = LocalDate.of(2016,4,28);
     LocalDate to = LocalDate.now();
     stocks.updateSP500AndSPYTo(to);
@@ -279,7 +316,8 @@ public class BuyOnGap {
 //    }
 //    Params p = buyOnGap.findParam(LocalDate.now().minusYears(1), LocalDate.now(), strategy);
 //    Result result = buyOnGap.runWith(30000, p, LocalDate.now().minusYears(1), LocalDate.now(), strategy);
-    Result result = buyOnGap.runWith(30000, new Params(5,1,0,1,0.08,6,0,0.01), to.minusYears(1), to, strategy);
+    Result result = buyOnGap.runWith(30000, new Params(5,1,0,1,0.08,6,0,0.01), to.minusYears(1), to, strategy,
+        new PrintTradeListener());
 //    for (Map.Entry<LocalDate, Num> entry : result.valSeries.entrySet()) {
 //      System.out.println(entry.getKey() + ": " + entry.getValue().toDouble());
 //    }
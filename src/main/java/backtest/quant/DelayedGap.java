@@ -1,10 +1,12 @@
 package backtest.quant;
 
-import backtest.struct.Data;
+import backtest.io.TickIndex;
+import backtest.io.TickJournal;
+import backtest.io.TickStore;
+import backtest.io.Ticks;
 import backtest.struct.TimeSeries;
 import backtest.utils.Cal;
 import backtest.utils.Canvas;
-import backtest.utils.Num;
 
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Table;
@@ -13,12 +15,18 @@ import com.google.common.collect.TreeBasedTable;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.*;
-import java.util.Map.Entry;
 
 public class DelayedGap {
+  private static final String tickDir = "data/ticks";
+  private static final LocalTime marketOpen = LocalTime.of(9, 30);
+  private static final LocalTime lastMinute = LocalTime.of(15, 59);
   private final List<String> sp500;
 
   public DelayedGap(Stocks stocks) {
@@ -52,8 +60,17 @@ public class DelayedGap {
     }
   }
 
-  public Result runWith(HashMap<String, Data> dataMap, double total, Params p,
+  public Result runWith(TickIndex quotes, double total, Params p,
       LocalDate from, LocalDate to) throws IOException {
+    return runWith(quotes, total, p, from, to, TradeListener.QUIET);
+  }
+
+  /**
+   * @param quotes must hold quotes of every day from 09:30 to 09:30 plus the delay, and of
+   *               the 15:59 minute, e.g. from loadQuotes.
+   */
+  public Result runWith(TickIndex quotes, double total, Params p,
+      LocalDate from, LocalDate to, TradeListener listener) throws IOException {
     // calc portfolio value
     from = Cal.getLatestBusinessDayAfter(from);
     to = Cal.getLatestBusinessDayBefore(to);
@@ -69,47 +86,44 @@ public class DelayedGap {
       int noPrevData = 0;
       int noOpenData = 0;
       int no931Data = 0;
+      int no359Data = 0;
+      LocalDate lastDay = Cal.getPrevBusinessDay(date);
+      LocalDateTime openTime = LocalDateTime.of(date, marketOpen);
+      LocalDateTime entryTime = openTime.plusSeconds(p.secDelay);
+      // quote times keep milliseconds, so the delay is the whole second from entryTime
+      LocalDateTime entryEnd = entryTime.plusSeconds(1);
       // iterate all stocks
       for (String ticker : sp500) {
-        // calc gap
-        Data data930 = dataMap.get(ticker + " " + date.toString() + "T09:30");
-        if (data930 == null) {
-          // System.out.println("no data for 930 key: " + ticker + " "
-          // + date.toString() + " 09:30");
+        int id = quotes.getSymbolId(ticker);
+        // calc gap from the first quote of the day
+        Ticks today = quotes.get(id, date);
+        int open = quotes.firstAtOrAfter(id, openTime);
+        if (open < 0 || !today.getTime(open).isBefore(entryEnd)) {
           noOpenData++;
           continue;
         }
-        double gap;
-        Data dataPrevClose = dataMap.get(ticker + " "
-            + Cal.getPrevBusinessDay(date) + "T15:59");
-        if (dataPrevClose == null) {
-          // System.out.println("no data prev on " + ticker + " "
-          // + Cal.getPrevBusinessDay(date).toString());
+        Ticks prevDay = quotes.get(id, lastDay);
+        int prevClose = quotes.firstAtOrAfter(id, LocalDateTime.of(lastDay, lastMinute));
+        if (prevClose < 0) {
           noPrevData++;
           continue;
         }
-        gap = (dataPrevClose.getAsk() - data930.getAsk())
-            / dataPrevClose.getAsk();
-
-        Data data931 = dataMap.get(ticker + " " + date.toString() + "T"
-            + LocalTime.of(9, 30, 0).plusSeconds(p.secDelay).toString());
-        if (data931 == null) {
-          data931 = dataMap.get(ticker + " " + date.toString() + "T"
-              + LocalTime.of(9, 30, 0).plusSeconds(p.secDelay-1).toString());
-        }
-        if (data931 == null) {
-          no931Data ++;
+        double gap = (prevDay.getAsk(prevClose) - today.getAsk(open)) / prevDay.getAsk(prevClose);
+        // buy at the last quote of the second of the delay. an older quote is stale, as with
+        // no quote at all
+        int entry = quotes.lastAtOrBefore(id, entryEnd.minusNanos(1));
+        if (entry < 0 || today.getTime(entry).isBefore(entryTime)) {
+          no931Data++;
           continue;
         }
-        double adjOpen = data931.getAsk();
+        double adjOpen = today.getAsk(entry);
         double endPrice;
-        Data data359 = dataMap.get(ticker + " " + date.toString() + "T15:59");
-        if (data359 == null) {
-          System.out.println("no data for 359 " + ticker + " "
-              + date.toString());
+        int close = quotes.firstAtOrAfter(id, LocalDateTime.of(date, lastMinute));
+        if (close < 0) {
+          no359Data++;
           continue;
         }
-        endPrice = data359.getBid(); // assume sold at the start of 359
+        endPrice = today.getBid(close); // assume sold at the start of 359
         if ((adjOpen - endPrice) / adjOpen > 0.02) {
           endPrice = adjOpen * 0.98;
         }
@@ -121,14 +135,14 @@ public class DelayedGap {
         // + stock.getAdjOpen(i));
       }
 
-      System.out.println("noPrevData : " + noPrevData);
-      System.out.println("noOpenData : " + noOpenData);
-      System.out.println("no931Data : " + no931Data);
+      if (noPrevData > 0) listener.onMissing(date, "prev close", noPrevData);
+      if (noOpenData > 0) listener.onMissing(date, "open", noOpenData);
+      if (no931Data > 0) listener.onMissing(date, "delayed open", no931Data);
+      if (no359Data > 0) listener.onMissing(date, "15:59", no359Data);
 
       // calc strategy return
       listTickers = Ordering.natural().greatestOf(listTickers, p.n);
       int numStocks = listTickers.size();
-      System.out.println();
       for (GapTicker stock : listTickers) {
         double moneyForEach = total / numStocks;
         int numOfShare = (int) (moneyForEach / stock.startPrice);
@@ -136,18 +150,11 @@ public class DelayedGap {
           total -= 2;
           numOfShare = Math.min(200, numOfShare);
           total += numOfShare * (stock.endPrice - stock.startPrice);
-          System.out.println(date + ": " + stock.ticker);
-          System.out.println("  num of share: " + numOfShare);
-          System.out.println("  start: " + stock.startPrice);
-          System.out.println("  end: " + stock.endPrice);
-          System.out.println("  ret+2: " + numOfShare
-              * (stock.endPrice - stock.startPrice));
+          listener.onTrade(date, stock.ticker, numOfShare, stock.startPrice, stock.endPrice);
         }
       }
-      if (valSeries.size() != 0) {
-        System.out.println(date + " total ret: "
-            + (total - valSeries.lastValue().toDouble()));
-      }
+      double dayRet = valSeries.size() == 0 ? Double.NaN : total - valSeries.lastValue();
+      listener.onDay(date, total, dayRet);
       valSeries.put(date, total);
       if (!date.isBefore(prevDate.plusMonths(11))) {
         double yearRet = (total - prev) / prev;
@@ -156,27 +163,28 @@ public class DelayedGap {
         prev = total;
       }
     }
-    double lastTotal = 30000;
-    for (Entry<LocalDate, Num> entry : valSeries.entrySet()) {
-      System.out.println(entry.getKey().toString() + " "
-          + (entry.getValue().toDouble() - lastTotal));
-      lastTotal = entry.getValue().toDouble();
-    }
-
-    System.out.println(String.format("total from %s to %s : ", from.toString(),
-        to.toString()) + total);
+    listener.onFinish(from, to, total);
     return new Result(total, retTable, valSeries);
   }
 
   public static void main(String[] args) throws IOException {
     // update stock data.
     Stocks stocks = new Stocks();
-    stocks.cacheAllStockQueries();
     LocalDate to = LocalDate.of(2016, 6, 22);
     DelayedGap buyOnGap = new DelayedGap(stocks);
-    HashMap<String, Data> dataMap = readHistoricalDataFromActiveTick("data/quotes");
-    Result result = buyOnGap.runWith(dataMap, 30000, new Params(6, 59),
-        to.minusYears(1), to);
+    TickStore store = new TickStore(tickDir);
+    // quotes of the old text file are converted once. the marker is written only after the
+    // whole file is in, so an interrupted import runs again and append skips ticks it stored
+    Path imported = Paths.get(tickDir, "quotes.imported");
+    if (!Files.exists(imported)) {
+      importQuotes(store, "data/quotes");
+      Files.createDirectories(imported.getParent());
+      Files.createFile(imported);
+    }
+    LocalDate from = to.minusYears(1);
+    Params params = new Params(6, 59);
+    TickIndex quotes = loadQuotes(store, stocks.getSP500(), from, to, params);
+    Result result = buyOnGap.runWith(quotes, 30000, params, from, to, new PrintTradeListener());
     System.out.println("size of valSeries: " + result.valSeries.size());
     Canvas canvas = new Canvas("output/perf.html");
     canvas.addSeries(stocks.getStockFromDB("SPY").alignWith(result.valSeries)
@@ -185,29 +193,46 @@ public class DelayedGap {
     canvas.draw();
   }
 
-  private static HashMap<String, Data> readHistoricalDataFromActiveTick(
-      String string) throws IOException {
+  /**
+   * index of quotes runWith reads: from 09:30 through the delay and the 15:59 minute of
+   * every business day from the day before from to to.
+   */
+  private static TickIndex loadQuotes(TickStore store, List<String> tickers, LocalDate from,
+                                      LocalDate to, Params p) {
     System.out.println("start reading historical data...");
-    HashMap<String, Data> map = new HashMap<String, Data>();
-    BufferedReader br = new BufferedReader(new FileReader(string));
-    String line;
-    while ((line = br.readLine()) != null) {
-      // e.g. : A 2015-06-22T09:30 39.94 3 39.75 5
-      String[] tokens = line.split("\\s+");
-      String sym = tokens[0];
-      String time = tokens[1];
-      String ask = tokens[2];
-      String bid = tokens[4];
-      String tokenComb = tokens[0] + " " + time;
-      if (time.endsWith("09:30") || time.endsWith("15:59") || 
-          time.endsWith("09:30:58") || time.endsWith("09:30:59")) {
-      map.putIfAbsent(tokenComb,
-          new Data(sym, time).setAsk(Double.valueOf(ask))
-              .setBid(Double.valueOf(bid))); // ask price
+    List<LocalDate> days = new ArrayList<>();
+    for (LocalDate date = Cal.getPrevBusinessDay(from); !date.isAfter(to);
+         date = Cal.getNextBusinessDay(date)) {
+      days.add(date);
+    }
+    TickIndex ret = TickIndex.load(store, TickJournal.QUOTE, tickers, days, marketOpen,
+        marketOpen.plusSeconds(p.secDelay + 1));
+    ret.load(store, tickers, days, lastMinute, lastMinute.plusMinutes(1));
+    System.out.println("reading historical data done. " + ret.getNumSymbols() + " tickers");
+    return ret;
+  }
+
+  /**
+   * append quotes of a text file of lines like "A 2015-06-22T09:30 39.94 3 39.75 5" (ticker,
+   * time, ask, ask size, bid, bid size) to store.
+   */
+  private static void importQuotes(TickStore store, String path) throws IOException {
+    Map<LocalDate, Map<String, Ticks>> days = new HashMap<>();
+    try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+      String line;
+      while ((line = br.readLine()) != null) {
+        String[] tokens = line.split("\\s+");
+        LocalDateTime time = LocalDateTime.parse(tokens[1]);
+        days.computeIfAbsent(time.toLocalDate(), day -> new HashMap<>())
+            .computeIfAbsent(tokens[0], ticker -> new Ticks(TickJournal.QUOTE))
+            .addQuote(time, Double.parseDouble(tokens[2]), Long.parseLong(tokens[3]),
+                Double.parseDouble(tokens[4]), Long.parseLong(tokens[5]));
+      }
+    }
+    for (Map.Entry<LocalDate, Map<String, Ticks>> day : days.entrySet()) {
+      for (Map.Entry<String, Ticks> ticker : day.getValue().entrySet()) {
+        store.append(day.getKey(), ticker.getKey(), ticker.getValue());
       }
     }
-    br.close();
-    System.out.println("reading historical data done. map size " + map.size());
-    return map;
   }
 }
@@ -0,0 +1,108 @@
+package backtest.quant;
+
+import backtest.utils.Util;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * finds days on which a stock reaches the highest adj high (or lowest adj low) of a trailing
+ * window, for several window sizes at once. this is Stock.getExtremeDays over primitive
+ * arrays:
+ * one pass with a monotonic stack gives every day the date of the nearest earlier day that
+ * isn't beaten by it. a day is then an extreme of a window iff that date is before the
+ * window, which is an O(1) check per window size.
+ * window bounds depend only on dates, so they are computed once here and shared by every
+ * stock. instances are immutable and can be shared by threads.
+ */
+public class ExtremeDays {
+  private final LocalDate from;
+  private final int first;
+  private final int last;
+  private final int numWindows;
+  // from minus each window, as date and epoch day
+  private final LocalDate[] starts;
+  private final int[] startDays;
+  // epoch day of (day minus window w) for every calendar day from from to to
+  private final int[][] bounds;
+  private final LocalDate earliest;
+
+  /**
+   * @param from first day that can be reported. prices from from minus the window are read.
+   * @param to   last day that can be reported.
+   */
+  public ExtremeDays(LocalDate from, LocalDate to, List<Period> windows) {
+    this.from = from;
+    first = (int) from.toEpochDay();
+    last = (int) to.toEpochDay();
+    numWindows = windows.size();
+    starts = new LocalDate[numWindows];
+    startDays = new int[numWindows];
+    bounds = new int[numWindows][Math.max(0, last - first + 1)];
+    LocalDate min = from;
+    for (int w = 0; w < numWindows; w++) {
+      Period window = windows.get(w);
+      starts[w] = from.minus(window);
+      startDays[w] = (int) starts[w].toEpochDay();
+      if (starts[w].isBefore(min)) min = starts[w];
+      LocalDate day = from;
+      for (int d = 0; d < bounds[w].length; d++, day = day.plusDays(1)) {
+        bounds[w][d] = (int) day.minus(window).toEpochDay();
+      }
+    }
+    earliest = min;
+  }
+
+  public int getNumWindows() {
+    return numWindows;
+  }
+
+  /**
+   * @param high if true, find days that reach window high. Otherwise, find days that reach
+   *             window low.
+   * @return epoch days in increasing order for each window, in the order of the windows.
+   */
+  public int[][] find(Stock stock, boolean high) {
+    int[][] ret = new int[numWindows][];
+    int fromi = stock.getFirstIAfter(earliest);
+    int toi = stock.getLastIBefore(LocalDate.ofEpochDay(last));
+    if (first >= last || fromi < 0 || toi < 0 || fromi >= toi) {
+      for (int w = 0; w < numWindows; w++) ret[w] = new int[0];
+      return ret;
+    }
+    // blocker[i - fromi] is epoch day of the nearest earlier row whose price is not beaten by
+    // row i, or MIN_VALUE if there is none
+    int n = toi - fromi + 1;
+    int[] blocker = new int[n];
+    int[] stack = new int[n];
+    int top = 0;
+    for (int i = fromi; i <= toi; i++) {
+      double price = high ? stock.getAdjHigh(i) : stock.getAdjLow(i);
+      while (top > 0) {
+        double prev = high ? stock.getAdjHigh(stack[top - 1]) : stock.getAdjLow(stack[top - 1]);
+        if (!Util.distinctDoubles(price, prev) || (high ? price < prev : price > prev)) break;
+        top--;
+      }
+      blocker[i - fromi] = top > 0 ? stock.getEpochDay(stack[top - 1]) : Integer.MIN_VALUE;
+      stack[top++] = i;
+    }
+    int firsti = stock.getFirstIAfter(from);
+    int[] days = new int[n];
+    for (int w = 0; w < numWindows; w++) {
+      int size = 0;
+      int fromw = stock.getFirstIAfter(starts[w]);
+      if (fromw >= 0 && fromw < toi && firsti >= 0) {
+        for (int i = Math.max(firsti, fromw); i <= toi; i++) {
+          int day = stock.getEpochDay(i);
+          int bound = bounds[w][day - first];
+          // only days whose whole window is after the start are reported
+          if (bound > startDays[w] && blocker[i - fromi] < bound) days[size++] = day;
+        }
+      }
+      ret[w] = Arrays.copyOf(days, size);
+    }
+    return ret;
+  }
+}
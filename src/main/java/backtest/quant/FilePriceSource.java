@@ -0,0 +1,138 @@
+package backtest.quant;
+
+import backtest.io.CSVParser;
+import backtest.io.CSVReader;
+import backtest.io.CSVWriter;
+import backtest.struct.Table;
+import backtest.utils.Config;
+import com.google.common.collect.Range;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * prices in csv files laid out like the mysql tables, so a copy of the database can be
+ * carried around without running MySQL:
+ * dir/symbol.csv has columns ticker, first_day, last_day and
+ * dir/daily_price/TICKER.csv has columns Date, Open, High, Low, Close, Adj Close.
+ * use export to write the files from another source.
+ */
+public class FilePriceSource implements PriceSource {
+  private final static Logger logger = LoggerFactory.getLogger(FilePriceSource.class);
+  private static final ArrayList<String> symbolHeader =
+      new ArrayList<>(Arrays.asList("ticker", "first_day", "last_day"));
+  private static final ArrayList<String> priceHeader =
+      new ArrayList<>(Arrays.asList("Date", "Open", "High", "Low", "Close", "Adj Close"));
+  private final String dir;
+  // ticker -> first and last day, in the order of symbol.csv
+  private final Map<String, Range<LocalDate>> dayRanges;
+
+  public FilePriceSource(String dir) {
+    this.dir = dir;
+    dayRanges = new LinkedHashMap<>();
+    Table table = new CSVReader().readTableFromFile(symbolPath(dir));
+    for (int i = 0; i < table.getNumRow(); i++) {
+      dayRanges.put(table.get(i, "ticker"), Range.closed(LocalDate.parse(table.get(i,
+          "first_day")), LocalDate.parse(table.get(i, "last_day"))));
+    }
+    logger.info("{} tickers in {}", dayRanges.size(), dir);
+  }
+
+  private static String symbolPath(String dir) {
+    return dir + File.separator + "symbol.csv";
+  }
+
+  private static String pricePath(String dir, String ticker) {
+    return dir + File.separator + "daily_price" + File.separator + ticker + ".csv";
+  }
+
+  @Override
+  public List<String> getTickers() {
+    return new ArrayList<>(dayRanges.keySet());
+  }
+
+  @Override
+  public Map<String, Range<LocalDate>> getDayRanges() {
+    return new LinkedHashMap<>(dayRanges);
+  }
+
+  @Override
+  public Stock load(String ticker) {
+    Stock stock = new Stock(ticker);
+    if (!dayRanges.containsKey(ticker)) return stock;
+    String path = pricePath(dir, ticker);
+    try {
+      new CSVParser().parse(path, new CSVParser.RowHandler() {
+        private int[] cols;
+
+        @Override
+        public void header(CSVParser.Fields header) {
+          cols = new int[priceHeader.size()];
+          for (int i = 0; i < cols.length; i++) {
+            cols[i] = header.indexOf(priceHeader.get(i));
+            if (cols[i] < 0) throw new IllegalArgumentException("no " + priceHeader.get(i));
+          }
+        }
+
+        @Override
+        public boolean row(CSVParser.Fields row) {
+          stock.append(row.getEpochDay(cols[0]), row.getDouble(cols[1]), row.getDouble(cols[2]),
+              row.getDouble(cols[3]), row.getDouble(cols[4]), row.getDouble(cols[5]));
+          return true;
+        }
+      });
+    } catch (IOException | RuntimeException e) {
+      logger.error("error while reading {}: {}", path, e.toString());
+      return new Stock(ticker);
+    }
+    stock.trim();
+    return stock;
+  }
+
+  /**
+   * write every ticker of source that has prices into dir. existing files are overwritten.
+   */
+  public static void export(PriceSource source, String dir) {
+    File priceDir = new File(pricePath(dir, "x")).getParentFile();
+    if (!priceDir.isDirectory() && !priceDir.mkdirs()) {
+      logger.error("can't create {}", priceDir);
+      return;
+    }
+    List<String> tickers = source.getTickers();
+    Map<String, Range<LocalDate>> ranges = source.getDayRanges();
+    CSVWriter symbols = new CSVWriter(symbolPath(dir), symbolHeader);
+    for (int t = 0; t < tickers.size(); t++) {
+      String ticker = tickers.get(t);
+      Stock stock = source.load(ticker);
+      if (!ranges.containsKey(ticker) || stock.size() == 0) continue;
+      CSVWriter prices = new CSVWriter(pricePath(dir, ticker), priceHeader);
+      for (int i = 0; i < stock.size(); i++) {
+        prices.println(new ArrayList<>(Arrays.asList(stock.getDate(i).toString(),
+            Double.toString(stock.getOpen(i)), Double.toString(stock.getHigh(i)),
+            Double.toString(stock.getLow(i)), Double.toString(stock.getClose(i)),
+            Double.toString(stock.getAdjClose(i)))));
+      }
+      prices.close();
+      symbols.println(new ArrayList<>(Arrays.asList(ticker, stock.getDate(0).toString(),
+          stock.getDate(stock.size() - 1).toString())));
+      logger.info("exported {} of {}: {}", t + 1, tickers.size(), ticker);
+    }
+    symbols.close();
+  }
+
+  /**
+   * copy the mysql database into the given directory (default data/prices).
+   */
+  public static void main(String[] args) {
+    String dir = args.length > 0 ? args[0] : "data/prices";
+    export(new MySQLPriceSource(Config.getInstance().get("database")), dir);
+  }
+}
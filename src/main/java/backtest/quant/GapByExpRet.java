@@ -27,7 +27,6 @@ public class GapByExpRet {
 
   public static void main(String[] args) {
     Stocks stocks = new Stocks();
-    stocks.cacheAllStockQueries();
     ArrayMap<LocalDate, List<Record>> timeFrame = new ArrayMap<>();
     LocalDate from = Cal.getLatestBusinessDayAfter(LocalDate.of(2010, 1, 1));
     LocalDate to = Cal.getLatestBusinessDayBefore(LocalDate.of(2016, 4, 29));
@@ -48,8 +47,10 @@ public class GapByExpRet {
       sum.add(0d);
       count.add(0);
     }
+    Panel panel = new Panel(stocks, sp500, Cal.getPrevBusinessDay(from), to);
     System.out.println("build time frame");
     for (LocalDate date = from; date.isBefore(to); date = Cal.getNextBusinessDay(date)) {
+      int d = panel.dateIndex(date);
       Util.printAtSameLine(date.toString());
       List<Record> recordList = new ArrayList<>();
       spyi = spy.findFrom(date, spyi);
@@ -62,14 +63,12 @@ public class GapByExpRet {
       while (newWindowStart < timeFrame.size()
           && timeFrame.getKey(newWindowStart).isBefore(date.minusYears(1))) newWindowStart++;
       for (int stockIndex = 0; stockIndex < sp500.size(); stockIndex++) {
-        Stock stock = stocks.getStockFromCache(sp500.get(stockIndex));
         Record record = new Record();
-        int dateI = stock.getI(date);
-        if (dateI < 1) {
+        if (d < 0 || !panel.hasPrev(d, stockIndex)) {
           recordList.add(record);
           continue;
         }
-        double gap = stock.getGap(dateI) - spy.getGap(spyi);
+        double gap = panel.getGap(d, stockIndex) - spy.getGap(spyi);
         record.gap = gap;
         if (newWindowStart != windowStart) {
           // move window forward
@@ -84,16 +83,16 @@ public class GapByExpRet {
           }
         }
         if (gap > 0) {
-          record.startPrice = stock.getAdjOpen(dateI);
-          if ((stock.getAdjOpen(dateI) - stock.getAdjLow(dateI)) / stock.getAdjOpen(dateI)
-              > stopLoss) {
-            record.endPrice = stock.getAdjOpen(dateI) * (1 - stopLoss);
-          }  else if ((stock.getAdjHigh(dateI) - stock.getAdjOpen(dateI))/stock.getAdjOpen(dateI) > stopWin) {
-            record.endPrice = stock.getAdjOpen(dateI) * (1 + stopWin);
+          double adjOpen = panel.getAdjOpen(d, stockIndex);
+          record.startPrice = adjOpen;
+          if ((adjOpen - panel.getAdjLow(d, stockIndex)) / adjOpen > stopLoss) {
+            record.endPrice = adjOpen * (1 - stopLoss);
+          }  else if ((panel.getAdjHigh(d, stockIndex) - adjOpen) / adjOpen > stopWin) {
+            record.endPrice = adjOpen * (1 + stopWin);
           } else {
-            record.endPrice = stock.getAdjClose(dateI);
+            record.endPrice = panel.getAdjClose(d, stockIndex);
           }
-          record.endPrice = stock.getAdjClose(dateI);
+          record.endPrice = panel.getAdjClose(d, stockIndex);
           record.todayRet = (record.endPrice - record.startPrice) / record.startPrice;
           int c = count.get(stockIndex);
           record.lastYearAvgRet = c == 0 ? 0 : sum.get(stockIndex) / c;
@@ -160,7 +159,7 @@ public class GapByExpRet {
           System.out.println("  avg ret: " + record.lastYearAvgRet);
         }
         if (valSeries.size()!=0) {
-          System.out.println("total: " + (fund-valSeries.lastValue().toDouble()));
+          System.out.println("total: " + (fund-valSeries.lastValue()));
         }
         valSeries.put(timeFrame.getKey(dateIndex), fund);
       }
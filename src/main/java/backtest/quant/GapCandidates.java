@@ -0,0 +1,180 @@
+package backtest.quant;
+
+import java.util.Arrays;
+
+/**
+ * gap of every ticker of a Panel on every day, computed once for one strategy and sorted
+ * in increasing order of gap within each day. candidates of day d are at
+ * [dayStart[d], dayStart[d + 1]) of the flat arrays, so a parameter sweep only needs two
+ * binary searches per day to find tickers whose gap is in [thresh, ub].
+ */
+class GapCandidates {
+  private final Panel panel;
+  private final BuyOnGap.Strategy strategy;
+  private final int[] dayStart;
+  private final boolean[] marketValid;
+  private final double[] gap;
+  private final int[] ticker;
+  private final double[] open;
+  private final double[] high;
+  private final double[] low;
+  private final double[] close;
+
+  GapCandidates(Panel panel, BuyOnGap.Strategy strategy) {
+    this.panel = panel;
+    this.strategy = strategy;
+    int numDates = panel.numDates();
+    int numTickers = panel.numTickers();
+    int spyt = panel.tickerIndex("SPY");
+    dayStart = new int[numDates + 1];
+    marketValid = new boolean[numDates];
+    int count = 0;
+    for (int d = 0; d < numDates; d++) {
+      marketValid[d] = spyt >= 0 && panel.hasPrev(d, spyt);
+      if (!marketValid[d]) continue;
+      for (int t = 0; t < numTickers; t++) {
+        if (t != spyt && panel.hasPrev(d, t)) count++;
+      }
+    }
+    gap = new double[count];
+    ticker = new int[count];
+    open = new double[count];
+    high = new double[count];
+    low = new double[count];
+    close = new double[count];
+
+    long[] order = new long[numTickers];
+    double[] dayGap = new double[numTickers];
+    double[] sortedGap = new double[numTickers];
+    int[] sortedTicker = new int[numTickers];
+    int k = 0;
+    for (int d = 0; d < numDates; d++) {
+      dayStart[d] = k;
+      if (!marketValid[d]) continue;
+      int n = 0;
+      for (int t = 0; t < numTickers; t++) {
+        if (t == spyt || !panel.hasPrev(d, t)) continue;
+        double g = calcGap(d, t, spyt);
+        if (Double.isNaN(g)) continue;
+        dayGap[t] = g;
+        order[n++] = sortKey(g, t);
+      }
+      Arrays.sort(order, 0, n);
+      for (int j = 0; j < n; j++) {
+        sortedTicker[j] = (int) (order[j] & 0xffffffffL);
+        sortedGap[j] = dayGap[sortedTicker[j]];
+      }
+      // the float key may tie distinct doubles. fix the order on exact values, which is
+      // linear since the array is already nearly sorted.
+      for (int j = 1; j < n; j++) {
+        double g = sortedGap[j];
+        int t = sortedTicker[j];
+        int i = j - 1;
+        for (; i >= 0 && sortedGap[i] > g; i--) {
+          sortedGap[i + 1] = sortedGap[i];
+          sortedTicker[i + 1] = sortedTicker[i];
+        }
+        sortedGap[i + 1] = g;
+        sortedTicker[i + 1] = t;
+      }
+      for (int j = 0; j < n; j++) {
+        int t = sortedTicker[j];
+        gap[k] = sortedGap[j];
+        ticker[k] = t;
+        open[k] = panel.getAdjOpen(d, t);
+        high[k] = panel.getAdjHigh(d, t);
+        low[k] = panel.getAdjLow(d, t);
+        close[k] = panel.getAdjClose(d, t);
+        k++;
+      }
+    }
+    dayStart[numDates] = k;
+  }
+
+  private double calcGap(int d, int t, int spyt) {
+    switch (strategy) {
+      case PARTIAL_GAP_DOWN_ADJUSTED:
+        return panel.getGap(d, t) - panel.getGap(d, spyt);
+      case PARTIAL_GAP_DOWN:
+        return panel.getGap(d, t);
+      case FULL_GAP_DOWN:
+        return panel.getFullGap(d, t);
+      case FULL_GAP_DOWN_ADJUSTED:
+        return panel.getFullGap(d, t) - panel.getFullGap(d, spyt);
+      default:
+        throw new IllegalArgumentException("strategy not implementd");
+    }
+  }
+
+  /**
+   * pack gap and ticker index into one long so a day sorts as a primitive array. the upper
+   * 32 bits are the float bits of gap with negative numbers flipped so that they order
+   * correctly as signed ints.
+   */
+  private static long sortKey(double g, int t) {
+    int bits = Float.floatToIntBits((float) g);
+    bits ^= (bits >> 31) & 0x7fffffff;
+    return ((long) bits << 32) | (t & 0xffffffffL);
+  }
+
+  Panel getPanel() {
+    return panel;
+  }
+
+  /**
+   * @return whether market (SPY) has prices on d and the day before.
+   */
+  boolean isMarketValid(int d) {
+    return marketValid[d];
+  }
+
+  /**
+   * @return first candidate index of day d whose gap >= thresh.
+   */
+  int from(int d, double thresh) {
+    int lo = dayStart[d], hi = dayStart[d + 1];
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (gap[mid] < thresh) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  }
+
+  /**
+   * @return index after the last candidate of day d whose gap <= ub.
+   */
+  int to(int d, double ub) {
+    int lo = dayStart[d], hi = dayStart[d + 1];
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (gap[mid] <= ub) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  }
+
+  double getGap(int k) {
+    return gap[k];
+  }
+
+  int getTicker(int k) {
+    return ticker[k];
+  }
+
+  double getOpen(int k) {
+    return open[k];
+  }
+
+  double getHigh(int k) {
+    return high[k];
+  }
+
+  double getLow(int k) {
+    return low[k];
+  }
+
+  double getClose(int k) {
+    return close[k];
+  }
+}
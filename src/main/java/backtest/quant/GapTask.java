@@ -56,18 +56,14 @@ public class GapTask implements Task {
       logger.error("len > 500. remove: {}", sp500.remove(sp500.size()-1));
     }
 
-    // fetch close price of yesterday.
+    // fetch close price of yesterday, several tickers at a time.
     Map<String, Double> lastClose = new HashMap<>();
     LocalDate lastBizDay = Cal.getPrevBusinessDay(date);
     try (ActiveTick activeTick = new ActiveTick();
          SQLite ohlcDB = new SQLite("ohlc.db")) {
       BarHistory barHistory = new BarHistory(ohlcDB, activeTick, new DayRanges(ohlcDB));
-      for (String ticker : sp500) {
-        Optional<OHLC> optOhlc = barHistory.getOrFetch(ticker, lastBizDay, date);
-        if (optOhlc.isPresent()) {
-          OHLC ohlc = optOhlc.get();
-          lastClose.put(ohlc.ticker, ohlc.close);
-        }
+      for (OHLC ohlc : barHistory.getOrFetch(sp500, lastBizDay, date).values()) {
+        lastClose.put(ohlc.ticker, ohlc.close);
       }
     } catch (ConnectionException e) {
       logger.info("activetick connection failed");
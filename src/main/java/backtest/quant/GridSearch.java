@@ -0,0 +1,111 @@
+package backtest.quant;
+
+import backtest.utils.Leaderboard;
+import backtest.utils.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * evaluates a list of parameter combinations in parallel and keeps the best k results.
+ * evaluation must only read shared state (e.g. a prebuilt Panel) so that workers don't
+ * contend on the database connection of Stocks.
+ *
+ * @param <P> parameters
+ * @param <R> result of one evaluation
+ */
+public class GridSearch<P, R> implements AutoCloseable {
+  private final static Logger logger = LoggerFactory.getLogger(GridSearch.class);
+  private final ExecutorService executor;
+  private final boolean ownExecutor;
+
+  public static final class Trial<P, R> {
+    public final P params;
+    public final R result;
+
+    Trial(P params, R result) {
+      this.params = params;
+      this.result = result;
+    }
+
+    public String toString() {
+      return params.toString();
+    }
+  }
+
+  /**
+   * use one worker per available core.
+   */
+  public GridSearch() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  public GridSearch(int parallelism) {
+    this.executor = new ForkJoinPool(parallelism);
+    this.ownExecutor = true;
+  }
+
+  /**
+   * executor is not shut down by this class.
+   */
+  public GridSearch(ExecutorService executor) {
+    this.executor = executor;
+    this.ownExecutor = false;
+  }
+
+  /**
+   * blocks until every combination is evaluated. a combination whose evaluation throws is
+   * logged and skipped.
+   *
+   * @param score higher is better. NaN scores are dropped.
+   * @param k     number of best trials to keep
+   */
+  public Leaderboard<Trial<P, R>> run(List<P> grid, Function<P, R> evaluate,
+                                      ToDoubleFunction<R> score, int k) {
+    logger.info("grid search over {} combinations", grid.size());
+    Leaderboard<Trial<P, R>> leaderboard = new Leaderboard<>(k);
+    AtomicInteger done = new AtomicInteger();
+    StopWatch watch = new StopWatch();
+    watch.suppressOutput();
+    watch.start();
+    List<Future<?>> futures = new ArrayList<>(grid.size());
+    for (P p : grid) {
+      futures.add(executor.submit(() -> {
+        R r = evaluate.apply(p);
+        if (r != null) leaderboard.offer(new Trial<>(p, r), score.applyAsDouble(r));
+        int n = done.incrementAndGet();
+        if (n % 1000 == 0) logger.info("{} of {} combinations done", n, grid.size());
+      }));
+    }
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        logger.error("evaluation failed", e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        logger.error("interrupted while waiting for grid search");
+        break;
+      }
+    }
+    logger.info("grid search done in {} ms", watch.stop());
+    return leaderboard;
+  }
+
+  /**
+   * shut down the executor if it is created by this class.
+   */
+  @Override
+  public void close() {
+    if (ownExecutor) executor.shutdown();
+  }
+}
@@ -1,8 +1,10 @@
 package backtest.quant;
 
-import backtest.regime.RegimeModel;
+import backtest.regime.IncrementalRegimeModel;
+import backtest.struct.TimeSeries;
 import backtest.utils.Cal;
 import backtest.utils.Canvas;
+import backtest.utils.Config;
 import backtest.utils.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,10 +12,18 @@ import org.slf4j.LoggerFactory;
 
 import java.time.LocalDate;
 
+/**
+ * draws the 12 month high minus low rate since 2013 every business day. the rate is updated
+ * with the new day only, and kept in the file configured as regimeState between runs.
+ */
 public class HighLowTask implements Task {
   private static final Logger logger = LoggerFactory.getLogger(HighLowTask.class);
+  private static final String statePath = Config.getInstance().get("regimeState");
+  private static final int extremeWindowSize = 12;
+  private static final LocalDate from = LocalDate.of(2013, 1, 1);
   private final Stocks stocks;
   private Canvas canvas;
+  private IncrementalRegimeModel model;
 
   public HighLowTask(Stocks stocks) {
     this.stocks = stocks;
@@ -28,14 +38,17 @@ public class HighLowTask implements Task {
     stocks.updateSP500AndSPY();
     Stock spy = stocks.getStockFromDB("SPY");
     canvas = new Canvas();
-    LocalDate from = LocalDate.of(2013, 1, 1);
-    LocalDate today = LocalDate.now();
-    RegimeModel model = new RegimeModel(stocks);
-    model.calcHighMinusLowRate(12, from, today);
-    canvas.addSeries(spy.alignWith(model.highMinusLow));
-    canvas.addSeries(model.highMinusLow.setName("high minus low rate"), 1);
-    canvas.addSeries(model.high, 2);
-    canvas.addSeries(model.low, 3);
+    if (model == null && statePath != null) {
+      model = IncrementalRegimeModel.load(statePath, extremeWindowSize, from);
+    }
+    if (model == null) model = new IncrementalRegimeModel(extremeWindowSize, from);
+    model.update(stocks);
+    if (statePath != null) model.save(statePath);
+    TimeSeries highMinusLow = model.getHighMinusLow();
+    canvas.addSeries(spy.alignWith(highMinusLow));
+    canvas.addSeries(highMinusLow.setName("high minus low rate"), 1);
+    canvas.addSeries(model.getHigh(), 2);
+    canvas.addSeries(model.getLow(), 3);
   }
 
   public String getHtml() {
@@ -0,0 +1,122 @@
+package backtest.quant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+/**
+ * daily prices of every ticker in a binary file dir/TICKER.bin so that startup doesn't
+ * query the database once per ticker. a file is a 16 byte header (magic, version, number of
+ * rows, 0) followed by the columns: int epoch days padded to 8 bytes, then double open, high,
+ * low, close and adj close. files are read through a memory mapping and copied into the
+ * columns of Stock in bulk.
+ * files are written to a temporary file first and moved into place, so a reader never sees
+ * a partial file.
+ */
+public class MappedPriceStore {
+  private final static Logger logger = LoggerFactory.getLogger(MappedPriceStore.class);
+  private static final int magic = 0x42545058; // "BTPX"
+  private static final int version = 1;
+  private static final int headerSize = 16;
+  private final Path dir;
+
+  public MappedPriceStore(String dir) {
+    this.dir = Paths.get(dir);
+  }
+
+  private Path path(String ticker) {
+    return dir.resolve(ticker + ".bin");
+  }
+
+  private static int datesSize(int rows) {
+    return (rows * Integer.BYTES + 7) & ~7;
+  }
+
+  private static int fileSize(int rows) {
+    return headerSize + datesSize(rows) + 5 * rows * Double.BYTES;
+  }
+
+  /**
+   * @param lastDay last day of the ticker in the database. a file ending on another day is
+   *                out of date.
+   * @return null if ticker is not stored, out of date or unreadable.
+   */
+  public Stock read(String ticker, LocalDate lastDay) {
+    Path path = path(ticker);
+    if (!Files.isRegularFile(path)) return null;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.capacity() < headerSize || buffer.getInt(0) != magic
+          || buffer.getInt(4) != version) {
+        logger.error("{} is not a price file", path);
+        return null;
+      }
+      int rows = buffer.getInt(8);
+      if (buffer.capacity() != fileSize(rows)) {
+        logger.error("{} is truncated", path);
+        return null;
+      }
+      int[] dates = new int[rows];
+      buffer.position(headerSize);
+      buffer.slice().asIntBuffer().get(dates);
+      if (rows == 0 || lastDay == null || dates[rows - 1] != lastDay.toEpochDay()) return null;
+      double[][] cols = new double[5][rows];
+      buffer.position(headerSize + datesSize(rows));
+      DoubleBuffer doubles = buffer.slice().asDoubleBuffer();
+      for (double[] col : cols) doubles.get(col);
+      return new Stock(ticker, dates, cols[0], cols[1], cols[2], cols[3], cols[4]);
+    } catch (IOException e) {
+      logger.error("error while reading {}: {}", path, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * replace stored prices of the stock.
+   */
+  public void write(Stock stock) {
+    int rows = stock.size();
+    ByteBuffer buffer = ByteBuffer.allocate(fileSize(rows));
+    buffer.putInt(magic).putInt(version).putInt(rows).putInt(0);
+    for (int i = 0; i < rows; i++) buffer.putInt(stock.getEpochDay(i));
+    buffer.position(headerSize + datesSize(rows));
+    for (int i = 0; i < rows; i++) buffer.putDouble(stock.getOpen(i));
+    for (int i = 0; i < rows; i++) buffer.putDouble(stock.getHigh(i));
+    for (int i = 0; i < rows; i++) buffer.putDouble(stock.getLow(i));
+    for (int i = 0; i < rows; i++) buffer.putDouble(stock.getClose(i));
+    for (int i = 0; i < rows; i++) buffer.putDouble(stock.getAdjClose(i));
+    buffer.flip();
+    Path path = path(stock.getTicker());
+    Path tmp = null;
+    try {
+      Files.createDirectories(dir);
+      tmp = Files.createTempFile(dir, stock.getTicker(), ".tmp");
+      try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) channel.write(buffer);
+      }
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.error("error while writing {}: {}", path, e.getMessage());
+      if (tmp != null) tmp.toFile().delete();
+    }
+  }
+
+  public void delete(String ticker) {
+    try {
+      Files.deleteIfExists(path(ticker));
+    } catch (IOException e) {
+      logger.error("error while deleting {}: {}", path(ticker), e.getMessage());
+    }
+  }
+}
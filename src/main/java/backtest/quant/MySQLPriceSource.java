@@ -0,0 +1,166 @@
+package backtest.quant;
+
+import backtest.io.SQL;
+import backtest.utils.Util;
+import com.google.common.collect.Range;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * prices in the symbol and daily_price tables. see src/main/sql/table-seed.sql.
+ * queries are serialized since they share one connection.
+ */
+public class MySQLPriceSource implements PriceSource {
+  private final static Logger logger = LoggerFactory.getLogger(MySQLPriceSource.class);
+  private final String database;
+  private Connection con;
+
+  public MySQLPriceSource(String database) {
+    this.database = database;
+    con = SQL.getConnection(database);
+  }
+
+  public synchronized void reconnect() {
+    logger.info("reconnect sql connection");
+    SQL.closeConnection(con);
+    con = SQL.getConnection(database);
+  }
+
+  /**
+   * new connection to the same database, e.g. for a writer thread. caller closes it.
+   */
+  public Connection openConnection() {
+    return SQL.getConnection(database);
+  }
+
+  /**
+   * return invalid connection if reconnecting fails
+   */
+  public synchronized Connection getConnection() {
+    try {
+      if (con == null || !con.isValid(5)) reconnect();
+    } catch (SQLException e) {
+      reconnect();
+    }
+    return con;
+  }
+
+  /**
+   * @return f of the shared connection, holding the lock of loads so that f neither waits on
+   * nor breaks a streaming result set.
+   */
+  public synchronized <T> T withConnection(Function<Connection, T> f) {
+    return f.apply(getConnection());
+  }
+
+  public synchronized void useConnection(Consumer<Connection> f) {
+    f.accept(getConnection());
+  }
+
+  @Override
+  public synchronized List<String> getTickers() {
+    return SQL.getStrCol(getConnection(), "select ticker from symbol", "ticker");
+  }
+
+  /**
+   * only get stocks that have not null first_day and last_day
+   * so this function does not get stocks that don't have any price data
+   */
+  @Override
+  public synchronized Map<String, Range<LocalDate>> getDayRanges() {
+    Map<String, Range<LocalDate>> ret = new HashMap<>();
+    String statement = "SELECT ticker, first_day, last_day FROM symbol WHERE first_day IS NOT" +
+        " NULL AND last_day IS NOT NULL";
+    try (Statement st = getConnection().createStatement();
+         ResultSet rs = st.executeQuery(statement)) {
+      while (rs.next()) {
+        ret.put(rs.getString("ticker"), Range.closed(rs.getDate("first_day").toLocalDate(),
+            rs.getDate("last_day").toLocalDate()));
+      }
+    } catch (SQLException e) {
+      logger.error("error in getDayRanges");
+      logger.error(e.getMessage());
+      e.printStackTrace();
+    }
+    return ret;
+  }
+
+  @Override
+  public synchronized Stock load(String ticker) {
+    Stock stock = new Stock(ticker);
+    String statement = "SELECT dp.* FROM daily_price AS dp INNER JOIN symbol AS sym ON dp" +
+        ".symbol_id=sym.id WHERE sym.ticker='" + ticker + "' ORDER BY dp.price_date";
+    try (Statement st = getConnection().createStatement();
+         ResultSet rs = st.executeQuery(statement)) {
+      while (rs.next()) {
+        stock.append(rs.getDate("price_date").toLocalDate(), rs.getDouble("open_price"),
+            rs.getDouble("high_price"), rs.getDouble("low_price"), rs.getDouble("close_price"),
+            rs.getDouble("adj_close_price"));
+      }
+    } catch (SQLException e) {
+      logger.error("error while loading stock: {}", e.getMessage());
+      e.printStackTrace();
+    }
+    stock.trim();
+    return stock;
+  }
+
+  /**
+   * stream prices of all tickers in one query. rows are ordered by symbol so each stock is
+   * filled completely before the next one starts.
+   *
+   * @throws IllegalStateException if the query fails, e.g. the connection drops while
+   *                               streaming, so truncated stocks are never cached.
+   */
+  @Override
+  public synchronized Map<String, Stock> loadAll(Collection<String> tickers) {
+    Map<String, Stock> ret = new HashMap<>();
+    if (tickers.isEmpty()) return ret;
+    String statement = "SELECT sym.ticker, dp.price_date, dp.open_price, dp.high_price, " +
+        "dp.low_price, dp.close_price, dp.adj_close_price FROM daily_price AS dp INNER JOIN " +
+        "symbol AS sym ON dp.symbol_id=sym.id WHERE sym.ticker IN (" +
+        Util.list2sqlStr(new ArrayList<>(tickers)) + ") ORDER BY dp.symbol_id, dp.price_date";
+    logger.info("load {} stocks in one query", tickers.size());
+    int rows = 0;
+    try (Statement st = getConnection().createStatement(ResultSet.TYPE_FORWARD_ONLY,
+        ResultSet.CONCUR_READ_ONLY)) {
+      // tells the mysql driver to stream rows instead of reading the whole result
+      st.setFetchSize(Integer.MIN_VALUE);
+      try (ResultSet rs = st.executeQuery(statement)) {
+        Stock stock = null;
+        while (rs.next()) {
+          String ticker = rs.getString(1);
+          if (stock == null || !stock.getTicker().equals(ticker)) {
+            stock = new Stock(ticker);
+            ret.put(ticker, stock);
+          }
+          stock.append(rs.getDate(2).toLocalDate(), rs.getDouble(3), rs.getDouble(4),
+              rs.getDouble(5), rs.getDouble(6), rs.getDouble(7));
+          rows++;
+        }
+      }
+    } catch (SQLException e) {
+      logger.error("error while loading stocks after {} rows: {}", rows, e.getMessage());
+      throw new IllegalStateException("error while loading stocks", e);
+    }
+    logger.info("loaded {} rows of {} stocks", rows, ret.size());
+    for (Stock stock : ret.values()) stock.trim();
+    for (String ticker : tickers) {
+      if (!ret.containsKey(ticker)) ret.put(ticker, new Stock(ticker));
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,203 @@
+package backtest.quant;
+
+import backtest.utils.Cal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * adjusted prices of a list of tickers aligned onto one business day calendar.
+ * prices are stored as [date][ticker] blocks so that a cross-sectional scan of one day is a
+ * sweep over a contiguous row. a cell is valid only if the stock has a price on that day.
+ * previous day of a cell is the previous business day of the calendar, which is the
+ * previous row of the stock as long as its history has no holes (see Stocks.forwardFill).
+ */
+public class Panel {
+  private final static Logger logger = LoggerFactory.getLogger(Panel.class);
+  private final int[] dates;
+  private final List<String> tickers;
+  private final Map<String, Integer> tickerIndex;
+  private final double[][] adjOpen;
+  private final double[][] adjHigh;
+  private final double[][] adjLow;
+  private final double[][] adjClose;
+  private final boolean[][] valid;
+
+  /**
+   * @param from first calendar day. moved to the next business day if it is not one.
+   * @param to   last calendar day, inclusive.
+   */
+  public Panel(Stocks stocks, List<String> tickers, LocalDate from, LocalDate to) {
+    List<Integer> days = new ArrayList<>();
+    for (LocalDate date = Cal.getLatestBusinessDayAfter(from); !date.isAfter(to);
+         date = Cal.getNextBusinessDay(date)) {
+      days.add((int) date.toEpochDay());
+    }
+    dates = new int[days.size()];
+    for (int d = 0; d < dates.length; d++) dates[d] = days.get(d);
+    this.tickers = new ArrayList<>(tickers);
+    tickerIndex = new HashMap<>();
+    for (int t = 0; t < this.tickers.size(); t++) tickerIndex.put(this.tickers.get(t), t);
+    int numTickers = this.tickers.size();
+    adjOpen = new double[dates.length][numTickers];
+    adjHigh = new double[dates.length][numTickers];
+    adjLow = new double[dates.length][numTickers];
+    adjClose = new double[dates.length][numTickers];
+    valid = new boolean[dates.length][numTickers];
+    for (int d = 0; d < dates.length; d++) {
+      Arrays.fill(adjOpen[d], Double.NaN);
+      Arrays.fill(adjHigh[d], Double.NaN);
+      Arrays.fill(adjLow[d], Double.NaN);
+      Arrays.fill(adjClose[d], Double.NaN);
+    }
+    logger.info("build panel of {} tickers and {} days", numTickers, dates.length);
+    for (int t = 0; t < numTickers; t++) {
+      Stock stock = stocks.getStockFromCache(this.tickers.get(t));
+      if (stock == null || stock.size() == 0 || dates.length == 0) continue;
+      fill(t, stock);
+    }
+  }
+
+  /**
+   * walk rows of stock and calendar days together since both are sorted.
+   */
+  private void fill(int t, Stock stock) {
+    int i = stock.getFirstIAfter(LocalDate.ofEpochDay(dates[0]));
+    if (i < 0) return;
+    int d = 0;
+    while (i < stock.size() && d < dates.length) {
+      int day = stock.getEpochDay(i);
+      if (day < dates[d]) {
+        i++;
+      } else if (day > dates[d]) {
+        d++;
+      } else {
+        adjOpen[d][t] = stock.getAdjOpen(i);
+        adjHigh[d][t] = stock.getAdjHigh(i);
+        adjLow[d][t] = stock.getAdjLow(i);
+        adjClose[d][t] = stock.getAdjClose(i);
+        valid[d][t] = true;
+        i++;
+        d++;
+      }
+    }
+  }
+
+  public int numDates() {
+    return dates.length;
+  }
+
+  public int numTickers() {
+    return tickers.size();
+  }
+
+  public LocalDate getDate(int d) {
+    return LocalDate.ofEpochDay(dates[d]);
+  }
+
+  /**
+   * @return index of date or -1 if date is not a business day in the panel.
+   */
+  public int dateIndex(LocalDate date) {
+    int d = Arrays.binarySearch(dates, (int) date.toEpochDay());
+    return d < 0 ? -1 : d;
+  }
+
+  /**
+   * @return index of first business day that is >= date or -1 if there is none.
+   */
+  public int firstDateIndexFrom(LocalDate date) {
+    int d = Arrays.binarySearch(dates, (int) date.toEpochDay());
+    if (d < 0) d = -d - 1;
+    return d < dates.length ? d : -1;
+  }
+
+  /**
+   * @return -1 if ticker is not in the panel.
+   */
+  public int tickerIndex(String ticker) {
+    return tickerIndex.getOrDefault(ticker, -1);
+  }
+
+  public String getTicker(int t) {
+    return tickers.get(t);
+  }
+
+  public List<String> getTickers() {
+    return tickers;
+  }
+
+  public boolean isValid(int d, int t) {
+    return valid[d][t];
+  }
+
+  /**
+   * @return whether both day d and the business day before it are valid.
+   */
+  public boolean hasPrev(int d, int t) {
+    return d > 0 && valid[d][t] && valid[d - 1][t];
+  }
+
+  public double getAdjOpen(int d, int t) {
+    return adjOpen[d][t];
+  }
+
+  public double getAdjHigh(int d, int t) {
+    return adjHigh[d][t];
+  }
+
+  public double getAdjLow(int d, int t) {
+    return adjLow[d][t];
+  }
+
+  public double getAdjClose(int d, int t) {
+    return adjClose[d][t];
+  }
+
+  /**
+   * rows are shared, not copied. callers must not modify them.
+   */
+  public double[] getAdjOpenRow(int d) {
+    return adjOpen[d];
+  }
+
+  public double[] getAdjHighRow(int d) {
+    return adjHigh[d];
+  }
+
+  public double[] getAdjLowRow(int d) {
+    return adjLow[d];
+  }
+
+  public double[] getAdjCloseRow(int d) {
+    return adjClose[d];
+  }
+
+  public boolean[] getValidRow(int d) {
+    return valid[d];
+  }
+
+  /**
+   * same as Stock.getGap: drop from previous adj close to adj open.
+   */
+  public double getGap(int d, int t) {
+    if (!hasPrev(d, t)) return Double.NaN;
+    double fromPrice = adjClose[d - 1][t];
+    return (fromPrice - adjOpen[d][t]) / fromPrice;
+  }
+
+  /**
+   * same as Stock.getFullGap: drop from previous adj high to adj open.
+   */
+  public double getFullGap(int d, int t) {
+    if (!hasPrev(d, t)) return Double.NaN;
+    double backPrice = adjHigh[d - 1][t];
+    return (backPrice - adjOpen[d][t]) / backPrice;
+  }
+}
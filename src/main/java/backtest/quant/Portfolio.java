@@ -27,7 +27,6 @@ public class Portfolio {
     this.remaining = 0;
     this.stocks = stocks;
     // TODO: provide setter of whether cache all stock queries and update symbols before reassign.
-    stocks.cacheAllStockQueries();
     this.shares = new HashMap<>();
     this.weights = new NumMap<>();
     this.valSeries = new TimeSeries();
@@ -78,10 +77,10 @@ public class Portfolio {
   public TimeSeries ret() {
     TimeSeries series = new TimeSeries();
     double prev = -1;
-    for (Map.Entry<LocalDate, Num> entry : valSeries.entrySet()) {
-      double cur = entry.getValue().toDouble();
+    for (int i = 0; i < valSeries.size(); i++) {
+      double cur = valSeries.getValue(i);
       if (prev > 0) {
-        series.put(entry.getKey(), (cur - prev) / prev);
+        series.put(valSeries.getKey(i), (cur - prev) / prev);
       }
       prev = cur;
     }
@@ -103,7 +102,7 @@ public class Portfolio {
   }
 
   public TimeSeries cumRet() {
-    return valSeries.divide(valSeries.firstValue().toDouble());
+    return valSeries.divide(valSeries.firstValue());
   }
 
   public void plotWithSPY() {
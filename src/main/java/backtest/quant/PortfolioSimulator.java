@@ -0,0 +1,208 @@
+package backtest.quant;
+
+import backtest.struct.TimeSeries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Portfolio over the adj close prices of a Panel. holdings are int shares indexed by the
+ * ticker index of the panel, and target weights are dense double arrays in the same order,
+ * so a day is a sweep over one row of the panel instead of map lookups and binary searches
+ * per holding.
+ * wealth is marked at adj close of every day before rebalancing, as in Portfolio.reassign. a
+ * held stock without a price on a day is marked at its last price.
+ * instances only read the panel, so one panel can be shared by simulators on several
+ * threads.
+ */
+public class PortfolioSimulator {
+  private final static Logger logger = LoggerFactory.getLogger(PortfolioSimulator.class);
+  private final Panel panel;
+  private final double initWealth;
+  private double commissionPerShare;
+  private double minCommission;
+
+  public static class Result {
+    private final int[] days;
+    public final double[] wealth;
+    public final double mean, std, sharpeRatio;
+    // null if wealth never drops
+    public final TimeSeries.Drawdown maxDrawdown;
+    public final double commission;
+    public final int numOrders;
+
+    Result(int[] days, double[] wealth, double mean, double std, TimeSeries.Drawdown maxDrawdown,
+           double commission, int numOrders) {
+      this.days = days;
+      this.wealth = wealth;
+      this.mean = mean;
+      this.std = std;
+      this.sharpeRatio = mean / std;
+      this.maxDrawdown = maxDrawdown;
+      this.commission = commission;
+      this.numOrders = numOrders;
+    }
+
+    public TimeSeries getWealth() {
+      TimeSeries ret = new TimeSeries();
+      for (int i = 0; i < days.length; i++) ret.put(days[i], wealth[i]);
+      return ret;
+    }
+
+    /**
+     * same as Portfolio.cumRet.
+     */
+    public TimeSeries cumRet() {
+      TimeSeries ret = new TimeSeries();
+      for (int i = 0; i < days.length; i++) ret.put(days[i], wealth[i] / wealth[0]);
+      return ret;
+    }
+
+    /**
+     * same as Portfolio.ret.
+     */
+    public TimeSeries ret() {
+      TimeSeries ret = new TimeSeries();
+      for (int i = 1; i < days.length; i++) {
+        if (wealth[i - 1] > 0) ret.put(days[i], (wealth[i] - wealth[i - 1]) / wealth[i - 1]);
+      }
+      return ret;
+    }
+
+    @Override
+    public String toString() {
+      return "sharpe ratio: " + sharpeRatio + ", mean: " + mean + ", std: " + std + ", " +
+          maxDrawdown + ", commission: " + commission + ", orders: " + numOrders;
+    }
+  }
+
+  public PortfolioSimulator(Panel panel, double initWealth) {
+    this.panel = panel;
+    this.initWealth = initWealth;
+  }
+
+  /**
+   * every order that changes shares of a ticker costs max(minCommission, commissionPerShare *
+   * shares), e.g. 0.005 and 1 for ib fixed pricing. free by default.
+   */
+  public PortfolioSimulator setCommission(double commissionPerShare, double minCommission) {
+    this.commissionPerShare = commissionPerShare;
+    this.minCommission = minCommission;
+    return this;
+  }
+
+  /**
+   * hold one weight array on every day from from to to, both inclusive. weights[t] is the
+   * target weight of panel ticker t.
+   */
+  public Result run(LocalDate from, LocalDate to, double[] weights) {
+    return run(from, to, d -> weights);
+  }
+
+  /**
+   * simulate business days of the panel from from to to, both inclusive.
+   *
+   * @param weights gives the target weights of panel day d, indexed by panel ticker. all
+   *                tickers are rebalanced at once when they differ from the last target.
+   *                returning the same array for days with the same target avoids comparing.
+   */
+  public Result run(LocalDate from, LocalDate to, IntFunction<double[]> weights) {
+    int first = panel.firstDateIndexFrom(from);
+    int last = first;
+    while (last >= 0 && last < panel.numDates() && !panel.getDate(last).isAfter(to)) last++;
+    int numDays = first < 0 ? 0 : last - first;
+    int numTickers = panel.numTickers();
+    int[] days = new int[numDays];
+    double[] wealth = new double[numDays];
+    int[] shares = new int[numTickers];
+    double[] lastPrice = new double[numTickers];
+    double[] target = null;
+    double cash = initWealth;
+    double commission = 0;
+    int numOrders = 0;
+    // returns, drawdown and wealth in one pass
+    double sum = 0, squareSum = 0;
+    int numRets = 0;
+    double max = 0, drawdown = 0;
+    int maxI = 0, ddFrom = -1, ddTo = -1;
+    for (int i = 0; i < numDays; i++) {
+      int d = first + i;
+      double[] close = panel.getAdjCloseRow(d);
+      boolean[] valid = panel.getValidRow(d);
+      double value = cash;
+      for (int t = 0; t < numTickers; t++) {
+        if (valid[t]) lastPrice[t] = close[t];
+        if (shares[t] != 0) value += shares[t] * lastPrice[t];
+      }
+      days[i] = (int) panel.getDate(d).toEpochDay();
+      wealth[i] = value;
+      if (i > 0 && wealth[i - 1] > 0) {
+        double ret = (value - wealth[i - 1]) / wealth[i - 1];
+        sum += ret;
+        squareSum += ret * ret;
+        numRets++;
+      }
+      if (i == 0 || value > max) {
+        max = value;
+        maxI = i;
+      }
+      if ((max - value) / max > drawdown) {
+        drawdown = (max - value) / max;
+        ddFrom = maxI;
+        ddTo = i;
+      }
+      double[] next = weights.apply(d);
+      if (next == target || (target != null && Arrays.equals(next, target))) continue;
+      if (!canTrade(next, valid, d)) continue;
+      for (int t = 0; t < numTickers; t++) {
+        int newShares = next[t] == 0 ? 0 : size(value * next[t], lastPrice[t], shares[t]);
+        int delta = newShares - shares[t];
+        if (delta == 0) continue;
+        double fee = fee(delta);
+        cash -= delta * lastPrice[t] + fee;
+        commission += fee;
+        numOrders++;
+        shares[t] = newShares;
+      }
+      target = next;
+    }
+    double mean = numRets == 0 ? Double.NaN : sum / numRets;
+    double std = numRets == 0 ? Double.NaN : Math.sqrt(squareSum / numRets - mean * mean);
+    TimeSeries.Drawdown maxDrawdown = Math.abs(drawdown) < 1e-8 || ddFrom == -1 ? null :
+        new TimeSeries.Drawdown(drawdown, LocalDate.ofEpochDay(days[ddFrom]),
+            LocalDate.ofEpochDay(days[ddTo]));
+    return new Result(days, wealth, mean, std, maxDrawdown, commission, numOrders);
+  }
+
+  private double fee(int delta) {
+    return Math.max(minCommission, commissionPerShare * Math.abs(delta));
+  }
+
+  /**
+   * @return shares of a position worth budget including the commission of the order from held
+   * shares, so buying never takes cash below zero even when minCommission binds.
+   */
+  private int size(double budget, double price, int held) {
+    int ret = (int) (budget / (price + commissionPerShare));
+    if (ret > held && ret * price + fee(ret - held) > budget) {
+      ret = Math.max(held, (int) ((budget - minCommission) / price));
+    }
+    return ret;
+  }
+
+  /**
+   * @return false if a ticker to buy or sell has no price on day d.
+   */
+  private boolean canTrade(double[] next, boolean[] valid, int d) {
+    for (int t = 0; t < next.length; t++) {
+      if (next[t] != 0 && !valid[t]) {
+        logger.error("invalid date {} of {}", panel.getDate(d), panel.getTicker(t));
+        return false;
+      }
+    }
+    return true;
+  }
+}
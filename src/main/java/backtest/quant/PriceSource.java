@@ -0,0 +1,41 @@
+package backtest.quant;
+
+import com.google.common.collect.Range;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * where Stocks reads daily prices from. only MySQLPriceSource can be updated, the others
+ * are read only so backtests can run without a database.
+ */
+public interface PriceSource {
+  /**
+   * @return tickers of SP500 and SPY.
+   */
+  List<String> getTickers();
+
+  /**
+   * @return closed range from first to last day of every ticker that has prices.
+   */
+  Map<String, Range<LocalDate>> getDayRanges();
+
+  /**
+   * @return daily prices of ticker in increasing order of date. empty if ticker has no price.
+   */
+  Stock load(String ticker);
+
+  /**
+   * load many tickers at once. sources that can do it in one round trip should override.
+   *
+   * @return stock of every ticker in tickers, empty if the ticker has no price.
+   */
+  default Map<String, Stock> loadAll(Collection<String> tickers) {
+    Map<String, Stock> ret = new HashMap<>();
+    for (String ticker : tickers) ret.put(ticker, load(ticker));
+    return ret;
+  }
+}
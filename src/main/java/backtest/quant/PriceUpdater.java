@@ -0,0 +1,389 @@
+package backtest.quant;
+
+import backtest.io.CSVReader;
+import backtest.io.SQL;
+import backtest.struct.TypedTable;
+import backtest.struct.TypedTable.Type;
+import backtest.utils.Cal;
+import backtest.utils.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * pulls daily prices from yahoo into daily_price as a pipeline:
+ * 1. fetchers download csv files in parallel.
+ * 2. parsers turn a csv file into columns, forward fill holes and drop rows that are
+ * already in the database.
+ * 3. one writer upserts rows with batched prepared statements.
+ * stages are connected by bounded queues so downloads can't run far ahead of the writer.
+ * if adj close of the last stored day changes, e.g. after a dividend, every row of the
+ * ticker is written again so that adj close of the whole history is updated.
+ */
+public class PriceUpdater {
+  private final static Logger logger = LoggerFactory.getLogger(PriceUpdater.class);
+  private static final String upsert = "INSERT INTO daily_price (symbol_id, price_date, " +
+      "open_price, high_price, low_price, close_price, volume, adj_close_price) VALUES " +
+      "(?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE open_price=VALUES(open_price), " +
+      "high_price=VALUES(high_price), low_price=VALUES(low_price), " +
+      "close_price=VALUES(close_price), volume=VALUES(volume), " +
+      "adj_close_price=VALUES(adj_close_price)";
+  // rows per executeBatch. mysql driver rewrites a batch into one multi row insert
+  private static final int batchSize = 1000;
+  private static final int queueSize = 64;
+  private static final int maxFilled = 75;
+  // columns of a yahoo csv file
+  private static final TypedTable yahoo = new TypedTable(
+      Arrays.asList("Date", "Open", "High", "Low", "Close", "Volume", "Adj Close"),
+      Arrays.asList(Type.DATE, Type.DOUBLE, Type.DOUBLE, Type.DOUBLE, Type.DOUBLE, Type.LONG,
+          Type.DOUBLE));
+  private static final int dateCol = 0, openCol = 1, highCol = 2, lowCol = 3, closeCol = 4,
+      volumeCol = 5, adjCloseCol = 6;
+  private final Connection con;
+  private final Map<String, LocalDate> lastDays;
+  private final int numFetchers;
+  private final int numParsers;
+  private Map<String, Integer> symbolIds;
+  private Map<String, Double> lastAdjCloses;
+
+  /**
+   * @param con      used only by the writer. autocommit is turned off during update.
+   * @param lastDays last stored day of every ticker. only rows after it are written.
+   */
+  public PriceUpdater(Connection con, Map<String, LocalDate> lastDays, int numFetchers) {
+    this.con = con;
+    this.lastDays = lastDays;
+    this.numFetchers = numFetchers;
+    this.numParsers = Math.max(1, Math.min(numFetchers,
+        Runtime.getRuntime().availableProcessors()));
+  }
+
+  /**
+   * counts work done by one stage. busy time is summed over the threads of the stage.
+   */
+  private static class Stage {
+    final String name;
+    final AtomicLong items = new AtomicLong();
+    final AtomicLong rows = new AtomicLong();
+    final AtomicLong busyNanos = new AtomicLong();
+
+    Stage(String name) {
+      this.name = name;
+    }
+
+    void add(long rowCount, long startNanos) {
+      items.incrementAndGet();
+      rows.addAndGet(rowCount);
+      busyNanos.addAndGet(System.nanoTime() - startNanos);
+    }
+
+    void log(long wallNanos) {
+      double wall = wallNanos / 1e9, busy = busyNanos.get() / 1e9;
+      logger.info("{}: {} tickers, {} rows, busy {} s, {} tickers/s, {} rows/s", name,
+          items.get(), rows.get(), String.format("%.1f", busy),
+          String.format("%.1f", items.get() / wall), String.format("%.0f", rows.get() / wall));
+    }
+  }
+
+  /**
+   * daily prices of one ticker in increasing order of date.
+   */
+  private static class Rows {
+    static final Rows end = new Rows("", null);
+    final String ticker;
+    final TypedTable table;
+    int size;
+    int from;
+    int[] dates;
+    double[] open, high, low, close, adjClose;
+    long[] volume;
+
+    Rows(String ticker, TypedTable table) {
+      this.ticker = ticker;
+      this.table = table;
+    }
+  }
+
+  /**
+   * @return tickers whose prices are written.
+   */
+  public List<String> update(List<String> tickers) {
+    logger.info("update price data of {} symbols in total", tickers.size());
+    symbolIds = getSymbolIds();
+    lastAdjCloses = getLastAdjCloses(tickers);
+    BlockingQueue<Rows> fetched = new ArrayBlockingQueue<>(queueSize);
+    BlockingQueue<Rows> parsed = new ArrayBlockingQueue<>(queueSize);
+    Stage fetch = new Stage("fetch"), parse = new Stage("parse"), write = new Stage("write");
+    List<String> written = Collections.synchronizedList(new ArrayList<>());
+    long start = System.nanoTime();
+
+    ExecutorService fetchers = Executors.newFixedThreadPool(numFetchers);
+    for (String ticker : tickers) {
+      fetchers.submit(() -> {
+        long t = System.nanoTime();
+        String url = "http://ichart.finance.yahoo.com/table.csv?s=" + ticker;
+        TypedTable table = new CSVReader().readTableFromUrl(url, yahoo);
+        fetch.add(table.getNumRow(), t);
+        put(fetched, new Rows(ticker, table));
+      });
+    }
+    List<Thread> parsers = new ArrayList<>();
+    for (int i = 0; i < numParsers; i++) {
+      Thread parser = new Thread(() -> {
+        for (Rows rows = take(fetched); rows != Rows.end; rows = take(fetched)) {
+          long t = System.nanoTime();
+          try {
+            if (parse(rows)) {
+              parse.add(rows.size - rows.from, t);
+              put(parsed, rows);
+            }
+          } catch (RuntimeException e) {
+            // skip the ticker and keep draining, otherwise fetchers block on a full queue
+            logger.error("error while parsing prices of {}", rows.ticker, e);
+          }
+        }
+      }, "price-parser-" + i);
+      parser.start();
+      parsers.add(parser);
+    }
+    Thread writer = new Thread(() -> write(parsed, write, written), "price-writer");
+    writer.start();
+
+    try {
+      fetchers.shutdown();
+      fetchers.awaitTermination(1, TimeUnit.DAYS);
+      long fetchEnd = System.nanoTime();
+      for (int i = 0; i < numParsers; i++) fetched.put(Rows.end);
+      for (Thread parser : parsers) parser.join();
+      long parseEnd = System.nanoTime();
+      parsed.put(Rows.end);
+      writer.join();
+      fetch.log(fetchEnd - start);
+      parse.log(parseEnd - start);
+      write.log(System.nanoTime() - start);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.error("interrupted while updating prices");
+      fetchers.shutdownNow();
+    }
+    logger.info("all symbols done. {} of {} updated", written.size(), tickers.size());
+    return new ArrayList<>(written);
+  }
+
+  private static void put(BlockingQueue<Rows> queue, Rows rows) {
+    try {
+      queue.put(rows);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static Rows take(BlockingQueue<Rows> queue) {
+    try {
+      return queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Rows.end;
+    }
+  }
+
+  /**
+   * fill columns of rows from its table, forward fill and find the first row to write.
+   *
+   * @return false if there is nothing to write.
+   */
+  private boolean parse(Rows rows) {
+    TypedTable table = rows.table;
+    String ticker = rows.ticker;
+    if (table.isEmpty()) return false;
+    int n = table.getNumRow();
+    // yahoo lists latest day first
+    table.sortBy(dateCol);
+    // room for forward filled days
+    int capacity = n + maxFilled + 1;
+    rows.dates = new int[capacity];
+    rows.open = new double[capacity];
+    rows.high = new double[capacity];
+    rows.low = new double[capacity];
+    rows.close = new double[capacity];
+    rows.adjClose = new double[capacity];
+    rows.volume = new long[capacity];
+    int size = 0, filled = 0;
+    for (int r = 0; r < n; r++) {
+      int day = table.getEpochDay(r, dateCol);
+      if (size > 0 && day <= rows.dates[size - 1]) continue;
+      // fill every business day missing before this row with the previous row
+      while (size > 0) {
+        int expected = (int) Cal.getNextBusinessDay(LocalDate.ofEpochDay(rows.dates[size -
+            1])).toEpochDay();
+        if (day <= expected) break;
+        if (++filled > maxFilled) {
+          logger.error("{} has too many missing data. please check", ticker);
+          return false;
+        }
+        copyRow(rows, size - 1, size);
+        rows.dates[size++] = expected;
+      }
+      rows.dates[size] = day;
+      rows.open[size] = table.getDouble(r, openCol);
+      rows.high[size] = table.getDouble(r, highCol);
+      rows.low[size] = table.getDouble(r, lowCol);
+      rows.close[size] = table.getDouble(r, closeCol);
+      rows.adjClose[size] = table.getDouble(r, adjCloseCol);
+      rows.volume[size] = table.getLong(r, volumeCol);
+      if (outOfRange(rows, size)) {
+        logger.error("{} has number out of range", ticker);
+        return false;
+      }
+      size++;
+    }
+    rows.size = size;
+    return findFrom(rows);
+  }
+
+  private static void copyRow(Rows rows, int from, int to) {
+    rows.open[to] = rows.open[from];
+    rows.high[to] = rows.high[from];
+    rows.low[to] = rows.low[from];
+    rows.close[to] = rows.close[from];
+    rows.adjClose[to] = rows.adjClose[from];
+    rows.volume[to] = rows.volume[from];
+  }
+
+  /**
+   * all number should fit into decimal(19,4), i.e. at most 15 digits in integer part.
+   */
+  private static boolean outOfRange(Rows rows, int i) {
+    final double max = 1e15;
+    return Math.abs(rows.open[i]) >= max || Math.abs(rows.high[i]) >= max
+        || Math.abs(rows.low[i]) >= max || Math.abs(rows.close[i]) >= max
+        || Math.abs(rows.adjClose[i]) >= max || Math.abs(rows.volume[i]) >= max;
+  }
+
+  /**
+   * set rows.from to the first row after last stored day, or 0 if the ticker is new or adj
+   * close has changed.
+   *
+   * @return false if there is nothing to write.
+   */
+  private boolean findFrom(Rows rows) {
+    LocalDate lastDay = lastDays.get(rows.ticker);
+    if (lastDay == null) {
+      rows.from = 0;
+      return rows.size > 0;
+    }
+    int last = Arrays.binarySearch(rows.dates, 0, rows.size, (int) lastDay.toEpochDay());
+    if (last < 0) {
+      logger.error("lastDayRow not found: ticker: {}, lastDay is {}", rows.ticker, lastDay);
+      return false;
+    }
+    Double prev = lastAdjCloses.get(rows.ticker);
+    if (prev != null && Math.abs(prev - rows.adjClose[last]) > 1e-6) {
+      logger.info("adj close of {} changed. rewrite all rows", rows.ticker);
+      rows.from = 0;
+    } else {
+      rows.from = last + 1;
+    }
+    return rows.from < rows.size;
+  }
+
+  private void write(BlockingQueue<Rows> parsed, Stage stage, List<String> written) {
+    try (PreparedStatement pst = con.prepareStatement(upsert)) {
+      con.setAutoCommit(false);
+      int pending = 0;
+      // tickers whose rows are all in the batch but not committed yet
+      List<String> uncommitted = new ArrayList<>();
+      for (Rows rows = take(parsed); rows != Rows.end; rows = take(parsed)) {
+        long t = System.nanoTime();
+        Integer sid = symbolIds.get(rows.ticker);
+        if (sid == null) {
+          logger.error("{} is not in symbol table", rows.ticker);
+          continue;
+        }
+        for (int i = rows.from; i < rows.size; i++) {
+          pst.setInt(1, sid);
+          pst.setDate(2, Date.valueOf(LocalDate.ofEpochDay(rows.dates[i])));
+          pst.setDouble(3, rows.open[i]);
+          pst.setDouble(4, rows.high[i]);
+          pst.setDouble(5, rows.low[i]);
+          pst.setDouble(6, rows.close[i]);
+          pst.setLong(7, rows.volume[i]);
+          pst.setDouble(8, rows.adjClose[i]);
+          pst.addBatch();
+          if (++pending == batchSize) {
+            pst.executeBatch();
+            con.commit();
+            written.addAll(uncommitted);
+            uncommitted.clear();
+            pending = 0;
+          }
+        }
+        uncommitted.add(rows.ticker);
+        stage.add(rows.size - rows.from, t);
+        if (stage.items.get() % 50 == 0) logger.info("{} tickers written", stage.items.get());
+      }
+      if (pending > 0) pst.executeBatch();
+      con.commit();
+      written.addAll(uncommitted);
+    } catch (SQLException e) {
+      logger.error("error while writing prices");
+      SQL.printError(e);
+      try {
+        con.rollback();
+      } catch (SQLException ignored) {
+      }
+      // drain so parsers are not blocked forever
+      while (take(parsed) != Rows.end) ;
+    } finally {
+      try {
+        con.setAutoCommit(true);
+      } catch (SQLException ignored) {
+      }
+    }
+  }
+
+  private Map<String, Integer> getSymbolIds() {
+    Map<String, Integer> ret = new HashMap<>();
+    try (Statement st = con.createStatement();
+         ResultSet rs = st.executeQuery("SELECT id, ticker FROM symbol")) {
+      while (rs.next()) ret.put(rs.getString("ticker"), rs.getInt("id"));
+    } catch (SQLException e) {
+      logger.error("error while getting symbol ids");
+      SQL.printError(e);
+    }
+    return ret;
+  }
+
+  /**
+   * adj close on last_day of every ticker, in one query.
+   */
+  private Map<String, Double> getLastAdjCloses(List<String> tickers) {
+    Map<String, Double> ret = new HashMap<>();
+    if (tickers.isEmpty()) return ret;
+    String statement = "SELECT sym.ticker, dp.adj_close_price FROM daily_price AS dp INNER " +
+        "JOIN symbol AS sym ON dp.symbol_id=sym.id AND dp.price_date=sym.last_day WHERE sym" +
+        ".ticker IN (" + Util.list2sqlStr(tickers) + ")";
+    try (Statement st = con.createStatement();
+         ResultSet rs = st.executeQuery(statement)) {
+      while (rs.next()) ret.put(rs.getString(1), rs.getDouble(2));
+    } catch (SQLException e) {
+      logger.error("error while getting last adj close");
+      SQL.printError(e);
+    }
+    return ret;
+  }
+}
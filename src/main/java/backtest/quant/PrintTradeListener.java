@@ -0,0 +1,64 @@
+package backtest.quant;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+
+/**
+ * prints every trade and daily total, either to stdout or to a buffered file.
+ * close must be called to flush a file.
+ */
+public class PrintTradeListener implements TradeListener, AutoCloseable {
+  private final PrintStream out;
+  private final boolean ownStream;
+
+  /**
+   * print to stdout.
+   */
+  public PrintTradeListener() {
+    this.out = System.out;
+    this.ownStream = false;
+  }
+
+  public PrintTradeListener(String path) throws FileNotFoundException {
+    this.out = new PrintStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16),
+        false);
+    this.ownStream = true;
+  }
+
+  @Override
+  public void onTrade(LocalDate date, String ticker, int shares, double startPrice,
+                      double endPrice) {
+    out.println(date + ": " + ticker);
+    out.println("  num of share: " + shares);
+    out.println("  start: " + startPrice);
+    out.println("  end: " + endPrice);
+    out.println("  ret+2: " + shares * (endPrice - startPrice));
+  }
+
+  @Override
+  public void onDay(LocalDate date, double total, double dayRet) {
+    if (!Double.isNaN(dayRet)) out.println(date + " total ret: " + dayRet);
+    out.println();
+  }
+
+  @Override
+  public void onMissing(LocalDate date, String what, int count) {
+    if (count == 0) out.println(date + ": no " + what);
+    else out.println(date + ": no " + what + ": " + count);
+  }
+
+  @Override
+  public void onFinish(LocalDate from, LocalDate to, double total) {
+    out.println("total from " + from + " to " + to + " : " + total);
+    out.flush();
+  }
+
+  @Override
+  public void close() {
+    if (ownStream) out.close();
+    else out.flush();
+  }
+}
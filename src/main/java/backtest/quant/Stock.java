@@ -7,95 +7,157 @@ import backtest.utils.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
 import java.time.LocalDate;
 import java.time.Period;
 import java.util.*;
 
+/**
+ * daily prices of one ticker stored column by column. dates are epoch days in increasing
+ * order and every price column is a primitive array of the same length. the adjustment
+ * factor adjClose / close is computed once at load time so adjusted prices don't need
+ * three lookups.
+ */
 public class Stock {
   private final static Logger logger = LoggerFactory.getLogger(Stock.class);
-  private ArrayList<LocalDate> dates;
-  private ArrayList<Double> adjClose;
-  private ArrayList<Double> high;
-  private ArrayList<Double> low;
-  private ArrayList<Double> open;
-  private ArrayList<Double> close;
+  private final static int defaultCapacity = 256;
+  private int[] dates;
+  private double[] adjClose;
+  private double[] high;
+  private double[] low;
+  private double[] open;
+  private double[] close;
+  private double[] adjFactor;
+  private int size;
   private String ticker;
 
   public Stock() {
-    dates = new ArrayList<>();
-    adjClose = new ArrayList<>();
-    high = new ArrayList<>();
-    low = new ArrayList<>();
-    open = new ArrayList<>();
-    close = new ArrayList<>();
+    dates = new int[0];
+    adjClose = new double[0];
+    high = new double[0];
+    low = new double[0];
+    open = new double[0];
+    close = new double[0];
+    adjFactor = new double[0];
+    size = 0;
   }
 
-  public Stock(String ticker, Connection con) {
+  /**
+   * empty stock to be filled by a PriceSource with append and trim.
+   */
+  Stock(String ticker) {
     this();
     this.ticker = ticker;
-    load(con);
-  }
-
-  private void load(Connection con) {
-    String statement = "SELECT dp.* FROM daily_price AS dp INNER JOIN symbol AS sym ON dp" +
-        ".symbol_id=sym.id WHERE sym.ticker='" + ticker + "'";
-    try (Statement st = con.createStatement();
-         ResultSet rs = st.executeQuery(statement)) {
-      while (rs.next()) {
-        dates.add(rs.getDate("price_date").toLocalDate());
-        adjClose.add(rs.getDouble("adj_close_price"));
-        high.add(rs.getDouble("high_price"));
-        low.add(rs.getDouble("low_price"));
-        open.add(rs.getDouble("open_price"));
-        close.add(rs.getDouble("close_price"));
-      }
-    } catch (SQLException e) {
-      logger.error("error while loading stock: {}", e.getMessage());
-      e.printStackTrace();
+  }
+
+  /**
+   * stock of rows already in memory, e.g. generated prices. columns must have the same
+   * length and dates must be increasing epoch days. arrays are not copied.
+   */
+  public Stock(String ticker, int[] dates, double[] open, double[] high, double[] low,
+               double[] close, double[] adjClose) {
+    int n = dates.length;
+    if (open.length != n || high.length != n || low.length != n || close.length != n
+        || adjClose.length != n) {
+      throw new IllegalArgumentException("columns of " + ticker + " differ in length");
     }
+    this.ticker = ticker;
+    this.dates = dates;
+    this.open = open;
+    this.high = high;
+    this.low = low;
+    this.close = close;
+    this.adjClose = adjClose;
+    this.size = n;
+    trim();
+  }
+
+  /**
+   * rows must be appended in increasing order of date. trim must be called after the last
+   * row so that columns are exactly size long.
+   */
+  void append(LocalDate date, double o, double h, double l, double c, double ac) {
+    append((int) date.toEpochDay(), o, h, l, c, ac);
+  }
+
+  void append(int epochDay, double o, double h, double l, double c, double ac) {
+    if (size == dates.length) {
+      int capacity = Math.max(defaultCapacity, size + (size >> 1));
+      dates = Arrays.copyOf(dates, capacity);
+      open = Arrays.copyOf(open, capacity);
+      high = Arrays.copyOf(high, capacity);
+      low = Arrays.copyOf(low, capacity);
+      close = Arrays.copyOf(close, capacity);
+      adjClose = Arrays.copyOf(adjClose, capacity);
+    }
+    dates[size] = epochDay;
+    open[size] = o;
+    high[size] = h;
+    low[size] = l;
+    close[size] = c;
+    adjClose[size] = ac;
+    size++;
+  }
+
+  void trim() {
+    if (dates.length != size) {
+      dates = Arrays.copyOf(dates, size);
+      open = Arrays.copyOf(open, size);
+      high = Arrays.copyOf(high, size);
+      low = Arrays.copyOf(low, size);
+      close = Arrays.copyOf(close, size);
+      adjClose = Arrays.copyOf(adjClose, size);
+    }
+    adjFactor = new double[size];
+    for (int i = 0; i < size; i++) {
+      adjFactor[i] = adjClose[i] / close[i];
+    }
+  }
+
+  public String getTicker() {
+    return ticker;
+  }
+
+  public int size() {
+    return size;
   }
 
   public double adjCloseMovAvg(LocalDate end, int window) {
-    int bound = Collections.binarySearch(dates, end);
+    int bound = getI(end);
     if (bound < 0) return Double.NaN;
-    return Stat.mean(Util.coll2Arr(adjClose, bound - window < 0 ? 0 : bound - window, bound -
-        1));
+    return Stat.mean(Arrays.copyOfRange(adjClose, bound - window < 0 ? 0 : bound - window,
+        bound));
   }
 
   public double getAdjClose(LocalDate day) {
-    int i = Collections.binarySearch(dates, day);
+    int i = getI(day);
     if (i < 0) return Double.NaN;
-    return adjClose.get(i);
+    return adjClose[i];
   }
 
   public double getAdjClose(int i) {
-    return adjClose.get(i);
+    return adjClose[i];
   }
 
   public double getAdjOpen(LocalDate day) {
-    int i = Collections.binarySearch(dates, day);
+    int i = getI(day);
     if (i < 0) return Double.NaN;
     return getAdjOpen(i);
   }
 
   public double getAdjHigh(LocalDate day) {
-    int i = Collections.binarySearch(dates, day);
+    int i = getI(day);
     if (i < 0) return Double.NaN;
-    return adjClose.get(i) / close.get(i) * high.get(i);
+    return getAdjHigh(i);
   }
 
   public LocalDate getFirstDay() {
-    if (dates.isEmpty()) return null;
-    return dates.get(0);
+    if (size == 0) return null;
+    return LocalDate.ofEpochDay(dates[0]);
   }
 
   public LocalDate getLastDay() {
-    if (dates.isEmpty()) return null;
-    return dates.get(dates.size() - 1);
+    if (size == 0) return null;
+    return LocalDate.ofEpochDay(dates[size - 1]);
   }
 
   public double adjOpenRet(LocalDate day, int numDays) {
@@ -108,15 +170,34 @@ public class Stock {
   }
 
   public double getAdjOpen(int i) {
-    return adjClose.get(i) / close.get(i) * open.get(i);
+    return adjFactor[i] * open[i];
   }
 
   public double getAdjHigh(int i) {
-    return adjClose.get(i) / close.get(i) * high.get(i);
+    return adjFactor[i] * high[i];
   }
 
   public double getAdjLow(int i) {
-    return adjClose.get(i) / close.get(i) * low.get(i);
+    return adjFactor[i] * low[i];
+  }
+
+  /**
+   * unadjusted prices as stored by the price source.
+   */
+  public double getOpen(int i) {
+    return open[i];
+  }
+
+  public double getHigh(int i) {
+    return high[i];
+  }
+
+  public double getLow(int i) {
+    return low[i];
+  }
+
+  public double getClose(int i) {
+    return close[i];
   }
 
   /**
@@ -125,14 +206,14 @@ public class Stock {
    * @return list of bear days in order
    */
   public List<LocalDate> getBearDates(LocalDate begin, LocalDate end, double dropRate, int dropPeriod) {
-    int to = Util.indexOfLastEleNoLargerThan(dates, end);
+    int to = getLastIBefore(end);
     int next = -1;
     List<LocalDate> list = new ArrayList<>();
-    for (int i = Util.indexOfFirstEleNoLessThan(dates, begin); i + dropPeriod <= to; i++) {
+    for (int i = getFirstIAfter(begin); i + dropPeriod <= to; i++) {
       for (int j = 1; j <= dropPeriod; j++) {
-        if (ret(adjClose.get(i), adjClose.get(i + j)) < -dropRate) {
+        if (ret(adjClose[i], adjClose[i + j]) < -dropRate) {
           for (int k = Math.max(i, next); k < i + j; k++) {
-            list.add(dates.get(k));
+            list.add(getDate(k));
           }
           next = Math.max(i + j, next);
         }
@@ -144,6 +225,7 @@ public class Stock {
   /**
    * from is adjusted internally to from = from.minus(windowSize). If from or to
    * exceeds available range of days, only available range is checked.
+   * use ExtremeDays directly for many window sizes or many stocks.
    * @param high if true, find days that reach window high. Otherwise, find days that
    *             reach window low
    */
@@ -151,80 +233,49 @@ public class Stock {
                                         boolean high) {
     List<LocalDate> list = new ArrayList<>();
     if (!from.isBefore(to)) return list;
-    from = from.minus(windowSize);
-    int fromi = Util.indexOfFirstEleNoLessThan(dates, from);
-    int toi = Util.indexOfLastEleNoLargerThan(dates, to);
-    if (fromi >= toi || fromi < 0 || toi < 0) return list;
-
-    LinkedList<LocalDate> timeQueue = new LinkedList<>();
-    LinkedList<Double> valQueue = new LinkedList<>();
-    for (int i = fromi; i <= toi; i++) {
-      Double curPrice;
-      if (high) curPrice = getAdjHigh(i);
-      else curPrice = getAdjLow(i);
-      LocalDate curDay = dates.get(i);
-      while (!valQueue.isEmpty() && Util.distinctDoubles(curPrice, valQueue.getLast()) &&
-          curPrice.compareTo(valQueue.getLast()) * (high ? 1 : -1) > 0) {
-        timeQueue.removeLast();
-        valQueue.removeLast();
-      }
-      timeQueue.add(curDay);
-      valQueue.add(curPrice);
-      if (curDay.minus(windowSize).isAfter(from)) {
-        // Remove elements which are out of this window
-        while (!timeQueue.isEmpty() && timeQueue.getFirst().isBefore(curDay.minus(windowSize))) {
-          timeQueue.removeFirst();
-          valQueue.removeFirst();
-        }
-        // The element at the front of the queue is the largest element
-        // could replace below if statement by "if len==1"
-        if (timeQueue.getFirst().isEqual(curDay)) {
-          list.add(curDay);
-//                    System.out.println(curDay);
-        }
-      }
-    }
+    ExtremeDays extremes = new ExtremeDays(from, to, Collections.singletonList(windowSize));
+    for (int day : extremes.find(this, high)[0]) list.add(LocalDate.ofEpochDay(day));
     return list;
   }
 
   public TimeSeries alignWith(TimeSeries series) {
     TimeSeries ret = new TimeSeries(ticker);
-    int from = Util.indexOfFirstEleNoLessThan(dates, series.firstKey());
-    int to = Util.indexOfLastEleNoLargerThan(dates, series.lastKey());
+    int from = getFirstIAfter(series.firstKey());
+    int to = getLastIBefore(series.lastKey());
     for (int i = from; i <= to; i++) {
-      ret.put(dates.get(i), adjClose.get(i));
+      ret.put(getDate(i), adjClose[i]);
     }
     return ret;
   }
 
   public TimeSeries toSeries(LocalDate begin, LocalDate end) {
     TimeSeries ret = new TimeSeries(ticker);
-    int from = Util.indexOfFirstEleNoLessThan(dates, begin);
-    int to = Util.indexOfLastEleNoLargerThan(dates, end);
+    int from = getFirstIAfter(begin);
+    int to = getLastIBefore(end);
     for (int i = from; i <= to; i++) {
-      ret.put(dates.get(i), adjClose.get(i));
+      ret.put(getDate(i), adjClose[i]);
     }
     return ret;
   }
 
   public ArrayList<Double> getAdjOpenList() {
-    ArrayList<Double> list = new ArrayList<>();
-    for (int i = 0; i < adjClose.size(); i++) {
-      list.add(adjClose.get(i) / close.get(i) * open.get(i));
+    ArrayList<Double> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(getAdjOpen(i));
     }
     return list;
   }
 
   public int getI(LocalDate date) {
-    return Collections.binarySearch(dates, date);
+    return Arrays.binarySearch(dates, (int) date.toEpochDay());
   }
 
   public int getFirstIAfter(LocalDate date) {
-    return Util.indexOfFirstEleNoLessThan(dates, date);
+    return Util.indexOfFirstEleNoLessThan(dates, (int) date.toEpochDay());
   }
 
   public int getLastIBefore(LocalDate date) {
-    return Util.indexOfLastEleNoLargerThan(dates, date);
+    return Util.indexOfLastEleNoLargerThan(dates, (int) date.toEpochDay());
   }
 
   public double getGap(int i) {
@@ -243,25 +294,33 @@ public class Stock {
   }
 
   public LocalDate getDate(int i) {
-    return dates.get(i);
+    return LocalDate.ofEpochDay(dates[i]);
+  }
+
+  public int getEpochDay(int i) {
+    return dates[i];
   }
 
+  /**
+   * scan forward from j. dates are increasing so the scan stops at the first later day.
+   */
   public int findFrom(LocalDate date, int j) {
-    for (int i = j; i < dates.size() && i >= 0; i++) {
-      if (dates.get(i).isEqual(date)) return i;
+    int day = (int) date.toEpochDay();
+    for (int i = j; i >= 0 && i < size && dates[i] <= day; i++) {
+      if (dates[i] == day) return i;
     }
     return -1;
   }
 
   public double getRetTo(int i, int back) {
     if (i - back < 0) return Double.NaN;
-    return ret(adjClose.get(i - back), adjClose.get(i));
+    return ret(adjClose[i - back], adjClose[i]);
   }
 
   public double getRet(LocalDate from, LocalDate to) {
     int fromi = getFirstIAfter(from);
     int toi = getLastIBefore(to);
     if (fromi == -1 || toi == -1 || fromi > toi) return Double.NaN;
-    return ret(adjClose.get(fromi), adjClose.get(toi));
+    return ret(adjClose[fromi], adjClose[toi]);
   }
 }
@@ -1,14 +1,14 @@
 package backtest.quant;
 
-import backtest.io.CSVReader;
 import backtest.io.SQL;
-import backtest.io.YahooDataCmp;
-import backtest.struct.Table;
 import backtest.struct.TimeSeries;
 import backtest.utils.*;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Range;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -21,27 +21,85 @@ import java.sql.*;
 import java.time.LocalDate;
 import java.time.Period;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class Stocks {
   private final static Logger logger = LoggerFactory.getLogger(Stocks.class);
   private static String database = Config.getInstance().get("database");
-  private Connection con;
-  private HashMap<String, LocalDate> firstDayMap;
-  private HashMap<String, LocalDate> lastDayMap;
-  private LoadingCache<String, Stock> cache;
-  private boolean cacheDisabled;
+  private static String priceStoreDir = Config.getInstance().get("priceStore");
+  private final PriceSource source;
+  // null if source is read only
+  private final MySQLPriceSource mysql;
+  // default bound of cache. about 260MB at 52 bytes per row
+  private static final long defaultCacheMaxRows = 5_000_000;
+  // parallel downloads of updateTo
+  private static final int numFetchers = 8;
+  // replaced, never modified, so loader threads can read them
+  private volatile HashMap<String, LocalDate> firstDayMap;
+  private volatile HashMap<String, LocalDate> lastDayMap;
+  private final LoadingCache<String, Stock> cache;
+  // loads stocks for getAll and refreshes in the background
+  private final ExecutorService loaderPool;
+  // null if disabled
+  private MappedPriceStore store;
 
+  /**
+   * prices in the configured mysql database. if priceStore is configured, stocks are read
+   * from a MappedPriceStore in that directory whenever it is up to date.
+   */
   public Stocks() {
-    con = SQL.getConnection(database);
+    this(new MySQLPriceSource(database));
+    if (priceStoreDir != null) setPriceStore(new MappedPriceStore(priceStoreDir));
+  }
+
+  /**
+   * only a MySQLPriceSource can be updated and queried by sql. other sources are read only,
+   * e.g. FilePriceSource or SyntheticPriceSource to run without a database.
+   */
+  public Stocks(PriceSource source) {
+    this(source, defaultCacheMaxRows, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param cacheMaxRows stocks are evicted once the cache holds more rows (days) than this
+   * @param parallelism  number of threads loading stocks into cache
+   */
+  public Stocks(PriceSource source, long cacheMaxRows, int parallelism) {
+    this.source = source;
+    this.mysql = source instanceof MySQLPriceSource ? (MySQLPriceSource) source : null;
     getAllStocks();
-    cacheDisabled = true;
+    loaderPool = new ForkJoinPool(parallelism);
+    cache = CacheBuilder.newBuilder()
+        .maximumWeight(cacheMaxRows)
+        .weigher((String ticker, Stock stock) -> Math.max(1, stock.size()))
+        .recordStats()
+        .build(CacheLoader.asyncReloading(new CacheLoader<String, Stock>() {
+          @Override
+          public Stock load(String key) throws Exception {
+            return getStockFromDB(key);
+          }
+
+          @Override
+          public Map<String, Stock> loadAll(Iterable<? extends String> keys) throws Exception {
+            List<String> tickers = new ArrayList<>();
+            keys.forEach(tickers::add);
+            return getStocksFromDB(tickers);
+          }
+        }, loaderPool));
+  }
+
+  /**
+   * read stocks from store before asking the price source and write stocks loaded from the
+   * price source back. updateTo rewrites stocks it updates.
+   */
+  public void setPriceStore(MappedPriceStore store) {
+    this.store = store;
   }
 
   public void reconnect() {
-    logger.info("reconnect Stocks sql connection");
-    SQL.closeConnection(con);
-    con = SQL.getConnection(database);
+    if (mysql != null) mysql.reconnect();
   }
 
   public double getAdjCloseSQL(String ticker, LocalDate day) {
@@ -54,13 +112,17 @@ public class Stocks {
 
   @SuppressWarnings("unused")
   public double getAdjOpenSQL(String ticker, LocalDate day) {
-    return SQL.getDouble(getConnection(), "SELECT dp.open_price*dp.adj_close_price/dp" +
-        ".close_price AS res FROM daily_price AS dp INNER JOIN symbol as sym ON dp" +
-        ".symbol_id = sym.id WHERE sym.ticker='" + ticker + "' AND dp.price_date='" + day
-        + "'", "res");
+    return withConnection(con -> SQL.getDouble(con, "SELECT dp.open_price*dp" +
+        ".adj_close_price/dp.close_price AS res FROM daily_price AS dp INNER JOIN symbol as sym" +
+        " ON dp.symbol_id = sym.id WHERE sym.ticker='" + ticker + "' AND dp.price_date='" + day
+        + "'", "res"));
   }
 
   public void updateTo(List<String> list, LocalDate to) {
+    if (mysql == null) {
+      logger.info("price source is read only so skipping updating.");
+      return;
+    }
     List<String> toUpdate = new ArrayList<>();
     for (String ticker : list) {
       if (!has(ticker) || getLastDay(ticker).isBefore(Cal.getPrevBusinessDay(to))) toUpdate.add(ticker);
@@ -70,10 +132,22 @@ public class Stocks {
       return;
     }
     logger.info("will pull historical data from yahoo for {} stocks", toUpdate.size());
-    if (updateData(toUpdate)) {
-      String str = Util.list2sqlStr(toUpdate);
+    List<String> updated = updateData(toUpdate);
+    if (!updated.isEmpty()) {
+      String str = Util.list2sqlStr(updated);
       updateDayRange(str);
-      recreate();
+      getAllStocks();
+      if (store != null) {
+        logger.info("write {} updated stocks to price store", updated.size());
+        for (String ticker : updated) {
+          Stock stock = source.load(ticker);
+          if (stock.size() > 0) store.write(stock);
+        }
+      }
+      // cached stocks are served until their new version is loaded in background
+      for (String ticker : updated) {
+        if (cache.asMap().containsKey(ticker)) cache.refresh(ticker);
+      }
     }
   }
 
@@ -106,15 +180,13 @@ public class Stocks {
 
   public void recreate() {
     getAllStocks();
-    if (cache != null)
-      cache.invalidateAll();
+    cache.invalidateAll();
   }
 
   /**
    * get stock from cache. if not cached yet, will cache stock requested.
    */
   public Stock getStockFromCache(String ticker) {
-    if (cache == null || cacheDisabled) return getStockFromDB(ticker);
     try {
       return cache.get(ticker);
     } catch (ExecutionException e) {
@@ -124,10 +196,68 @@ public class Stocks {
   }
 
   /**
-   * get stock directly from database. no cache.
+   * get stock directly from price source, or price store if it is up to date. no cache.
    */
   public Stock getStockFromDB(String ticker) {
-    return new Stock(ticker, getConnection());
+    if (store == null) return source.load(ticker);
+    Stock stock = store.read(ticker, getLastDay(ticker));
+    if (stock != null) return stock;
+    stock = source.load(ticker);
+    if (stock.size() > 0) store.write(stock);
+    return stock;
+  }
+
+  /**
+   * same as getStockFromDB for many tickers. price store is read in parallel by the loader
+   * pool. the rest is loaded from mysql in one query or, for other sources, in parallel.
+   */
+  public Map<String, Stock> getStocksFromDB(Collection<String> tickers) {
+    Map<String, Stock> ret = new ConcurrentHashMap<>();
+    List<String> missing = new ArrayList<>(tickers);
+    if (store != null) {
+      inParallel(missing, ticker -> {
+        Stock stock = store.read(ticker, getLastDay(ticker));
+        if (stock != null) ret.put(ticker, stock);
+      });
+      missing.removeAll(ret.keySet());
+      logger.info("{} stocks from price store, {} from price source", ret.size(),
+          missing.size());
+    }
+    Consumer<Stock> put = stock -> {
+      if (store != null && stock.size() > 0) store.write(stock);
+      ret.put(stock.getTicker(), stock);
+    };
+    if (mysql != null) source.loadAll(missing).values().forEach(put);
+    else inParallel(missing, ticker -> put.accept(source.load(ticker)));
+    return ret;
+  }
+
+  /**
+   * run task on every ticker in the loader pool and wait for all of them.
+   */
+  private void inParallel(List<String> tickers, Consumer<String> task) {
+    List<Callable<Void>> tasks = new ArrayList<>(tickers.size());
+    for (String ticker : tickers) {
+      tasks.add(() -> {
+        task.accept(ticker);
+        return null;
+      });
+    }
+    try {
+      for (Future<Void> future : loaderPool.invokeAll(tasks)) future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.error("interrupted while loading stocks");
+    } catch (ExecutionException e) {
+      logger.error("error while loading stocks", e.getCause());
+    }
+  }
+
+  /**
+   * hit, miss, eviction and load time counts of the cache since this instance is created.
+   */
+  public CacheStats getCacheStats() {
+    return cache.stats();
   }
 
   /**
@@ -135,10 +265,10 @@ public class Stocks {
    */
   @SuppressWarnings("unused")
   public double movingAvgSQL(String ticker, String end, int window, String colName) {
-    return SQL.getDouble(getConnection(), "SELECT AVG(dp." + colName + ") AS res FROM " +
-        "daily_price AS dp INNER JOIN symbol AS sym ON dp.symbol_id=sym.id WHERE sym" +
+    return withConnection(con -> SQL.getDouble(con, "SELECT AVG(dp." + colName + ") AS res " +
+        "FROM daily_price AS dp INNER JOIN symbol AS sym ON dp.symbol_id=sym.id WHERE sym" +
         ".ticker='" + ticker + "' AND dp.price_date<'" + end + "' ORDER BY dp.price_date " +
-        "LIMIT " + window, "res");
+        "LIMIT " + window, "res"));
   }
 
   public static List<String> getSP500Online() {
@@ -176,7 +306,7 @@ public class Stocks {
   }
 
   public List<String> getSP500AndSPY() {
-    return SQL.getStrCol(getConnection(), "select ticker from symbol", "ticker");
+    return source.getTickers();
   }
 
   public List<String> getSP500() {
@@ -216,7 +346,7 @@ public class Stocks {
          "WHERE high.max_price<=last.last_price) AS ids " +
       "ON sym.id=ids.id";
     // @formatter:on
-    return SQL.getStrCol(getConnection(), statement, "ticker");
+    return withConnection(con -> SQL.getStrCol(con, statement, "ticker"));
   }
 
   public void updateTo(LocalDate to, String... list) {
@@ -229,6 +359,10 @@ public class Stocks {
   }
 
   public void updateSP500AndSPYTo(LocalDate to) {
+    if (mysql == null) {
+      logger.info("price source is read only so skipping updating.");
+      return;
+    }
     logger.info("start updating price data of SP500");
     List<String> sp500Symbols = getSP500Online();
     sp500Symbols.add("SPY");
@@ -239,329 +373,112 @@ public class Stocks {
   }
 
   /**
-   * get all stocks that are in Yahoo
-   * only get stocks that have not null first_day and last_day
-   * so this function does not get stocks that don't have any price data
+   * get first and last day of all stocks that have price data into memory.
    */
   private void getAllStocks() {
-    logger.info("get all stock summary from db to memory");
+    logger.info("get all stock summary to memory");
     firstDayMap = new HashMap<>();
     lastDayMap = new HashMap<>();
-    String statement = "SELECT ticker, first_day, last_day FROM symbol WHERE first_day IS NOT" +
-        " NULL AND last_day IS NOT NULL";
-    try (Statement st = getConnection().createStatement();
-         ResultSet rs = st.executeQuery(statement)) {
-      while (rs.next()) {
-        String ticker = rs.getString("ticker");
-        LocalDate firstDay = rs.getDate("first_day").toLocalDate();
-        LocalDate lastDay = rs.getDate("last_day").toLocalDate();
-        firstDayMap.put(ticker, firstDay);
-        lastDayMap.put(ticker, lastDay);
-      }
-    } catch (SQLException e) {
-      logger.error("error in getAllStocks");
-      logger.error(e.getMessage());
-      e.printStackTrace();
-    }
-  }
-
-  /**
-   * return invalid connection if reconnecting fails
-   */
-  private Connection getConnection() {
-    try {
-      if (con == null || !con.isValid(5)) reconnect();
-    } catch (SQLException e) {
-      reconnect();
-    }
-    return con;
-  }
-
-  private double getDouble(String ticker, String field, LocalDate day) {
-    return SQL.getDouble(getConnection(), "SELECT dp." + field + " FROM daily_price AS dp " +
-        "INNER JOIN symbol as sym ON dp.symbol_id = sym.id WHERE sym.ticker='" + ticker +
-        "' AND dp.price_date='" + day + "'", field);
-  }
-
-  /**
-   * 1. if does not exist. insert all rows
-   * 2. if already exists, first check if adjusted price changes. if changes, update. then
-   * insert new rows
-   * 3. update stocks instance as well if exist. (to update first and last day in stocks instance)
-   *
-   * @return false if nothing is changed otherwise true
-   */
-  private boolean updateData(List<String> symbols) {
-    logger.info("start updating data");
-    //batchSize is related to max_allowed_packet. need to make allowed packet larger
-    final int batchSize = 500;
-//        YahooDataGetter dataGetter = new YahooDataGetter(10);
-//        dataGetter.start(symbols);
-    List<List<String>> insertTable = new ArrayList<>();
-    List<List<String>> updateTable = new ArrayList<>();
-    logger.info("update price data of {} symbols in total", symbols.size());
-    boolean changed = false;
-    for (int i = 0; i < symbols.size(); i++) {
-      String ticker = symbols.get(i);
-      String url = "http://ichart.finance.yahoo.com/table.csv?s=" + ticker;
-      System.out.print("\33[2K\r" + i + " done. next: " + ticker + ". " + (int)(i/(double)symbols.size()*100) + "%");
-      Table table = new CSVReader().readTableFromUrl(url);
-      table.setName(ticker);
-      //Note that forwardFill check whether there are too many missing data. if so, skip.
-      if (table.isEmpty() || outOfRange(table) || forwardFill(table)) {
-        continue;
-      }
-      changed = true;
-      int sid = SQL.getInt(getConnection(), "SELECT id FROM symbol WHERE ticker='"
-          + ticker + "'", "id");
-      if (isNew(ticker)) {
-        insertTableToLL(insertTable, table, 0, sid);
-      } else {
-        LocalDate lastDay = getLastDay(ticker);
-        int lastDayRow = searchRowIndex(table, lastDay);
-        if (lastDayRow == -1) {
-          logger.error("lastDayRow not found: ticker: {}, sid is {}, lastDay is {}",
-              ticker, sid, lastDay);
-          continue;
-        }
-//                logger.debug("start updating adjusted price and insert new rows of {}, sid is
-// {}, lastDayRow is {}", ticker, sid, lastDayRow);
-        if (adjPricChange(table)) {
-          updateTableToLL(updateTable, table, Arrays.asList("Date", "Adj Close"), 0,
-              lastDayRow, sid);
-        }
-        insertTableToLL(insertTable, table, lastDayRow + 1, sid);
-      }
-      if (insertTable.size() > batchSize) {
-        insertNewTable(insertTable);
-      }
-      if (updateTable.size() > batchSize) {
-        insertUpdateTable(updateTable);
-      }
-    }
-    System.out.println();
-    if (!insertTable.isEmpty()) {
-      insertNewTable(insertTable);
-    }
-    if (!updateTable.isEmpty()) {
-      insertUpdateTable(updateTable);
+    for (Map.Entry<String, Range<LocalDate>> entry : source.getDayRanges().entrySet()) {
+      firstDayMap.put(entry.getKey(), entry.getValue().lowerEndpoint());
+      lastDayMap.put(entry.getKey(), entry.getValue().upperEndpoint());
     }
-    logger.info("all symbols done");
-    return changed;
   }
 
   /**
-   * all number should fit into decimal(19,4).
-   * sql will automatically round number if decimal part has more than 5 digits.
-   * here we consider number as out of range if it has more than 15 digits in integer part.
+   * sql queries and updates need the mysql source. they run under its lock since cache
+   * loads stream result sets through the same connection.
    */
-  private boolean outOfRange(Table table) {
-    for (int i = 0; i < table.getNumRow(); i++) {
-      for (int j = 0; j < table.getNumCol(); j++) {
-        String txt = table.get(i).get(j);
-        if (txt == null) continue;
-        // table given is a mix of string and number
-        // we want all numbers are in the range but don't have constraints on string
-        // try block below is used to ignore all entries that are not number.
-        try {
-          //noinspection ResultOfMethodCallIgnored
-          Double.parseDouble(txt);
-          String[] arr = txt.split("\\.");
-//                    if (arr[0].length() > 15 || (arr.length > 1 && arr[1].length() > 4)) {
-          if (arr[0].length() > 15) {
-            logger.error("{} has number out of range", table.getName());
-            return true;
-          }
-        } catch (NumberFormatException ignored) {
-        }
-      }
-    }
-    return false;
-  }
-
-  private void insertTableToLL(List<List<String>> ll, Table table, int from, int sid) {
-    for (int i = from; i < table.getNumRow(); i++) {
-      List<String> newRow = table.get(i);
-      newRow.add(Integer.toString(sid));
-      ll.add(newRow);
-    }
+  private <T> T withConnection(Function<Connection, T> f) {
+    if (mysql == null) throw new UnsupportedOperationException("price source is not mysql");
+    return mysql.withConnection(f);
   }
 
-  private void updateTableToLL(List<List<String>> ll, Table table, List<String> cols, int from,
-                               int to, int sid) {
-    for (int i = from; i < to; i++) {
-      Map<String, String> row = table.getMap(i);
-      List<String> newRow = new ArrayList<>();
-      for (String col : cols) {
-        newRow.add(row.get(col));
-      }
-      newRow.add(Integer.toString(sid));
-      ll.add(newRow);
-    }
-  }
-
-  private void insertNewTable(List<List<String>> ll) {
-    StringBuilder statement = new StringBuilder("INSERT INTO daily_price (price_date, " +
-        "open_price, high_price, low_price, close_price, volume, adj_close_price, " +
-        "symbol_id) VALUES");
-    batchInsert(statement, ll);
-    SQL.executeUpdate(getConnection(), statement.toString());
-    ll.clear();
-  }
-
-  private void insertUpdateTable(List<List<String>> ll) {
-    SQL.executeUpdate(getConnection(), "CREATE TEMPORARY TABLE IF NOT EXISTS update_tmp " +
-        "(`sid` int NOT NULL, `date` date NOT NULL, `adj_close_price` decimal(19,4) NOT " +
-        "NULL, KEY `index_sym_id` (`sid`), KEY `index_date` (`date`))");
-    SQL.executeUpdate(getConnection(), "TRUNCATE TABLE update_tmp");
-    StringBuilder statement = new StringBuilder("INSERT INTO update_tmp (date, " +
-        "adj_close_price, sid) VALUES");
-    batchInsert(statement, ll);
-    SQL.executeUpdate(getConnection(), statement.toString());
-    ll.clear();
-    SQL.executeUpdate(getConnection(), "UPDATE daily_price AS dp INNER JOIN update_tmp AS tmp" +
-        " ON dp.symbol_id=tmp.sid AND dp.price_date=tmp.date SET dp.adj_close_price=tmp" +
-        ".adj_close_price");
-  }
-
-  private void batchInsert(StringBuilder sb, List<List<String>> ll) {
-    for (int i = 0; i < ll.size(); i++) {
-      List<String> row = ll.get(i);
-      if (row.size() < 2) continue;
-      sb.append(i == 0 ? " ('" : ", ('");
-      sb.append(row.get(0));//date. wrap with quotes
-      sb.append("',");
-      int rowSize = row.size();
-      for (int j = 1; j < rowSize; j++) {
-        sb.append(row.get(j));
-        sb.append(j == rowSize - 1 ? ')' : ',');
-      }
-    }
+  private void useConnection(Consumer<Connection> f) {
+    if (mysql == null) throw new UnsupportedOperationException("price source is not mysql");
+    mysql.useConnection(f);
   }
 
-  private boolean adjPricChange(Table table) {
-    String ticker = table.getName();
-    LocalDate lastDay = getLastDay(ticker);
-    double prev = getAdjCloseSQL(ticker, lastDay);
-    Map<String, String> row = searchRow(table, lastDay);
-    if (row == null) return false;
-    double now = Double.parseDouble(row.get("Adj Close"));
-    return Math.abs(prev - now) > 1e-6;
-  }
-
-  /**
-   * check if a stock is just added into db and waiting for initial data fetching
-   */
-  private boolean isNew(String ticker) {
-    return !has(ticker);
+  private double getDouble(String ticker, String field, LocalDate day) {
+    return withConnection(con -> SQL.getDouble(con, "SELECT dp." + field + " FROM " +
+        "daily_price AS dp INNER JOIN symbol as sym ON dp.symbol_id = sym.id WHERE sym" +
+        ".ticker='" + ticker + "' AND dp.price_date='" + day + "'", field));
   }
 
   /**
-   * forward fill gaps in csv files from yahoo finance
+   * download prices of symbols and write rows after their last day, see PriceUpdater.
+   * price writes use their own connection so reading stocks is not blocked.
    *
-   * @return whether there is too many missing data
+   * @return symbols whose prices changed
    */
-  private boolean forwardFill(Table table) {
-    if (table == null || table.getNumRow() == 0) return true;
-//        logger.info("start forwardfilling {}", table.getName());
-    table.sort(new YahooDataCmp(table.getHeader()));
-    int di = table.getColId("Date");
-    LocalDate prev = LocalDate.parse(table.get(0).get(di));
-    int cnt = 0;
-    for (int i = 1; i < table.getNumRow(); i++) {
-      LocalDate expected = Cal.getNextBusinessDay(prev);
-      LocalDate actual = LocalDate.parse(table.get(i).get(di));
-      //sometimes actual is before expected
-      if (actual.isAfter(expected)) {
-        ArrayList<String> newRow = new ArrayList<>(table.get(i - 1));
-        newRow.set(di, expected.toString());
-        table.insert(i, newRow);
-        cnt++;
-        actual = expected;
-      }
-      prev = actual;
-    }
-    if (cnt > 75) {
-      logger.error("{} has too many missing data. please check", table.getName());
-      return true;
-    }
-    return false;
-  }
-
-  private Map<String, String> searchRow(Table table, LocalDate day) {
-    int i = searchRowIndex(table, day);
-    if (i == -1) return null;
-    return table.getMap(i);
-  }
-
-  private int searchRowIndex(Table table, LocalDate day) {
-    int from = 0, to = table.getNumRow() - 1;
-    int di = table.getColId("Date");
-    while (from <= to) {
-      int mid = (from + to) >>> 1;
-      LocalDate midDay = LocalDate.parse(table.get(mid).get(di));
-      if (midDay.isEqual(day))
-        return mid;
-      else if (midDay.isBefore(day))
-        from = mid + 1;
-      else
-        to = mid - 1;
+  private List<String> updateData(List<String> symbols) {
+    logger.info("start updating data");
+    Connection con = mysql.openConnection();
+    try {
+      return new PriceUpdater(con, lastDayMap, numFetchers).update(symbols);
+    } finally {
+      SQL.closeConnection(con);
     }
-    // not found
-    return -1;
   }
 
   private void updateDayRange(String list) {
     logger.info("start updating stock summary");
     if (list.isEmpty()) return;
-    SQL.executeUpdate(getConnection(), "UPDATE symbol sym INNER JOIN (select dp.symbol_id, " +
-        "MIN(dp.price_date) first_day, MAX(dp.price_date) last_day from daily_price as dp" +
-        " inner join symbol as sym on dp.symbol_id=sym.id where sym.ticker in (" + list +
-        ") group by dp.symbol_id) dr ON sym.id=dr.symbol_id SET sym.first_day=dr" +
-        ".first_day, sym.last_day=dr.last_day");
+    useConnection(con -> SQL.executeUpdate(con, "UPDATE symbol sym INNER JOIN (select dp" +
+        ".symbol_id, MIN(dp.price_date) first_day, MAX(dp.price_date) last_day from " +
+        "daily_price as dp inner join symbol as sym on dp.symbol_id=sym.id where sym.ticker " +
+        "in (" + list + ") group by dp.symbol_id) dr ON sym.id=dr.symbol_id SET sym" +
+        ".first_day=dr.first_day, sym.last_day=dr.last_day"));
   }
 
   private void delistSymbols(List<String> validSymbols) {
     logger.info("check symbols that are delisted");
-    List<String> preSymbols = SQL.getStrCol(getConnection(), "SELECT ticker FROM symbol", "ticker");
     Set<String> validSet = new HashSet<>(validSymbols);
-    //if foreign key is removed. will also need to delete data from daily_price
-    try (PreparedStatement pst = getConnection().prepareStatement("DELETE FROM symbol WHERE " +
-        "ticker=?")) {
-      getConnection().setAutoCommit(false);
-      for (String symbol : preSymbols) {
-        if (!validSet.contains(symbol)) {
-          logger.info("delist {}", symbol);
-          pst.setString(1, symbol);
-          pst.addBatch();
+    // autocommit is off only while holding the lock, so loads never see it
+    useConnection(con -> {
+      List<String> preSymbols = SQL.getStrCol(con, "SELECT ticker FROM symbol", "ticker");
+      //if foreign key is removed. will also need to delete data from daily_price
+      try (PreparedStatement pst = con.prepareStatement("DELETE FROM symbol WHERE ticker=?")) {
+        con.setAutoCommit(false);
+        try {
+          for (String symbol : preSymbols) {
+            if (!validSet.contains(symbol)) {
+              logger.info("delist {}", symbol);
+              pst.setString(1, symbol);
+              pst.addBatch();
+            }
+          }
+          pst.executeBatch();
+          con.commit();
+        } catch (SQLException e) {
+          con.rollback();
+          throw e;
+        } finally {
+          con.setAutoCommit(true);
         }
+      } catch (SQLException e) {
+        logger.error("error when delist symbols");
+        SQL.printError(e);
       }
-      pst.executeBatch();
-      getConnection().commit();
-      getConnection().setAutoCommit(true);
-    } catch (SQLException e) {
-      logger.error("error when delist symbols");
-      SQL.printError(e);
-    }
+    });
   }
 
   private void insertSymbols(List<String> symbols) {
     logger.debug("inserting {} symbols", symbols.size());
-    try (PreparedStatement pst = getConnection().prepareStatement("INSERT INTO symbol " +
-        "(ticker) VALUES(?) ON DUPLICATE KEY UPDATE id=id")) {
-//            getConnection().setAutoCommit(false);
-      for (String symbol : symbols) {
-        if (!Util.onlyLetter(symbol)) continue;
-        pst.setString(1, symbol);
-        pst.addBatch();
+    useConnection(con -> {
+      try (PreparedStatement pst = con.prepareStatement("INSERT INTO symbol (ticker) VALUES(?)" +
+          " ON DUPLICATE KEY UPDATE id=id")) {
+        for (String symbol : symbols) {
+          if (!Util.onlyLetter(symbol)) continue;
+          pst.setString(1, symbol);
+          pst.addBatch();
+        }
+        pst.executeBatch();
+      } catch (SQLException e) {
+        logger.error("sql error when insert symbols");
+        SQL.printError(e);
       }
-      pst.executeBatch();
-//            getConnection().commit();
-//            getConnection().setAutoCommit(true);
-    } catch (SQLException e) {
-      logger.error("sql error when insert symbols");
-      SQL.printError(e);
-    }
+    });
   }
 
   public TimeSeries getValidStockNumSeries(List<String> tickers, LocalDate from,
@@ -575,8 +492,8 @@ public class Stocks {
         System.out.println("stop");
         return ret;
       }
-      for (Map.Entry<LocalDate, Num> entry : ret.entrySet()) {
-        if (entry.getKey().isBefore(firstDay)) entry.setValue(new Num(entry.getValue().toDouble() - 1));
+      for (int i = 0; i < ret.size(); i++) {
+        if (ret.getKey(i).isBefore(firstDay)) ret.setValue(i, ret.getValue(i) - 1);
         else break;
       }
     }
@@ -616,23 +533,17 @@ public class Stocks {
 //    Util.printColl(stocks.get52WeekHigh(LocalDate.now()));
   }
 
-  public void cacheAllStockQueries() {
-    if (cache == null) {
-      cache = CacheBuilder.newBuilder().build(new CacheLoader<String, Stock>() {
-        @Override
-        public Stock load(String key) throws Exception {
-          return getStockFromDB(key);
-        }
-      });
-      cacheDisabled = false;
-    }
-  }
-
+  /**
+   * cache every stock of list. stocks not cached yet are loaded together, see
+   * getStocksFromDB.
+   */
   public void load(List<String> list) {
-    for (int i = 0; i<list.size(); i++) {
-      System.out.print("\33[2K\rloading " + list.get(i) + " from db " + (int)(i/(double)list.size()*100) + "%");
-      getStockFromCache(list.get(i));
+    try {
+      cache.getAll(list);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      logger.error("error while loading stocks: {}", e.getMessage());
+      e.printStackTrace();
     }
-    System.out.println();
+    logger.info("cache: {}", cache.stats());
   }
 }
\ No newline at end of file
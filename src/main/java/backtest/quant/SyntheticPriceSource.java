@@ -0,0 +1,118 @@
+package backtest.quant;
+
+import backtest.utils.Cal;
+import com.google.common.collect.Range;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * random stocks so that backtests and benchmarks run without a database. close follows a
+ * geometric brownian motion on business days and open gaps away from the previous close,
+ * now and then down by several percent, so gap strategies find candidates and trade on most
+ * days. every ticker has its own random generator derived from seed, so a ticker always gets
+ * the same prices no matter which tickers are loaded before it.
+ */
+public class SyntheticPriceSource implements PriceSource {
+  private static final double gapProb = 0.03;
+  private final long seed;
+  private final int[] dates;
+  private final List<String> tickers;
+  private final Map<String, Integer> tickerIndex;
+
+  /**
+   * @param numTickers number of stocks besides SPY
+   */
+  public SyntheticPriceSource(int numTickers, LocalDate from, LocalDate to, long seed) {
+    this.seed = seed;
+    List<Integer> days = new ArrayList<>();
+    for (LocalDate day = Cal.getLatestBusinessDayAfter(from); !day.isAfter(to);
+         day = Cal.getNextBusinessDay(day)) {
+      days.add((int) day.toEpochDay());
+    }
+    dates = new int[days.size()];
+    for (int i = 0; i < dates.length; i++) dates[i] = days.get(i);
+    tickers = new ArrayList<>(numTickers + 1);
+    tickerIndex = new HashMap<>();
+    for (int t = 0; t < numTickers; t++) {
+      tickers.add(ticker(t));
+      tickerIndex.put(ticker(t), t);
+    }
+    tickers.add("SPY");
+    tickerIndex.put("SPY", numTickers);
+  }
+
+  /**
+   * years of prices up to the last business day before today.
+   */
+  public SyntheticPriceSource(int numTickers, int years, long seed) {
+    this(numTickers, Cal.getLatestBusinessDayBefore(LocalDate.now()).minusYears(years),
+        Cal.getLatestBusinessDayBefore(LocalDate.now()), seed);
+  }
+
+  /**
+   * letters only, like real tickers: A, B, ..., Z, AA, AB, ...
+   */
+  static String ticker(int t) {
+    StringBuilder sb = new StringBuilder();
+    for (t++; t > 0; t = (t - 1) / 26) sb.append((char) ('A' + (t - 1) % 26));
+    return sb.reverse().toString();
+  }
+
+  @Override
+  public List<String> getTickers() {
+    return new ArrayList<>(tickers);
+  }
+
+  @Override
+  public Map<String, Range<LocalDate>> getDayRanges() {
+    Map<String, Range<LocalDate>> ret = new LinkedHashMap<>();
+    if (dates.length == 0) return ret;
+    Range<LocalDate> range = Range.closed(LocalDate.ofEpochDay(dates[0]),
+        LocalDate.ofEpochDay(dates[dates.length - 1]));
+    for (String ticker : tickers) ret.put(ticker, range);
+    return ret;
+  }
+
+  @Override
+  public Stock load(String ticker) {
+    Integer t = tickerIndex.get(ticker);
+    if (t == null) return new Stock(ticker);
+    Random random = new Random(seed * 31 + t);
+    if (ticker.equals("SPY")) return generate(ticker, 120, 0.0003, 0.008, random);
+    double drift = 0.0002 + 0.0004 * random.nextGaussian();
+    double vol = 0.01 + 0.015 * random.nextDouble();
+    return generate(ticker, 20 + 180 * random.nextDouble(), drift, vol, random);
+  }
+
+  private Stock generate(String ticker, double price, double drift, double vol,
+                         Random random) {
+    int n = dates.length;
+    double[] open = new double[n];
+    double[] high = new double[n];
+    double[] low = new double[n];
+    double[] close = new double[n];
+    double[] adjClose = new double[n];
+    // dividends make adj close drift below close going back in time
+    double dividend = 0.02 * random.nextDouble() / 252;
+    double prevClose = price;
+    for (int i = 0; i < n; i++) {
+      double gap = 0.2 * vol * random.nextGaussian();
+      if (random.nextDouble() < gapProb) gap -= 0.02 + 0.08 * random.nextDouble();
+      open[i] = prevClose * Math.exp(gap);
+      // large gaps partly fill during the day as the strategies assume
+      double fill = gap < -vol ? -0.4 * gap : 0;
+      close[i] = open[i] * Math.exp(fill + drift - 0.5 * vol * vol + vol * random.nextGaussian());
+      high[i] = Math.max(open[i], close[i]) * (1 + 0.5 * vol * Math.abs(random.nextGaussian()));
+      low[i] = Math.min(open[i], close[i]) * (1 - 0.5 * vol * Math.abs(random.nextGaussian()));
+      adjClose[i] = close[i] * Math.exp(-dividend * (n - 1 - i));
+      prevClose = close[i];
+    }
+    return new Stock(ticker, dates.clone(), open, high, low, close, adjClose);
+  }
+}
@@ -0,0 +1,36 @@
+package backtest.quant;
+
+import java.time.LocalDate;
+
+/**
+ * receives events of a backtest run. every method defaults to doing nothing so that
+ * parameter sweeps pay no cost for tracing. see PrintTradeListener for the verbose trace.
+ */
+public interface TradeListener {
+  TradeListener QUIET = new TradeListener() {
+  };
+
+  /**
+   * @param shares number of shares bought at startPrice and sold at endPrice. commission is
+   *               not included.
+   */
+  default void onTrade(LocalDate date, String ticker, int shares, double startPrice,
+                       double endPrice) {
+  }
+
+  /**
+   * @param dayRet change of total since the previous day. NaN on the first day.
+   */
+  default void onDay(LocalDate date, double total, double dayRet) {
+  }
+
+  /**
+   * @param what  which data is missing
+   * @param count number of tickers missing it. 0 means the whole day is skipped.
+   */
+  default void onMissing(LocalDate date, String what, int count) {
+  }
+
+  default void onFinish(LocalDate from, LocalDate to, double total) {
+  }
+}
@@ -0,0 +1,121 @@
+package backtest.regime;
+
+import backtest.quant.ExtremeDays;
+import backtest.quant.Stock;
+import backtest.struct.TimeSeries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * number of stocks at a window high and at a window low on every day, for each window of an
+ * ExtremeDays. stocks are spread over worker threads that take the next ticker when they are
+ * done with one. every worker counts into its own int arrays indexed by day, and the arrays
+ * are summed once all workers finish, so nothing is shared while counting.
+ */
+public class Breadth {
+  private final static Logger logger = LoggerFactory.getLogger(Breadth.class);
+  // epoch day of index 0 of the counts
+  private final int first;
+  private final int[][] highs;
+  private final int[][] lows;
+
+  private Breadth(int first, int numWindows, int numDays) {
+    this.first = first;
+    highs = new int[numWindows][numDays];
+    lows = new int[numWindows][numDays];
+  }
+
+  /**
+   * @param stocks      gives the stock of a ticker. called from the worker threads.
+   * @param parallelism number of worker threads. 1 counts in the calling thread.
+   */
+  public static Breadth count(List<String> tickers, Function<String, Stock> stocks,
+                              ExtremeDays extremes, LocalDate from, LocalDate to,
+                              int parallelism) {
+    int first = (int) from.toEpochDay();
+    int numDays = Math.max(0, (int) to.toEpochDay() - first + 1);
+    int numWindows = extremes.getNumWindows();
+    AtomicInteger next = new AtomicInteger();
+    Callable<Breadth> worker = () -> {
+      Breadth counts = new Breadth(first, numWindows, numDays);
+      for (int t = next.getAndIncrement(); t < tickers.size(); t = next.getAndIncrement()) {
+        Stock stock = stocks.apply(tickers.get(t));
+        counts.add(extremes.find(stock, true), counts.highs);
+        counts.add(extremes.find(stock, false), counts.lows);
+      }
+      return counts;
+    };
+    int numWorkers = Math.max(1, Math.min(parallelism, tickers.size()));
+    if (numWorkers == 1) {
+      try {
+        return worker.call();
+      } catch (Exception e) {
+        throw new IllegalStateException("error while counting highs and lows", e);
+      }
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(numWorkers);
+    try {
+      List<Callable<Breadth>> workers = new ArrayList<>();
+      for (int i = 0; i < numWorkers; i++) workers.add(worker);
+      Breadth ret = new Breadth(first, numWindows, numDays);
+      for (Future<Breadth> future : pool.invokeAll(workers)) ret.merge(future.get());
+      return ret;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while counting highs and lows");
+    } catch (ExecutionException e) {
+      logger.error("error while counting highs and lows", e.getCause());
+      throw new IllegalStateException("error while counting highs and lows", e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private void add(int[][] days, int[][] counts) {
+    for (int w = 0; w < days.length; w++) {
+      for (int day : days[w]) counts[w][day - first]++;
+    }
+  }
+
+  private void merge(Breadth that) {
+    for (int w = 0; w < highs.length; w++) {
+      for (int d = 0; d < highs[w].length; d++) {
+        highs[w][d] += that.highs[w][d];
+        lows[w][d] += that.lows[w][d];
+      }
+    }
+  }
+
+  /**
+   * @return number of stocks at a high of window w on days where it is not 0.
+   */
+  public TimeSeries getHigh(int w) {
+    return toSeries(highs[w], 1).setName("high");
+  }
+
+  /**
+   * @return minus number of stocks at a low of window w on days where it is not 0.
+   */
+  public TimeSeries getLow(int w) {
+    return toSeries(lows[w], -1).setName("low");
+  }
+
+  private TimeSeries toSeries(int[] counts, double sign) {
+    TimeSeries ret = new TimeSeries();
+    for (int d = 0; d < counts.length; d++) {
+      if (counts[d] != 0) ret.put(first + d, sign * counts[d]);
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,408 @@
+package backtest.regime;
+
+import backtest.quant.Stock;
+import backtest.quant.Stocks;
+import backtest.struct.TimeSeries;
+import backtest.utils.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * high, low and high minus low rate of RegimeModel.calcHighMinusLowRate kept up to date one
+ * day at a time. every ticker keeps the rolling window of Stock.getExtremeDays as two
+ * monotonic deques, so new daily bars only go through the deques of their ticker and a day
+ * costs O(tickers) instead of a scan of the whole history.
+ * everything is recomputed from scratch only when adjusted prices of a ticker already seen
+ * change, e.g. after a dividend, or when the set of tickers changes.
+ * state can be saved to a file and loaded in the next run.
+ */
+public class IncrementalRegimeModel {
+  private static final Logger logger = LoggerFactory.getLogger(IncrementalRegimeModel.class);
+  private static final int magic = 0x42545247; // "BTRG"
+  private static final int version = 1;
+  private final int extremeWindowSize;
+  private final Period window;
+  // first day of the series and that day minus window, as epoch days
+  private final int from;
+  private final int start;
+  private final Map<String, TickerState> states = new HashMap<>();
+  // number of stocks at a high and at a low by day from from
+  private int[] highCounts = new int[0];
+  private int[] lowCounts = new int[0];
+  // bounds[d] is epoch day of (from + d) minus window
+  private int[] bounds = new int[0];
+  // first days of all tickers in increasing order, for number of valid stocks
+  private int[] firstDays = new int[0];
+  private int lastDay = Integer.MIN_VALUE;
+
+  /**
+   * @param extremeWindowSize unit: month, as in RegimeModel.
+   */
+  public IncrementalRegimeModel(int extremeWindowSize, LocalDate from) {
+    this.extremeWindowSize = extremeWindowSize;
+    window = Period.ofMonths(extremeWindowSize);
+    this.from = (int) from.toEpochDay();
+    start = (int) from.minus(window).toEpochDay();
+  }
+
+  /**
+   * prices in the window that may still become the extreme, as a deque over arrays. prices
+   * decrease from head to tail for highs and increase for lows.
+   */
+  private static class Deque {
+    int[] days = new int[16];
+    double[] prices = new double[16];
+    int head, size;
+
+    int day(int k) {
+      return days[(head + k) % days.length];
+    }
+
+    double price(int k) {
+      return prices[(head + k) % prices.length];
+    }
+
+    void push(int day, double price, boolean high) {
+      while (size > 0) {
+        double last = price(size - 1);
+        if (!Util.distinctDoubles(price, last) || (high ? price < last : price > last)) break;
+        size--;
+      }
+      if (size == days.length) {
+        int[] d = new int[size * 2];
+        double[] p = new double[size * 2];
+        for (int k = 0; k < size; k++) {
+          d[k] = day(k);
+          p[k] = price(k);
+        }
+        days = d;
+        prices = p;
+        head = 0;
+      }
+      days[(head + size) % days.length] = day;
+      prices[(head + size) % prices.length] = price;
+      size++;
+    }
+
+    /**
+     * drop days before bound.
+     */
+    void trim(int bound) {
+      while (size > 0 && day(0) < bound) {
+        head = (head + 1) % days.length;
+        size--;
+      }
+    }
+  }
+
+  private static class TickerState {
+    final Deque high = new Deque(), low = new Deque();
+    int firstDay;
+    // last day pushed into the deques and its adj close, to detect adjustments
+    int lastDay = Integer.MIN_VALUE;
+    double lastAdjClose;
+  }
+
+  public int getExtremeWindowSize() {
+    return extremeWindowSize;
+  }
+
+  /**
+   * @return last day of the series, null if nothing is computed yet.
+   */
+  public LocalDate getLastDay() {
+    return lastDay == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(lastDay);
+  }
+
+  /**
+   * update with the stocks of the s&p 500 in the cache of stocks, bulk loading missing ones.
+   */
+  public TimeSeries update(Stocks stocks) {
+    List<String> sp500 = stocks.getSP500();
+    stocks.load(sp500);
+    return update(sp500, stocks::getStockFromCache);
+  }
+
+  /**
+   * push rows of every ticker after its last seen day.
+   *
+   * @return points of high minus low rate that are new, i.e. from the last day before the
+   * update, the whole series after a full recompute.
+   */
+  public TimeSeries update(List<String> tickers, Function<String, Stock> stocks) {
+    int before = lastDay;
+    boolean full = !states.keySet().equals(new HashSet<>(tickers));
+    Map<String, Stock> loaded = new HashMap<>();
+    for (String ticker : tickers) {
+      Stock stock = stocks.apply(ticker);
+      loaded.put(ticker, stock);
+      TickerState state = states.get(ticker);
+      if (full || state == null) continue;
+      boolean empty = stock == null || stock.size() == 0;
+      if ((empty ? Integer.MAX_VALUE : stock.getEpochDay(0)) != state.firstDay) {
+        full = true;
+      } else if (!empty && state.lastDay != Integer.MIN_VALUE) {
+        int i = stock.getI(LocalDate.ofEpochDay(state.lastDay));
+        if (i < 0 || Util.distinctDoubles(stock.getAdjClose(i), state.lastAdjClose, 1e-6)) {
+          logger.info("prices of {} changed. recompute", ticker);
+          full = true;
+        }
+      }
+    }
+    if (full) reset();
+    for (Map.Entry<String, Stock> entry : loaded.entrySet()) {
+      Stock stock = entry.getValue();
+      boolean empty = stock == null || stock.size() == 0;
+      TickerState state = states.get(entry.getKey());
+      if (state == null) {
+        state = new TickerState();
+        // a ticker without prices is never valid
+        state.firstDay = empty ? Integer.MAX_VALUE : stock.getEpochDay(0);
+        states.put(entry.getKey(), state);
+        addFirstDay(state.firstDay);
+      }
+      if (!empty) push(state, stock);
+    }
+    if (full) before = Integer.MIN_VALUE;
+    logger.info("{} high minus low rate to {}", full ? "recomputed" : "updated", getLastDay());
+    return getHighMinusLow(before);
+  }
+
+  private void reset() {
+    states.clear();
+    highCounts = new int[0];
+    lowCounts = new int[0];
+    firstDays = new int[0];
+    lastDay = Integer.MIN_VALUE;
+  }
+
+  private void addFirstDay(int day) {
+    int i = Arrays.binarySearch(firstDays, day);
+    if (i < 0) i = -i - 1;
+    int[] arr = new int[firstDays.length + 1];
+    System.arraycopy(firstDays, 0, arr, 0, i);
+    arr[i] = day;
+    System.arraycopy(firstDays, i, arr, i + 1, firstDays.length - i);
+    firstDays = arr;
+  }
+
+  private void push(TickerState state, Stock stock) {
+    int i = state.lastDay == Integer.MIN_VALUE ? 0
+        : stock.getI(LocalDate.ofEpochDay(state.lastDay)) + 1;
+    for (; i < stock.size(); i++) {
+      int day = stock.getEpochDay(i);
+      if (day < start) continue;
+      state.high.push(day, stock.getAdjHigh(i), true);
+      state.low.push(day, stock.getAdjLow(i), false);
+      state.lastDay = day;
+      state.lastAdjClose = stock.getAdjClose(i);
+      if (day < from) continue;
+      int bound = bound(day);
+      // only days whose whole window is after the start count, as in Stock.getExtremeDays
+      if (bound <= start) continue;
+      state.high.trim(bound);
+      state.low.trim(bound);
+      if (state.high.day(0) == day) highCounts[day - from]++;
+      if (state.low.day(0) == day) lowCounts[day - from]++;
+    }
+    if (state.lastDay > lastDay) lastDay = state.lastDay;
+  }
+
+  /**
+   * day minus window, computed once per day and shared by tickers. grows the counts too.
+   */
+  private int bound(int day) {
+    int d = day - from;
+    if (d >= bounds.length) {
+      int n = Math.max(d + 1, bounds.length + (bounds.length >> 1));
+      int old = bounds.length;
+      bounds = Arrays.copyOf(bounds, n);
+      for (int k = old; k < n; k++) {
+        bounds[k] = (int) LocalDate.ofEpochDay(from + k).minus(window).toEpochDay();
+      }
+    }
+    if (d >= highCounts.length) {
+      highCounts = Arrays.copyOf(highCounts, bounds.length);
+      lowCounts = Arrays.copyOf(lowCounts, bounds.length);
+    }
+    return bounds[d];
+  }
+
+  private int numValid(int day) {
+    int i = Arrays.binarySearch(firstDays, day);
+    if (i < 0) return -i - 1;
+    while (i + 1 < firstDays.length && firstDays[i + 1] == day) i++;
+    return i + 1;
+  }
+
+  /**
+   * @return number of stocks at a high on days where it is not 0.
+   */
+  public TimeSeries getHigh() {
+    return toSeries(highCounts, 1).setName("high");
+  }
+
+  /**
+   * @return minus number of stocks at a low on days where it is not 0.
+   */
+  public TimeSeries getLow() {
+    return toSeries(lowCounts, -1).setName("low");
+  }
+
+  public TimeSeries getHighMinusLow() {
+    return getHighMinusLow(Integer.MIN_VALUE);
+  }
+
+  /**
+   * @return (highs - lows) / number of valid stocks on days from since where either is not 0.
+   * the last day is left out as in RegimeModel, whose number of valid stocks ends the day
+   * before endDay, and comes with the next update.
+   */
+  private TimeSeries getHighMinusLow(int since) {
+    TimeSeries ret = new TimeSeries("high minus low rate");
+    int n = Math.min(highCounts.length, lastDay - from);
+    for (int d = since < from ? 0 : since - from; d < n; d++) {
+      if (highCounts[d] == 0 && lowCounts[d] == 0) continue;
+      ret.put(from + d, (double) (highCounts[d] - lowCounts[d]) / numValid(from + d));
+    }
+    return ret;
+  }
+
+  private TimeSeries toSeries(int[] counts, double sign) {
+    TimeSeries ret = new TimeSeries();
+    int n = Math.min(counts.length, lastDay - from + 1);
+    for (int d = 0; d < n; d++) {
+      if (counts[d] != 0) ret.put(from + d, sign * counts[d]);
+    }
+    return ret;
+  }
+
+  /**
+   * write state to path through a temporary file, so a crash keeps the previous state.
+   */
+  public void save(String path) {
+    Path target = Paths.get(path);
+    Path tmp = null;
+    try {
+      Path dir = target.toAbsolutePath().getParent();
+      Files.createDirectories(dir);
+      tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          Files.newOutputStream(tmp)))) {
+        out.writeInt(magic);
+        out.writeInt(version);
+        out.writeInt(extremeWindowSize);
+        out.writeInt(from);
+        out.writeInt(lastDay);
+        writeInts(out, highCounts);
+        writeInts(out, lowCounts);
+        List<String> tickers = new ArrayList<>(states.keySet());
+        Collections.sort(tickers);
+        out.writeInt(tickers.size());
+        for (String ticker : tickers) {
+          TickerState state = states.get(ticker);
+          out.writeUTF(ticker);
+          out.writeInt(state.firstDay);
+          out.writeInt(state.lastDay);
+          out.writeDouble(state.lastAdjClose);
+          writeDeque(out, state.high);
+          writeDeque(out, state.low);
+        }
+      }
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.error("error while saving {}: {}", path, e.getMessage());
+      if (tmp != null) tmp.toFile().delete();
+    }
+  }
+
+  /**
+   * @return null if path doesn't exist, is unreadable or is for another window size or day.
+   */
+  public static IncrementalRegimeModel load(String path, int extremeWindowSize,
+                                            LocalDate from) {
+    Path source = Paths.get(path);
+    if (!Files.isRegularFile(source)) return null;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        Files.newInputStream(source)))) {
+      if (in.readInt() != magic || in.readInt() != version) {
+        logger.error("{} is not a regime state", path);
+        return null;
+      }
+      IncrementalRegimeModel model = new IncrementalRegimeModel(extremeWindowSize, from);
+      if (in.readInt() != extremeWindowSize || in.readInt() != model.from) return null;
+      model.lastDay = in.readInt();
+      model.highCounts = readInts(in);
+      model.lowCounts = readInts(in);
+      int numTickers = in.readInt();
+      for (int t = 0; t < numTickers; t++) {
+        String ticker = in.readUTF();
+        TickerState state = new TickerState();
+        state.firstDay = in.readInt();
+        state.lastDay = in.readInt();
+        state.lastAdjClose = in.readDouble();
+        readDeque(in, state.high);
+        readDeque(in, state.low);
+        model.states.put(ticker, state);
+        model.addFirstDay(state.firstDay);
+      }
+      if (model.highCounts.length > 0) model.bound(model.from + model.highCounts.length - 1);
+      return model;
+    } catch (IOException e) {
+      logger.error("error while loading {}: {}", path, e.getMessage());
+      return null;
+    }
+  }
+
+  private static void writeInts(DataOutputStream out, int[] arr) throws IOException {
+    out.writeInt(arr.length);
+    for (int v : arr) out.writeInt(v);
+  }
+
+  private static int[] readInts(DataInputStream in) throws IOException {
+    int[] ret = new int[in.readInt()];
+    for (int i = 0; i < ret.length; i++) ret[i] = in.readInt();
+    return ret;
+  }
+
+  private static void writeDeque(DataOutputStream out, Deque deque) throws IOException {
+    out.writeInt(deque.size);
+    for (int k = 0; k < deque.size; k++) {
+      out.writeInt(deque.day(k));
+      out.writeDouble(deque.price(k));
+    }
+  }
+
+  private static void readDeque(DataInputStream in, Deque deque) throws IOException {
+    int size = in.readInt();
+    deque.days = new int[Math.max(16, size)];
+    deque.prices = new double[deque.days.length];
+    for (int k = 0; k < size; k++) {
+      deque.days[k] = in.readInt();
+      deque.prices[k] = in.readDouble();
+    }
+    deque.head = 0;
+    deque.size = size;
+  }
+}
@@ -0,0 +1,202 @@
+package backtest.regime;
+
+import backtest.quant.Stocks;
+import backtest.struct.TimeSeries;
+import backtest.utils.TradingCalendar;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * grid search of TransThreshFinder: for every extreme window size, the high minus low rate
+ * is filtered by a two state (bear, bull) hidden markov model with linear emission
+ * probabilities, and every threshold on the bear probability is scored against known bear
+ * days by f-measure.
+ * high minus low rates of all window sizes come from one parallel pass over the stocks. the
+ * filter runs over double arrays aligned to business days, and window sizes are evaluated
+ * on worker threads. the bear probability doesn't depend on the threshold, so it is
+ * computed once per window size and every threshold only compares against it.
+ */
+public class RegimeCalibrator {
+  private static final Logger logger = LoggerFactory.getLogger(RegimeCalibrator.class);
+  private static final double initialBearProb = 0.01;
+  private final LocalDate from;
+  private final LocalDate to;
+  // business days from from, before to, as epoch days
+  private final int[] days;
+  private final boolean[] realBear;
+  private final int numRealBear;
+  private final double bearToBear;
+  private final double bullToBear;
+
+  public static class Result {
+    public final int winSize;
+    public final double threshold;
+    public final double fmeasure, precision, recall;
+    // days whose bear probability is above threshold
+    public final List<LocalDate> bearList;
+    public final TimeSeries bearProb;
+
+    Result(int winSize, double threshold, double fmeasure, double precision, double recall,
+           List<LocalDate> bearList, TimeSeries bearProb) {
+      this.winSize = winSize;
+      this.threshold = threshold;
+      this.fmeasure = fmeasure;
+      this.precision = precision;
+      this.recall = recall;
+      this.bearList = bearList;
+      this.bearProb = bearProb;
+    }
+
+    @Override
+    public String toString() {
+      return "win size: " + winSize + ", threshold: " + String.format("%.1f", threshold) +
+          ", fmeasure: " + fmeasure + ", precision: " + precision + ", recall: " + recall;
+    }
+  }
+
+  /**
+   * @param realBearDays known bear days, e.g. Stock.getBearDates of SPY.
+   * @param bearToBear   probability that a bear day follows a bear day.
+   * @param bullToBear   probability that a bear day follows a bull day.
+   */
+  public RegimeCalibrator(LocalDate from, LocalDate to, Collection<LocalDate> realBearDays,
+                          double bearToBear, double bullToBear) {
+    this.from = from;
+    this.to = to;
+    TradingCalendar calendar = TradingCalendar.getDefault();
+    int first = calendar.ceilIndex((int) from.toEpochDay());
+    int end = calendar.ceilIndex((int) to.toEpochDay());
+    days = new int[Math.max(0, end - first)];
+    for (int i = 0; i < days.length; i++) days[i] = calendar.get(first + i);
+    realBear = new boolean[days.length];
+    for (LocalDate day : realBearDays) {
+      int i = Arrays.binarySearch(days, (int) day.toEpochDay());
+      if (i >= 0) realBear[i] = true;
+    }
+    numRealBear = realBearDays.size();
+    this.bearToBear = bearToBear;
+    this.bullToBear = bullToBear;
+  }
+
+  /**
+   * compute high minus low rates of winSizes from the s&p 500 of stocks and score every
+   * window size and threshold.
+   *
+   * @return results of valid window sizes, best f-measure first.
+   */
+  public List<Result> calibrate(Stocks stocks, int[] winSizes, double[] thresholds,
+                                int parallelism) {
+    List<RegimeModel> models = RegimeModel.calcHighMinusLowRates(stocks, winSizes, from, to);
+    List<TimeSeries> series = new ArrayList<>();
+    for (RegimeModel model : models) series.add(model.highMinusLow);
+    return calibrate(series, winSizes, thresholds, parallelism);
+  }
+
+  /**
+   * @param highMinusLow high minus low rate of each window size in winSizes.
+   * @return results of valid window sizes, best f-measure first.
+   * @throws IllegalStateException if a window size fails or the calibration is interrupted.
+   */
+  public List<Result> calibrate(List<TimeSeries> highMinusLow, int[] winSizes,
+                                double[] thresholds, int parallelism) {
+    List<Callable<List<Result>>> tasks = new ArrayList<>();
+    for (int w = 0; w < winSizes.length; w++) {
+      TimeSeries rate = highMinusLow.get(w);
+      int winSize = winSizes[w];
+      tasks.add(() -> evaluate(winSize, rate, thresholds));
+    }
+    List<Result> ret = new ArrayList<>();
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, parallelism));
+    try {
+      for (Future<List<Result>> future : pool.invokeAll(tasks)) ret.addAll(future.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while calibrating", e);
+    } catch (ExecutionException e) {
+      logger.error("error while calibrating", e.getCause());
+      throw new IllegalStateException("error while calibrating", e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+    // NaN f-measures, i.e. no bear day found, go last
+    ret.sort(Comparator.comparingDouble((Result r) -> Double.isNaN(r.fmeasure) ? -1 :
+        r.fmeasure).reversed());
+    return ret;
+  }
+
+  private List<Result> evaluate(int winSize, TimeSeries rate, double[] thresholds) {
+    double rmax = rate.max();
+    double rmin = rate.min();
+    if (rmax <= 0 || rmin >= 0) {
+      logger.info("invalid min or max. win size: {}", winSize);
+      return Collections.emptyList();
+    }
+    // rate on every business day, 0 where missing
+    double[] x = new double[days.length];
+    for (int i = 0, j = 0; i < days.length; i++) {
+      while (j < rate.size() && rate.getKey(j).toEpochDay() < days[i]) j++;
+      if (j < rate.size() && rate.getKey(j).toEpochDay() == days[i]) x[i] = rate.getValue(j);
+    }
+    double[] bearProb = filter(x, rmax, rmin);
+    TimeSeries bearSeries = new TimeSeries("bear series");
+    for (int i = 0; i < days.length; i++) bearSeries.put(days[i], bearProb[i]);
+    List<Result> ret = new ArrayList<>();
+    for (double threshold : thresholds) {
+      int count = 0, numBear = 0;
+      for (int i = 0; i < days.length; i++) {
+        if (bearProb[i] > threshold) {
+          numBear++;
+          if (realBear[i]) count++;
+        }
+      }
+      List<LocalDate> bearList = new ArrayList<>(numBear);
+      for (int i = 0; i < days.length; i++) {
+        if (bearProb[i] > threshold) bearList.add(LocalDate.ofEpochDay(days[i]));
+      }
+      double precision = (double) count / numBear;
+      double recall = (double) count / numRealBear;
+      double fmeasure = 2 * precision * recall / (precision + recall);
+      ret.add(new Result(winSize, threshold, fmeasure, precision, recall, bearList,
+          bearSeries));
+    }
+    return ret;
+  }
+
+  /**
+   * p(x|bear) = a*x - a*max and p(x|bull) = -a*x + a*min with
+   * a = -1/(0.5*max^2+0.5*min^2-max*min), so that each integrates to 1 over [min, max].
+   *
+   * @return probability of bear on each day given rates up to that day. the first day keeps
+   * the prior.
+   */
+  double[] filter(double[] x, double rmax, double rmin) {
+    double a = -1 / (0.5 * rmax * rmax + 0.5 * rmin * rmin - rmax * rmin);
+    double[] ret = new double[x.length];
+    double bearProb = initialBearProb;
+    for (int i = 0; i < x.length; i++) {
+      if (i > 0) {
+        double bullProb = 1 - bearProb;
+        double bearTrans = bearProb * bearToBear + bullProb * bullToBear;
+        double bullTrans = bullProb * (1 - bullToBear) + bearProb * (1 - bearToBear);
+        double bear = bearTrans * (a * x[i] - a * rmax);
+        double bull = bullTrans * (-a * x[i] + a * rmin);
+        bearProb = bear / (bear + bull);
+      }
+      ret[i] = bearProb;
+    }
+    return ret;
+  }
+}
@@ -1,9 +1,9 @@
 package backtest.regime;
 
+import backtest.quant.ExtremeDays;
 import backtest.quant.Stock;
 import backtest.quant.Stocks;
 import backtest.struct.TimeSeries;
-import backtest.utils.Num;
 import backtest.utils.StopWatch;
 import backtest.utils.Util;
 import org.slf4j.Logger;
@@ -12,7 +12,6 @@ import org.slf4j.LoggerFactory;
 import java.time.LocalDate;
 import java.time.Period;
 import java.util.*;
-import java.util.concurrent.*;
 
 public class RegimeModel implements Comparable<RegimeModel> {
   private static final Logger logger = LoggerFactory.getLogger(RegimeModel.class);
@@ -44,25 +43,50 @@ public class RegimeModel implements Comparable<RegimeModel> {
 
   // TODO: have a builder that gives high, low, high minus low.
   public void calcHighMinusLowRate(int extremeWindowSize, LocalDate startDay, LocalDate endDay) {
+    RegimeModel model = calcHighMinusLowRates(stocks, new int[]{extremeWindowSize}, startDay,
+        endDay).get(0);
     this.extremeWindowSize = extremeWindowSize;
-    final ConcurrentMap<LocalDate, Double> highMap = new ConcurrentHashMap<>();
-    final ConcurrentMap<LocalDate, Double> lowMap = new ConcurrentHashMap<>();
+    high = model.high;
+    low = model.low;
+    hmap = model.hmap;
+    lmap = model.lmap;
+    highMinusLow = model.highMinusLow;
+  }
+
+  /**
+   * calcHighMinusLowRate for every window size with one scan of each stock for highs and
+   * one for lows. stocks are scanned in parallel on all cores.
+   *
+   * @return models in the order of extremeWindowSizes.
+   */
+  public static List<RegimeModel> calcHighMinusLowRates(Stocks stocks, int[] extremeWindowSizes,
+                                                        LocalDate startDay, LocalDate endDay) {
+    List<Period> windows = new ArrayList<>();
+    for (int size : extremeWindowSizes) windows.add(Period.ofMonths(size));
+    ExtremeDays extremes = new ExtremeDays(startDay, endDay, windows);
     List<String> sp500 = stocks.getSP500();
     TimeSeries totalValidStockNumSeries = stocks.getValidStockNumSeries(sp500, startDay, endDay);
-    logger.info("start calc high minus low rate");
-    sp500.forEach(ticker -> {
-      final Stock stock = stocks.getStockFromCache(ticker);
-      stock.getExtremeDays(startDay, endDay, Period.ofMonths(extremeWindowSize), true)
-          .forEach(d -> highMap.merge(d, 1d, Double::sum));
-      stock.getExtremeDays(startDay, endDay, Period.ofMonths(extremeWindowSize), false)
-          .forEach(d -> lowMap.merge(d, -1d, Double::sum));
-    });
-    // 2880
-    high = new TimeSeries(highMap).setName("high");
-    low = new TimeSeries(lowMap).setName("low");
-    hmap = new HashMap<>(highMap);
-    lmap = new HashMap<>(lowMap);
-    highMinusLow = high.add(low).divide(totalValidStockNumSeries);
+    logger.info("start calc high minus low rate of {} window sizes", windows.size());
+    Breadth breadth = Breadth.count(sp500, stocks::getStockFromCache, extremes, startDay, endDay,
+        Runtime.getRuntime().availableProcessors());
+    List<RegimeModel> ret = new ArrayList<>();
+    for (int w = 0; w < windows.size(); w++) {
+      RegimeModel model = new RegimeModel(stocks);
+      model.extremeWindowSize = extremeWindowSizes[w];
+      model.high = breadth.getHigh(w);
+      model.low = breadth.getLow(w);
+      model.hmap = toMap(model.high);
+      model.lmap = toMap(model.low);
+      model.highMinusLow = model.high.add(model.low).divide(totalValidStockNumSeries);
+      ret.add(model);
+    }
+    return ret;
+  }
+
+  private static Map<LocalDate, Double> toMap(TimeSeries series) {
+    Map<LocalDate, Double> ret = new HashMap<>();
+    for (int i = 0; i < series.size(); i++) ret.put(series.getKey(i), series.getValue(i));
+    return ret;
   }
 
   @Override
@@ -73,9 +97,9 @@ public class RegimeModel implements Comparable<RegimeModel> {
   public void findBearDays(double threshold) {
     this.threshold = threshold;
     bearDayList = new ArrayList<>();
-    for (Map.Entry<LocalDate, Num> entry : highMinusLow.entrySet()) {
-      if (entry.getValue().toDouble() < threshold) {
-        bearDayList.add(entry.getKey());
+    for (int i = 0; i < highMinusLow.size(); i++) {
+      if (highMinusLow.getValue(i) < threshold) {
+        bearDayList.add(highMinusLow.getKey(i));
       }
     }
     bearDaySet = new HashSet<>(bearDayList);
@@ -106,7 +130,6 @@ public class RegimeModel implements Comparable<RegimeModel> {
 
   public static void main(String[] args) {
     Stocks stocks = new Stocks();
-    stocks.cacheAllStockQueries();
     stocks.load(stocks.getSP500());
     RegimeModel model = new RegimeModel(stocks);
     StopWatch sw = new StopWatch();
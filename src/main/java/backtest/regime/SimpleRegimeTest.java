@@ -16,7 +16,6 @@ import java.util.Set;
 public class SimpleRegimeTest {
   public static void main(String[] args) {
     Stocks stocks = new Stocks();
-    stocks.cacheAllStockQueries();
     stocks.updateSP500AndSPYTo(LocalDate.of(2016, 2, 1));
     Stock spy = stocks.getStockFromCache("SPY");
     LocalDate from = LocalDate.of(2009, 4, 1);
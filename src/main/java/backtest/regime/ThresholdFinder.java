@@ -1,14 +1,14 @@
 package backtest.regime;
 
-import backtest.quant.Portfolio;
+import backtest.quant.Panel;
+import backtest.quant.PortfolioSimulator;
 import backtest.quant.Stocks;
-import backtest.struct.NumMap;
 import backtest.struct.TimeSeries;
-import backtest.utils.Cal;
 import backtest.utils.Canvas;
 import backtest.utils.StopWatch;
 
 import java.time.LocalDate;
+import java.util.Collections;
 import java.util.PriorityQueue;
 
 public class ThresholdFinder {
@@ -18,13 +18,17 @@ public class ThresholdFinder {
   public void test() {
 //        update symbols if last update is weeks ago.
     stocks.updateSP500AndSPYTo(LocalDate.of(2016, 1, 25));
-    stocks.cacheAllStockQueries();
     LocalDate startDay = LocalDate.of(2005, 1, 1);
     LocalDate realStartDay = LocalDate.of(2010, 1, 1);
     LocalDate endDay = LocalDate.of(2016, 1, 10);
     PriorityQueue<RegimeModel> pq = new PriorityQueue<>();
     double bestSharpeRatio = -1;
-    Portfolio bestPortfolio = null;
+    PortfolioSimulator.Result bestPortfolio = null;
+    // prices and weights are built once and shared by all thresholds
+    Panel panel = new Panel(stocks, Collections.singletonList("SPY"), realStartDay, endDay);
+    PortfolioSimulator simulator = new PortfolioSimulator(panel, 10000);
+    double[] bear = {0};
+    double[] bull = {1};
     TimeSeries highMinusLow = null;
     TimeSeries high = null;
     TimeSeries low = null;
@@ -39,14 +43,9 @@ public class ThresholdFinder {
       for (double threshold = 0; threshold < 0.005; threshold += thresholdIncRate) {
         model.findBearDays(threshold);
         if (model.tooFewBearDays() || model.onlyBefore2010()) break;
-        Portfolio portfolio = new Portfolio(10000, stocks);
-        for (LocalDate date = Cal.getLatestBusinessDayAfter(realStartDay); date.isBefore(endDay);
-             date = Cal.getNextBusinessDay(date)) {
-          if (model.isBear(date)) {
-            portfolio.reassign(date, new NumMap<String>().put("SPY", 0));
-          } else portfolio.reassign(date, new NumMap<String>().put("SPY", 1));
-        }
-        model.sharpeRatio = portfolio.sharpeRatio();
+        PortfolioSimulator.Result portfolio = simulator.run(realStartDay, endDay.minusDays(1),
+            d -> model.isBear(panel.getDate(d)) ? bear : bull);
+        model.sharpeRatio = portfolio.sharpeRatio;
         if (model.sharpeRatio < 0) continue;
         if (model.sharpeRatio > bestSharpeRatio) {
           bestSharpeRatio = model.sharpeRatio;
@@ -55,8 +54,8 @@ public class ThresholdFinder {
           high = model.high.setName("high");
           low = model.low.setName("low");
         }
-        model.mean = portfolio.mean();
-        model.std = portfolio.std();
+        model.mean = portfolio.mean;
+        model.std = portfolio.std;
         pq.add(new RegimeModel(model));
         if (pq.size() > 20) pq.poll();
       }
@@ -2,7 +2,6 @@ package backtest.struct;
 
 import backtest.io.CSVWriter;
 
-import java.time.LocalDate;
 import java.util.*;
 
 public class Table {
@@ -124,13 +123,4 @@ public class Table {
     }
     writer.close();
   }
-
-  public int find(LocalDate date) {
-    for (int i = 0; i<getNumRow(); i++) {
-      if (get(i).get(0).equals(date.toString())) {
-        return i;
-      }
-    }
-    return -1;
-  }
 }
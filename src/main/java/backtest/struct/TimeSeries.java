@@ -5,33 +5,50 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.LocalDate;
-import java.util.Iterator;
+import java.util.AbstractMap;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.TreeMap;
-import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
 
 /**
  * keySet of TimeSeries is in strictly increasing order.
+ * keys are stored as epoch days in an int array and values in a parallel double array so
+ * that a point costs 12 bytes and scans don't chase pointers.
  */
-public class TimeSeries extends NumMap<LocalDate> {
+public class TimeSeries {
   private final static Logger logger = LoggerFactory.getLogger(TimeSeries.class);
-  private final static BinaryOperator<Double> division = (x, y) -> x / y;
-  private final static BinaryOperator<Double> subtraction = (x, y) -> x - y;
-  private final static BinaryOperator<Double> addition = (x, y) -> x + y;
+  private final static DoubleBinaryOperator division = (x, y) -> x / y;
+  private final static DoubleBinaryOperator subtraction = (x, y) -> x - y;
+  private final static DoubleBinaryOperator addition = (x, y) -> x + y;
+  private final static int defaultCapacity = 16;
   private String name;
   private final String keyName = "keys";
+  private int[] keys;
+  private double[] values;
+  private int size;
 
   public TimeSeries() {
     this("Series");
   }
 
   public TimeSeries(String name) {
-    super();
+    this(name, defaultCapacity);
+  }
+
+  private TimeSeries(String name, int capacity) {
     this.name = name;
+    keys = new int[Math.max(capacity, 1)];
+    values = new double[Math.max(capacity, 1)];
+    size = 0;
   }
 
   public TimeSeries(TimeSeries series) {
-    super(series);
+    this.name = series.name;
+    keys = Arrays.copyOf(series.keys, Math.max(series.size, 1));
+    values = Arrays.copyOf(series.values, Math.max(series.size, 1));
+    size = series.size;
   }
 
   public TimeSeries(Map<LocalDate, Double> map) {
@@ -39,57 +56,137 @@ public class TimeSeries extends NumMap<LocalDate> {
   }
 
   public TimeSeries(TreeMap<LocalDate, Double> map) {
-    this();
+    this("Series", map.size());
     for (Map.Entry<LocalDate, Double> entry : map.entrySet()) {
       put(entry.getKey(), entry.getValue());
     }
   }
 
   public TimeSeries(LocalDate from, LocalDate to, double initValue) {
-    this();
+    this("Series", (int) Math.max(to.toEpochDay() - from.toEpochDay(), 0));
     for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
       put(day, initValue);
     }
   }
 
-  @Override
+  /**
+   * NaN values and keys not after the last key are ignored.
+   */
   public TimeSeries put(LocalDate date, double val) {
-    if (size() == 0 || date.isAfter(lastKey())) super.put(date, val);
+    if (date == null) return this;
+    return put((int) date.toEpochDay(), val);
+  }
+
+  public TimeSeries put(int epochDay, double val) {
+    if (Double.isNaN(val)) return this;
+    if (size == 0 || epochDay > keys[size - 1]) append(epochDay, val);
     return this;
   }
 
+  /**
+   * caller guarantees epochDay is larger than the last key.
+   */
+  private void append(int epochDay, double val) {
+    if (size == keys.length) {
+      int capacity = size + (size >> 1) + 1;
+      keys = Arrays.copyOf(keys, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+    keys[size] = epochDay;
+    values[size] = val;
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public LocalDate getKey(int i) {
+    if (i >= 0 && i < size) return LocalDate.ofEpochDay(keys[i]);
+    return null;
+  }
+
+  public double getValue(int i) {
+    if (i >= 0 && i < size) return values[i];
+    return Double.NaN;
+  }
+
+  public void setValue(int i, double v) {
+    if (i >= 0 && i < size) values[i] = v;
+  }
+
+  public LocalDate firstKey() {
+    if (size == 0) throw new NoSuchElementException();
+    return LocalDate.ofEpochDay(keys[0]);
+  }
+
+  public LocalDate lastKey() {
+    if (size == 0) throw new NoSuchElementException();
+    return LocalDate.ofEpochDay(keys[size - 1]);
+  }
+
+  public double firstValue() {
+    if (size == 0) throw new NoSuchElementException();
+    return values[0];
+  }
+
+  public double lastValue() {
+    if (size == 0) throw new NoSuchElementException();
+    return values[size - 1];
+  }
+
+  public double max() {
+    if (size == 0) throw new NoSuchElementException();
+    double ret = values[0];
+    for (int i = 1; i < size; i++) {
+      if (values[i] > ret) ret = values[i];
+    }
+    return ret;
+  }
+
+  public double min() {
+    if (size == 0) throw new NoSuchElementException();
+    double ret = values[0];
+    for (int i = 1; i < size; i++) {
+      if (values[i] < ret) ret = values[i];
+    }
+    return ret;
+  }
+
   public double sum() {
     double sum = 0;
-    for (Map.Entry<LocalDate, Num> entry : entrySet()) {
-      sum += entry.getValue().toDouble();
+    for (int i = 0; i < size; i++) {
+      sum += values[i];
     }
     return sum;
   }
 
   public double mean() {
-    if (size() == 0) return Double.NaN;
-    double sum = 0;
-    for (Map.Entry<LocalDate, Num> entry : entrySet()) {
-      sum += entry.getValue().toDouble();
-    }
-    return sum / (double) size();
+    if (size == 0) return Double.NaN;
+    return sum() / (double) size;
   }
 
   //var = E[(X-mu)^2] = E[X^2]-E[X]^2
   public double std() {
-    if (size() == 0) return Double.NaN;
+    if (size == 0) return Double.NaN;
+    double sum = 0;
     double squareSum = 0;
-    for (Map.Entry<LocalDate, Num> entry : entrySet()) {
-      squareSum += (entry.getValue().toDouble() * entry.getValue().toDouble());
+    for (int i = 0; i < size; i++) {
+      sum += values[i];
+      squareSum += values[i] * values[i];
     }
-    double mean = mean();
-    return Math.sqrt(squareSum / (double) size() - mean * mean);
+    double mean = sum / (double) size;
+    return Math.sqrt(squareSum / (double) size - mean * mean);
   }
 
   public TimeSeries divide(double v) {
-    TimeSeries ret = new TimeSeries();
-    for (Map.Entry<LocalDate, Num> entry : entrySet()) {
-      ret.put(entry.getKey(), entry.getValue().toDouble() / v);
+    TimeSeries ret = new TimeSeries("Series", size);
+    for (int i = 0; i < size; i++) {
+      ret.put(keys[i], values[i] / v);
     }
     return ret;
   }
@@ -106,82 +203,118 @@ public class TimeSeries extends NumMap<LocalDate> {
     return looseOp(series, addition);
   }
 
-  public TimeSeries strictOp(TimeSeries series, BinaryOperator<Double> operator) {
-    Iterator<Map.Entry<LocalDate, Num>> thisIt = iterator(), thatIt = series.iterator();
-    TimeSeries ret = new TimeSeries();
-    Map.Entry<LocalDate, Num> thisEntry = thisIt.hasNext() ? thisIt.next() : null,
-        thatEntry = thatIt.hasNext() ? thatIt.next() : null;
-    while (thisEntry != null && thatEntry != null) {
-      if (thisEntry.getKey().isBefore(thatEntry.getKey())) {
-        thisEntry = thisIt.hasNext() ? thisIt.next() : null;
-      } else if (thisEntry.getKey().isEqual(thatEntry.getKey())) {
-        ret.put(thisEntry.getKey(), operator.apply(thisEntry.getValue().toDouble(), thatEntry.getValue().toDouble()));
-        thisEntry = thisIt.hasNext() ? thisIt.next() : null;
-        thatEntry = thatIt.hasNext() ? thatIt.next() : null;
+  /**
+   * apply operator on keys present in both series.
+   */
+  public TimeSeries strictOp(TimeSeries series, DoubleBinaryOperator operator) {
+    TimeSeries ret = new TimeSeries("Series", Math.min(size, series.size));
+    int i = 0, j = 0;
+    while (i < size && j < series.size) {
+      int thisKey = keys[i], thatKey = series.keys[j];
+      if (thisKey < thatKey) {
+        i++;
+      } else if (thisKey == thatKey) {
+        ret.put(thisKey, operator.applyAsDouble(values[i], series.values[j]));
+        i++;
+        j++;
       } else {
-        thatEntry = thatIt.hasNext() ? thatIt.next() : null;
+        j++;
       }
     }
     return ret;
   }
 
-  public TimeSeries looseOp(TimeSeries series, BinaryOperator<Double> operator) {
-    Iterator<Map.Entry<LocalDate, Num>> thisIt = iterator(), thatIt = series.iterator();
-    TimeSeries ret = new TimeSeries();
-    Map.Entry<LocalDate, Num> thisEntry = thisIt.hasNext() ? thisIt.next() : null,
-        thatEntry = thatIt.hasNext() ? thatIt.next() : null;
-    while (thisEntry != null && thatEntry != null) {
-      if (thisEntry.getKey().isBefore(thatEntry.getKey())) {
-        ret.put(thisEntry.getKey(), operator.apply(thisEntry.getValue().toDouble(), 0d));
-        thisEntry = thisIt.hasNext() ? thisIt.next() : null;
-      } else if (thisEntry.getKey().isEqual(thatEntry.getKey())) {
-        ret.put(thisEntry.getKey(), operator.apply(thisEntry.getValue().toDouble(), thatEntry.getValue().toDouble()));
-        thisEntry = thisIt.hasNext() ? thisIt.next() : null;
-        thatEntry = thatIt.hasNext() ? thatIt.next() : null;
+  /**
+   * apply operator on the union of keys. missing values are treated as 0.
+   */
+  public TimeSeries looseOp(TimeSeries series, DoubleBinaryOperator operator) {
+    TimeSeries ret = new TimeSeries("Series", size + series.size);
+    int i = 0, j = 0;
+    while (i < size && j < series.size) {
+      int thisKey = keys[i], thatKey = series.keys[j];
+      if (thisKey < thatKey) {
+        ret.put(thisKey, operator.applyAsDouble(values[i], 0d));
+        i++;
+      } else if (thisKey == thatKey) {
+        ret.put(thisKey, operator.applyAsDouble(values[i], series.values[j]));
+        i++;
+        j++;
       } else {
-        ret.put(thatEntry.getKey(), operator.apply(0d, thatEntry.getValue().toDouble()));
-        thatEntry = thatIt.hasNext() ? thatIt.next() : null;
+        ret.put(thatKey, operator.applyAsDouble(0d, series.values[j]));
+        j++;
       }
     }
-    if (thisEntry != null) {
-      ret.put(thisEntry.getKey(), operator.apply(thisEntry.getValue().toDouble(), 0d));
-      while (thisIt.hasNext()) {
-        thisEntry = thisIt.next();
-        ret.put(thisEntry.getKey(), operator.apply(thisEntry.getValue().toDouble(), 0d));
-      }
-    } else if (thatEntry != null) {
-      ret.put(thatEntry.getKey(), operator.apply(0d, thatEntry.getValue().toDouble()));
-      while (thatIt.hasNext()) {
-        thatEntry = thatIt.next();
-        ret.put(thatEntry.getKey(), operator.apply(0d, thatEntry.getValue().toDouble()));
-      }
+    for (; i < size; i++) {
+      ret.put(keys[i], operator.applyAsDouble(values[i], 0d));
+    }
+    for (; j < series.size; j++) {
+      ret.put(series.keys[j], operator.applyAsDouble(0d, series.values[j]));
     }
     return ret;
   }
 
   public TimeSeries normalize() {
-    return divide(firstValue().toDouble());
+    return divide(firstValue());
+  }
+
+  public static class Drawdown {
+    public double drawdown;
+    public LocalDate from, to;
+
+    public Drawdown(double drawdown, LocalDate from, LocalDate to) {
+      this.drawdown = drawdown;
+      this.from = from;
+      this.to = to;
+    }
+
+    public String toString() {
+      return "max drawdown: " + drawdown + " from " + from + " to " + to;
+    }
+  }
+
+  /**
+   * @return null if the series never drops.
+   */
+  public Drawdown maxDrawdown() {
+    if (size == 0) throw new NoSuchElementException();
+    int maxI = 0;
+    double max = values[0];
+    double drawDown = 0;
+    int ddFrom = -1, ddTo = -1;
+    for (int i = 0; i < size; i++) {
+      double val = values[i];
+      if (val > max) {
+        max = val;
+        maxI = i;
+      }
+      if ((max - val) / max > drawDown) {
+        drawDown = (max - val) / max;
+        ddFrom = maxI;
+        ddTo = i;
+      }
+    }
+    if (Math.abs(drawDown) < 1e-8 || ddFrom == -1) {
+      return null;
+    } else {
+      return new Drawdown(drawDown, getKey(ddFrom), getKey(ddTo));
+    }
   }
 
   // Probably better to present in a key value pair format.
   // Currently: { keys: [a,b,c], values: [1,2,3], name: a }
   // Ideal: { name: a, data: {a:1, b:2, c:3} }
   public String toString() {
-    boolean first = true;
     StringBuilder sb = new StringBuilder("{" + keyName + ":[");
-    for (Map.Entry<LocalDate, Num> entry : entrySet()) {
-      if (!first) sb.append(',');
+    for (int i = 0; i < size; i++) {
+      if (i != 0) sb.append(',');
       sb.append('\'');
-      sb.append(entry.getKey());
+      sb.append(LocalDate.ofEpochDay(keys[i]));
       sb.append('\'');
-      first = false;
     }
     sb.append("],values:[");
-    first = true;
-    for (Map.Entry<LocalDate, Num> entry : entrySet()) {
-      if (!first) sb.append(',');
-      sb.append(entry.getValue().toDouble());
-      first = false;
+    for (int i = 0; i < size; i++) {
+      if (i != 0) sb.append(',');
+      sb.append(values[i]);
     }
     sb.append("],name:'");
     sb.append(name);
@@ -194,10 +327,18 @@ public class TimeSeries extends NumMap<LocalDate> {
     return this;
   }
 
+  /**
+   * @return index of date or -1 if date is not a key.
+   */
+  public int indexOf(LocalDate date) {
+    int i = Arrays.binarySearch(keys, 0, size, (int) date.toEpochDay());
+    return i < 0 ? -1 : i;
+  }
+
   public double get(LocalDate date) {
-    Map.Entry<LocalDate, Num> e = getEntry(date);
-    if (e == null) return Double.NaN;
-    return e.getValue().toDouble();
+    int i = indexOf(date);
+    if (i < 0) return Double.NaN;
+    return values[i];
   }
 
   public double getOrDefault(LocalDate date) {
@@ -206,26 +347,23 @@ public class TimeSeries extends NumMap<LocalDate> {
     return v;
   }
 
+  public Map.Entry<LocalDate, Num> getEntry(int i) {
+    if (i < 0 || i >= size) throw new IndexOutOfBoundsException("index: " + i + ", size: " + size);
+    return new AbstractMap.SimpleImmutableEntry<>(LocalDate.ofEpochDay(keys[i]), new Num(values[i]));
+  }
+
   public Map.Entry<LocalDate, Num> getEntry(LocalDate date) {
-    int from = 0;
-    int to = size() - 1;
-    while (from <= to) {
-      int mid = from + (to - from) / 2;
-      Map.Entry<LocalDate, Num> e = getEntry(mid);
-      if (e.getKey().isEqual(date)) return e;
-      else if (e.getKey().isBefore(date)) from = mid + 1;
-      else to = mid - 1;
-    }
-    return null;
+    int i = indexOf(date);
+    if (i < 0) return null;
+    return getEntry(i);
   }
 
   public TimeSeries getRet(int retPeriod) {
-    TimeSeries ret = new TimeSeries();
-    for (int i = 0; i<size(); i++) {
-      if (i < retPeriod) continue;
-      double from = getValue(i-retPeriod).toDouble();
-      double to = getValue(i).toDouble();
-      ret.put(getKey(i), (to-from)/from);
+    TimeSeries ret = new TimeSeries("Series", Math.max(size - retPeriod, 0));
+    for (int i = retPeriod; i < size; i++) {
+      double from = values[i - retPeriod];
+      double to = values[i];
+      ret.put(keys[i], (to - from) / from);
     }
     return ret;
   }
@@ -0,0 +1,292 @@
+package backtest.struct;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * table whose columns have a type declared up front. every column is a primitive array:
+ * dates are int epoch days, numbers are double or long. a cell is parsed once when it is
+ * set, e.g. by CSVParser.readTable, instead of every time it is read as in Table.
+ * after sortBy(date column), find looks a date up by binary search.
+ */
+public class TypedTable {
+  private static final int defaultCapacity = 16;
+
+  public enum Type {DATE, DOUBLE, LONG, STRING}
+
+  private final List<String> cols;
+  private final Type[] types;
+  private final Map<String, Integer> c2i;
+  // int[], double[], long[] or String[] by type of column
+  private final Object[] data;
+  private int numRow;
+  private int capacity;
+  // date column that rows are sorted by, or -1
+  private int sortedBy = -1;
+  private String name;
+
+  public TypedTable(List<String> cols, List<Type> types) {
+    if (cols.size() != types.size()) {
+      throw new IllegalArgumentException(cols.size() + " columns but " + types.size() + " types");
+    }
+    this.cols = new ArrayList<>(cols);
+    this.types = types.toArray(new Type[0]);
+    c2i = new HashMap<>();
+    for (int c = 0; c < cols.size(); c++) c2i.put(cols.get(c), c);
+    data = new Object[cols.size()];
+    capacity = defaultCapacity;
+    for (int c = 0; c < data.length; c++) data[c] = newColumn(this.types[c], capacity);
+  }
+
+  /**
+   * empty table with the same columns.
+   */
+  public TypedTable emptyCopy() {
+    return new TypedTable(cols, Arrays.asList(types));
+  }
+
+  private static Object newColumn(Type type, int n) {
+    switch (type) {
+      case DATE:
+        return new int[n];
+      case DOUBLE:
+        return new double[n];
+      case LONG:
+        return new long[n];
+      default:
+        return new String[n];
+    }
+  }
+
+  private static Object copyOf(Object column, int n) {
+    if (column instanceof int[]) return Arrays.copyOf((int[]) column, n);
+    if (column instanceof double[]) return Arrays.copyOf((double[]) column, n);
+    if (column instanceof long[]) return Arrays.copyOf((long[]) column, n);
+    return Arrays.copyOf((String[]) column, n);
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getNumRow() {
+    return numRow;
+  }
+
+  public int getNumCol() {
+    return cols.size();
+  }
+
+  public boolean isEmpty() {
+    return numRow == 0;
+  }
+
+  public List<String> getCols() {
+    return new ArrayList<>(cols);
+  }
+
+  public Type getType(int c) {
+    return types[c];
+  }
+
+  /**
+   * @return -1 if col does not exist.
+   */
+  public int getColId(String col) {
+    Integer c = c2i.get(col);
+    return c == null ? -1 : c;
+  }
+
+  /**
+   * append a row of zeros (null for strings) to be set with the setters.
+   *
+   * @return index of the new row.
+   */
+  public int appendRow() {
+    if (numRow == capacity) {
+      capacity += capacity >> 1;
+      for (int c = 0; c < data.length; c++) data[c] = copyOf(data[c], capacity);
+    }
+    sortedBy = -1;
+    return numRow++;
+  }
+
+  private void check(int r) {
+    if (r >= numRow) throw new IndexOutOfBoundsException("row " + r + " of " + numRow);
+  }
+
+  public void setEpochDay(int r, int c, int epochDay) {
+    check(r);
+    ((int[]) data[c])[r] = epochDay;
+    if (c == sortedBy) sortedBy = -1;
+  }
+
+  public void setDate(int r, int c, LocalDate date) {
+    setEpochDay(r, c, (int) date.toEpochDay());
+  }
+
+  public void setDouble(int r, int c, double value) {
+    check(r);
+    ((double[]) data[c])[r] = value;
+  }
+
+  public void setLong(int r, int c, long value) {
+    check(r);
+    ((long[]) data[c])[r] = value;
+  }
+
+  public void setString(int r, int c, String value) {
+    check(r);
+    ((String[]) data[c])[r] = value;
+  }
+
+  public int getEpochDay(int r, int c) {
+    check(r);
+    return ((int[]) data[c])[r];
+  }
+
+  public LocalDate getDate(int r, int c) {
+    return LocalDate.ofEpochDay(getEpochDay(r, c));
+  }
+
+  public double getDouble(int r, int c) {
+    check(r);
+    return ((double[]) data[c])[r];
+  }
+
+  public long getLong(int r, int c) {
+    check(r);
+    return ((long[]) data[c])[r];
+  }
+
+  /**
+   * @return cell of any column as a string, dates in ISO format.
+   */
+  public String getString(int r, int c) {
+    check(r);
+    switch (types[c]) {
+      case DATE:
+        return getDate(r, c).toString();
+      case DOUBLE:
+        return Double.toString(getDouble(r, c));
+      case LONG:
+        return Long.toString(getLong(r, c));
+      default:
+        return ((String[]) data[c])[r];
+    }
+  }
+
+  /**
+   * sort rows by increasing date of column c. rows with the same date keep their order.
+   */
+  public void sortBy(int c) {
+    if (types[c] != Type.DATE) throw new IllegalArgumentException(cols.get(c) + " is not a date");
+    int[] days = (int[]) data[c];
+    boolean sorted = true;
+    for (int r = 1; r < numRow && sorted; r++) sorted = days[r - 1] <= days[r];
+    if (!sorted) {
+      // sort date and row index packed into longs, which is stable and needs no boxing
+      long[] keys = new long[numRow];
+      for (int r = 0; r < numRow; r++) keys[r] = ((long) days[r] << 32) | r;
+      Arrays.sort(keys);
+      for (int k = 0; k < data.length; k++) data[k] = permute(data[k], types[k], keys);
+    }
+    sortedBy = c;
+  }
+
+  private Object permute(Object column, Type type, long[] keys) {
+    Object ret = newColumn(type, capacity);
+    switch (type) {
+      case DATE:
+        for (int r = 0; r < numRow; r++) ((int[]) ret)[r] = ((int[]) column)[(int) keys[r]];
+        break;
+      case DOUBLE:
+        for (int r = 0; r < numRow; r++) {
+          ((double[]) ret)[r] = ((double[]) column)[(int) keys[r]];
+        }
+        break;
+      case LONG:
+        for (int r = 0; r < numRow; r++) ((long[]) ret)[r] = ((long[]) column)[(int) keys[r]];
+        break;
+      default:
+        for (int r = 0; r < numRow; r++) {
+          ((String[]) ret)[r] = ((String[]) column)[(int) keys[r]];
+        }
+    }
+    return ret;
+  }
+
+  /**
+   * @return index of a row whose sorted date column equals date or -1.
+   * @throws IllegalStateException if rows are not sorted by a date column.
+   */
+  public int find(LocalDate date) {
+    return findEpochDay((int) date.toEpochDay());
+  }
+
+  public int findEpochDay(int epochDay) {
+    if (sortedBy < 0) throw new IllegalStateException("rows are not sorted by date");
+    int r = Arrays.binarySearch((int[]) data[sortedBy], 0, numRow, epochDay);
+    return r < 0 ? -1 : r;
+  }
+
+  /**
+   * view of row r. it reads the table, so later changes are visible.
+   */
+  public Row row(int r) {
+    check(r);
+    return new Row(r);
+  }
+
+  public final class Row {
+    private final int r;
+
+    private Row(int r) {
+      this.r = r;
+    }
+
+    public int index() {
+      return r;
+    }
+
+    public int getEpochDay(int c) {
+      return TypedTable.this.getEpochDay(r, c);
+    }
+
+    public double getDouble(int c) {
+      return TypedTable.this.getDouble(r, c);
+    }
+
+    public long getLong(int c) {
+      return TypedTable.this.getLong(r, c);
+    }
+
+    public String getString(int c) {
+      return TypedTable.this.getString(r, c);
+    }
+
+    public LocalDate getDate(String col) {
+      return TypedTable.this.getDate(r, getColId(col));
+    }
+
+    public double getDouble(String col) {
+      return TypedTable.this.getDouble(r, getColId(col));
+    }
+
+    public long getLong(String col) {
+      return TypedTable.this.getLong(r, getColId(col));
+    }
+
+    public String getString(String col) {
+      return TypedTable.this.getString(r, getColId(col));
+    }
+  }
+}
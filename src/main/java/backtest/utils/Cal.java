@@ -3,43 +3,48 @@ package backtest.utils;
 import java.time.LocalDate;
 import java.time.Month;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * used to determine whether some day is holiday or not.
+ * stepping by business days is looked up in TradingCalendar.getDefault() and only walks day
+ * by day outside of its range.
  */
 public class Cal {
-  private static HashMap<Integer, HashSet<LocalDate>> holidayCache = new HashMap<>();
+  // concurrent since backtests query the calendar from multiple workers
+  private static ConcurrentMap<Integer, Set<LocalDate>> holidayCache = new ConcurrentHashMap<>();
 
   public static boolean isBusinessDay(LocalDate day) {
-    HashSet<LocalDate> holidays = holidayCache.get(day.getYear());
-    if (holidays == null) {
-      holidays = new HashSet<>();
-      int year = day.getYear();
-      //New Years Day
-      holidays.add(offsetForWeekend(LocalDate.of(year, Month.JANUARY, 1)));
-      //Martin Luther King Day
-      holidays.add(calculateFloatingHoliday(3, 1, year, 1));
-      //Washington's Birthday
-      holidays.add(calculateFloatingHoliday(3, 1, year, 2));
-      //Good Friday
-      holidays.add(getEasterSunday(year).minusDays(2));
-      //Memorial Day
-      holidays.add(calculateFloatingHoliday(0, 1, year, 5));
-      //Independence Day
-      holidays.add(offsetForWeekend(LocalDate.of(year, Month.JULY, 4)));
-      //Labor Day
-      holidays.add(calculateFloatingHoliday(1, 1, year, 9));
-      //Thanksgiving Day
-      holidays.add(calculateFloatingHoliday(4, 4, year, 11));
-      //Christmas
-      holidays.add(offsetForWeekend(LocalDate.of(year, Month.DECEMBER, 25)));
-      holidayCache.put(day.getYear(), holidays);
-    }
+    Set<LocalDate> holidays = holidayCache.computeIfAbsent(day.getYear(), Cal::holidaysOf);
     return day.getDayOfWeek().getValue() < 6 && !holidays.contains(day);
   }
 
+  private static Set<LocalDate> holidaysOf(int year) {
+    Set<LocalDate> holidays = new HashSet<>();
+    //New Years Day
+    holidays.add(offsetForWeekend(LocalDate.of(year, Month.JANUARY, 1)));
+    //Martin Luther King Day
+    holidays.add(calculateFloatingHoliday(3, 1, year, 1));
+    //Washington's Birthday
+    holidays.add(calculateFloatingHoliday(3, 1, year, 2));
+    //Good Friday
+    holidays.add(getEasterSunday(year).minusDays(2));
+    //Memorial Day
+    holidays.add(calculateFloatingHoliday(0, 1, year, 5));
+    //Independence Day
+    holidays.add(offsetForWeekend(LocalDate.of(year, Month.JULY, 4)));
+    //Labor Day
+    holidays.add(calculateFloatingHoliday(1, 1, year, 9));
+    //Thanksgiving Day
+    holidays.add(calculateFloatingHoliday(4, 4, year, 11));
+    //Christmas
+    holidays.add(offsetForWeekend(LocalDate.of(year, Month.DECEMBER, 25)));
+    return holidays;
+  }
+
   private static LocalDate offsetForWeekend(LocalDate day) {
     if (day.getDayOfWeek().getValue() == 6) return day.minusDays(1);
     else if (day.getDayOfWeek().getValue() == 7) return day.plusDays(1);
@@ -69,40 +74,63 @@ public class Cal {
     return LocalDate.of(year, month, day);
   }
 
+  /**
+   * @return n-th business day after day if n > 0 or (-n)-th before it if n < 0, looked up in
+   * the default TradingCalendar. null if the result is outside of it.
+   */
+  private static LocalDate offset(LocalDate day, int n) {
+    TradingCalendar calendar = TradingCalendar.getDefault();
+    if (!calendar.contains(day)) return null;
+    try {
+      return calendar.offset(day, n);
+    } catch (IllegalArgumentException e) {
+      // only near the ends of the calendar
+      return null;
+    }
+  }
+
   public static LocalDate getNextBusinessDay(LocalDate day) {
-    do {
-      day = day.plusDays(1);
-    } while (!isBusinessDay(day));
-    return day;
+    return getNextBusinessDay(day, 1);
   }
 
   public static LocalDate getLatestBusinessDayBefore(LocalDate day) {
+    LocalDate ret = offset(day.plusDays(1), -1);
+    if (ret != null) return ret;
     while (!isBusinessDay(day)) day = day.minusDays(1);
     return day;
   }
 
   public static LocalDate getLatestBusinessDayAfter(LocalDate day) {
+    LocalDate ret = offset(day.minusDays(1), 1);
+    if (ret != null) return ret;
     while (!isBusinessDay(day)) day = day.plusDays(1);
     return day;
   }
 
   public static LocalDate getPrevBusinessDay(LocalDate day) {
-    do {
-      day = day.minusDays(1);
-    } while (!isBusinessDay(day));
-    return day;
+    return getPrevBusinessDay(day, 1);
   }
 
   public static LocalDate getPrevBusinessDay(LocalDate day, int j) {
+    if (j <= 0) return day;
+    LocalDate ret = offset(day, -j);
+    if (ret != null) return ret;
     for (int i = 0; i < j; i++) {
-      day = getPrevBusinessDay(day);
+      do {
+        day = day.minusDays(1);
+      } while (!isBusinessDay(day));
     }
     return day;
   }
 
   public static LocalDate getNextBusinessDay(LocalDate day, int j) {
+    if (j <= 0) return day;
+    LocalDate ret = offset(day, j);
+    if (ret != null) return ret;
     for (int i = 0; i < j; i++) {
-      day = getNextBusinessDay(day);
+      do {
+        day = day.plusDays(1);
+      } while (!isBusinessDay(day));
     }
     return day;
   }
@@ -1,6 +1,7 @@
 package backtest.utils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Properties;
 
 public class Config {
@@ -14,8 +15,9 @@ public class Config {
   private Config() {
     prop = new Properties();
     ClassLoader classLoader = getClass().getClassLoader();
-    try {
-      prop.load(classLoader.getResourceAsStream("config.properties"));
+    // missing config is fine for code that never connects, e.g. benchmarks on generated data
+    try (InputStream in = classLoader.getResourceAsStream("config.properties")) {
+      if (in != null) prop.load(in);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -0,0 +1,79 @@
+package backtest.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * keeps the k items with highest score. thread safe so workers of a parallel search can
+ * offer results directly.
+ */
+public class Leaderboard<T> {
+  public static final class Entry<T> implements Comparable<Entry<T>> {
+    public final T item;
+    public final double score;
+
+    Entry(T item, double score) {
+      this.item = item;
+      this.score = score;
+    }
+
+    @Override
+    public int compareTo(Entry<T> o) {
+      return Double.compare(score, o.score);
+    }
+
+    public String toString() {
+      return "score: " + score + " " + item;
+    }
+  }
+
+  private final int k;
+  // min heap so the worst of the top k is polled first
+  private final PriorityQueue<Entry<T>> heap;
+
+  public Leaderboard(int k) {
+    if (k < 1) throw new IllegalArgumentException("k must be positive");
+    this.k = k;
+    heap = new PriorityQueue<>(k + 1);
+  }
+
+  /**
+   * NaN scores are ignored.
+   *
+   * @return whether item enters the top k.
+   */
+  public synchronized boolean offer(T item, double score) {
+    if (Double.isNaN(score)) return false;
+    if (heap.size() == k && heap.peek().score >= score) return false;
+    heap.add(new Entry<>(item, score));
+    if (heap.size() > k) heap.poll();
+    return true;
+  }
+
+  public synchronized int size() {
+    return heap.size();
+  }
+
+  public synchronized boolean isEmpty() {
+    return heap.isEmpty();
+  }
+
+  /**
+   * @return null if nothing has been offered.
+   */
+  public synchronized Entry<T> best() {
+    List<Entry<T>> list = sorted();
+    return list.isEmpty() ? null : list.get(0);
+  }
+
+  /**
+   * @return entries from highest score to lowest.
+   */
+  public synchronized List<Entry<T>> sorted() {
+    List<Entry<T>> list = new ArrayList<>(heap);
+    list.sort(Collections.reverseOrder());
+    return list;
+  }
+}
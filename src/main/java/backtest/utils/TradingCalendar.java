@@ -0,0 +1,174 @@
+package backtest.utils;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * business days of a range of dates as a sorted array of epoch days, with a reverse lookup
+ * from every calendar day of the range to its position. next, prev, offset and
+ * businessDaysBetween are array lookups instead of walking day by day through Cal.
+ * instances are immutable and can be shared by threads.
+ * business days are the same as Cal.isBusinessDay.
+ */
+public final class TradingCalendar {
+  private static final LocalDate defaultFrom = LocalDate.of(1970, 1, 1);
+  private static final LocalDate defaultTo = LocalDate.of(2099, 12, 31);
+  // epoch days of business days in increasing order
+  private final int[] days;
+  // ceil[d - first] is the index of the first business day on or after epoch day d
+  private final int[] ceil;
+  private final int first;
+  private final int last;
+
+  private static class DefaultHolder {
+    static final TradingCalendar instance = new TradingCalendar(defaultFrom, defaultTo);
+  }
+
+  /**
+   * calendar of 1970 to 2099, built on first use.
+   */
+  public static TradingCalendar getDefault() {
+    return DefaultHolder.instance;
+  }
+
+  /**
+   * calendar of business days from from to to, both inclusive.
+   */
+  public TradingCalendar(LocalDate from, LocalDate to) {
+    if (to.isBefore(from)) throw new IllegalArgumentException(from + " is after " + to);
+    first = (int) from.toEpochDay();
+    last = (int) to.toEpochDay();
+    ceil = new int[last - first + 1];
+    int[] business = new int[ceil.length];
+    int n = 0;
+    LocalDate day = from;
+    for (int d = first; d <= last; d++, day = day.plusDays(1)) {
+      ceil[d - first] = n;
+      if (Cal.isBusinessDay(day)) business[n++] = d;
+    }
+    days = Arrays.copyOf(business, n);
+  }
+
+  public LocalDate getFirstDay() {
+    return LocalDate.ofEpochDay(first);
+  }
+
+  public LocalDate getLastDay() {
+    return LocalDate.ofEpochDay(last);
+  }
+
+  /**
+   * @return whether epochDay is in the range of the calendar.
+   */
+  public boolean contains(int epochDay) {
+    return epochDay >= first && epochDay <= last;
+  }
+
+  public boolean contains(LocalDate day) {
+    return contains(toInt(day));
+  }
+
+  /**
+   * @return number of business days in the calendar.
+   */
+  public int size() {
+    return days.length;
+  }
+
+  /**
+   * @return epoch day of the i-th business day of the calendar.
+   */
+  public int get(int i) {
+    return days[i];
+  }
+
+  /**
+   * @return index of the first business day on or after epochDay, size() if there is none.
+   */
+  public int ceilIndex(int epochDay) {
+    check(epochDay);
+    return ceil[epochDay - first];
+  }
+
+  /**
+   * @return index of the last business day on or before epochDay, -1 if there is none.
+   */
+  public int floorIndex(int epochDay) {
+    int i = ceilIndex(epochDay);
+    return i < days.length && days[i] == epochDay ? i : i - 1;
+  }
+
+  public boolean isBusinessDay(int epochDay) {
+    int i = ceilIndex(epochDay);
+    return i < days.length && days[i] == epochDay;
+  }
+
+  public boolean isBusinessDay(LocalDate day) {
+    return isBusinessDay(toInt(day));
+  }
+
+  /**
+   * @return n-th business day after epochDay if n > 0, or (-n)-th business day before it if
+   * n < 0, like Cal.getNextBusinessDay(day, n) and Cal.getPrevBusinessDay(day, -n). epochDay
+   * itself if n == 0.
+   * @throws IllegalArgumentException if the result is outside the calendar.
+   */
+  public int offset(int epochDay, int n) {
+    if (n == 0) return epochDay;
+    int i = n > 0 ? floorIndex(epochDay) + n : ceilIndex(epochDay) + n;
+    if (i < 0 || i >= days.length) {
+      throw new IllegalArgumentException(LocalDate.ofEpochDay(epochDay) + " offset by " + n +
+          " is outside " + getFirstDay() + " to " + getLastDay());
+    }
+    return days[i];
+  }
+
+  public LocalDate offset(LocalDate day, int n) {
+    return LocalDate.ofEpochDay(offset(toInt(day), n));
+  }
+
+  /**
+   * @return first business day after epochDay.
+   */
+  public int next(int epochDay) {
+    return offset(epochDay, 1);
+  }
+
+  public LocalDate next(LocalDate day) {
+    return offset(day, 1);
+  }
+
+  /**
+   * @return last business day before epochDay.
+   */
+  public int prev(int epochDay) {
+    return offset(epochDay, -1);
+  }
+
+  public LocalDate prev(LocalDate day) {
+    return offset(day, -1);
+  }
+
+  /**
+   * @return number of business days after from and on or before to, negative if to is
+   * before from. offset(from, businessDaysBetween(from, to)) == to for a business day to.
+   */
+  public int businessDaysBetween(int from, int to) {
+    return floorIndex(to) - floorIndex(from);
+  }
+
+  public int businessDaysBetween(LocalDate from, LocalDate to) {
+    return businessDaysBetween(toInt(from), toInt(to));
+  }
+
+  private void check(int epochDay) {
+    if (!contains(epochDay)) {
+      throw new IllegalArgumentException(LocalDate.ofEpochDay(epochDay) + " is outside " +
+          getFirstDay() + " to " + getLastDay());
+    }
+  }
+
+  private static int toInt(LocalDate day) {
+    return (int) day.toEpochDay();
+  }
+}
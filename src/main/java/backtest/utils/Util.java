@@ -222,6 +222,38 @@ public class Util {
     return -1;
   }
   
+  /**
+   * Assumes arr is increasing order.
+   *
+   * @return index of first element that is >= val
+   */
+  public static int indexOfFirstEleNoLessThan(int[] arr, int val) {
+    int from = 0, to = arr.length - 1;
+    while (from < to) {
+      int mid = (from + to) >>> 1;
+      if (arr[mid] < val) from = mid + 1;
+      else to = mid;
+    }
+    if (from == to && arr[from] >= val) return from;
+    return -1;
+  }
+
+  /**
+   * Assumes arr is increasing order.
+   *
+   * @return index of last element that is <= val
+   */
+  public static int indexOfLastEleNoLargerThan(int[] arr, int val) {
+    int from = 0, to = arr.length - 1;
+    while (from < to) {
+      int mid = (from + to + 1) >>> 1;
+      if (arr[mid] > val) to = mid - 1;
+      else from = mid;
+    }
+    if (from == to && arr[from] <= val) return from;
+    return -1;
+  }
+
   public static HashSet<String> readProcessedPull(String file) throws FileNotFoundException, IOException {
     HashSet<String> result = new HashSet<String>();
     try (BufferedReader br = new BufferedReader(new FileReader(file))) {
@@ -0,0 +1,170 @@
+package backtest.at;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryFetcherTest {
+    private static final ScheduledExecutorService server = Executors.newScheduledThreadPool(4,
+            r -> {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // answers response after delayMs on another thread, as ActiveTick callbacks do
+    private static class FakeRequest implements HistoryFetcher.Request {
+        final HistoryFetcher.Response response;
+        final int delayMs;
+        final List<Integer> result;
+
+        FakeRequest(HistoryFetcher.Response response, int delayMs, List<Integer> result) {
+            this.response = response;
+            this.delayMs = delayMs;
+            this.result = result;
+        }
+
+        @Override
+        public void send(int deadlineMs, Consumer<HistoryFetcher.Response> done) {
+            server.schedule(() -> done.accept(response), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void testBoundsRequestsInFlight() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<CompletableFuture<List<Integer>>> futures = new ArrayList<>();
+        try (HistoryFetcher fetcher = new HistoryFetcher(null, 3)) {
+            for (int i = 0; i < 20; i++) {
+                int n = i;
+                futures.add(fetcher.submit("request " + i, () -> new FakeRequest(
+                        HistoryFetcher.Response.SUCCESS, 20, ImmutableList.of(n)) {
+                    @Override
+                    public void send(int deadlineMs,
+                                     Consumer<HistoryFetcher.Response> done) {
+                        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        super.send(deadlineMs, response -> {
+                            inFlight.decrementAndGet();
+                            done.accept(response);
+                        });
+                    }
+                }, r -> r.result));
+            }
+            for (int i = 0; i < 20; i++) {
+                assertEquals(ImmutableList.of(i), futures.get(i).join());
+            }
+        }
+        assertTrue(maxInFlight.get() <= 3);
+    }
+
+    @Test
+    public void testRetries() {
+        AtomicInteger trials = new AtomicInteger();
+        try (HistoryFetcher fetcher = new HistoryFetcher(null, 2).setTimings(50, 10, 10)) {
+            // fails, then returns nothing, then succeeds
+            CompletableFuture<List<Integer>> retried = fetcher.submit("retried", () -> {
+                int trial = trials.getAndIncrement();
+                return trial == 0 ? new FakeRequest(HistoryFetcher.Response.FAILED, 1, null) :
+                        new FakeRequest(HistoryFetcher.Response.SUCCESS, 1,
+                                trial == 1 ? ImmutableList.of() : ImmutableList.of(7));
+            }, r -> r.result);
+            assertEquals(ImmutableList.of(7), retried.join());
+            assertEquals(3, trials.get());
+
+            // answers only after the deadline, so every trial times out
+            AtomicInteger timeouts = new AtomicInteger();
+            CompletableFuture<List<Integer>> failed = fetcher.submit("failed", () -> {
+                timeouts.incrementAndGet();
+                return (deadlineMs, done) -> server.schedule(
+                        () -> done.accept(HistoryFetcher.Response.SUCCESS), deadlineMs + 200,
+                        TimeUnit.MILLISECONDS);
+            }, r -> ImmutableList.of(1));
+            assertEquals(ImmutableList.of(), failed.join());
+            assertEquals(HistoryFetcher.maxRetry, timeouts.get());
+        }
+    }
+
+    @Test
+    public void testTimedOutRequestKeepsSlot() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<CompletableFuture<List<Integer>>> futures = new ArrayList<>();
+        try (HistoryFetcher fetcher = new HistoryFetcher(null, 2).setTimings(30, 1, 1)) {
+            for (int i = 0; i < 4; i++) {
+                int n = i;
+                AtomicInteger trials = new AtomicInteger();
+                // the first trial answers well after its deadline, the retry in time
+                futures.add(fetcher.submit("request " + i, () -> new FakeRequest(
+                        HistoryFetcher.Response.SUCCESS,
+                        trials.getAndIncrement() == 0 ? 300 : 1, ImmutableList.of(n)) {
+                    @Override
+                    public void send(int deadlineMs,
+                                     Consumer<HistoryFetcher.Response> done) {
+                        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        super.send(deadlineMs, response -> {
+                            inFlight.decrementAndGet();
+                            done.accept(response);
+                        });
+                    }
+                }, r -> r.result));
+            }
+            for (int i = 0; i < 4; i++) {
+                assertEquals(ImmutableList.of(i), futures.get(i).join());
+            }
+        }
+        assertTrue(maxInFlight.get() <= 2);
+    }
+
+    @Test
+    public void testFreesSlotOfLostRequest() {
+        try (HistoryFetcher fetcher = new HistoryFetcher(null, 1).setTimings(20, 1, 1)
+                .setGrace(50)) {
+            // never answers, as after a dropped session
+            CompletableFuture<List<Integer>> lost = fetcher.submit("lost",
+                    () -> (deadlineMs, done) -> {
+                    }, r -> ImmutableList.<Integer>of());
+            CompletableFuture<List<Integer>> next = fetcher.submit("next", () -> new FakeRequest(
+                    HistoryFetcher.Response.SUCCESS, 1, ImmutableList.of(1)), r -> r.result);
+            assertEquals(ImmutableList.of(), lost.join());
+            assertEquals(ImmutableList.of(1), next.join());
+            // next can only be sent after a slot of lost is freed
+            assertTrue(fetcher.getLate() >= 1);
+        }
+    }
+
+    @Test
+    public void testPausesAfterMaxLimit() {
+        List<Long> sendTimes = new CopyOnWriteArrayList<>();
+        AtomicInteger trials = new AtomicInteger();
+        try (HistoryFetcher fetcher = new HistoryFetcher(null, 4).setTimings(500, 1, 200)) {
+            CompletableFuture<List<Integer>> limited = fetcher.submit("limited", () -> {
+                sendTimes.add(System.nanoTime());
+                return new FakeRequest(trials.getAndIncrement() == 0 ?
+                        HistoryFetcher.Response.MAX_LIMIT : HistoryFetcher.Response.SUCCESS, 1,
+                        ImmutableList.of(1));
+            }, r -> r.result);
+            assertEquals(ImmutableList.of(1), limited.join());
+        }
+        assertEquals(2, sendTimes.size());
+        assertTrue(sendTimes.get(1) - sendTimes.get(0) >= TimeUnit.MILLISECONDS.toNanos(190));
+    }
+
+    @Test(expected = CancellationException.class)
+    public void testCloseFailsPending() {
+        HistoryFetcher fetcher = new HistoryFetcher(null, 1);
+        CompletableFuture<List<Integer>> pending = fetcher.submit("never answered",
+                () -> (deadlineMs, done) -> {
+                }, r -> ImmutableList.<Integer>of());
+        fetcher.close();
+        pending.join();
+    }
+}
@@ -0,0 +1,93 @@
+package backtest.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CSVParserTest {
+    private static List<List<String>> parse(String csv, int bufferSize) throws Exception {
+        List<List<String>> rows = new ArrayList<>();
+        new CSVParser(bufferSize).parse(Channels.newChannel(new ByteArrayInputStream(
+                csv.getBytes(StandardCharsets.UTF_8))), new CSVParser.RowHandler() {
+            @Override
+            public void header(CSVParser.Fields header) {
+                rows.add(header.toList());
+            }
+
+            @Override
+            public boolean row(CSVParser.Fields row) {
+                rows.add(row.toList());
+                return true;
+            }
+        });
+        return rows;
+    }
+
+    @Test
+    public void testCSVWriterCompatible() throws Exception {
+        File file = File.createTempFile("parser", ".csv");
+        ArrayList<String> header = new ArrayList<>(Arrays.asList("a", "b,c", "\"d"));
+        ArrayList<String> row = new ArrayList<>(Arrays.asList("say \"hi\"", "", "\"x\",\"y\""));
+        CSVWriter writer = new CSVWriter(file.getPath(), header);
+        writer.println(row);
+        writer.close();
+        List<List<String>> rows = new ArrayList<>();
+        new CSVParser(4).parse(file.getPath(), new CSVParser.RowHandler() {
+            @Override
+            public void header(CSVParser.Fields fields) {
+                rows.add(fields.toList());
+            }
+
+            @Override
+            public boolean row(CSVParser.Fields fields) {
+                rows.add(fields.toList());
+                return true;
+            }
+        });
+        assertEquals("header", header, rows.get(0));
+        assertEquals("row", row, rows.get(1));
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        String csv = "Date,Open\r\n2016-01-04,1.5\r\n\r\n\"a\nb\",\"\"\"\"\n,\n2016-01-05,2";
+        for (int bufferSize : new int[]{1, 3, 1024}) {
+            List<List<String>> rows = parse(csv, bufferSize);
+            assertEquals("rows", 5, rows.size());
+            assertEquals("crlf", Arrays.asList("2016-01-04", "1.5"), rows.get(1));
+            assertEquals("quoted line break", Arrays.asList("a\nb", "\""), rows.get(2));
+            assertEquals("empty fields", Arrays.asList("", ""), rows.get(3));
+            assertEquals("no line break at end", Arrays.asList("2016-01-05", "2"), rows.get(4));
+        }
+    }
+
+    @Test
+    public void testNumbers() throws Exception {
+        String[] values = {"108.910004", "-0.5", "23581700", "1e3", "0.1", "123456789.123456789",
+                "007", ".5"};
+        String date = "2016-02-29";
+        StringBuilder sb = new StringBuilder("h\n");
+        for (String value : values) sb.append(value).append(',').append(date).append('\n');
+        List<Double> doubles = new ArrayList<>();
+        List<Integer> days = new ArrayList<>();
+        new CSVParser().parse(Channels.newChannel(new ByteArrayInputStream(
+                sb.toString().getBytes(StandardCharsets.UTF_8))), row -> {
+            doubles.add(row.getDouble(0));
+            days.add(row.getEpochDay(1));
+            return true;
+        });
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], Double.parseDouble(values[i]), doubles.get(i), 0);
+            assertEquals("date", LocalDate.parse(date).toEpochDay(), (long) days.get(i));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package backtest.io;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SQLiteTest {
+    private static SQLite open() throws Exception {
+        SQLite sqlite = new SQLite(Files.createTempDirectory("sqlite").resolve("test.db").toString());
+        sqlite.executeUpdate("create table t (k text not null, v integer, primary key (k))");
+        sqlite.executeUpdate("create table u (x double)");
+        return sqlite;
+    }
+
+    private static long count(SQLite sqlite) {
+        return sqlite.queryLong("select count(*) from t", -1);
+    }
+
+    @Test
+    public void testBatchCommits() throws Exception {
+        try (SQLite sqlite = open()) {
+            SQLite.Batch batch = sqlite.batch("insert into t values (?, ?)");
+            try (SQLite.Batch b = batch) {
+                for (int i = 0; i < 2500; i++) b.add("k" + i, i);
+            }
+            assertTrue(batch.isCommitted());
+            assertEquals(2500, count(sqlite));
+            assertEquals(Optional.of(7L),
+                    sqlite.queryFirst("select v from t where k = ?", rs -> rs.getLong(1), "k7"));
+            assertEquals(Optional.empty(),
+                    sqlite.queryFirst("select v from t where k = ?", rs -> rs.getLong(1), "none"));
+        }
+    }
+
+    @Test
+    public void testOtherStatementsInBatch() throws Exception {
+        try (SQLite sqlite = open()) {
+            List<String> committed = new ArrayList<>();
+            try (SQLite.Batch batch = sqlite.batch("insert into t values (?, ?)")) {
+                batch.add("a", 1);
+                batch.addTo("insert into u values (?)", 2.5);
+                batch.onCommit(() -> committed.add("a"));
+            }
+            assertEquals(Collections.singletonList("a"), committed);
+            assertEquals(2.5, sqlite.queryDouble("select x from u", Double.NaN), 0);
+            assertEquals(1, sqlite.queryLong("select v from t where k = ?", -1, "a"));
+            assertEquals(-1, sqlite.queryLong("select v from t where k = ?", -1, "none"));
+        }
+    }
+
+    @Test
+    public void testBatchRollsBack() throws Exception {
+        try (SQLite sqlite = open()) {
+            SQLite.Batch batch = sqlite.batch("insert into t values (?, ?)");
+            try (SQLite.Batch b = batch) {
+                // the first 1000 rows are flushed before the bad row
+                for (int i = 0; i < 1500; i++) b.add("k" + i, i);
+                b.addTo("insert into u values (?)", 1.5);
+                b.onCommit(() -> fail("rolled back"));
+                b.add(null, 0);
+            }
+            assertFalse(batch.isCommitted());
+            assertEquals(0, count(sqlite));
+            assertEquals(0, sqlite.queryLong("select count(*) from u", -1));
+
+            // the connection is back in autocommit after a rollback
+            try (SQLite.Batch b = sqlite.batch("insert into t values (?, ?)")) {
+                b.add("a", 1);
+            }
+            assertEquals(1, count(sqlite));
+        }
+    }
+
+    @Test
+    public void testCachesPreparedStatements() throws Exception {
+        try (SQLite sqlite = open()) {
+            String sql = "select v from t where k = ?";
+            assertSame(sqlite.prepare(sql), sqlite.prepare(sql));
+            assertFalse(sqlite.prepare(sql) == sqlite.prepare("select k from t where v = ?"));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package backtest.io;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TickIndexTest {
+    private static final LocalDate day = LocalDate.of(2016, 7, 22);
+
+    private static LocalDateTime at(LocalDate date, int hour, int minute, int second) {
+        return LocalDateTime.of(date, LocalTime.of(hour, minute, second));
+    }
+
+    @Test
+    public void testLookups() throws Exception {
+        TickStore store = new TickStore(Files.createTempDirectory("ticks"));
+        LocalDate next = day.plusDays(3);
+        store.write(day, "A", new Ticks(TickJournal.QUOTE)
+                .addQuote(at(day, 9, 30, 0), 10.01, 1, 10, 2)
+                .addQuote(at(day, 9, 30, 5), 10.02, 1, 10.01, 2)
+                .addQuote(at(day, 12, 0, 0), 11, 1, 10.99, 2)
+                .addQuote(at(day, 15, 59, 1), 10.51, 1, 10.5, 2));
+        store.write(next, "A", new Ticks(TickJournal.QUOTE)
+                .addQuote(at(next, 9, 30, 2), 10.61, 1, 10.6, 2));
+        // noon is not loaded
+        TickIndex index = TickIndex.load(store, TickJournal.QUOTE, Arrays.asList("A", "B"),
+                Arrays.asList(day, next), LocalTime.of(9, 30), LocalTime.of(9, 31));
+        index.load(store, Arrays.asList("A"), Arrays.asList(day, next), LocalTime.of(15, 59),
+                LocalTime.of(16, 0));
+
+        int a = index.getSymbolId("A");
+        assertEquals("A", index.getSymbol(a));
+        assertEquals(-1, index.getSymbolId("C"));
+        assertNull(index.get(index.getSymbolId("B"), day));
+        assertNull(index.get(a, day.plusDays(1)));
+        assertEquals(3, index.get(a, day).size());
+
+        assertEquals(0, index.firstAtOrAfter(a, at(day, 9, 30, 0)));
+        assertEquals(1, index.firstAtOrAfter(a, at(day, 9, 30, 1)));
+        assertEquals(2, index.firstAtOrAfter(a, at(day, 9, 31, 0)));
+        assertEquals(-1, index.firstAtOrAfter(a, at(day, 16, 0, 0)));
+        assertEquals(-1, index.lastAtOrBefore(a, at(day, 9, 29, 59)));
+        assertEquals(1, index.lastAtOrBefore(a, at(day, 9, 30, 59)));
+        assertEquals(10.01, index.get(a, day).getBid(1), 0);
+        assertEquals(0, index.lastAtOrBefore(a, at(next, 9, 30, 30)));
+        assertEquals(-1, index.lastAtOrBefore(a, at(next, 9, 30, 1)));
+
+        long second = at(day, 15, 59, 1).toEpochSecond(ZoneOffset.UTC);
+        assertEquals(2, index.lastAtOrBefore(a, second));
+        assertEquals(2, index.firstAtOrAfter(a, second));
+        assertEquals(-1, index.firstAtOrAfter(a, second + 1));
+    }
+
+    @Test
+    public void testPutMerges() {
+        TickIndex index = new TickIndex(TickJournal.TRADE);
+        int a = index.addSymbol("A");
+        assertEquals(a, index.addSymbol("A"));
+        index.put(a, day, new Ticks(TickJournal.TRADE).addTrade(at(day, 10, 0, 0), 10, 100));
+        index.put(a, day.minusDays(1),
+                new Ticks(TickJournal.TRADE).addTrade(at(day.minusDays(1), 10, 0, 0), 9, 100));
+        index.put(a, day, new Ticks(TickJournal.TRADE)
+                .addTrade(at(day, 11, 0, 0), 11, 100)
+                .addTrade(at(day, 9, 0, 0), 9.5, 100));
+        Ticks ticks = index.get(a, day);
+        assertEquals(3, ticks.size());
+        assertEquals(9.5, ticks.getPrice(0), 0);
+        assertEquals(11, ticks.getPrice(2), 0);
+        assertEquals(9, index.get(a, day.minusDays(1)).getPrice(0), 0);
+    }
+}
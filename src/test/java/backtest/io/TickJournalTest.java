@@ -0,0 +1,117 @@
+package backtest.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TickJournalTest {
+    private static final LocalDateTime time = LocalDateTime.of(2016, 7, 22, 9, 30, 1, 250_000_000);
+
+    private static Path newPath() throws IOException {
+        return Files.createTempDirectory("journal").resolve("ticks");
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        Path path = newPath();
+        try (TickJournal journal = new TickJournal(path)) {
+            journal.quote("AAPL", time, 99.5, 3, 99.25, 5);
+            journal.trade("BRK.B", time.plusSeconds(1), 140.01, 100);
+            journal.bar("SPY", time.toLocalDate().atStartOfDay(), 1, 2, 0.5, 1.5, 123456789L);
+        }
+        List<String> lines = new ArrayList<>();
+        assertEquals(3, TickJournal.replay(path, record -> lines.add(record.toString())));
+        assertEquals("2016-07-22T09:30:01.250 AAPL 99.5 3 99.25 5", lines.get(0));
+        assertEquals("2016-07-22T09:30:02.250 BRK.B 140.01 100", lines.get(1));
+        assertEquals("2016-07-22T00:00 SPY 1.0 2.0 0.5 1.5 123456789", lines.get(2));
+    }
+
+    @Test
+    public void testConcurrentAppend() throws Exception {
+        Path path = newPath();
+        int numThreads = 4, perThread = 20000;
+        // a small ring so that appending waits for the writer
+        try (TickJournal journal = new TickJournal(path, 64, 10)) {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                String symbol = "T" + t;
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) journal.trade(symbol, time, i, i);
+                }));
+            }
+            for (Thread thread : threads) thread.start();
+            for (Thread thread : threads) thread.join();
+            journal.flush();
+            assertEquals(TickJournal.fileSize(numThreads * perThread), Files.size(path));
+        }
+        // records of each thread come back in order
+        int[] next = new int[numThreads];
+        long n = TickJournal.replay(path, record -> {
+            int t = record.getSymbol().charAt(1) - '0';
+            assertEquals(next[t]++, record.getSize());
+        });
+        assertEquals(numThreads * perThread, n);
+        for (int t = 0; t < numThreads; t++) assertEquals(perThread, next[t]);
+    }
+
+    @Test
+    public void testReopenDropsPartialRecord() throws Exception {
+        Path path = newPath();
+        try (TickJournal journal = new TickJournal(path)) {
+            journal.trade("A", time, 1, 1);
+        }
+        // half a record left by a crash
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(TickJournal.recordSize / 2));
+        }
+        try (TickJournal journal = new TickJournal(path)) {
+            journal.trade("B", time, 2, 2);
+        }
+        List<String> symbols = new ArrayList<>();
+        TickJournal.replay(path, record -> symbols.add(record.getSymbol()));
+        assertEquals(2, symbols.size());
+        assertEquals("B", symbols.get(1));
+    }
+
+    @Test
+    public void testRejectsBadRecords() throws Exception {
+        Path path = newPath();
+        try (TickJournal journal = new TickJournal(path, 4, 1000)) {
+            journal.trade("A", time, 1, 1);
+            for (int i = 0; i < 8; i++) {
+                try {
+                    if (i % 2 == 0) journal.quote("A", null, 1, 1, 1, 1);
+                    else journal.trade("TOO_LONG_SYMBOL_X", time, 1, 1);
+                    fail("accepted a bad record");
+                } catch (IllegalArgumentException e) {
+                    // no slot is claimed, so the writer doesn't wait for it
+                }
+            }
+            journal.trade("B", time, 2, 1);
+            journal.flush();
+        }
+        List<String> symbols = new ArrayList<>();
+        assertEquals(2, TickJournal.replay(path, record -> symbols.add(record.getSymbol())));
+        assertEquals("A", symbols.get(0));
+        assertEquals("B", symbols.get(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAJournal() throws Exception {
+        Path path = newPath();
+        Files.write(path, "2016-07-22T09:30 A 1.0 1 1.0 1\n".getBytes());
+        new TickJournal(path).close();
+    }
+}
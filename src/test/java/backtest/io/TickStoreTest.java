@@ -0,0 +1,117 @@
+package backtest.io;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TickStoreTest {
+    private static final LocalDate day = LocalDate.of(2016, 7, 22);
+
+    // a random walk of quotes during the day, several at the same time now and then
+    private static Ticks quotes(int n, long seed) {
+        Random random = new Random(seed);
+        Ticks ticks = new Ticks(TickJournal.QUOTE);
+        LocalDateTime time = LocalDateTime.of(day, LocalTime.of(9, 30));
+        double bid = 39.75;
+        for (int i = 0; i < n; i++) {
+            if (random.nextInt(4) > 0) time = time.plusNanos(random.nextInt(50_000_000));
+            bid = Math.max(0.01, bid + (random.nextInt(5) - 2) * 0.01);
+            ticks.addQuote(time, bid + 0.01 * (1 + random.nextInt(3)), random.nextInt(20), bid,
+                    random.nextInt(1000));
+        }
+        return ticks;
+    }
+
+    private static void assertSame(Ticks expected, Ticks actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getNanos(i), actual.getNanos(i));
+            assertEquals(expected.getAsk(i), actual.getAsk(i), 0);
+            assertEquals(expected.getBid(i), actual.getBid(i), 0);
+            assertEquals(expected.getAskSize(i), actual.getAskSize(i));
+            assertEquals(expected.getBidSize(i), actual.getBidSize(i));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        TickStore store = new TickStore(Files.createTempDirectory("ticks"));
+        Ticks ticks = quotes(5000, 1);
+        store.write(day, "A", ticks);
+        assertSame(ticks, store.read(day, "A", TickJournal.QUOTE));
+        assertEquals(Arrays.asList("A"), store.getSymbols(day, TickJournal.QUOTE));
+        assertEquals(0, store.read(day, "A", TickJournal.TRADE).size());
+        assertEquals(0, store.read(day.plusDays(1), "A", TickJournal.QUOTE).size());
+        // times, prices and sizes move in small steps and take a few bytes each
+        assertTrue(TickStore.encode(ticks).remaining() < ticks.size() * 12);
+    }
+
+    @Test
+    public void testSlice() throws Exception {
+        TickStore store = new TickStore(Files.createTempDirectory("ticks"));
+        Ticks ticks = quotes(20000, 2);
+        store.write(day, "A", ticks);
+        Random random = new Random(3);
+        for (int k = 0; k < 50; k++) {
+            // times of ticks, so that ranges start and end on ticks at the same time
+            LocalTime from = ticks.getTime(random.nextInt(ticks.size())).toLocalTime();
+            LocalTime to = ticks.getTime(random.nextInt(ticks.size())).toLocalTime();
+            if (to.isBefore(from)) {
+                LocalTime t = from;
+                from = to;
+                to = t;
+            }
+            assertSame(ticks.slice(LocalDateTime.of(day, from), LocalDateTime.of(day, to)),
+                    store.read(day, "A", TickJournal.QUOTE, from, to));
+        }
+    }
+
+    @Test
+    public void testTrades() throws Exception {
+        TickStore store = new TickStore(Files.createTempDirectory("ticks"));
+        Ticks trades = new Ticks(TickJournal.TRADE)
+                .addTrade(LocalDateTime.of(day, LocalTime.of(9, 30, 1)), 140.01, 100)
+                .addTrade(LocalDateTime.of(day, LocalTime.of(9, 30)), 140.0, 200);
+        store.write(day, "BRK.B", trades);
+        Ticks read = store.read(day, "BRK.B", TickJournal.TRADE);
+        assertEquals(2, read.size());
+        // sorted by time
+        assertEquals(140.0, read.getPrice(0), 0);
+        assertEquals(200, read.getSize(0));
+        assertEquals(140.01, read.getPrice(1), 0);
+    }
+
+    @Test
+    public void testImportJournalTwice() throws Exception {
+        Path dir = Files.createTempDirectory("ticks");
+        Path journalPath = dir.resolve("quotes.journal");
+        Ticks ticks = quotes(3000, 4);
+        try (TickJournal journal = new TickJournal(journalPath)) {
+            for (int i = 0; i < ticks.size(); i++) {
+                journal.quote("A", ticks.getTime(i), ticks.getAsk(i), ticks.getAskSize(i),
+                        ticks.getBid(i), ticks.getBidSize(i));
+            }
+            journal.trade("A", ticks.getTime(0), 39.76, 100);
+        }
+        TickStore store = new TickStore(dir.resolve("store"));
+        assertEquals(ticks.size() + 1, store.importJournal(journalPath));
+        store.importJournal(journalPath);
+        assertSame(ticks, store.read(day, "A", TickJournal.QUOTE));
+        assertEquals(1, store.read(day, "A", TickJournal.TRADE).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOtherDay() throws Exception {
+        TickStore store = new TickStore(Files.createTempDirectory("ticks"));
+        store.write(day.plusDays(1), "A", quotes(10, 5));
+    }
+}
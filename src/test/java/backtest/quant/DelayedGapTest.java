@@ -0,0 +1,64 @@
+package backtest.quant;
+
+import backtest.io.TickIndex;
+import backtest.io.TickJournal;
+import backtest.io.Ticks;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class DelayedGapTest {
+    private static final LocalDate prev = LocalDate.of(2016, 7, 21);
+    private static final LocalDate day = LocalDate.of(2016, 7, 22);
+
+    private static LocalDateTime at(LocalDate date, int hour, int minute, int second, int millis) {
+        return LocalDateTime.of(date, LocalTime.of(hour, minute, second, millis * 1_000_000));
+    }
+
+    @Test
+    public void testEntersInTheSecondOfTheDelay() throws Exception {
+        Stocks stocks = new Stocks(new SyntheticPriceSource(3, prev.minusYears(1), day, 1));
+        List<String> tickers = stocks.getSP500();
+        TickIndex quotes = new TickIndex(TickJournal.QUOTE);
+        for (String ticker : tickers) {
+            int id = quotes.addSymbol(ticker);
+            quotes.put(id, prev, new Ticks(TickJournal.QUOTE)
+                    .addQuote(at(prev, 15, 59, 0, 500), 10, 1, 9.99, 1));
+        }
+        // enters at the quote of 09:30:59.400
+        quotes.put(quotes.getSymbolId(tickers.get(0)), day, new Ticks(TickJournal.QUOTE)
+                .addQuote(at(day, 9, 30, 0, 200), 9, 1, 8.99, 1)
+                .addQuote(at(day, 9, 30, 59, 400), 9.5, 1, 9.49, 1)
+                .addQuote(at(day, 15, 59, 0, 0), 9.8, 1, 9.79, 1));
+        // no quote in the delay, so the open quote is stale
+        quotes.put(quotes.getSymbolId(tickers.get(1)), day, new Ticks(TickJournal.QUOTE)
+                .addQuote(at(day, 9, 30, 0, 0), 9, 1, 8.99, 1)
+                .addQuote(at(day, 15, 59, 0, 0), 9.8, 1, 9.79, 1));
+        List<String> trades = new ArrayList<>();
+        Map<String, Integer> missing = new HashMap<>();
+        new DelayedGap(stocks).runWith(quotes, 30000, new DelayedGap.Params(6, 59), day,
+                day.plusDays(3), new TradeListener() {
+                    @Override
+                    public void onTrade(LocalDate date, String ticker, int shares,
+                                        double startPrice, double endPrice) {
+                        trades.add(ticker + " " + startPrice + " " + endPrice);
+                    }
+
+                    @Override
+                    public void onMissing(LocalDate date, String what, int count) {
+                        missing.put(what, count);
+                    }
+                });
+        assertEquals(1, trades.size());
+        assertEquals(tickers.get(0) + " 9.5 9.79", trades.get(0));
+        assertEquals(Integer.valueOf(1), missing.get("delayed open"));
+    }
+}
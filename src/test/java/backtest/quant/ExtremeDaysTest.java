@@ -0,0 +1,106 @@
+package backtest.quant;
+
+import backtest.utils.Util;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExtremeDaysTest {
+    /**
+     * the former Stock.getExtremeDays, with a deque of boxed values.
+     */
+    private static List<LocalDate> reference(Stock stock, LocalDate from, LocalDate to,
+                                             Period windowSize, boolean high) {
+        List<LocalDate> list = new ArrayList<>();
+        if (!from.isBefore(to)) return list;
+        from = from.minus(windowSize);
+        int fromi = stock.getFirstIAfter(from);
+        int toi = stock.getLastIBefore(to);
+        if (fromi >= toi || fromi < 0 || toi < 0) return list;
+        LinkedList<LocalDate> timeQueue = new LinkedList<>();
+        LinkedList<Double> valQueue = new LinkedList<>();
+        for (int i = fromi; i <= toi; i++) {
+            Double curPrice = high ? stock.getAdjHigh(i) : stock.getAdjLow(i);
+            LocalDate curDay = stock.getDate(i);
+            while (!valQueue.isEmpty() && Util.distinctDoubles(curPrice, valQueue.getLast()) &&
+                    curPrice.compareTo(valQueue.getLast()) * (high ? 1 : -1) > 0) {
+                timeQueue.removeLast();
+                valQueue.removeLast();
+            }
+            timeQueue.add(curDay);
+            valQueue.add(curPrice);
+            if (curDay.minus(windowSize).isAfter(from)) {
+                while (!timeQueue.isEmpty() &&
+                        timeQueue.getFirst().isBefore(curDay.minus(windowSize))) {
+                    timeQueue.removeFirst();
+                    valQueue.removeFirst();
+                }
+                if (timeQueue.getFirst().isEqual(curDay)) list.add(curDay);
+            }
+        }
+        return list;
+    }
+
+    @Test
+    public void testSameAsDeque() {
+        Random random = new Random(7);
+        SyntheticPriceSource source = new SyntheticPriceSource(20, LocalDate.of(2010, 1, 1),
+                LocalDate.of(2016, 1, 1), 3);
+        List<Period> windows = new ArrayList<>();
+        for (int m = 1; m <= 12; m++) windows.add(Period.ofMonths(m));
+        windows.add(Period.ofDays(10));
+        for (String ticker : source.getTickers()) {
+            Stock stock = source.load(ticker);
+            // coarse prices so that equal highs and lows happen
+            int n = stock.size();
+            int[] dates = new int[n];
+            double[] open = new double[n], high = new double[n], low = new double[n];
+            double[] close = new double[n];
+            for (int i = 0; i < n; i++) {
+                dates[i] = stock.getEpochDay(i);
+                open[i] = Math.round(stock.getOpen(i));
+                high[i] = Math.round(stock.getHigh(i));
+                low[i] = Math.round(stock.getLow(i));
+                close[i] = Math.round(stock.getClose(i));
+            }
+            Stock coarse = new Stock(ticker, dates, open, high, low, close, close.clone());
+            // month ends make Period arithmetic clip
+            LocalDate from = LocalDate.of(2011, 1, 31).plusDays(random.nextInt(400));
+            LocalDate to = from.plusDays(random.nextInt(1500));
+            ExtremeDays extremes = new ExtremeDays(from, to, windows);
+            for (boolean isHigh : new boolean[]{true, false}) {
+                int[][] found = extremes.find(coarse, isHigh);
+                for (int w = 0; w < windows.size(); w++) {
+                    List<LocalDate> expected = reference(coarse, from, to, windows.get(w), isHigh);
+                    List<LocalDate> actual = new ArrayList<>();
+                    for (int day : found[w]) actual.add(LocalDate.ofEpochDay(day));
+                    assertEquals(ticker + " " + windows.get(w) + " " + isHigh, expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEdges() {
+        Stock stock = new SyntheticPriceSource(1, LocalDate.of(2015, 1, 1),
+                LocalDate.of(2016, 1, 1), 1).load("SPY");
+        LocalDate day = LocalDate.of(2015, 6, 1);
+        assertTrue("empty range", stock.getExtremeDays(day, day, Period.ofMonths(1), true)
+                .isEmpty());
+        assertTrue("after last day", stock.getExtremeDays(LocalDate.of(2017, 1, 1),
+                LocalDate.of(2018, 1, 1), Period.ofMonths(1), true).isEmpty());
+        assertEquals("one window", reference(stock, day, day.plusMonths(6), Period.ofMonths(3),
+                false), stock.getExtremeDays(day, day.plusMonths(6), Period.ofMonths(3), false));
+        assertEquals("windows", 2, new ExtremeDays(day, day.plusDays(1),
+                Arrays.asList(Period.ofDays(1), Period.ofDays(2))).getNumWindows());
+    }
+}
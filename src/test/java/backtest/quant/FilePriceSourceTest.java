@@ -0,0 +1,43 @@
+package backtest.quant;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+
+public class FilePriceSourceTest {
+    @Test
+    public void testExport() throws Exception {
+        PriceSource synthetic = new SyntheticPriceSource(3, LocalDate.of(2015, 1, 1),
+                LocalDate.of(2016, 1, 1), 7);
+        String dir = Files.createTempDirectory("prices").toString();
+        FilePriceSource.export(synthetic, dir);
+        PriceSource file = new FilePriceSource(dir);
+        assertEquals("tickers", synthetic.getTickers(), file.getTickers());
+        assertEquals("day ranges", synthetic.getDayRanges(), file.getDayRanges());
+        for (String ticker : synthetic.getTickers()) {
+            Stock expected = synthetic.load(ticker);
+            Stock actual = file.load(ticker);
+            assertEquals(ticker + " size", expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(ticker + " date", expected.getDate(i), actual.getDate(i));
+                assertEquals(ticker + " open", expected.getOpen(i), actual.getOpen(i), 0);
+                assertEquals(ticker + " adj close", expected.getAdjClose(i), actual.getAdjClose(i), 0);
+            }
+        }
+        assertEquals("unknown ticker", 0, file.load("XYZ").size());
+    }
+
+    @Test
+    public void testSyntheticIsSeeded() {
+        LocalDate from = LocalDate.of(2015, 1, 1), to = LocalDate.of(2016, 1, 1);
+        Stock a = new SyntheticPriceSource(5, from, to, 1).load("C");
+        Stock b = new SyntheticPriceSource(5, from, to, 1).load("C");
+        assertEquals("same seed same prices", a.getAdjClose(100), b.getAdjClose(100), 0);
+        Stocks stocks = new Stocks(new SyntheticPriceSource(5, from, to, 1));
+        assertEquals("sp500 excludes SPY", 5, stocks.getSP500().size());
+        assertEquals("first day", LocalDate.of(2015, 1, 2), stocks.getFirstDay("SPY"));
+    }
+}
@@ -0,0 +1,39 @@
+package backtest.quant;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MappedPriceStoreTest {
+    @Test
+    public void testReadWrite() throws Exception {
+        Stock expected = new SyntheticPriceSource(1, LocalDate.of(2015, 1, 1),
+                LocalDate.of(2016, 1, 1), 3).load("A");
+        LocalDate lastDay = expected.getDate(expected.size() - 1);
+        Path dir = Files.createTempDirectory("store");
+        MappedPriceStore store = new MappedPriceStore(dir.toString());
+        assertNull("not stored", store.read("A", lastDay));
+        store.write(expected);
+        Stock actual = store.read("A", lastDay);
+        assertEquals("size", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("date", expected.getDate(i), actual.getDate(i));
+            assertEquals("open", expected.getOpen(i), actual.getOpen(i), 0);
+            assertEquals("high", expected.getHigh(i), actual.getHigh(i), 0);
+            assertEquals("low", expected.getLow(i), actual.getLow(i), 0);
+            assertEquals("close", expected.getClose(i), actual.getClose(i), 0);
+            assertEquals("adj close", expected.getAdjClose(i), actual.getAdjClose(i), 0);
+        }
+        assertNull("out of date", store.read("A", lastDay.plusDays(1)));
+        Path file = dir.resolve("A.bin");
+        Files.write(file, new byte[10]);
+        assertNull("not a price file", store.read("A", lastDay));
+        store.delete("A");
+        assertNull("deleted", store.read("A", lastDay));
+    }
+}
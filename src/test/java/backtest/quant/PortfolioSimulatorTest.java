@@ -0,0 +1,90 @@
+package backtest.quant;
+
+import backtest.struct.ArrayMap;
+import backtest.struct.NumMap;
+import backtest.struct.TimeSeries;
+import backtest.utils.Cal;
+import backtest.utils.Num;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PortfolioSimulatorTest {
+    private static final LocalDate from = LocalDate.of(2014, 1, 1);
+    private static final LocalDate to = LocalDate.of(2016, 1, 1);
+    private final Stocks stocks = new Stocks(new SyntheticPriceSource(5, from, to, 3));
+    private final List<String> tickers = Arrays.asList("SPY", stocks.getSP500().get(0));
+    private final Panel panel = new Panel(stocks, tickers, from, to);
+    private final double[][] targets = {{0.5, 0.5}, {1, 0}, {0, 0}, {0.2, 0.7}};
+
+    @Test
+    public void testSameAsPortfolio() {
+        LocalDate start = LocalDate.of(2014, 3, 1), end = LocalDate.of(2015, 12, 1);
+        Portfolio portfolio = new Portfolio(10000, stocks);
+        for (LocalDate date = Cal.getLatestBusinessDayAfter(start); !date.isAfter(end);
+             date = Cal.getNextBusinessDay(date)) {
+            double[] target = targets[target(panel.dateIndex(date))];
+            ArrayMap<String, Num> weights = new NumMap<String>();
+            for (int t = 0; t < tickers.size(); t++) weights.put(tickers.get(t), new Num(target[t]));
+            portfolio.reassign(date, weights);
+        }
+        PortfolioSimulator.Result result = new PortfolioSimulator(panel, 10000).run(start, end,
+                d -> targets[target(d)]);
+        TimeSeries expected = portfolio.cumRet();
+        TimeSeries actual = result.cumRet();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getKey(i), actual.getKey(i));
+            assertEquals(expected.getValue(i), actual.getValue(i), 1e-12);
+        }
+        assertEquals(portfolio.sharpeRatio(), result.sharpeRatio, 1e-9);
+        assertEquals(portfolio.mean(), result.mean, 1e-12);
+        assertEquals(portfolio.std(), result.std, 1e-12);
+        TimeSeries.Drawdown drawdown = result.getWealth().maxDrawdown();
+        assertEquals(drawdown.drawdown, result.maxDrawdown.drawdown, 1e-12);
+        assertEquals(drawdown.from, result.maxDrawdown.from);
+        assertEquals(drawdown.to, result.maxDrawdown.to);
+        assertEquals(0, result.commission, 0);
+    }
+
+    @Test
+    public void testCommission() {
+        PortfolioSimulator free = new PortfolioSimulator(panel, 10000);
+        PortfolioSimulator paid = new PortfolioSimulator(panel, 10000).setCommission(0.005, 1);
+        PortfolioSimulator.Result freeResult = free.run(from, to, d -> targets[target(d)]);
+        PortfolioSimulator.Result paidResult = paid.run(from, to, d -> targets[target(d)]);
+        assertTrue(paidResult.numOrders > 0);
+        assertTrue(paidResult.commission >= paidResult.numOrders);
+        int last = paidResult.wealth.length - 1;
+        assertTrue(paidResult.wealth[last] < freeResult.wealth[last]);
+        // one target for the whole run buys once and never pays again
+        PortfolioSimulator.Result hold = paid.run(from, to, new double[]{1, 0});
+        assertEquals(1, hold.numOrders);
+        assertEquals(1, hold.commission, 1e-12);
+    }
+
+    @Test
+    public void testMinCommissionBinding() {
+        int d = panel.firstDateIndexFrom(from);
+        double price = panel.getAdjCloseRow(d)[0], nextPrice = panel.getAdjCloseRow(d + 1)[0];
+        // ten shares fit only if the one dollar minimum is ignored
+        double initWealth = 10 * price + 0.5;
+        PortfolioSimulator.Result result = new PortfolioSimulator(panel, initWealth)
+                .setCommission(0.005, 1).run(from, to, new double[]{1, 0});
+        assertEquals(1, result.numOrders);
+        assertEquals(1, result.commission, 1e-12);
+        // wealth[1] - wealth[0] = shares * (nextPrice - price) - commission
+        long shares = Math.round((result.wealth[1] - result.wealth[0] + 1) / (nextPrice - price));
+        assertEquals(9, shares);
+        assertTrue(shares * price + result.commission <= initWealth);
+    }
+
+    private static int target(int d) {
+        return d / 7 % 4;
+    }
+}
@@ -0,0 +1,35 @@
+package backtest.quant;
+
+import com.google.common.cache.CacheStats;
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StocksTest {
+    private static final LocalDate from = LocalDate.of(2015, 1, 1);
+    private static final LocalDate to = LocalDate.of(2016, 1, 1);
+
+    @Test
+    public void testCache() {
+        Stocks stocks = new Stocks(new SyntheticPriceSource(10, from, to, 1));
+        stocks.load(stocks.getSP500AndSPY());
+        Stock spy = stocks.getStockFromCache("SPY");
+        assertSame("cached", spy, stocks.getStockFromCache("SPY"));
+        CacheStats stats = stocks.getCacheStats();
+        assertEquals("one bulk load", 1, stats.loadCount());
+        assertEquals("hits", 2, stats.hitCount());
+    }
+
+    @Test
+    public void testBound() {
+        SyntheticPriceSource source = new SyntheticPriceSource(10, from, to, 1);
+        int rows = source.load("SPY").size();
+        Stocks stocks = new Stocks(source, 3 * rows, 2);
+        stocks.load(stocks.getSP500AndSPY());
+        assertTrue("evicted", stocks.getCacheStats().evictionCount() >= 8);
+    }
+}
@@ -0,0 +1,53 @@
+package backtest.regime;
+
+import backtest.quant.ExtremeDays;
+import backtest.quant.Stock;
+import backtest.quant.SyntheticPriceSource;
+import backtest.struct.TimeSeries;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static backtest.regime.SeriesAssert.assertSeries;
+
+public class BreadthTest {
+    @Test
+    public void testParallelSameAsSequential() {
+        LocalDate from = LocalDate.of(2012, 1, 1), to = LocalDate.of(2016, 1, 1);
+        SyntheticPriceSource source = new SyntheticPriceSource(50, LocalDate.of(2010, 1, 1), to,
+                5);
+        Map<String, Stock> stocks = new HashMap<>();
+        for (String ticker : source.getTickers()) stocks.put(ticker, source.load(ticker));
+        List<String> tickers = new ArrayList<>(stocks.keySet());
+        List<Period> windows = Arrays.asList(Period.ofMonths(3), Period.ofMonths(12));
+        ExtremeDays extremes = new ExtremeDays(from, to, windows);
+        Breadth sequential = Breadth.count(tickers, stocks::get, extremes, from, to, 1);
+        Breadth parallel = Breadth.count(tickers, stocks::get, extremes, from, to, 4);
+        for (int w = 0; w < windows.size(); w++) {
+            // the same counts by adding up Stock.getExtremeDays
+            TimeSeries high = new TimeSeries(), low = new TimeSeries();
+            for (String ticker : tickers) {
+                high = high.add(ones(stocks.get(ticker).getExtremeDays(from, to, windows.get(w),
+                        true), 1));
+                low = low.add(ones(stocks.get(ticker).getExtremeDays(from, to, windows.get(w),
+                        false), -1));
+            }
+            assertSeries("high " + w, high, sequential.getHigh(w));
+            assertSeries("high " + w, high, parallel.getHigh(w));
+            assertSeries("low " + w, low, sequential.getLow(w));
+            assertSeries("low " + w, low, parallel.getLow(w));
+        }
+    }
+
+    private static TimeSeries ones(List<LocalDate> days, double value) {
+        TimeSeries ret = new TimeSeries();
+        for (LocalDate day : days) ret.put(day, value);
+        return ret;
+    }
+}
@@ -0,0 +1,110 @@
+package backtest.regime;
+
+import backtest.quant.ExtremeDays;
+import backtest.quant.Stock;
+import backtest.quant.Stocks;
+import backtest.quant.SyntheticPriceSource;
+import backtest.struct.TimeSeries;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static backtest.regime.SeriesAssert.assertSeries;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalRegimeModelTest {
+    private static final LocalDate from = LocalDate.of(2014, 1, 1);
+    private final SyntheticPriceSource source = new SyntheticPriceSource(30,
+            LocalDate.of(2012, 1, 1), LocalDate.of(2016, 1, 1), 9);
+    private final List<String> tickers = source.getTickers();
+    private final Map<String, Stock> full = new HashMap<>();
+
+    public IncrementalRegimeModelTest() {
+        for (String ticker : tickers) full.put(ticker, source.load(ticker));
+    }
+
+    /**
+     * rows of stock on or before day.
+     */
+    private static Stock until(Stock stock, LocalDate day, double adjust) {
+        int n = stock.getLastIBefore(day) + 1;
+        double[] open = new double[n], high = new double[n], low = new double[n];
+        double[] close = new double[n], adjClose = new double[n];
+        int[] dates = new int[n];
+        for (int i = 0; i < n; i++) {
+            dates[i] = stock.getEpochDay(i);
+            open[i] = stock.getOpen(i);
+            high[i] = stock.getHigh(i);
+            low[i] = stock.getLow(i);
+            close[i] = stock.getClose(i);
+            adjClose[i] = stock.getAdjClose(i) * adjust;
+        }
+        return new Stock(stock.getTicker(), dates, open, high, low, close, adjClose);
+    }
+
+    private void assertSameAsBreadth(IncrementalRegimeModel model, LocalDate to) {
+        ExtremeDays extremes = new ExtremeDays(from, to, Collections.singletonList(
+                Period.ofMonths(model.getExtremeWindowSize())));
+        Map<String, Stock> stocks = new HashMap<>();
+        for (String ticker : tickers) stocks.put(ticker, until(full.get(ticker), to, 1));
+        Breadth breadth = Breadth.count(tickers, stocks::get, extremes, from, to, 1);
+        assertSeries("high to " + to, breadth.getHigh(0), model.getHigh());
+        assertSeries("low to " + to, breadth.getLow(0), model.getLow());
+    }
+
+    @Test
+    public void testDayByDay() throws Exception {
+        IncrementalRegimeModel model = new IncrementalRegimeModel(6, from);
+        LocalDate day = LocalDate.of(2015, 6, 1);
+        TimeSeries first = model.update(tickers, t -> until(full.get(t), day, 1));
+        assertEquals("first update is everything", model.getHighMinusLow().size(), first.size());
+        assertSameAsBreadth(model, day);
+        File file = Files.createTempDirectory("regime").resolve("state.bin").toFile();
+        for (LocalDate d = day.plusDays(1); d.isBefore(LocalDate.of(2015, 8, 1));
+             d = d.plusDays(1)) {
+            LocalDate to = d, last = model.getLastDay();
+            TimeSeries points = model.update(tickers, t -> until(full.get(t), to, 1));
+            assertTrue("only new days", points.isEmpty() || !points.firstKey().isBefore(last));
+            if (to.getDayOfMonth() == 15) {
+                model.save(file.getPath());
+                model = IncrementalRegimeModel.load(file.getPath(), 6, from);
+                assertNotNull("loaded", model);
+            }
+        }
+        assertSameAsBreadth(model, LocalDate.of(2015, 7, 31));
+        assertEquals("another window size", null,
+                IncrementalRegimeModel.load(file.getPath(), 12, from));
+    }
+
+    @Test
+    public void testSameAsRegimeModel() {
+        Stocks stocks = new Stocks(source);
+        IncrementalRegimeModel model = new IncrementalRegimeModel(6, from);
+        model.update(stocks);
+        LocalDate to = model.getLastDay();
+        RegimeModel expected = RegimeModel.calcHighMinusLowRates(stocks, new int[]{6}, from, to)
+                .get(0);
+        assertSeries("high minus low", expected.highMinusLow, model.getHighMinusLow());
+    }
+
+    @Test
+    public void testAdjusted() {
+        IncrementalRegimeModel model = new IncrementalRegimeModel(3, from);
+        LocalDate day = LocalDate.of(2015, 3, 2);
+        model.update(tickers, t -> until(full.get(t), day, 1));
+        String adjusted = tickers.get(3);
+        TimeSeries points = model.update(tickers, t -> until(full.get(t), day.plusDays(7),
+                t.equals(adjusted) ? 0.98 : 1));
+        assertEquals("recomputed", model.getHighMinusLow().size(), points.size());
+        assertEquals("last day", LocalDate.of(2015, 3, 9), model.getLastDay());
+    }
+}
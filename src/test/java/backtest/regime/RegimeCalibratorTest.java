@@ -0,0 +1,98 @@
+package backtest.regime;
+
+import backtest.struct.TimeSeries;
+import backtest.utils.Cal;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RegimeCalibratorTest {
+    private static final double bearToBear = 0.95, bullToBear = 0.02;
+
+    @Test
+    public void testSameAsDayByDayFilter() {
+        LocalDate from = LocalDate.of(2014, 1, 1), to = LocalDate.of(2016, 1, 1);
+        Random random = new Random(7);
+        List<TimeSeries> rates = new ArrayList<>();
+        for (int w = 0; w < 3; w++) {
+            TimeSeries rate = new TimeSeries();
+            for (LocalDate day = from; day.isBefore(to); day = Cal.getNextBusinessDay(day)) {
+                // leave some days out, they count as 0
+                if (random.nextInt(10) > 0) rate.put(day, random.nextGaussian() * 50 - 10 * w);
+            }
+            rates.add(rate);
+        }
+        Set<LocalDate> realBear = new HashSet<>();
+        for (LocalDate day = LocalDate.of(2014, 6, 1); day.isBefore(LocalDate.of(2014, 9, 1));
+             day = day.plusDays(1)) {
+            realBear.add(day);
+        }
+        int[] winSizes = {4, 5, 6};
+        double[] thresholds = {0.1, 0.5, 0.9};
+        RegimeCalibrator calibrator = new RegimeCalibrator(from, to, realBear, bearToBear,
+                bullToBear);
+        List<RegimeCalibrator.Result> results = calibrator.calibrate(rates, winSizes,
+                thresholds, 3);
+        assertEquals(winSizes.length * thresholds.length, results.size());
+        for (int i = 1; i < results.size(); i++) {
+            double prev = results.get(i - 1).fmeasure, cur = results.get(i).fmeasure;
+            assertTrue(Double.isNaN(cur) || prev >= cur);
+        }
+        for (RegimeCalibrator.Result result : results) {
+            TimeSeries rate = rates.get(result.winSize - 4);
+            List<LocalDate> expected = bearDays(rate, from, to, result.threshold);
+            assertEquals(expected, result.bearList);
+            int count = 0;
+            for (LocalDate day : expected) if (realBear.contains(day)) count++;
+            assertEquals((double) count / expected.size(), result.precision, 1e-12);
+            assertEquals((double) count / realBear.size(), result.recall, 1e-12);
+        }
+    }
+
+    @Test
+    public void testSkipsRatesOfOneSign() {
+        LocalDate from = LocalDate.of(2015, 1, 1), to = LocalDate.of(2015, 6, 1);
+        TimeSeries rate = new TimeSeries();
+        for (LocalDate day = from; day.isBefore(to); day = Cal.getNextBusinessDay(day)) {
+            rate.put(day, 3);
+        }
+        RegimeCalibrator calibrator = new RegimeCalibrator(from, to, new HashSet<>(), bearToBear,
+                bullToBear);
+        assertTrue(calibrator.calibrate(Arrays.asList(rate), new int[]{4}, new double[]{0.5}, 1)
+                .isEmpty());
+    }
+
+    // filter of TransThreshFinder, one day at a time through Cal
+    private static List<LocalDate> bearDays(TimeSeries rate, LocalDate from, LocalDate to,
+                                            double threshold) {
+        double rmax = rate.max(), rmin = rate.min();
+        double a = -1 / (0.5 * rmax * rmax + 0.5 * rmin * rmin - rmax * rmin);
+        double bearProb = 0.01, bullProb = 1 - bearProb;
+        boolean first = true;
+        List<LocalDate> ret = new ArrayList<>();
+        for (LocalDate date = Cal.getLatestBusinessDayAfter(from); date.isBefore(to);
+             date = Cal.getNextBusinessDay(date)) {
+            if (!first) {
+                double x = rate.getOrDefault(date);
+                double bearTrans = bearProb * bearToBear + (1 - bearProb) * bullToBear;
+                double bullTrans = bullProb * (1 - bullToBear) + (1 - bullProb) * (1 - bearToBear);
+                bearProb = bearTrans * (a * x - a * rmax);
+                bullProb = bullTrans * (-a * x + a * rmin);
+                bearProb = bearProb / (bearProb + bullProb);
+                bullProb = 1 - bearProb;
+            }
+            if (bearProb > threshold) ret.add(date);
+            first = false;
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,24 @@
+package backtest.regime;
+
+import backtest.struct.TimeSeries;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * assertions on TimeSeries shared by the regime tests.
+ */
+final class SeriesAssert {
+    private SeriesAssert() {
+    }
+
+    /**
+     * expected and actual have the same keys and exactly the same values.
+     */
+    static void assertSeries(String message, TimeSeries expected, TimeSeries actual) {
+        assertEquals(message + ": size", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(message + ": key", expected.getKey(i), actual.getKey(i));
+            assertEquals(message + ": value", expected.getValue(i), actual.getValue(i), 0);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package backtest.struct;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TimeSeriesTest {
+    private static final LocalDate d1 = LocalDate.of(2016, 1, 4);
+    private static final LocalDate d2 = LocalDate.of(2016, 1, 5);
+    private static final LocalDate d3 = LocalDate.of(2016, 1, 6);
+
+    @Test
+    public void testPut() {
+        TimeSeries series = new TimeSeries();
+        series.put(d2, 2).put(d1, 1).put(d2, 3).put(d3, Double.NaN);
+        assertEquals("keys not increasing are ignored", 1, series.size());
+        assertEquals("get existing key", 2, series.get(d2), 1e-8);
+        assertEquals("get missing key", Double.NaN, series.get(d1), 1e-8);
+        assertEquals("default of missing key", 0, series.getOrDefault(d1), 1e-8);
+        assertNull("entry of missing key", series.getEntry(d3));
+        for (int i = 0; i < 100; i++) series.put(d3.plusDays(i), i);
+        assertEquals("grow", 101, series.size());
+        assertEquals("last value", 99, series.lastValue(), 1e-8);
+    }
+
+    @Test
+    public void testOps() {
+        TimeSeries a = new TimeSeries().put(d1, 1).put(d2, 2);
+        TimeSeries b = new TimeSeries().put(d2, 4).put(d3, 8);
+        TimeSeries sum = a.add(b);
+        assertEquals("add: size", 3, sum.size());
+        assertEquals("add: only in this", 1, sum.get(d1), 1e-8);
+        assertEquals("add: in both", 6, sum.get(d2), 1e-8);
+        assertEquals("add: only in that", 8, sum.get(d3), 1e-8);
+        TimeSeries diff = a.subtract(b);
+        assertEquals("subtract: only in that", -8, diff.get(d3), 1e-8);
+        TimeSeries ratio = b.divide(a);
+        assertEquals("divide: size", 1, ratio.size());
+        assertEquals("divide: in both", 2, ratio.get(d2), 1e-8);
+    }
+
+    @Test
+    public void testStats() {
+        TimeSeries series = new TimeSeries().put(d1, 10).put(d2, 5).put(d3, 20);
+        assertEquals("sum", 35, series.sum(), 1e-8);
+        assertEquals("max", 20, series.max(), 1e-8);
+        assertEquals("min", 5, series.min(), 1e-8);
+        TimeSeries ret = series.getRet(1);
+        assertEquals("ret: size", 2, ret.size());
+        assertEquals("ret: first", -0.5, ret.getValue(0), 1e-8);
+        assertEquals("ret: second", 3, ret.getValue(1), 1e-8);
+        TimeSeries.Drawdown drawdown = series.maxDrawdown();
+        assertEquals("drawdown", 0.5, drawdown.drawdown, 1e-8);
+        assertEquals("drawdown from", d1, drawdown.from);
+        assertEquals("drawdown to", d2, drawdown.to);
+        assertNull("no drawdown", new TimeSeries().put(d1, 1).put(d2, 2).maxDrawdown());
+    }
+}
@@ -0,0 +1,63 @@
+package backtest.struct;
+
+import backtest.io.CSVParser;
+import backtest.struct.TypedTable.Type;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TypedTableTest {
+    private static TypedTable read(String csv) throws Exception {
+        TypedTable table = new TypedTable(Arrays.asList("Date", "Close", "Volume", "Note"),
+                Arrays.asList(Type.DATE, Type.DOUBLE, Type.LONG, Type.STRING));
+        new CSVParser().readTable(Channels.newChannel(new ByteArrayInputStream(
+                csv.getBytes(StandardCharsets.UTF_8))), table);
+        return table;
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        TypedTable table = read("Date,Open,Close,Volume,Note\n" +
+                "2016-01-06,1,2.5,300,\"a, b\"\n2016-01-04,1,1.5,100,x\n2016-01-05,1,2,200,\n");
+        assertEquals("rows", 3, table.getNumRow());
+        assertEquals("date", LocalDate.of(2016, 1, 6), table.getDate(0, 0));
+        assertEquals("double", 2.5, table.getDouble(0, 1), 0);
+        assertEquals("long", 300, table.getLong(0, 2));
+        assertEquals("string", "a, b", table.getString(0, 3));
+        assertEquals("row view", 1.5, table.row(1).getDouble("Close"), 0);
+    }
+
+    @Test
+    public void testSortAndFind() throws Exception {
+        StringBuilder sb = new StringBuilder("Date,Close,Volume,Note\n");
+        LocalDate first = LocalDate.of(2016, 1, 4);
+        // latest day first like yahoo, with a duplicate day
+        for (int i = 99; i >= 0; i--) {
+            sb.append(first.plusDays(i)).append(',').append(i).append(",1,").append(i).append('\n');
+        }
+        sb.append(first).append(",-1,1,dup\n");
+        TypedTable table = read(sb.toString());
+        table.sortBy(0);
+        for (int r = 1; r < table.getNumRow(); r++) {
+            assertTrue("sorted", table.getEpochDay(r - 1, 0) <= table.getEpochDay(r, 0));
+        }
+        assertEquals("stable", "0", table.getString(0, 3));
+        assertEquals("stable", "dup", table.getString(1, 3));
+        int r = table.find(first.plusDays(50));
+        assertEquals("found", 50, table.getDouble(r, 1), 0);
+        assertEquals("columns moved together", "50", table.getString(r, 3));
+        assertEquals("missing", -1, table.find(first.minusDays(1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingColumn() throws Exception {
+        read("Date,Close,Note\n2016-01-04,1,x\n");
+    }
+}
@@ -0,0 +1,71 @@
+package backtest.utils;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+
+public class TradingCalendarTest {
+    private static final LocalDate from = LocalDate.of(2015, 12, 20);
+    private static final LocalDate to = LocalDate.of(2017, 1, 10);
+
+    private static LocalDate walk(LocalDate day, int n) {
+        while (n > 0) {
+            day = day.plusDays(1);
+            if (Cal.isBusinessDay(day)) n--;
+        }
+        while (n < 0) {
+            day = day.minusDays(1);
+            if (Cal.isBusinessDay(day)) n++;
+        }
+        return day;
+    }
+
+    @Test
+    public void testOffset() {
+        TradingCalendar calendar = new TradingCalendar(from, to);
+        for (LocalDate day = from.plusDays(10); day.isBefore(to.minusDays(10));
+             day = day.plusDays(1)) {
+            assertEquals("business day " + day, Cal.isBusinessDay(day),
+                    calendar.isBusinessDay(day));
+            for (int n = -5; n <= 5; n++) {
+                assertEquals(day + " offset by " + n, walk(day, n), calendar.offset(day, n));
+            }
+            assertEquals("next " + day, walk(day, 1), calendar.next(day));
+            assertEquals("prev " + day, walk(day, -1), calendar.prev(day));
+        }
+        assertEquals("good friday", LocalDate.of(2016, 3, 28),
+                calendar.next(LocalDate.of(2016, 3, 24)));
+    }
+
+    @Test
+    public void testBetween() {
+        TradingCalendar calendar = new TradingCalendar(from, to);
+        assertEquals("year 2016", 252, calendar.businessDaysBetween(LocalDate.of(2015, 12, 31),
+                LocalDate.of(2016, 12, 31)));
+        LocalDate a = LocalDate.of(2016, 6, 1);
+        for (int n = -20; n <= 20; n++) {
+            assertEquals("between " + n, n, calendar.businessDaysBetween(a, calendar.offset(a, n)));
+        }
+    }
+
+    @Test
+    public void testDefault() {
+        LocalDate day = LocalDate.of(2016, 7, 1);
+        assertEquals("independence day", LocalDate.of(2016, 7, 5), Cal.getNextBusinessDay(day));
+        assertEquals("same as walking", walk(day, 300), Cal.getNextBusinessDay(day, 300));
+        assertEquals("same as walking", walk(day, -300), Cal.getPrevBusinessDay(day, 300));
+        assertEquals("latest before", LocalDate.of(2016, 7, 1),
+                Cal.getLatestBusinessDayBefore(LocalDate.of(2016, 7, 4)));
+        assertEquals("latest after", LocalDate.of(2016, 7, 5),
+                Cal.getLatestBusinessDayAfter(LocalDate.of(2016, 7, 2)));
+        LocalDate old = LocalDate.of(1960, 1, 4);
+        assertEquals("outside default range", walk(old, 3), Cal.getNextBusinessDay(old, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutside() {
+        new TradingCalendar(from, to).offset(to, 10);
+    }
+}
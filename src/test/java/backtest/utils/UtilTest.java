@@ -31,4 +31,17 @@ public class UtilTest {
         assertEquals(2, Util.indexOfFirstEleNoLessThan(arr, 3d));
         assertEquals(2, Util.indexOfLastEleNoLargerThan(arr, 3d));
     }
+
+    @Test(timeout=100)
+    public void TestIntArr(){
+        int[] arr = {1, 3, 5};
+        assertEquals(0, Util.indexOfFirstEleNoLessThan(arr, 0));
+        assertEquals(1, Util.indexOfFirstEleNoLessThan(arr, 2));
+        assertEquals(2, Util.indexOfFirstEleNoLessThan(arr, 5));
+        assertEquals(-1, Util.indexOfFirstEleNoLessThan(arr, 6));
+        assertEquals(-1, Util.indexOfLastEleNoLargerThan(arr, 0));
+        assertEquals(0, Util.indexOfLastEleNoLargerThan(arr, 2));
+        assertEquals(2, Util.indexOfLastEleNoLargerThan(arr, 6));
+        assertEquals(-1, Util.indexOfFirstEleNoLessThan(new int[0], 1));
+    }
 }